@@ -0,0 +1,54 @@
+package com.example.demo.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Testdaten für die Benchmarks auf Basis der Beispiel-Ressourcen aus
+ * src/test/resources.
+ */
+public final class BenchmarkResources {
+
+	public static final String PATIENT = "Beispiel-FHIR-Ressource-Patient";
+	public static final String DOCUMENT_REFERENCE = "Beispiel-FHIR-Ressource-DocumentReference";
+	private static final String SAMPLE_DATA = "JVBERi0xLjUNJeLjz9MNCjEw";
+
+	private BenchmarkResources() {
+	}
+
+	/**
+	 * Liest eine Beispiel-Ressource aus dem Klassenpfad.
+	 */
+	public static String json(String name) {
+		try (InputStream in = BenchmarkResources.class.getClassLoader().getResourceAsStream(name + ".json")) {
+			if (in == null) {
+				throw new IllegalArgumentException("Unknown resource " + name);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Erzeugt reproduzierbare Zufallsbytes als Dokumentinhalt.
+	 */
+	public static byte[] attachment(int size) {
+		byte[] data = new byte[size];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Liefert die Beispiel-DocumentReference mit einem Anhang der angegebenen
+	 * Größe (in Bytes vor der Base64-Kodierung).
+	 */
+	public static String documentReference(int attachmentSize) {
+		String data = Base64.getEncoder().encodeToString(attachment(attachmentSize));
+		return json(DOCUMENT_REFERENCE).replace(SAMPLE_DATA, data);
+	}
+}
@@ -0,0 +1,93 @@
+package com.example.demo.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.controller.FhirController;
+import com.example.demo.stream.DocumentReferenceReader;
+import com.example.demo.stream.SelectiveExtractor;
+import com.example.demo.stream.StreamedDocumentReference;
+
+/**
+ * Vergleicht das Parsen der Beispiel-Ressourcen mit HAPI und mit dem
+ * Streaming-Reader bei unterschiedlichen Anhangsgrößen sowie das Parsen der
+ * Patient-Ressource mit HAPI und mit der schnellen Extraktion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ParseBenchmark {
+
+	private FhirParsers fhirParsers;
+	private DocumentReferenceReader documentReferenceReader;
+	private String patientJson;
+	private byte[] patientBytes;
+
+	/**
+	 * DocumentReference mit einem Anhang der jeweiligen Größe.
+	 */
+	@State(Scope.Thread)
+	public static class Documents {
+		@Param({ "1024", "1048576", "52428800" })
+		private int attachmentSize;
+
+		private String json;
+		private byte[] bytes;
+
+		@Setup
+		public void setUp() {
+			json = BenchmarkResources.documentReference(attachmentSize);
+			bytes = json.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		FhirConfiguration configuration = new FhirConfiguration();
+		fhirParsers = configuration.fhirParsers(configuration.fhirContext(new FhirFacadeProperties()));
+		documentReferenceReader = new DocumentReferenceReader(new FhirFacadeProperties().getDocumentSpoolThreshold());
+		patientJson = BenchmarkResources.json(BenchmarkResources.PATIENT);
+		patientBytes = patientJson.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public Patient hapiParsePatient() {
+		return fhirParsers.jsonParser().parseResource(Patient.class, patientJson);
+	}
+
+	@Benchmark
+	public SelectiveExtractor.Result fastPathExtractPatient() throws IOException {
+		return FhirController.PATIENT_EXTRACTOR.extract(new ByteArrayInputStream(patientBytes));
+	}
+
+	@Benchmark
+	public DocumentReference hapiParseDocumentReference(Documents documents) {
+		return fhirParsers.jsonParser().parseResource(DocumentReference.class, documents.json);
+	}
+
+	@Benchmark
+	public long streamingReadDocumentReference(Documents documents) throws IOException {
+		try (StreamedDocumentReference documentReference = documentReferenceReader
+				.read(new ByteArrayInputStream(documents.bytes))) {
+			return documentReference.getData().size();
+		}
+	}
+}
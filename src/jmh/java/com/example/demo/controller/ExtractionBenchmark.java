@@ -0,0 +1,90 @@
+package com.example.demo.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import com.example.demo.benchmark.BenchmarkResources;
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.index.PatientIndex;
+import com.example.demo.mapping.FieldType;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.outbox.Outbox;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+import com.example.demo.stream.DocumentReferenceReader;
+import com.example.demo.stream.StreamedDocumentReference;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Misst die Prüf- und Extraktionslogik von createPatient und
+ * createDocumentReference ohne Parsen und ohne Aufruf der proprietären API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class ExtractionBenchmark {
+
+	private ProprietaryApiService proprietaryApiService;
+	private FhirController controller;
+	private Patient patient;
+	private StreamedDocumentReference documentReference;
+
+	@Setup
+	public void setUp() throws IOException {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.setProprietaryBaseUrl("http://localhost:1");
+		FhirConfiguration configuration = new FhirConfiguration();
+		FhirParsers fhirParsers = configuration.fhirParsers(configuration.fhirContext(properties));
+		FacadeMetrics metrics = new FacadeMetrics(new SimpleMeterRegistry());
+		proprietaryApiService = new ProprietaryApiService(properties, metrics);
+		controller = new FhirController(proprietaryApiService, properties, fhirParsers,
+				new MappingEngine(properties, fhirParsers.getFhirContext(), metrics), new StaticListableBeanFactory().getBeanProvider(Outbox.class),
+				new StaticListableBeanFactory().getBeanProvider(PatientIndex.class), metrics);
+		patient = fhirParsers.jsonParser().parseResource(Patient.class,
+				BenchmarkResources.json(BenchmarkResources.PATIENT));
+		documentReference = new DocumentReferenceReader(properties.getDocumentSpoolThreshold())
+				.read(new ByteArrayInputStream(BenchmarkResources.documentReference(1024)
+						.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		documentReference.close();
+		proprietaryApiService.destroy();
+	}
+
+	@Benchmark
+	public OutboundRequest preparePatient() throws BadRequestException {
+		return controller.prepare(patient);
+	}
+
+	@Benchmark
+	public OutboundRequest prepareDocumentReference() throws BadRequestException {
+		return controller.prepareDocumentReference(documentReference);
+	}
+
+	@Benchmark
+	public String convertDate() {
+		return FieldType.germanDate("1974-12-25");
+	}
+}
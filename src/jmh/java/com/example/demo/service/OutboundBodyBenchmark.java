@@ -0,0 +1,107 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.demo.benchmark.BenchmarkResources;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.stream.SpooledContent;
+
+/**
+ * Misst den Aufbau der Anfragekörper für /Person und /Document. Die
+ * Vergleichswerte legacyPatientBody und legacyDocumentBody entsprechen dem
+ * früheren Vorgehen (String.format, beim Dokument zusätzlich die
+ * Base64-Kodierung des byte[]).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OutboundBodyBenchmark {
+
+	@Param({ "1024", "1048576", "52428800" })
+	private int attachmentSize;
+
+	private static final String[] PATIENT_FIELDS = { "firstName", "lastName", "birthDate" };
+	private static final String[] DOCUMENT_FIELDS = { "kdlCode", "patientId", "visitNumber", "dateCreated" };
+
+	private final Date creationDate = new Date(1609476650000L);
+	private byte[] data;
+	private SpooledContent contentB64;
+
+	@Setup
+	public void setUp() throws IOException {
+		data = BenchmarkResources.attachment(attachmentSize);
+		contentB64 = new SpooledContent(new FhirFacadeProperties().getDocumentSpoolThreshold());
+		try (OutputStream out = contentB64.outputStream()) {
+			out.write(Base64.getEncoder().encode(data));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		contentB64.close();
+	}
+
+	@Benchmark
+	public byte[] patientBody() {
+		return OutboundRequest.requestBody(PATIENT_FIELDS, new Object[] { "Peter James", "Chalmers", "25.12.1974" },
+				null);
+	}
+
+	@Benchmark
+	public byte[] legacyPatientBody() {
+		return String.format("{\"firstName\":\"%s\",\"lastName\":\"%s\",\"birthDate\":\"%s\"}", "Peter James",
+				"Chalmers", "25.12.1974").getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public long documentBody() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		out.write(OutboundRequest.requestPrefix(DOCUMENT_FIELDS,
+				new Object[] { "PT130102", 654321, 123456789, creationDate }, "contentB64"));
+		contentB64.writeTo(out);
+		out.write(OutboundRequest.CONTENT_SUFFIX);
+		return out.count;
+	}
+
+	@Benchmark
+	public String legacyDocumentBody() {
+		String content = Base64.getEncoder().encodeToString(data);
+		return String.format(
+				"{\"kdlCode\":\"%s\",\"patientId\":%d,\"visitNumber\":%d,\"dateCreated\":\"%s\",\"contentB64\":\"%s\"}",
+				"PT130102", 654321, 123456789, creationDate, content);
+	}
+
+	/**
+	 * Verwirft die geschriebenen Bytes und zählt sie nur.
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
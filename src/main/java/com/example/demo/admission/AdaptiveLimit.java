@@ -0,0 +1,83 @@
+package com.example.demo.admission;
+
+/**
+ * Grenze für gleichzeitige Anfragen, die sich an der beobachteten Latenz der
+ * proprietären API ausrichtet (Gradienten-Verfahren).
+ * <p>
+ * Verglichen werden ein kurzfristiger und ein langfristiger gleitender
+ * Mittelwert der Latenz. Steigt die kurzfristige Latenz deutlich über die
+ * langfristige, staut sich die Arbeit in der API und die Grenze sinkt
+ * proportional. Sonst wächst sie langsam um etwa die Wurzel der aktuellen
+ * Grenze, aber nur, solange sie auch ausgeschöpft wird. Fehlgeschlagene Aufrufe
+ * senken die Grenze multiplikativ.
+ */
+class AdaptiveLimit {
+
+	// Gewicht eines neuen Messwerts im kurzfristigen Mittel (ca. 10 Aufrufe)
+	private static final double SHORT_WEIGHT = 0.1;
+	// Gewicht eines neuen Messwerts im langfristigen Mittel (ca. 500 Aufrufe)
+	private static final double LONG_WEIGHT = 0.002;
+	// Toleriertes Verhältnis von kurz- zu langfristiger Latenz
+	private static final double TOLERANCE = 1.5;
+	// Anteil, um den sich die Grenze je Messwert höchstens ändert
+	private static final double SMOOTHING = 0.2;
+	// Faktor, um den ein fehlgeschlagener Aufruf die Grenze senkt
+	private static final double FAILURE_BACKOFF = 0.9;
+
+	private final int min;
+	private final int max;
+	private double limit;
+	private double shortRtt;
+	private double longRtt;
+
+	AdaptiveLimit(int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("Expected 1 <= min <= max but got " + min + "/" + max);
+		}
+		this.min = min;
+		this.max = max;
+		this.limit = max;
+	}
+
+	/**
+	 * Verarbeitet die Dauer eines abgeschlossenen Aufrufs.
+	 *
+	 * @param nanos    Dauer des Aufrufs
+	 * @param success  true, wenn die API den Aufruf angenommen hat
+	 * @param inFlight Anzahl der zugleich laufenden Anfragen
+	 * @return true, wenn die Grenze ({@link #get()}) gestiegen ist
+	 */
+	synchronized boolean onSample(long nanos, boolean success, int inFlight) {
+		if (!success) {
+			limit = Math.max(min, limit * FAILURE_BACKOFF);
+			return false;
+		}
+		if (longRtt == 0) {
+			shortRtt = nanos;
+			longRtt = nanos;
+		}
+		shortRtt += (nanos - shortRtt) * SHORT_WEIGHT;
+		longRtt += (nanos - longRtt) * LONG_WEIGHT;
+		// Nach einer langen Phase hoher Latenz erholt sich das langfristige Mittel
+		// schneller, sobald die Latenz wieder sinkt
+		if (longRtt > 2 * shortRtt) {
+			longRtt *= 0.95;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+		double target = limit * gradient + Math.sqrt(limit);
+		if (target > limit && inFlight < limit / 2) {
+			// Die Grenze wird nicht ausgeschöpft, eine Erhöhung wäre nicht belegt
+			return false;
+		}
+		int previous = (int) limit;
+		limit = Math.max(min, Math.min(max, limit * (1 - SMOOTHING) + target * SMOOTHING));
+		return (int) limit > previous;
+	}
+
+	/**
+	 * @return die aktuelle Grenze
+	 */
+	synchronized int get() {
+		return (int) limit;
+	}
+}
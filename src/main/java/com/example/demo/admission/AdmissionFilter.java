@@ -0,0 +1,306 @@
+package com.example.demo.admission;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.controller.OperationOutcomes;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+
+/**
+ * Zugangskontrolle vor dem FhirController.
+ * <p>
+ * Eine Anfrage wird nur verarbeitet, wenn
+ * <ol>
+ * <li>ihr Client weniger als {@code maxConcurrentPerClient} Anfragen laufen hat
+ * (sonst 429 Too Many Requests),</li>
+ * <li>ihre Content-Length noch in das Speicherbudget passt (sonst 503) und</li>
+ * <li>ihre Anfrageart (Patient, DocumentReference mit Binary, Bundle) einen
+ * freien Platz hat oder binnen {@code queueTimeout} erhält (sonst 503).</li>
+ * </ol>
+ * Abgelehnte Anfragen erhalten sofort ein OperationOutcome und einen
+ * Retry-After-Header, statt Threads und Speicher zu belegen. Die Plätze werden
+ * erst freigegeben, wenn die asynchrone Antwort geschrieben ist. Die Grenzen
+ * für Patienten und Dokumente folgen der Latenz der proprietären API, siehe
+ * {@link AdaptiveLimit}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "fhir-facade.admission", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+	private static final Logger logger = LoggerFactory.getLogger(AdmissionFilter.class);
+
+	private final FacadeMetrics metrics;
+	// Vorab kodierte OperationOutcomes je Ablehnungsgrund
+	private final Map<Rejection, byte[]> rejectionBodies = new EnumMap<>(Rejection.class);
+	// Anfrageart je Pfad relativ zum Context-Path
+	private final Map<String, AdmissionLane> lanes;
+	private final int maxConcurrentPerClient;
+	private final String clientIdHeader;
+	private final long memoryBudget;
+	private final long unknownContentLength;
+	private final String retryAfter;
+	// Laufende Anfragen je Client, Einträge ohne laufende Anfrage werden entfernt
+	private final ConcurrentHashMap<String, Integer> clients = new ConcurrentHashMap<>();
+	// Summe der angerechneten Content-Length aller laufenden Anfragen
+	private final AtomicLong reserved = new AtomicLong();
+
+	public AdmissionFilter(FhirFacadeProperties fhirFacadeProperties, ProprietaryApiService proprietaryApiService,
+			FhirParsers fhirParsers, FacadeMetrics metrics) {
+		this.metrics = metrics;
+		for (Rejection rejection : Rejection.values()) {
+			String body = fhirParsers.jsonParser().encodeResourceToString(
+					OperationOutcomes.of(IssueSeverity.ERROR, rejection.code, rejection.message));
+			rejectionBodies.put(rejection, body.getBytes(StandardCharsets.UTF_8));
+		}
+		FhirFacadeProperties.Admission config = fhirFacadeProperties.getAdmission();
+		AdmissionLane patient = lane("patient", config.getPatient(), config.isAdaptive());
+		AdmissionLane documentReference = lane("documentReference", config.getDocumentReference(),
+				config.isAdaptive());
+		// Bundles betreffen beide Pfade der API, ihre Grenze bleibt fest
+		AdmissionLane bundle = lane("bundle", config.getBundle(), false);
+		// Binary-Uploads sind Dokumentinhalte und teilen sich den Platz mit den
+		// DocumentReferences
+		this.lanes = Map.of("/Patient", patient, "/DocumentReference", documentReference, "/Binary",
+				documentReference, "/", bundle);
+		this.maxConcurrentPerClient = config.getMaxConcurrentPerClient();
+		this.clientIdHeader = config.getClientIdHeader();
+		this.memoryBudget = config.getMemoryBudget().toBytes();
+		this.unknownContentLength = config.getUnknownContentLength().toBytes();
+		this.retryAfter = Long.toString(Math.max(1, (config.getRetryAfter().toMillis() + 999) / 1000));
+
+		if (config.isAdaptive()) {
+			proprietaryApiService.addResponseListener((path, nanos, success) -> {
+				if (OutboundRequest.PERSON_PATH.equals(path)) {
+					patient.onResponse(nanos, success);
+				} else if (OutboundRequest.DOCUMENT_PATH.equals(path)) {
+					documentReference.onResponse(nanos, success);
+				}
+			});
+		}
+		for (AdmissionLane lane : lanes.values()) {
+			metrics.gauge("fhir.facade.admission.limit", "Current concurrency limit", lane, AdmissionLane::getLimit,
+					"lane", lane.getName());
+			metrics.gauge("fhir.facade.admission.in.flight", "Admitted requests", lane, AdmissionLane::getInFlight,
+					"lane", lane.getName());
+			metrics.gauge("fhir.facade.admission.waiting", "Requests waiting for admission", lane,
+					AdmissionLane::getWaiting, "lane", lane.getName());
+		}
+		metrics.gauge("fhir.facade.admission.memory.reserved", "Content-Length of admitted requests", reserved,
+				AtomicLong::get);
+	}
+
+	/**
+	 * Grund einer Ablehnung.
+	 */
+	enum Rejection {
+		CLIENT(HttpStatus.TOO_MANY_REQUESTS, IssueType.THROTTLED, "Too many concurrent requests from this client."),
+		MEMORY(HttpStatus.SERVICE_UNAVAILABLE, IssueType.TRANSIENT, "Server is busy, memory budget exhausted."),
+		QUEUE(HttpStatus.SERVICE_UNAVAILABLE, IssueType.TRANSIENT, "Server is busy, too many requests queued.");
+
+		final HttpStatus status;
+		final IssueType code;
+		final String message;
+
+		Rejection(HttpStatus status, IssueType code, String message) {
+			this.status = status;
+			this.code = code;
+			this.message = message;
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !"POST".equals(request.getMethod()) || lane(request) == null;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		AdmissionLane lane = lane(request);
+		long length = request.getContentLengthLong();
+		Permit permit = new Permit(lane, clientId(request, clientIdHeader),
+				length < 0 ? unknownContentLength : length);
+		Rejection rejection = permit.acquire();
+		if (rejection != null) {
+			reject(response, lane, rejection);
+			return;
+		}
+		boolean async = false;
+		try {
+			filterChain.doFilter(request, response);
+			if (request.isAsyncStarted()) {
+				// Freigabe erst, wenn die asynchrone Antwort geschrieben ist
+				request.getAsyncContext().addListener(permit);
+				async = true;
+			}
+		} finally {
+			if (!async) {
+				permit.release();
+			}
+		}
+	}
+
+	/**
+	 * @return Summe der angerechneten Content-Length aller laufenden Anfragen
+	 */
+	long getReserved() {
+		return reserved.get();
+	}
+
+	private void reject(HttpServletResponse response, AdmissionLane lane, Rejection rejection) throws IOException {
+		logger.debug("Rejecting {} request: {}", lane, rejection);
+		metrics.admissionRejected(lane.getName(), rejection.name().toLowerCase());
+		response.setStatus(rejection.status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+		byte[] body = rejectionBodies.get(rejection);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	private AdmissionLane lane(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return lanes.get(path);
+	}
+
+	/**
+	 * @param clientIdHeader Header mit der Kennung des Clients, leer für die
+	 *                       IP-Adresse
+	 * @return die Kennung des Clients aus dem Header, sonst seine IP-Adresse
+	 */
+	public static String clientId(HttpServletRequest request, String clientIdHeader) {
+		String clientId = clientIdHeader.isEmpty() ? null : request.getHeader(clientIdHeader);
+		return clientId == null || clientId.isBlank() ? request.getRemoteAddr() : clientId;
+	}
+
+	private boolean acquireClient(String client) {
+		Integer count = clients.merge(client, 1, Integer::sum);
+		if (count > maxConcurrentPerClient) {
+			releaseClient(client);
+			return false;
+		}
+		return true;
+	}
+
+	private void releaseClient(String client) {
+		clients.computeIfPresent(client, (key, count) -> count == 1 ? null : count - 1);
+	}
+
+	/**
+	 * Reserviert den Anteil am Speicherbudget. Eine Anfrage, die allein das Budget
+	 * übersteigt, wird nur angenommen, wenn keine andere läuft.
+	 */
+	private boolean reserve(long bytes) {
+		long current;
+		do {
+			current = reserved.get();
+			if (current > 0 && current + bytes > memoryBudget) {
+				return false;
+			}
+		} while (!reserved.compareAndSet(current, current + bytes));
+		return true;
+	}
+
+	private static AdmissionLane lane(String name, FhirFacadeProperties.Admission.Lane config, boolean adaptive) {
+		int max = config.getMaxConcurrent();
+		int min = adaptive ? Math.min(config.getMinConcurrent(), max) : max;
+		return new AdmissionLane(name, new AdaptiveLimit(min, max), config.getMaxQueue(), config.getQueueTimeout());
+	}
+
+	/**
+	 * Die von einer Anfrage belegten Plätze, werden genau einmal freigegeben.
+	 */
+	private final class Permit implements AsyncListener {
+		private final AdmissionLane lane;
+		private final String client;
+		private final long bytes;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Permit(AdmissionLane lane, String client, long bytes) {
+			this.lane = lane;
+			this.client = client;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return null, wenn alle Plätze belegt wurden, sonst der Grund der Ablehnung
+		 */
+		Rejection acquire() {
+			if (!acquireClient(client)) {
+				return Rejection.CLIENT;
+			}
+			if (!reserve(bytes)) {
+				releaseClient(client);
+				return Rejection.MEMORY;
+			}
+			boolean admitted = false;
+			try {
+				admitted = lane.tryAcquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!admitted) {
+				reserved.addAndGet(-bytes);
+				releaseClient(client);
+				return Rejection.QUEUE;
+			}
+			return null;
+		}
+
+		void release() {
+			if (released.compareAndSet(false, true)) {
+				lane.release();
+				reserved.addAndGet(-bytes);
+				releaseClient(client);
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// Die Anfrage bleibt angenommen
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.example.demo.admission;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Begrenzt die gleichzeitig verarbeiteten Anfragen einer Anfrageart.
+ * <p>
+ * Ist die Grenze erreicht, warten bis zu {@code maxQueue} Anfragen höchstens
+ * {@code queueTimeout} auf einen freien Platz, alle weiteren werden sofort
+ * abgelehnt. Die Grenze selbst liefert eine {@link AdaptiveLimit}.
+ */
+class AdmissionLane {
+
+	private final String name;
+	private final AdaptiveLimit limit;
+	private final int maxQueue;
+	private final long queueTimeoutNanos;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private int inFlight;
+	private int waiting;
+
+	AdmissionLane(String name, AdaptiveLimit limit, int maxQueue, Duration queueTimeout) {
+		this.name = name;
+		this.limit = limit;
+		this.maxQueue = maxQueue;
+		this.queueTimeoutNanos = queueTimeout.toNanos();
+	}
+
+	/**
+	 * Belegt einen Platz, wartet dafür höchstens {@code queueTimeout}.
+	 *
+	 * @return true, wenn die Anfrage angenommen wurde; danach muss
+	 *         {@link #release()} aufgerufen werden
+	 */
+	boolean tryAcquire() throws InterruptedException {
+		lock.lock();
+		try {
+			if (inFlight < limit.get()) {
+				inFlight++;
+				return true;
+			}
+			if (waiting >= maxQueue || queueTimeoutNanos <= 0) {
+				return false;
+			}
+			waiting++;
+			try {
+				long nanos = queueTimeoutNanos;
+				while (inFlight >= limit.get()) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = available.awaitNanos(nanos);
+				}
+				inFlight++;
+				return true;
+			} finally {
+				waiting--;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gibt einen mit {@link #tryAcquire()} belegten Platz frei.
+	 */
+	void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Meldet die Dauer eines Aufrufs der proprietären API an die Grenze. Steigt
+	 * sie, erhalten wartende Anfragen die neuen Plätze.
+	 */
+	void onResponse(long nanos, boolean success) {
+		if (limit.onSample(nanos, success, getInFlight())) {
+			lock.lock();
+			try {
+				available.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getLimit() {
+		return limit.get();
+	}
+
+	int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getWaiting() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,242 @@
+package com.example.demo.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.stream.PayloadTooLargeException;
+
+/**
+ * Bulk-Import von NDJSON-Dateien ({@code $import}).
+ * <p>
+ * Jeder Import erhält ein eigenes Verzeichnis mit seinem Zustand
+ * ({@link ImportJob}) und einer Fehlerdatei; Anfragekörper werden dort
+ * zunächst als Datei gespeichert, lokale Dateien direkt gelesen. Die Imports
+ * laufen nacheinander im Hintergrund, ihre Zeilen werden vom
+ * {@link ImportRunner} parallel verarbeitet. Beim Start werden unterbrochene
+ * Imports ab ihrem Checkpoint fortgesetzt.
+ */
+@Service
+// Setzt unterbrochene Imports beim Start fort
+@Lazy(false)
+@ConditionalOnProperty(prefix = "fhir-facade.bulk-import", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class BulkImport implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkImport.class);
+	static final String INPUT_FILE = "input.ndjson";
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final FhirFacadeProperties.BulkImport config;
+	private final Path directory;
+	// Verzeichnis für lokale Dateien, null wenn nicht erlaubt
+	private final Path allowedDirectory;
+	private final ImportProcessor processor;
+	private final FhirParsers fhirParsers;
+	private final FacadeMetrics metrics;
+	private final ExecutorService jobs;
+	private final ExecutorService workers;
+	private final Map<String, ImportJob> imports = new ConcurrentHashMap<>();
+	// Laufende und wartende Imports
+	private final Map<String, ImportRunner> runners = new ConcurrentHashMap<>();
+
+	public BulkImport(FhirFacadeProperties fhirFacadeProperties, ImportProcessor processor, FhirParsers fhirParsers,
+			FacadeMetrics metrics) throws IOException {
+		this.config = fhirFacadeProperties.getBulkImport();
+		this.directory = Paths.get(config.getDirectory()).toAbsolutePath().normalize();
+		this.allowedDirectory = config.getAllowedDirectory().isBlank() ? null
+				: Paths.get(config.getAllowedDirectory()).toRealPath();
+		this.processor = processor;
+		this.fhirParsers = fhirParsers;
+		this.metrics = metrics;
+		this.jobs = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bulk-import");
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger counter = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(config.getWorkers(), runnable -> {
+			Thread thread = new Thread(runnable, "bulk-import-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		resume();
+	}
+
+	/**
+	 * Speichert den Anfragekörper und startet seinen Import.
+	 *
+	 * @param body NDJSON, eine Ressource pro Zeile
+	 * @return der Import
+	 * @throws PayloadTooLargeException wenn der Anfragekörper größer als
+	 *                                  {@code maxSize} ist
+	 */
+	public ImportJob start(InputStream body) throws IOException {
+		Path jobDirectory = createDirectory();
+		Path input = jobDirectory.resolve(INPUT_FILE);
+		long maxSize = config.getMaxSize().toBytes();
+		long size = 0;
+		// Der Körper wird in Blöcken kopiert, nicht als Ganzes gelesen
+		try (OutputStream out = Files.newOutputStream(input)) {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int read;
+			while ((read = body.read(buffer)) >= 0) {
+				size += read;
+				if (size > maxSize) {
+					throw new PayloadTooLargeException("Import request body exceeds " + maxSize + " bytes");
+				}
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(jobDirectory);
+			throw e;
+		}
+		return start(jobDirectory, input, size);
+	}
+
+	/**
+	 * Startet den Import einer lokalen Datei.
+	 *
+	 * @param file Pfad der Datei, relativ zu {@code allowedDirectory}
+	 * @return der Import
+	 * @throws IllegalArgumentException wenn lokale Dateien nicht erlaubt sind
+	 *                                  oder die Datei außerhalb von
+	 *                                  {@code allowedDirectory} liegt
+	 */
+	public ImportJob start(String file) throws IOException {
+		if (allowedDirectory == null) {
+			throw new IllegalArgumentException(
+					"Importing local files is disabled (fhir-facade.bulk-import.allowedDirectory)");
+		}
+		Path source = allowedDirectory.resolve(file).normalize();
+		if (!source.startsWith(allowedDirectory) || !Files.isRegularFile(source)
+				|| !source.toRealPath().startsWith(allowedDirectory)) {
+			throw new IllegalArgumentException("File " + file + " not found in the import directory");
+		}
+		source = source.toRealPath();
+		return start(createDirectory(), source, Files.size(source));
+	}
+
+	/**
+	 * @return der Import oder null, wenn er nicht existiert
+	 */
+	public ImportJob get(String id) {
+		return imports.get(id);
+	}
+
+	/**
+	 * Bricht einen laufenden Import ab. Bereits gelesene Zeilen werden noch
+	 * abgeschlossen.
+	 *
+	 * @return false, wenn der Import nicht existiert
+	 */
+	public boolean cancel(String id) {
+		ImportJob job = imports.get(id);
+		if (job == null) {
+			return false;
+		}
+		ImportRunner runner = runners.get(id);
+		if (runner != null) {
+			runner.cancel();
+		}
+		return true;
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		// Laufende Imports speichern ihren Checkpoint und werden nach dem Neustart
+		// fortgesetzt
+		jobs.shutdownNow();
+		jobs.awaitTermination(10, TimeUnit.SECONDS);
+		workers.shutdownNow();
+	}
+
+	private ImportJob start(Path jobDirectory, Path source, long size) throws IOException {
+		ImportJob job = new ImportJob(jobDirectory.getFileName().toString(), jobDirectory, source, Instant.now(),
+				size);
+		job.save();
+		imports.put(job.getId(), job);
+		schedule(job);
+		return job;
+	}
+
+	private Path createDirectory() throws IOException {
+		return Files.createDirectories(directory.resolve(UUID.randomUUID().toString()));
+	}
+
+	private void schedule(ImportJob job) {
+		ImportRunner runner = new ImportRunner(job, processor, workers, fhirParsers, metrics, config);
+		runners.put(job.getId(), runner);
+		jobs.execute(() -> {
+			try {
+				runner.run();
+			} finally {
+				runners.remove(job.getId());
+				if (job.getStatus() != ImportJob.Status.IN_PROGRESS && job.getSource().startsWith(directory)) {
+					deleteInput(job);
+				}
+			}
+		});
+	}
+
+	private void deleteInput(ImportJob job) {
+		try {
+			Files.deleteIfExists(job.getSource());
+		} catch (IOException e) {
+			logger.warn("Could not delete input of {}", job, e);
+		}
+	}
+
+	/**
+	 * Liest die Imports aus dem Verzeichnis und setzt die unterbrochenen fort.
+	 */
+	private void resume() throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+		List<ImportJob> found = new ArrayList<>();
+		try (Stream<Path> directories = Files.list(directory)) {
+			directories.filter(path -> Files.isRegularFile(path.resolve(ImportJob.JOB_FILE))).forEach(path -> {
+				try {
+					found.add(ImportJob.load(path));
+				} catch (IOException e) {
+					logger.error("Could not read import in {}", path, e);
+				}
+			});
+		}
+		// In der Reihenfolge, in der sie angenommen wurden
+		found.sort(Comparator.comparing(ImportJob::getCreatedAt));
+		for (ImportJob job : found) {
+			imports.put(job.getId(), job);
+			if (job.getStatus() == ImportJob.Status.IN_PROGRESS) {
+				logger.info("Resuming {} after line {}", job, job.getLines());
+				schedule(job);
+			}
+		}
+	}
+}
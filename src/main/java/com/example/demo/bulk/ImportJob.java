@@ -0,0 +1,222 @@
+package com.example.demo.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * Zustand eines Bulk-Imports ({@code $import}), gespeichert in
+ * {@code job.properties} im Verzeichnis des Imports.
+ * <p>
+ * Gespeichert wird der Checkpoint: die Position der ersten Zeile der Quelle,
+ * die noch nicht vollständig verarbeitet ist, mit den Zählern und der Länge der
+ * Fehlerdatei bis dorthin. Die Datei wird über eine temporäre Datei ersetzt,
+ * sodass sie auch nach einem Absturz immer einen vollständigen Stand enthält.
+ */
+public final class ImportJob {
+
+	/**
+	 * Zustand des Imports.
+	 */
+	public enum Status {
+		IN_PROGRESS, COMPLETED, FAILED, CANCELLED
+	}
+
+	static final String JOB_FILE = "job.properties";
+	static final String ERRORS_FILE = "errors.ndjson";
+
+	private final String id;
+	private final Path directory;
+	private final Path source;
+	private final Instant createdAt;
+	private final long sourceSize;
+	private volatile Status status = Status.IN_PROGRESS;
+	private volatile String failure;
+	// Checkpoint, nur unter der Sperre des Imports verändert
+	private volatile long offset;
+	private volatile long lines;
+	private volatile long succeeded;
+	private volatile long failed;
+	private volatile long errorsLength;
+
+	ImportJob(String id, Path directory, Path source, Instant createdAt, long sourceSize) {
+		this.id = id;
+		this.directory = directory;
+		this.source = source;
+		this.createdAt = createdAt;
+		this.sourceSize = sourceSize;
+	}
+
+	/**
+	 * Liest den gespeicherten Zustand eines Imports.
+	 *
+	 * @param directory das Verzeichnis des Imports
+	 */
+	static ImportJob load(Path directory) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(directory.resolve(JOB_FILE), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		try {
+			ImportJob job = new ImportJob(properties.getProperty("id"), directory,
+					Paths.get(properties.getProperty("source")), Instant.parse(properties.getProperty("createdAt")),
+					Long.parseLong(properties.getProperty("sourceSize")));
+			job.status = Status.valueOf(properties.getProperty("status"));
+			job.failure = properties.getProperty("failure");
+			job.offset = Long.parseLong(properties.getProperty("offset"));
+			job.lines = Long.parseLong(properties.getProperty("lines"));
+			job.succeeded = Long.parseLong(properties.getProperty("succeeded"));
+			job.failed = Long.parseLong(properties.getProperty("failed"));
+			job.errorsLength = Long.parseLong(properties.getProperty("errorsLength"));
+			return job;
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid import job file in " + directory, e);
+		}
+	}
+
+	/**
+	 * Speichert den aktuellen Zustand.
+	 */
+	synchronized void save() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("id", id);
+		properties.setProperty("source", source.toString());
+		properties.setProperty("createdAt", createdAt.toString());
+		properties.setProperty("sourceSize", Long.toString(sourceSize));
+		properties.setProperty("status", status.name());
+		if (failure != null) {
+			properties.setProperty("failure", failure);
+		}
+		properties.setProperty("offset", Long.toString(offset));
+		properties.setProperty("lines", Long.toString(lines));
+		properties.setProperty("succeeded", Long.toString(succeeded));
+		properties.setProperty("failed", Long.toString(failed));
+		properties.setProperty("errorsLength", Long.toString(errorsLength));
+		Path file = directory.resolve(JOB_FILE);
+		Path temporaryFile = directory.resolve(JOB_FILE + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+			properties.store(writer, null);
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Übernimmt den Stand nach einer vollständig verarbeiteten Zeile.
+	 *
+	 * @param nextOffset   Position der folgenden Zeile
+	 * @param lineNumber   Nummer der verarbeiteten Zeile
+	 * @param success      true, wenn die Ressource weitergeleitet wurde
+	 * @param errorsLength Länge der Fehlerdatei danach
+	 */
+	synchronized void advance(long nextOffset, long lineNumber, boolean success, long errorsLength) {
+		this.offset = nextOffset;
+		this.lines = lineNumber;
+		if (success) {
+			succeeded++;
+		} else {
+			failed++;
+		}
+		this.errorsLength = errorsLength;
+	}
+
+	synchronized void finish(Status status, String failure) {
+		this.status = status;
+		this.failure = failure;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return die NDJSON-Quelle des Imports
+	 */
+	public Path getSource() {
+		return source;
+	}
+
+	/**
+	 * @return die NDJSON-Datei mit einem OperationOutcome je fehlerhafter Zeile
+	 */
+	public Path getErrors() {
+		return directory.resolve(ERRORS_FILE);
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return Grund, aus dem der Import abgebrochen wurde, sonst null
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return Position der ersten noch nicht vollständig verarbeiteten Zeile
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Größe der Quelle in Bytes
+	 */
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	/**
+	 * @return Nummer der letzten vollständig verarbeiteten Zeile, leere Zeilen
+	 *         mitgezählt
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return Anzahl der weitergeleiteten Ressourcen
+	 */
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return Anzahl der fehlerhaften Zeilen
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	long getErrorsLength() {
+		return errorsLength;
+	}
+
+	/**
+	 * @return Fortschritt in Prozent der Quelle
+	 */
+	public int getProgress() {
+		return sourceSize == 0 ? 100 : (int) (offset * 100 / sourceSize);
+	}
+
+	@Override
+	public String toString() {
+		return "import " + id + " (" + status + ", " + lines + " lines, " + failed + " errors)";
+	}
+}
@@ -0,0 +1,20 @@
+package com.example.demo.bulk;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Prüft eine Ressource eines Bulk-Imports, bildet sie ab und leitet sie an die
+ * proprietäre API weiter.
+ */
+@FunctionalInterface
+public interface ImportProcessor {
+
+	/**
+	 * @param resource eine Zeile der NDJSON-Quelle, also eine Ressource als JSON
+	 * @return true, wenn die Ressource angenommen wurde, false, wenn die
+	 *         proprietäre API sie abgelehnt hat
+	 * @throws Exception wenn die Ressource ungültig ist, z.B. eine
+	 *                   {@link com.example.demo.controller.BadRequestException}
+	 */
+	CompletableFuture<Boolean> importResource(byte[] resource) throws Exception;
+}
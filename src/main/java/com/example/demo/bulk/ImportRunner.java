@@ -0,0 +1,297 @@
+package com.example.demo.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.controller.BadRequestException;
+import com.example.demo.controller.OperationOutcomes;
+import com.example.demo.service.CircuitOpenException;
+import com.example.demo.stream.JsonStreamException;
+import com.example.demo.stream.NdjsonReader;
+
+import ca.uhn.fhir.parser.DataFormatException;
+
+/**
+ * Verarbeitet die Zeilen eines {@link ImportJob}.
+ * <p>
+ * Die Zeilen werden in Reihenfolge gelesen und auf dem Worker-Pool parallel
+ * geparst, geprüft und abgebildet, das Weiterleiten läuft asynchron. Höchstens
+ * {@code maxInFlight} Zeilen sind zugleich in Arbeit; ist die Grenze erreicht,
+ * wartet das Lesen, sodass der Speicherbedarf nicht von der Größe der Quelle
+ * abhängt. Ist der Schutzschalter geöffnet oder die Grenze der ausgehenden
+ * Aufrufe erreicht, wird die Zeile später erneut versucht.
+ * <p>
+ * Abgeschlossene Zeilen werden in Reihenfolge übernommen: Fehler werden als
+ * OperationOutcome in die Fehlerdatei geschrieben, danach rückt der Checkpoint
+ * vor. Nach einem Neustart wird ab dem Checkpoint fortgesetzt, Zeilen, die beim
+ * Abbruch in Arbeit waren, werden dabei erneut gesendet.
+ */
+class ImportRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImportRunner.class);
+
+	private final ImportJob job;
+	private final ImportProcessor processor;
+	private final Executor workers;
+	private final FhirParsers fhirParsers;
+	private final FacadeMetrics metrics;
+	private final int maxInFlight;
+	private final int maxLineLength;
+	private final int checkpointInterval;
+	private final int maxAttempts;
+	private final long retryDelayNanos;
+	private final Semaphore permits;
+
+	// In Arbeit befindliche Zeilen nach Position, nur unter der Sperre verändert
+	private final TreeMap<Long, Pending> pending = new TreeMap<>();
+	private OutputStream errors;
+	private long errorsLength;
+	private int uncheckpointed;
+	private IOException writeFailure;
+	// Nach dem Schließen der Dateien werden Ergebnisse nicht mehr übernommen
+	private boolean closed;
+	private volatile boolean cancelled;
+
+	ImportRunner(ImportJob job, ImportProcessor processor, Executor workers, FhirParsers fhirParsers,
+			FacadeMetrics metrics, FhirFacadeProperties.BulkImport config) {
+		this.job = job;
+		this.processor = processor;
+		this.workers = workers;
+		this.fhirParsers = fhirParsers;
+		this.metrics = metrics;
+		this.maxInFlight = config.getMaxInFlight();
+		this.maxLineLength = (int) Math.min(Integer.MAX_VALUE - 8, config.getMaxLineLength().toBytes());
+		this.checkpointInterval = config.getCheckpointInterval();
+		this.maxAttempts = config.getMaxAttempts();
+		this.retryDelayNanos = config.getRetryDelay().toNanos();
+		this.permits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Verarbeitet die Quelle ab dem Checkpoint bis zum Ende. Wird der Thread
+	 * unterbrochen, bleibt der Import offen und wird nach einem Neustart
+	 * fortgesetzt.
+	 */
+	void run() {
+		try (FileChannel errorChannel = FileChannel.open(job.getErrors(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+				NdjsonReader reader = open()) {
+			// Fehler nach dem Checkpoint werden beim Fortsetzen erneut geschrieben
+			errorsLength = job.getErrorsLength();
+			errorChannel.truncate(errorsLength);
+			errorChannel.position(errorsLength);
+			errors = new BufferedOutputStream(Channels.newOutputStream(errorChannel));
+			try {
+				readLines(reader);
+				// Wartet, bis alle Zeilen in Arbeit abgeschlossen sind
+				permits.acquire(maxInFlight);
+			} finally {
+				synchronized (this) {
+					checkpoint();
+					closed = true;
+				}
+			}
+			if (writeFailure != null) {
+				throw writeFailure;
+			}
+			job.finish(cancelled ? ImportJob.Status.CANCELLED : ImportJob.Status.COMPLETED, null);
+			logger.info("Finished {}", job);
+		} catch (InterruptedException | RejectedExecutionException e) {
+			// Die Anwendung wird beendet
+			Thread.currentThread().interrupt();
+			logger.info("Interrupted {} at line {}", job, job.getLines());
+		} catch (IOException | RuntimeException e) {
+			logger.error("Failed {}", job, e);
+			job.finish(ImportJob.Status.FAILED, e.getMessage());
+		}
+		try {
+			job.save();
+		} catch (IOException e) {
+			logger.error("Could not save state of {}", job, e);
+		}
+	}
+
+	/**
+	 * Beendet das Lesen weiterer Zeilen, laufende werden noch abgeschlossen.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	private NdjsonReader open() throws IOException {
+		FileChannel source = FileChannel.open(job.getSource(), StandardOpenOption.READ);
+		try {
+			source.position(job.getOffset());
+		} catch (IOException e) {
+			source.close();
+			throw e;
+		}
+		return new NdjsonReader(Channels.newInputStream(source), job.getOffset(), job.getLines(), maxLineLength);
+	}
+
+	private void readLines(NdjsonReader reader) throws IOException, InterruptedException {
+		while (!cancelled) {
+			permits.acquire();
+			NdjsonReader.Line line = reader.next();
+			if (line == null) {
+				permits.release();
+				return;
+			}
+			Pending entry = new Pending(line);
+			synchronized (this) {
+				pending.put(line.getOffset(), entry);
+			}
+			if (line.getContent() == null) {
+				fail(entry, IssueType.TOOCOSTLY, List.of("Line exceeds the maximum length of " + maxLineLength
+						+ " bytes (fhir-facade.bulk-import.maxLineLength)"));
+			} else {
+				workers.execute(() -> process(entry, 1));
+			}
+		}
+	}
+
+	private void process(Pending entry, int attempt) {
+		CompletableFuture<Boolean> result;
+		try {
+			result = processor.importResource(entry.line.getContent());
+		} catch (BadRequestException e) {
+			fail(entry, IssueType.REQUIRED, e.getErrorMessages());
+			return;
+		} catch (DataFormatException | JsonStreamException e) {
+			fail(entry, IssueType.STRUCTURE, List.of(String.valueOf(e.getMessage())));
+			return;
+		} catch (Exception e) {
+			logger.warn("Could not import line {} of {}", entry.line.getNumber(), job, e);
+			fail(entry, IssueType.EXCEPTION, List.of(String.valueOf(e.getMessage())));
+			return;
+		}
+		result.whenComplete((accepted, error) -> {
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+					: error;
+			if (cause != null) {
+				boolean transientFailure = cause instanceof CircuitOpenException
+						|| cause instanceof RejectedExecutionException;
+				if (transientFailure && attempt < maxAttempts && !cancelled) {
+					long delay = cause instanceof CircuitOpenException
+							? ((CircuitOpenException) cause).getRetryAfter().toNanos()
+							: retryDelayNanos;
+					retry(entry, attempt + 1, delay);
+				} else {
+					fail(entry, transientFailure ? IssueType.TRANSIENT : IssueType.EXCEPTION,
+							List.of(String.valueOf(cause.getMessage())));
+				}
+			} else if (Boolean.TRUE.equals(accepted)) {
+				complete(entry, null);
+			} else {
+				fail(entry, IssueType.EXCEPTION, List.of("The proprietary API rejected the resource."));
+			}
+		});
+	}
+
+	private void retry(Pending entry, int attempt, long delayNanos) {
+		try {
+			CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, workers)
+					.execute(() -> process(entry, attempt));
+		} catch (RejectedExecutionException e) {
+			// Die Anwendung wird beendet, die Zeile wird nach dem Neustart gesendet
+		}
+	}
+
+	/**
+	 * Übernimmt eine fehlerhafte Zeile mit einem OperationOutcome, dessen Issues
+	 * die Zeilennummer nennen.
+	 */
+	private void fail(Pending entry, IssueType code, List<String> messages) {
+		List<String> diagnostics = new ArrayList<>(messages.size());
+		messages.forEach(message -> diagnostics.add("Line " + entry.line.getNumber() + ": " + message));
+		complete(entry, fhirParsers.jsonParser()
+				.encodeResourceToString(OperationOutcomes.of(IssueSeverity.ERROR, code, diagnostics)));
+	}
+
+	private void complete(Pending entry, String error) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			entry.error = error;
+			entry.done = true;
+			commit();
+		}
+		permits.release();
+	}
+
+	/**
+	 * Übernimmt die abgeschlossenen Zeilen am Anfang der Reihenfolge.
+	 */
+	private void commit() {
+		while (!pending.isEmpty() && pending.firstEntry().getValue().done) {
+			Pending entry = pending.pollFirstEntry().getValue();
+			if (entry.error != null) {
+				byte[] line = (entry.error + "\n").getBytes(StandardCharsets.UTF_8);
+				try {
+					errors.write(line);
+					errorsLength += line.length;
+				} catch (IOException e) {
+					writeFailure = e;
+					cancelled = true;
+				}
+			}
+			job.advance(entry.line.getNextOffset(), entry.line.getNumber(), entry.error == null, errorsLength);
+			metrics.imported(entry.error == null);
+			if (++uncheckpointed >= checkpointInterval) {
+				checkpoint();
+			}
+		}
+	}
+
+	/**
+	 * Speichert den Checkpoint, die Fehlerdatei ist dann mindestens so lang wie
+	 * darin vermerkt.
+	 */
+	private void checkpoint() {
+		try {
+			errors.flush();
+			job.save();
+			uncheckpointed = 0;
+		} catch (IOException e) {
+			writeFailure = e;
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * Eine gelesene Zeile und ihr Ergebnis.
+	 */
+	private static final class Pending {
+		private final NdjsonReader.Line line;
+		private boolean done;
+		// Kodiertes OperationOutcome oder null, wenn die Zeile weitergeleitet wurde
+		private String error;
+
+		Pending(NdjsonReader.Line line) {
+			this.line = line;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.example.demo.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.demo.controller.OperationOutcomeCache;
+import com.example.demo.stream.ContentDecoder;
+
+/**
+ * Entpackt Anfragekörper mit Content-Encoding gzip oder deflate als Stream,
+ * bevor sie die Controller erreichen. Die Controller lesen damit unverändert
+ * den entpackten Inhalt; andere Kodierungen werden mit 415 abgelehnt.
+ * <p>
+ * Der Filter läuft vor der Zugangskontrolle. Da die entpackte Größe vorab
+ * unbekannt ist, wird die Content-Length entfernt und die Zugangskontrolle
+ * rechnet mit {@code fhir-facade.admission.unknownContentLength}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(prefix = "fhir-facade.compression", name = "inbound", havingValue = "true", matchIfMissing = true)
+public class ContentEncodingFilter extends OncePerRequestFilter {
+
+	private final OperationOutcomeCache outcomes;
+	private final long maxInflatedSize;
+
+	public ContentEncodingFilter(OperationOutcomeCache outcomes, FhirFacadeProperties fhirFacadeProperties) {
+		this.outcomes = outcomes;
+		this.maxInflatedSize = fhirFacadeProperties.getCompression().getMaxInflatedSize().toBytes();
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		return encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		if (!ContentDecoder.isSupported(encoding)) {
+			byte[] body = outcomes.encode(IssueSeverity.ERROR, IssueType.NOTSUPPORTED,
+					"Unsupported Content-Encoding " + encoding + ", supported are gzip and deflate")
+					.getBytes(StandardCharsets.UTF_8);
+			response.setStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value());
+			response.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			response.setCharacterEncoding("UTF-8");
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+			return;
+		}
+		filterChain.doFilter(new DecodingRequest(request, encoding), response);
+	}
+
+	/**
+	 * Liefert den entpackten Körper ohne Content-Encoding und Content-Length.
+	 */
+	private final class DecodingRequest extends HttpServletRequestWrapper {
+		private final String encoding;
+		private ServletInputStream decoded;
+
+		DecodingRequest(HttpServletRequest request, String encoding) {
+			super(request);
+			this.encoding = encoding;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (decoded == null) {
+				ServletInputStream raw = super.getInputStream();
+				decoded = new DecodedInputStream(raw, ContentDecoder.decode(encoding, raw, maxInflatedSize));
+			}
+			return decoded;
+		}
+
+		@Override
+		public int getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return -1;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return isRemoved(name) ? null : super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			return isRemoved(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+					.filter(name -> !isRemoved(name)).toList());
+		}
+
+		private boolean isRemoved(String name) {
+			return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+					|| HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+		}
+	}
+
+	/**
+	 * Servlet-Stream über dem entpackten Körper, nur für blockierendes Lesen.
+	 */
+	private static final class DecodedInputStream extends ServletInputStream {
+		private final ServletInputStream raw;
+		private final InputStream in;
+		private boolean finished;
+
+		DecodedInputStream(ServletInputStream raw, InputStream in) {
+			this.raw = raw;
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			finished = b < 0;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			finished = read < 0;
+			return read;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return finished;
+		}
+
+		@Override
+		public boolean isReady() {
+			return raw.isReady();
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			throw new UnsupportedOperationException("Non-blocking reads of encoded bodies are not supported");
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
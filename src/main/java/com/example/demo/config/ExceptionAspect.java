@@ -1,67 +1,127 @@
 package com.example.demo.config;
 
 import java.util.List;
+import java.util.zip.ZipException;
 
-import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
-import org.hl7.fhir.r4.model.OperationOutcome.OperationOutcomeIssueComponent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import com.example.demo.controller.BadRequestException;
+import com.example.demo.controller.OperationOutcomeCache;
+import com.example.demo.service.CircuitOpenException;
+import com.example.demo.stream.JsonStreamException;
+import com.example.demo.stream.PayloadTooLargeException;
+import com.example.demo.stream.XmlStreamException;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.DataFormatException;
+import jakarta.servlet.http.HttpServletRequest;
 
+/**
+ * Übersetzt Ausnahmen in Fehlerantworten.
+ * <p>
+ * Fehler des Clients (fehlende Pflichtangaben, ungültiges JSON oder XML) sind
+ * der häufigste Fall und werden ohne Stacktrace als Warnung geloggt,
+ * unerwartete Fehler einmal mit Stacktrace. Beide Meldungsarten sind je
+ * Intervall begrenzt, die OperationOutcomes kommen aus dem
+ * {@link OperationOutcomeCache} im mit dem Client ausgehandelten Format
+ * ({@link FhirFormat#negotiate(HttpServletRequest)}).
+ */
 @ControllerAdvice
 @Component
 public class ExceptionAspect {
-	private final FhirContext fhirContext = FhirContext.forR4();
-	IParser parser = fhirContext.newJsonParser();
-
-	private OperationOutcome createOperationOutcome(List<String> errorMessages) {
-		OperationOutcome operationOutcome = new OperationOutcome();
-		errorMessages.stream().forEach(errorMessage -> {
-			OperationOutcomeIssueComponent issue = new OperationOutcomeIssueComponent();
-			IssueSeverity severity = IssueSeverity.FATAL;
-			issue.setSeverity(severity);
-			IssueType code = IssueType.REQUIRED;
-			issue.setCode(code);
-			issue.setDiagnostics(errorMessage);
-			operationOutcome.addIssue(issue);
-		});
-		return operationOutcome;
+	private static final Logger logger = LoggerFactory.getLogger(ExceptionAspect.class);
+
+	// Issue, unter dem ungültige Anfragekörper gezählt werden
+	static final String MALFORMED_ISSUE = "Malformed request body (structure)";
+
+	private final OperationOutcomeCache outcomes;
+	private final FacadeMetrics metrics;
+	private final LogRateLimiter logLimiter;
+
+	public ExceptionAspect(OperationOutcomeCache outcomes, FacadeMetrics metrics,
+			FhirFacadeProperties fhirFacadeProperties) {
+		this.outcomes = outcomes;
+		this.metrics = metrics;
+		FhirFacadeProperties.Errors config = fhirFacadeProperties.getErrors();
+		this.logLimiter = new LogRateLimiter(config.getLogLimit(), config.getLogInterval());
 	}
 
 	@ExceptionHandler(BadRequestException.class)
-	public ResponseEntity<Object> handleBadRquestException(BadRequestException exception) {
-		Logger logger = LoggerFactory.getLogger(ExceptionAspect.class);
-		logger.error("Handling: ", exception);
+	public ResponseEntity<Object> handleBadRquestException(BadRequestException exception,
+			HttpServletRequest request) {
+		long suppressed = logLimiter.acquire("BadRequest");
+		if (suppressed != LogRateLimiter.SUPPRESSED && logger.isWarnEnabled()) {
+			logger.warn("Rejecting request: {}{}", exception.getMessage(), suppressedNote(suppressed));
+		}
+		metrics.issues(exception.getErrorMessages());
 
-		// Loggt und gibt eine Fehlerantwort zurück, wenn eine Ausnahme auftritt
-		logger.error("Exception occurred while creating document", exception);
-		OperationOutcome operationOutcome = createOperationOutcome(exception.getErrorMessages());
+		FhirFormat format = FhirFormat.negotiate(request);
+		return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).contentType(format.getMediaType())
+				.body(outcomes.encode(format, IssueSeverity.FATAL, IssueType.REQUIRED, exception.getErrorMessages()));
+	}
+
+	@ExceptionHandler({ DataFormatException.class, JsonStreamException.class, XmlStreamException.class,
+			ZipException.class })
+	public ResponseEntity<Object> handleMalformedBody(Exception exception, HttpServletRequest request) {
+		// Der Körper ist kein gültiges FHIR-JSON bzw. -XML oder nicht entpackbar; ein
+		// Fehler des Clients, kein Stacktrace
+		String message = String.valueOf(exception.getMessage());
+		long suppressed = logLimiter.acquire("MalformedBody");
+		if (suppressed != LogRateLimiter.SUPPRESSED && logger.isWarnEnabled()) {
+			logger.warn("Rejecting malformed request body: {}{}", message, suppressedNote(suppressed));
+		}
+		metrics.issues(List.of(MALFORMED_ISSUE));
 
-		return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).contentType(MediaType.APPLICATION_JSON)
-				.body(parser.encodeResourceToString(operationOutcome));
+		FhirFormat format = FhirFormat.negotiate(request);
+		return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(format.getMediaType())
+				.body(outcomes.encode(format, IssueSeverity.ERROR, IssueType.STRUCTURE, message));
+	}
 
+	@ExceptionHandler(PayloadTooLargeException.class)
+	public ResponseEntity<Object> handlePayloadTooLarge(PayloadTooLargeException exception,
+			HttpServletRequest request) {
+		long suppressed = logLimiter.acquire("PayloadTooLarge");
+		if (suppressed != LogRateLimiter.SUPPRESSED && logger.isWarnEnabled()) {
+			logger.warn("Rejecting request: {}{}", exception.getMessage(), suppressedNote(suppressed));
+		}
+		FhirFormat format = FhirFormat.negotiate(request);
+		return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).contentType(format.getMediaType())
+				.body(outcomes.encode(format, IssueSeverity.ERROR, IssueType.TOOLONG, exception.getMessage()));
+	}
+
+	@ExceptionHandler(CircuitOpenException.class)
+	public ResponseEntity<Object> handleCircuitOpenException(CircuitOpenException exception,
+			HttpServletRequest request) {
+		// Erwarteter Fall, solange die proprietäre API gestört ist: kein Stacktrace
+		logger.debug("Rejecting request: {}", exception.getMessage());
+		long retryAfter = Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000);
+
+		FhirFormat format = FhirFormat.negotiate(request);
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter)).contentType(format.getMediaType())
+				.body(outcomes.encode(format, IssueSeverity.ERROR, IssueType.TRANSIENT, exception.getMessage()));
 	}
 
 	@ExceptionHandler(Exception.class)
 	public ResponseEntity<Object> handleException(Exception exception) {
-		Logger logger = LoggerFactory.getLogger(ExceptionAspect.class);
-		logger.error("Handling: ", exception);
-
-		// Loggt und gibt eine Fehlerantwort zurück, wenn eine Ausnahme auftritt
-		logger.error("Exception occurred while creating resource", exception);
+		// Einmal mit Stacktrace, begrenzt je Ausnahmeklasse
+		long suppressed = logLimiter.acquire(exception.getClass().getName());
+		if (suppressed != LogRateLimiter.SUPPRESSED) {
+			logger.error("Exception occurred while creating resource{}", suppressedNote(suppressed), exception);
+		}
+		metrics.error(exception);
 		return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal Server Error.");
 	}
 
-}
\ No newline at end of file
+	private static String suppressedNote(long suppressed) {
+		return suppressed > 0 ? " (" + suppressed + " similar messages suppressed)" : "";
+	}
+}
@@ -0,0 +1,236 @@
+package com.example.demo.config;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Kennzahlen der Fassade für Micrometer, abrufbar unter
+ * {@code /actuator/prometheus}.
+ * <ul>
+ * <li>{@value #STAGE}: Dauer der Verarbeitungsschritte je Ressourcentyp</li>
+ * <li>{@value #BACKEND}: Dauer der Aufrufe der proprietären API je Pfad und
+ * Ergebnis</li>
+ * <li>{@value #PAYLOAD_SIZE}: Größe der angelieferten und gesendeten
+ * Anfragekörper</li>
+ * <li>{@value #ISSUES}: abgelehnte Anfragen je fehlendem oder ungültigem
+ * Element</li>
+ * <li>{@value #ERRORS}: unerwartete Fehler je Ausnahmetyp</li>
+ * <li>{@value #DEDUPLICATED}: aus dem Zwischenspeicher beantwortete
+ * Wiederholungen je Erkennungsmerkmal</li>
+ * <li>{@value #ADMISSION_REJECTED}: von der Zugangskontrolle abgelehnte
+ * Anfragen je Anfrageart und Grund</li>
+ * <li>{@value #CIRCUIT_TRANSITIONS}: Zustandswechsel der Schutzschalter je
+ * Pfad</li>
+ * <li>{@value #CIRCUIT_REJECTED}: wegen geöffnetem Schutzschalter nicht
+ * gestartete Aufrufe je Pfad</li>
+ * <li>{@value #EXTRACTION_FALLBACK}: Ressourcen, die statt mit der schnellen
+ * Extraktion mit HAPI geparst wurden</li>
+ * <li>{@value #IMPORTED}: Zeilen eines Bulk-Imports je Ergebnis</li>
+ * <li>{@value #BACKEND_EJECTIONS}: Ausschlüsse von Instanzen der proprietären
+ * API je Knoten und Grund</li>
+ * </ul>
+ */
+@Component
+public class FacadeMetrics {
+
+	public static final String STAGE = "fhir.facade.stage";
+	public static final String BACKEND = "fhir.facade.backend";
+	public static final String PAYLOAD_SIZE = "fhir.facade.payload.size";
+	public static final String ISSUES = "fhir.facade.issues";
+	public static final String ERRORS = "fhir.facade.errors";
+	public static final String DEDUPLICATED = "fhir.facade.deduplicated";
+	public static final String ADMISSION_REJECTED = "fhir.facade.admission.rejected";
+	public static final String CIRCUIT_TRANSITIONS = "fhir.facade.circuit.transitions";
+	public static final String CIRCUIT_REJECTED = "fhir.facade.circuit.rejected";
+	public static final String EXTRACTION_FALLBACK = "fhir.facade.extraction.fallback";
+	public static final String IMPORTED = "fhir.facade.import.lines";
+	public static final String PATIENT_LOOKUPS = "fhir.facade.patient.index.lookups";
+	public static final String BACKEND_EJECTIONS = "fhir.facade.backend.ejections";
+
+	// Verarbeitungsschritte
+	public static final String READ = "read";
+	public static final String PARSE = "parse";
+	public static final String VALIDATE = "validate";
+	public static final String MAP = "map";
+	public static final String BUILD = "build";
+
+	private final MeterRegistry registry;
+
+	public FacadeMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Startet eine Zeitmessung.
+	 */
+	public Timer.Sample start() {
+		return Timer.start(registry);
+	}
+
+	/**
+	 * Beendet die Zeitmessung eines Verarbeitungsschritts.
+	 *
+	 * @param sample   die laufende Zeitmessung
+	 * @param stage    der Verarbeitungsschritt, z.B. {@link #PARSE}
+	 * @param resource der Ressourcentyp
+	 */
+	public void stage(Timer.Sample sample, String stage, String resource) {
+		sample.stop(Timer.builder(STAGE).description("Duration of a request processing stage").tag("stage", stage)
+				.tag("resource", resource).publishPercentileHistogram().register(registry));
+	}
+
+	/**
+	 * Beendet die Zeitmessung eines Aufrufs der proprietären API.
+	 *
+	 * @param sample  die laufende Zeitmessung
+	 * @param path    der aufgerufene Pfad
+	 * @param success true, wenn die API den Aufruf angenommen hat
+	 */
+	public void backend(Timer.Sample sample, String path, boolean success) {
+		sample.stop(Timer.builder(BACKEND).description("Round trip to the proprietary API").tag("path", path)
+				.tag("outcome", success ? "success" : "failure").publishPercentileHistogram().register(registry));
+	}
+
+	/**
+	 * Erfasst die Größe eines Anfragekörpers.
+	 *
+	 * @param direction inbound (an die Fassade) oder outbound (an die API)
+	 * @param type      Ressourcentyp bzw. Pfad der API
+	 * @param bytes     Größe in Bytes
+	 */
+	public void payloadSize(String direction, String type, long bytes) {
+		DistributionSummary.builder(PAYLOAD_SIZE).description("Size of request bodies").baseUnit("bytes")
+				.tag("direction", direction).tag("type", type).publishPercentileHistogram().register(registry)
+				.record(bytes);
+	}
+
+	/**
+	 * Zählt die Fehlermeldungen einer abgelehnten Anfrage. Als Art der Meldung
+	 * dient das in Klammern angegebene FHIR-Element, z.B. {@code Patient.name}.
+	 *
+	 * @param errorMessages die Fehlermeldungen
+	 */
+	public void issues(List<String> errorMessages) {
+		for (String message : errorMessages) {
+			Counter.builder(ISSUES).description("Issues of rejected requests").tag("issue", issueType(message))
+					.register(registry).increment();
+		}
+	}
+
+	/**
+	 * Zählt einen unerwarteten Fehler.
+	 */
+	public void error(Throwable exception) {
+		Counter.builder(ERRORS).description("Unexpected errors").tag("exception", exception.getClass().getSimpleName())
+				.register(registry).increment();
+	}
+
+	/**
+	 * Zählt eine aus dem Zwischenspeicher beantwortete Wiederholung.
+	 *
+	 * @param reason woran die Wiederholung erkannt wurde
+	 */
+	public void deduplicated(String reason) {
+		Counter.builder(DEDUPLICATED).description("Repeated requests answered from the cache")
+				.tag("reason", reason).register(registry).increment();
+	}
+
+	/**
+	 * Zählt eine von der Zugangskontrolle abgelehnte Anfrage.
+	 *
+	 * @param lane   die Anfrageart, z.B. patient
+	 * @param reason der Grund, z.B. client oder memory
+	 */
+	public void admissionRejected(String lane, String reason) {
+		Counter.builder(ADMISSION_REJECTED).description("Requests rejected by admission control").tag("lane", lane)
+				.tag("reason", reason).register(registry).increment();
+	}
+
+	/**
+	 * Zählt einen Zustandswechsel eines Schutzschalters.
+	 *
+	 * @param path der Pfad der proprietären API
+	 * @param from bisheriger Zustand
+	 * @param to   neuer Zustand
+	 */
+	public void circuitTransition(String path, String from, String to) {
+		Counter.builder(CIRCUIT_TRANSITIONS).description("Circuit breaker state transitions").tag("path", path)
+				.tag("from", from).tag("to", to).register(registry).increment();
+	}
+
+	/**
+	 * Zählt einen Aufruf, der wegen geöffnetem Schutzschalter nicht gestartet
+	 * wurde.
+	 */
+	public void circuitRejected(String path) {
+		Counter.builder(CIRCUIT_REJECTED).description("Calls rejected by an open circuit breaker").tag("path", path)
+				.register(registry).increment();
+	}
+
+	/**
+	 * Zählt eine Ressource, die die schnelle Extraktion nicht lesen konnte und
+	 * die deshalb mit HAPI geparst wurde.
+	 */
+	public void extractionFallback(String resource) {
+		Counter.builder(EXTRACTION_FALLBACK).description("Resources parsed with HAPI after fast-path extraction failed")
+				.tag("resource", resource).register(registry).increment();
+	}
+
+	/**
+	 * Zählt eine verarbeitete Zeile eines Bulk-Imports.
+	 *
+	 * @param success true, wenn die Ressource weitergeleitet wurde
+	 */
+	public void imported(boolean success) {
+		Counter.builder(IMPORTED).description("Processed lines of bulk imports")
+				.tag("outcome", success ? "success" : "failure").register(registry).increment();
+	}
+
+	/**
+	 * Zählt die Prüfung des Patienten einer DocumentReference im
+	 * Patientenverzeichnis.
+	 *
+	 * @param known true, wenn der Patient bekannt war
+	 */
+	public void patientLookup(boolean known) {
+		Counter.builder(PATIENT_LOOKUPS).description("Patient lookups of document references")
+				.tag("result", known ? "known" : "unknown").register(registry).increment();
+	}
+
+	/**
+	 * Zählt den Ausschluss einer Instanz der proprietären API.
+	 *
+	 * @param backend Basis-URL der Instanz
+	 * @param reason  Grund, z.B. failures oder health-check
+	 */
+	public void backendEjection(String backend, String reason) {
+		Counter.builder(BACKEND_EJECTIONS).description("Ejections of proprietary API instances")
+				.tag("backend", backend).tag("reason", reason).register(registry).increment();
+	}
+
+	/**
+	 * Registriert einen Messwert, der bei jeder Abfrage neu gelesen wird.
+	 *
+	 * @param tags Paare aus Name und Wert
+	 */
+	public <T> void gauge(String name, String description, T object, ToDoubleFunction<T> value, String... tags) {
+		Gauge.builder(name, object, value).description(description).tags(tags).register(registry);
+	}
+
+	static String issueType(String message) {
+		int end = message.lastIndexOf(')');
+		int start = message.lastIndexOf('(', end);
+		if (start < 0 || end < 0) {
+			return "other";
+		}
+		return message.substring(start + 1, end);
+	}
+}
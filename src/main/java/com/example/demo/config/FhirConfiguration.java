@@ -0,0 +1,56 @@
+package com.example.demo.config;
+
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.demo.controller.OperationOutcomeCache;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Stellt den anwendungsweit geteilten {@link FhirContext} bereit.
+ * <p>
+ * Der FhirContext ist threadsicher, aber teuer in der Erzeugung, da er das
+ * FHIR-Modell per Reflection einliest. Deshalb gibt es genau eine Instanz,
+ * deren Modell-Cache für die verwendeten Ressourcentypen bereits beim Start
+ * aufgebaut wird; mit {@code fhir-facade.startup.warmup=background} erst nach
+ * dem Start durch {@link StartupWarmup}.
+ */
+@Configuration
+public class FhirConfiguration {
+
+	/**
+	 * Ressourcentypen, die die Fassade verarbeitet bzw. erzeugt.
+	 */
+	static final List<Class<? extends IBaseResource>> RESOURCE_TYPES = List.of(Patient.class,
+			DocumentReference.class, OperationOutcome.class, Bundle.class);
+
+	@Bean
+	public FhirContext fhirContext(FhirFacadeProperties fhirFacadeProperties) {
+		FhirContext fhirContext = FhirContext.forR4();
+		if (fhirFacadeProperties.getStartup().getWarmup() == FhirFacadeProperties.Startup.Warmup.EAGER) {
+			// Baut die Modell-Definitionen vorab auf, damit die erste Anfrage nicht den
+			// Scan bezahlt
+			RESOURCE_TYPES.forEach(fhirContext::getResourceDefinition);
+		}
+		return fhirContext;
+	}
+
+	@Bean
+	public FhirParsers fhirParsers(FhirContext fhirContext) {
+		return new FhirParsers(fhirContext);
+	}
+
+	@Bean
+	public OperationOutcomeCache operationOutcomeCache(FhirParsers fhirParsers,
+			FhirFacadeProperties fhirFacadeProperties) {
+		return new OperationOutcomeCache(fhirParsers, fhirFacadeProperties.getErrors().getOutcomeCacheSize());
+	}
+}
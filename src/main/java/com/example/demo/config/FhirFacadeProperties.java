@@ -1,11 +1,59 @@
 package com.example.demo.config;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import com.example.demo.mapping.FieldType;
+
 @Configuration
 @ConfigurationProperties(prefix = "fhir-facade", ignoreUnknownFields = false)
 public class FhirFacadeProperties {
 	private String proprietaryBaseUrl;
+	// Ab dieser Größe (in Bytes) wird der Base64-Inhalt eines Dokuments in eine
+	// temporäre Datei ausgelagert
+	private int documentSpoolThreshold = 1024 * 1024;
+	// Anzahl der Einträge eines Batch-/Transaction-Bundles, die gleichzeitig an
+	// die proprietäre API gesendet werden
+	private int bundleParallelism = 8;
+	// Liest Patient-Ressourcen mit der schnellen Extraktion statt mit HAPI,
+	// ungewöhnliche Ressourcen werden weiterhin mit HAPI geparst
+	private boolean fastPathExtraction = true;
+	// Einstellungen für den HTTP-Client zur proprietären API
+	private final Outbound outbound = new Outbound();
+	// Einstellungen für die Outbox (Annehmen und später Zustellen)
+	private final Outbox outbox = new Outbox();
+	// Einstellungen für das Tracing der Methodenaufrufe
+	private final Tracing tracing = new Tracing();
+	// Einstellungen für die Erkennung wiederholter Anfragen
+	private final Idempotency idempotency = new Idempotency();
+	// Einstellungen für die Zugangskontrolle eingehender Anfragen
+	private final Admission admission = new Admission();
+	// Einstellungen für die Schutzschalter je Pfad der proprietären API
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+	// Einstellungen für Fehlerantworten und das Loggen von Fehlern
+	private final Errors errors = new Errors();
+	// Einstellungen für den Bulk-Import ($import)
+	private final BulkImport bulkImport = new BulkImport();
+	// Einstellungen für Binary-Uploads (POST /Binary)
+	private final Binary binary = new Binary();
+	// Einstellungen für komprimierte Anfragekörper
+	private final Compression compression = new Compression();
+	// Einstellungen für das Verzeichnis der angelegten Patienten
+	private final PatientIndex patientIndex = new PatientIndex();
+	// Mehrere Instanzen der proprietären API, Lastverteilung und Health Checks
+	private final Backends backends = new Backends();
+	// Einstellungen für den Start der Anwendung
+	private final Startup startup = new Startup();
+	// Abbildung der FHIR-Ressourcen auf die proprietäre API je Name; konfigurierte
+	// Einträge ersetzen gleichnamige Voreinstellungen vollständig
+	private final Map<String, Mapping> mappings = Mapping.defaults();
 
 	public String getProprietaryBaseUrl() {		
 		return proprietaryBaseUrl;
@@ -14,4 +62,1288 @@ public class FhirFacadeProperties {
 	public void setProprietaryBaseUrl(String baseUrl) {
 		this.proprietaryBaseUrl = baseUrl;
 	}
+
+	public int getDocumentSpoolThreshold() {
+		return documentSpoolThreshold;
+	}
+
+	public void setDocumentSpoolThreshold(int documentSpoolThreshold) {
+		this.documentSpoolThreshold = documentSpoolThreshold;
+	}
+
+	public int getBundleParallelism() {
+		return bundleParallelism;
+	}
+
+	public void setBundleParallelism(int bundleParallelism) {
+		this.bundleParallelism = bundleParallelism;
+	}
+
+	public boolean isFastPathExtraction() {
+		return fastPathExtraction;
+	}
+
+	public void setFastPathExtraction(boolean fastPathExtraction) {
+		this.fastPathExtraction = fastPathExtraction;
+	}
+
+	public Outbound getOutbound() {
+		return outbound;
+	}
+
+	public Outbox getOutbox() {
+		return outbox;
+	}
+
+	public Tracing getTracing() {
+		return tracing;
+	}
+
+	public Idempotency getIdempotency() {
+		return idempotency;
+	}
+
+	public Admission getAdmission() {
+		return admission;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public Errors getErrors() {
+		return errors;
+	}
+
+	public BulkImport getBulkImport() {
+		return bulkImport;
+	}
+
+	public Binary getBinary() {
+		return binary;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public PatientIndex getPatientIndex() {
+		return patientIndex;
+	}
+
+	public Backends getBackends() {
+		return backends;
+	}
+
+	public Startup getStartup() {
+		return startup;
+	}
+
+	public Map<String, Mapping> getMappings() {
+		return mappings;
+	}
+
+	/**
+	 * Einstellungen für die ausgehenden Aufrufe an die proprietäre API
+	 * (fhir-facade.outbound.*).
+	 */
+	public static class Outbound {
+		// Maximale Dauer für den Verbindungsaufbau
+		private Duration connectTimeout = Duration.ofSeconds(5);
+		// Maximale Dauer bis zum Eintreffen der Antwort
+		private Duration readTimeout = Duration.ofSeconds(30);
+		// Anzahl gleichzeitig laufender Aufrufe an /Person und damit die Obergrenze
+		// des Verbindungspools
+		private int maxConnections = 50;
+		// Anzahl laufender und wartender Aufrufe an /Person, darüber hinaus werden
+		// Aufrufe sofort abgelehnt
+		private int maxInFlight = 500;
+		// Eigenes Bulkhead für /Document, damit Dokumente keine Patienten verdrängen
+		private int documentMaxConnections = 16;
+		private int documentMaxInFlight = 64;
+		// Anzahl der Threads, die die Antworten des HTTP-Clients verarbeiten
+		private int ioThreads = 4;
+		// Verarbeitet die Antworten auf virtuellen Threads statt auf ioThreads
+		// (ab Java 21)
+		private boolean virtualThreads = false;
+		// Content-Encoding der Anfragekörper; nur einschalten, wenn die API
+		// komprimierte Anfragen annimmt
+		private ContentEncoding compression = ContentEncoding.NONE;
+		// Kleinere Anfragekörper werden unkomprimiert gesendet
+		private DataSize compressionMinSize = DataSize.ofKilobytes(1);
+
+		/**
+		 * Kodierung der Anfragekörper an die proprietäre API.
+		 */
+		public enum ContentEncoding {
+			NONE, GZIP, DEFLATE
+		}
+
+		public Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public Duration getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		public int getMaxConnections() {
+			return maxConnections;
+		}
+
+		public void setMaxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+		}
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public void setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+		}
+
+		public int getDocumentMaxConnections() {
+			return documentMaxConnections;
+		}
+
+		public void setDocumentMaxConnections(int documentMaxConnections) {
+			this.documentMaxConnections = documentMaxConnections;
+		}
+
+		public int getDocumentMaxInFlight() {
+			return documentMaxInFlight;
+		}
+
+		public void setDocumentMaxInFlight(int documentMaxInFlight) {
+			this.documentMaxInFlight = documentMaxInFlight;
+		}
+
+		public int getIoThreads() {
+			return ioThreads;
+		}
+
+		public void setIoThreads(int ioThreads) {
+			this.ioThreads = ioThreads;
+		}
+
+		public boolean isVirtualThreads() {
+			return virtualThreads;
+		}
+
+		public void setVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+		}
+
+		public ContentEncoding getCompression() {
+			return compression;
+		}
+
+		public void setCompression(ContentEncoding compression) {
+			this.compression = compression;
+		}
+
+		public DataSize getCompressionMinSize() {
+			return compressionMinSize;
+		}
+
+		public void setCompressionMinSize(DataSize compressionMinSize) {
+			this.compressionMinSize = compressionMinSize;
+		}
+	}
+
+	/**
+	 * Einstellungen für die Outbox (fhir-facade.outbox.*). Ist sie aktiviert,
+	 * werden geprüfte Ressourcen lokal gespeichert, mit 202 Accepted bestätigt und
+	 * im Hintergrund an die proprietäre API zugestellt.
+	 */
+	public static class Outbox {
+		// Aktiviert das Annehmen und spätere Zustellen
+		private boolean enabled = false;
+		// Verzeichnis für die Segmente und den Checkpoint
+		private String directory = "outbox";
+		// Größe eines Segments, größere Einträge erhalten ein eigenes Segment
+		private DataSize segmentSize = DataSize.ofMegabytes(64);
+		// Schreibt jeden Eintrag vor der Bestätigung auf den Datenträger
+		private boolean forceWrites = true;
+		// Anzahl gleichzeitig zugestellter Einträge
+		private int maxInFlight = 16;
+		// Wartezeit vor dem ersten Wiederholungsversuch, verdoppelt sich je Versuch
+		private Duration initialBackoff = Duration.ofSeconds(1);
+		// Obergrenze der Wartezeit zwischen zwei Versuchen
+		private Duration maxBackoff = Duration.ofMinutes(5);
+		// Anzahl der Versuche, danach wird der Eintrag in das Dead-Letter-Log
+		// verschoben (0 = unbegrenzt); 20 Versuche dauern mit den Standardwerten
+		// etwa 30 bis 60 Minuten
+		private int maxAttempts = 20;
+		// Intervall, in dem die Outbox auf neue Einträge und fällige Versuche prüft
+		private Duration pollInterval = Duration.ofMillis(200);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+
+		public DataSize getSegmentSize() {
+			return segmentSize;
+		}
+
+		public void setSegmentSize(DataSize segmentSize) {
+			this.segmentSize = segmentSize;
+		}
+
+		public boolean isForceWrites() {
+			return forceWrites;
+		}
+
+		public void setForceWrites(boolean forceWrites) {
+			this.forceWrites = forceWrites;
+		}
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public void setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+		}
+
+		public Duration getInitialBackoff() {
+			return initialBackoff;
+		}
+
+		public void setInitialBackoff(Duration initialBackoff) {
+			this.initialBackoff = initialBackoff;
+		}
+
+		public Duration getMaxBackoff() {
+			return maxBackoff;
+		}
+
+		public void setMaxBackoff(Duration maxBackoff) {
+			this.maxBackoff = maxBackoff;
+		}
+
+		public int getMaxAttempts() {
+			return maxAttempts;
+		}
+
+		public void setMaxAttempts(int maxAttempts) {
+			this.maxAttempts = maxAttempts;
+		}
+
+		public Duration getPollInterval() {
+			return pollInterval;
+		}
+
+		public void setPollInterval(Duration pollInterval) {
+			this.pollInterval = pollInterval;
+		}
+	}
+
+	/**
+	 * Einstellungen für das Tracing der Methodenaufrufe im {@link LoggingAspect}
+	 * (fhir-facade.tracing.*). Ausgegeben wird auf DEBUG.
+	 */
+	public static class Tracing {
+		// Registriert den LoggingAspect, false entfernt ihn samt aller Proxies
+		private boolean enabled = true;
+		// Maximale Länge eines ausgegebenen Arguments oder Rückgabewerts
+		private int maxArgumentLength = 200;
+		// Gibt von möglichen Patientendaten nur Typ und Größe aus
+		private boolean redact = true;
+		// Anteil der protokollierten Aufrufe (1.0 = alle)
+		private double sampleRate = 1.0;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxArgumentLength() {
+			return maxArgumentLength;
+		}
+
+		public void setMaxArgumentLength(int maxArgumentLength) {
+			this.maxArgumentLength = maxArgumentLength;
+		}
+
+		public boolean isRedact() {
+			return redact;
+		}
+
+		public void setRedact(boolean redact) {
+			this.redact = redact;
+		}
+
+		public double getSampleRate() {
+			return sampleRate;
+		}
+
+		public void setSampleRate(double sampleRate) {
+			this.sampleRate = sampleRate;
+		}
+	}
+
+	/**
+	 * Einstellungen für die Erkennung wiederholter Anfragen an /Patient und
+	 * /DocumentReference (fhir-facade.idempotency.*), über die Header
+	 * Idempotency-Key und If-None-Exist sowie den Hash des Inhalts.
+	 */
+	public static class Idempotency {
+		// Aktiviert den Zwischenspeicher der Antworten, ohne ihn wird jede Anfrage
+		// weitergeleitet
+		private boolean enabled = false;
+		// Höchstzahl der Einträge, darüber werden die ältesten verdrängt
+		private int maxEntries = 10_000;
+		// Lebensdauer eines Eintrags
+		private Duration ttl = Duration.ofMinutes(10);
+		// Erkennt wiederholte Anfragen auch ohne Header am Hash des Inhalts
+		private boolean contentHash = true;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		public Duration getTtl() {
+			return ttl;
+		}
+
+		public void setTtl(Duration ttl) {
+			this.ttl = ttl;
+		}
+
+		public boolean isContentHash() {
+			return contentHash;
+		}
+
+		public void setContentHash(boolean contentHash) {
+			this.contentHash = contentHash;
+		}
+	}
+
+	/**
+	 * Einstellungen für die Zugangskontrolle (fhir-facade.admission.*). Anfragen an
+	 * /Patient, /DocumentReference und Bundles werden getrennt begrenzt, damit
+	 * große Dokumente keine Patienten verdrängen. Wer nicht angenommen wird,
+	 * erhält sofort 429 bzw. 503 mit Retry-After.
+	 */
+	public static class Admission {
+		// Aktiviert die Zugangskontrolle
+		private boolean enabled = true;
+		// Gleichzeitige Anfragen je Client, darüber hinaus 429 Too Many Requests
+		private int maxConcurrentPerClient = 32;
+		// Header, der den Client kennzeichnet; ohne Header zählt die IP-Adresse
+		private String clientIdHeader = "X-Client-Id";
+		// Summe der Content-Length aller laufenden Anfragen, darüber 503
+		private DataSize memoryBudget = DataSize.ofMegabytes(256);
+		// Angerechnete Größe einer Anfrage ohne Content-Length
+		private DataSize unknownContentLength = DataSize.ofMegabytes(1);
+		// Wert des Retry-After-Headers abgelehnter Anfragen
+		private Duration retryAfter = Duration.ofSeconds(1);
+		// Passt die Grenzen der Patienten und Dokumente an die Latenz der
+		// proprietären API an
+		private boolean adaptive = true;
+		private final Lane patient = new Lane(64, 128);
+		private final Lane documentReference = new Lane(16, 32);
+		private final Lane bundle = new Lane(8, 16);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxConcurrentPerClient() {
+			return maxConcurrentPerClient;
+		}
+
+		public void setMaxConcurrentPerClient(int maxConcurrentPerClient) {
+			this.maxConcurrentPerClient = maxConcurrentPerClient;
+		}
+
+		public String getClientIdHeader() {
+			return clientIdHeader;
+		}
+
+		public void setClientIdHeader(String clientIdHeader) {
+			this.clientIdHeader = clientIdHeader;
+		}
+
+		public DataSize getMemoryBudget() {
+			return memoryBudget;
+		}
+
+		public void setMemoryBudget(DataSize memoryBudget) {
+			this.memoryBudget = memoryBudget;
+		}
+
+		public DataSize getUnknownContentLength() {
+			return unknownContentLength;
+		}
+
+		public void setUnknownContentLength(DataSize unknownContentLength) {
+			this.unknownContentLength = unknownContentLength;
+		}
+
+		public Duration getRetryAfter() {
+			return retryAfter;
+		}
+
+		public void setRetryAfter(Duration retryAfter) {
+			this.retryAfter = retryAfter;
+		}
+
+		public boolean isAdaptive() {
+			return adaptive;
+		}
+
+		public void setAdaptive(boolean adaptive) {
+			this.adaptive = adaptive;
+		}
+
+		public Lane getPatient() {
+			return patient;
+		}
+
+		public Lane getDocumentReference() {
+			return documentReference;
+		}
+
+		public Lane getBundle() {
+			return bundle;
+		}
+
+		/**
+		 * Grenzen einer Anfrageart (z.B. fhir-facade.admission.patient.*).
+		 */
+		public static class Lane {
+			// Obergrenze gleichzeitig verarbeiteter Anfragen
+			private int maxConcurrent;
+			// Untergrenze, unter die die adaptive Grenze nicht fällt
+			private int minConcurrent = 1;
+			// Anzahl der Anfragen, die auf einen freien Platz warten dürfen
+			private int maxQueue;
+			// Maximale Wartezeit, danach 503 Service Unavailable
+			private Duration queueTimeout = Duration.ofMillis(100);
+
+			Lane(int maxConcurrent, int maxQueue) {
+				this.maxConcurrent = maxConcurrent;
+				this.maxQueue = maxQueue;
+			}
+
+			public int getMaxConcurrent() {
+				return maxConcurrent;
+			}
+
+			public void setMaxConcurrent(int maxConcurrent) {
+				this.maxConcurrent = maxConcurrent;
+			}
+
+			public int getMinConcurrent() {
+				return minConcurrent;
+			}
+
+			public void setMinConcurrent(int minConcurrent) {
+				this.minConcurrent = minConcurrent;
+			}
+
+			public int getMaxQueue() {
+				return maxQueue;
+			}
+
+			public void setMaxQueue(int maxQueue) {
+				this.maxQueue = maxQueue;
+			}
+
+			public Duration getQueueTimeout() {
+				return queueTimeout;
+			}
+
+			public void setQueueTimeout(Duration queueTimeout) {
+				this.queueTimeout = queueTimeout;
+			}
+		}
+	}
+
+	/**
+	 * Einstellungen für die Schutzschalter vor /Person und /Document
+	 * (fhir-facade.circuit-breaker.*). Ein geöffneter Schalter beantwortet
+	 * Anfragen sofort mit 503, statt auf die proprietäre API zu warten.
+	 */
+	public static class CircuitBreaker {
+		// Aktiviert die Schutzschalter
+		private boolean enabled = true;
+		// Anzahl der letzten Aufrufe, aus denen die Quoten berechnet werden
+		private int windowSize = 50;
+		// Mindestanzahl an Aufrufen im Fenster, bevor der Schalter öffnen kann
+		private int minimumCalls = 20;
+		// Anteil fehlgeschlagener Aufrufe, ab dem der Schalter öffnet
+		private double failureRateThreshold = 0.5;
+		// Ab dieser Dauer gilt ein Aufruf als langsam
+		private Duration slowCallDuration = Duration.ofSeconds(5);
+		// Anteil langsamer Aufrufe, ab dem der Schalter öffnet
+		private double slowCallRateThreshold = 0.8;
+		// Dauer, die der Schalter geöffnet bleibt
+		private Duration openDuration = Duration.ofSeconds(30);
+		// Anzahl der Probeaufrufe im halb geöffneten Zustand
+		private int halfOpenCalls = 3;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getWindowSize() {
+			return windowSize;
+		}
+
+		public void setWindowSize(int windowSize) {
+			this.windowSize = windowSize;
+		}
+
+		public int getMinimumCalls() {
+			return minimumCalls;
+		}
+
+		public void setMinimumCalls(int minimumCalls) {
+			this.minimumCalls = minimumCalls;
+		}
+
+		public double getFailureRateThreshold() {
+			return failureRateThreshold;
+		}
+
+		public void setFailureRateThreshold(double failureRateThreshold) {
+			this.failureRateThreshold = failureRateThreshold;
+		}
+
+		public Duration getSlowCallDuration() {
+			return slowCallDuration;
+		}
+
+		public void setSlowCallDuration(Duration slowCallDuration) {
+			this.slowCallDuration = slowCallDuration;
+		}
+
+		public double getSlowCallRateThreshold() {
+			return slowCallRateThreshold;
+		}
+
+		public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+			this.slowCallRateThreshold = slowCallRateThreshold;
+		}
+
+		public Duration getOpenDuration() {
+			return openDuration;
+		}
+
+		public void setOpenDuration(Duration openDuration) {
+			this.openDuration = openDuration;
+		}
+
+		public int getHalfOpenCalls() {
+			return halfOpenCalls;
+		}
+
+		public void setHalfOpenCalls(int halfOpenCalls) {
+			this.halfOpenCalls = halfOpenCalls;
+		}
+	}
+
+	/**
+	 * Einstellungen für Fehlerantworten und das Loggen von Fehlern
+	 * (fhir-facade.errors.*).
+	 */
+	public static class Errors {
+		// Höchstzahl zwischengespeicherter, kodierter OperationOutcomes
+		private int outcomeCacheSize = 1000;
+		// Höchstzahl der Logmeldungen je Fehlerart und Intervall, darüber werden
+		// sie unterdrückt und nur gezählt
+		private int logLimit = 10;
+		private Duration logInterval = Duration.ofMinutes(1);
+
+		public int getOutcomeCacheSize() {
+			return outcomeCacheSize;
+		}
+
+		public void setOutcomeCacheSize(int outcomeCacheSize) {
+			this.outcomeCacheSize = outcomeCacheSize;
+		}
+
+		public int getLogLimit() {
+			return logLimit;
+		}
+
+		public void setLogLimit(int logLimit) {
+			this.logLimit = logLimit;
+		}
+
+		public Duration getLogInterval() {
+			return logInterval;
+		}
+
+		public void setLogInterval(Duration logInterval) {
+			this.logInterval = logInterval;
+		}
+	}
+
+	/**
+	 * Einstellungen für den Bulk-Import von NDJSON ({@code $import},
+	 * fhir-facade.bulk-import.*).
+	 */
+	public static class BulkImport {
+		// Aktiviert den Endpunkt $import
+		private boolean enabled = true;
+		// Verzeichnis für den Zustand der Imports, ihre Fehlerdateien und die
+		// gespeicherten Anfragekörper
+		private String directory = "import";
+		// Verzeichnis, aus dem lokale Dateien importiert werden dürfen; leer, wenn
+		// nur Anfragekörper angenommen werden
+		private String allowedDirectory = "";
+		// Threads, die die Zeilen parsen, prüfen und abbilden
+		private int workers = 4;
+		// Anzahl der Zeilen, die zugleich verarbeitet oder gesendet werden
+		private int maxInFlight = 32;
+		// Höchstlänge einer Zeile, längere werden als Fehler gemeldet
+		private DataSize maxLineLength = DataSize.ofMegabytes(64);
+		// Höchstgröße eines Anfragekörpers von $import, größere werden mit 413
+		// abgelehnt; $import durchläuft nicht die Zugangskontrolle
+		private DataSize maxSize = DataSize.ofGigabytes(10);
+		// Anzahl übernommener Zeilen, nach denen der Checkpoint gespeichert wird
+		private int checkpointInterval = 1000;
+		// Versuche je Zeile bei geöffnetem Schutzschalter oder voller Warteschlange
+		// der proprietären API
+		private int maxAttempts = 10;
+		// Wartezeit vor einem erneuten Versuch bei voller Warteschlange
+		private Duration retryDelay = Duration.ofSeconds(1);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(String directory) {
+			this.directory = directory;
+		}
+
+		public String getAllowedDirectory() {
+			return allowedDirectory;
+		}
+
+		public void setAllowedDirectory(String allowedDirectory) {
+			this.allowedDirectory = allowedDirectory;
+		}
+
+		public int getWorkers() {
+			return workers;
+		}
+
+		public void setWorkers(int workers) {
+			this.workers = workers;
+		}
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public void setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+		}
+
+		public DataSize getMaxLineLength() {
+			return maxLineLength;
+		}
+
+		public void setMaxLineLength(DataSize maxLineLength) {
+			this.maxLineLength = maxLineLength;
+		}
+
+		public DataSize getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(DataSize maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public int getCheckpointInterval() {
+			return checkpointInterval;
+		}
+
+		public void setCheckpointInterval(int checkpointInterval) {
+			this.checkpointInterval = checkpointInterval;
+		}
+
+		public int getMaxAttempts() {
+			return maxAttempts;
+		}
+
+		public void setMaxAttempts(int maxAttempts) {
+			this.maxAttempts = maxAttempts;
+		}
+
+		public Duration getRetryDelay() {
+			return retryDelay;
+		}
+
+		public void setRetryDelay(Duration retryDelay) {
+			this.retryDelay = retryDelay;
+		}
+	}
+
+	/**
+	 * Einstellungen für Binary-Uploads (fhir-facade.binary.*). Ein Binary wird
+	 * bis zur Verwendung durch eine DocumentReference zwischengespeichert.
+	 */
+	public static class Binary {
+		// Höchstzahl gespeicherter Binaries, darüber werden die ältesten verworfen
+		private int maxEntries = 1000;
+		// Dauer, nach der ein nicht verwendetes Binary verworfen wird
+		private Duration ttl = Duration.ofMinutes(10);
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		public Duration getTtl() {
+			return ttl;
+		}
+
+		public void setTtl(Duration ttl) {
+			this.ttl = ttl;
+		}
+	}
+
+	/**
+	 * Einstellungen für komprimierte Anfragekörper (fhir-facade.compression.*).
+	 * Die Komprimierung der Antworten steuert server.compression.*, die der
+	 * Aufrufe an die proprietäre API fhir-facade.outbound.compression.
+	 */
+	public static class Compression {
+		// Entpackt Anfragekörper mit Content-Encoding gzip oder deflate
+		private boolean inbound = true;
+		// Maximale Größe eines entpackten Anfragekörpers, darüber 413
+		private DataSize maxInflatedSize = DataSize.ofMegabytes(512);
+
+		public boolean isInbound() {
+			return inbound;
+		}
+
+		public void setInbound(boolean inbound) {
+			this.inbound = inbound;
+		}
+
+		public DataSize getMaxInflatedSize() {
+			return maxInflatedSize;
+		}
+
+		public void setMaxInflatedSize(DataSize maxInflatedSize) {
+			this.maxInflatedSize = maxInflatedSize;
+		}
+	}
+
+	/**
+	 * Einstellungen für das Verzeichnis der über die Fassade angelegten Patienten
+	 * (fhir-facade.patient-index.*). Dokumente zu unbekannten Patienten werden
+	 * abgelehnt, bevor ihr Inhalt an die proprietäre API geht.
+	 */
+	public static class PatientIndex {
+		// Aktiviert das Verzeichnis und die Prüfung der DocumentReferences
+		private boolean enabled = false;
+		// REJECT lehnt Dokumente zu unbekannten Patienten ab, REPORT zählt sie nur
+		private Mode mode = Mode.REJECT;
+		// Memory-mapped Datei des Verzeichnisses, übersteht Neustarts
+		private String file = "patient-index/patients.idx";
+		// Erwartete Anzahl der Patienten, bestimmt die Anfangsgröße der Datei
+		private int expectedPatients = 1_000_000;
+		// Datei mit bereits in der API vorhandenen Patienten-IDs (eine pro Zeile
+		// oder erste CSV-Spalte), wird beim Start geladen; leer für keine
+		private String bulkLoad = "";
+
+		/**
+		 * Umgang mit Dokumenten zu unbekannten Patienten.
+		 */
+		public enum Mode {
+			REJECT, REPORT
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Mode getMode() {
+			return mode;
+		}
+
+		public void setMode(Mode mode) {
+			this.mode = mode;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public void setFile(String file) {
+			this.file = file;
+		}
+
+		public int getExpectedPatients() {
+			return expectedPatients;
+		}
+
+		public void setExpectedPatients(int expectedPatients) {
+			this.expectedPatients = expectedPatients;
+		}
+
+		public String getBulkLoad() {
+			return bulkLoad;
+		}
+
+		public void setBulkLoad(String bulkLoad) {
+			this.bulkLoad = bulkLoad;
+		}
+	}
+
+	/**
+	 * Einstellungen für mehrere Instanzen der proprietären API
+	 * (fhir-facade.backends.*). Ohne Knoten wird nur proprietaryBaseUrl
+	 * verwendet.
+	 */
+	public static class Backends {
+		// Instanzen der proprietären API; ersetzen proprietaryBaseUrl, wenn gesetzt
+		private List<Node> nodes = new ArrayList<>();
+		// Verfahren zur Auswahl eines Knotens je Aufruf
+		private Routing routing = Routing.CONSISTENT_HASH;
+		// Punkte je Gewichtseinheit eines Knotens im Hash-Ring
+		private int virtualNodes = 100;
+		// Pfad für aktive Health Checks (GET, 2xx = gesund) relativ zur Basis-URL;
+		// leer für keine aktiven Prüfungen
+		private String healthCheckPath = "";
+		private Duration healthCheckInterval = Duration.ofSeconds(5);
+		private Duration healthCheckTimeout = Duration.ofSeconds(2);
+		// Anzahl fehlgeschlagener Health Checks in Folge, nach der ein Knoten
+		// ausgeschlossen wird; ein erfolgreicher Check nimmt ihn wieder auf
+		private int unhealthyThreshold = 2;
+		// Anzahl fehlgeschlagener oder langsamer Aufrufe in Folge, nach der ein Knoten
+		// ausgeschlossen wird
+		private int consecutiveFailures = 5;
+		// Ab dieser Dauer zählt ein Aufruf für den Ausschluss als fehlgeschlagen
+		private Duration slowCallDuration = Duration.ofSeconds(5);
+		// Dauer des ersten Ausschlusses, wächst mit jedem erneuten Ausschluss
+		private Duration ejectionDuration = Duration.ofSeconds(30);
+		private Duration maxEjectionDuration = Duration.ofMinutes(5);
+
+		/**
+		 * Verfahren zur Auswahl eines Knotens.
+		 */
+		public enum Routing {
+			// Gleicher Partitionsschlüssel (Patienten-ID) auf denselben Knoten
+			CONSISTENT_HASH,
+			// Knoten mit den wenigsten laufenden Aufrufen je Gewicht
+			LEAST_OUTSTANDING,
+			// Reihum im Verhältnis der Gewichte
+			WEIGHTED_ROUND_ROBIN
+		}
+
+		/**
+		 * Eine Instanz der proprietären API.
+		 */
+		public static class Node {
+			// Basis-URL, z.B. http://api-1:3001/fhir
+			private String url;
+			// Anteil am Verkehr relativ zu den anderen Knoten
+			private int weight = 1;
+
+			public Node() {
+			}
+
+			public Node(String url, int weight) {
+				this.url = url;
+				this.weight = weight;
+			}
+
+			public String getUrl() {
+				return url;
+			}
+
+			public void setUrl(String url) {
+				this.url = url;
+			}
+
+			public int getWeight() {
+				return weight;
+			}
+
+			public void setWeight(int weight) {
+				this.weight = weight;
+			}
+		}
+
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		public void setNodes(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+
+		public Routing getRouting() {
+			return routing;
+		}
+
+		public void setRouting(Routing routing) {
+			this.routing = routing;
+		}
+
+		public int getVirtualNodes() {
+			return virtualNodes;
+		}
+
+		public void setVirtualNodes(int virtualNodes) {
+			this.virtualNodes = virtualNodes;
+		}
+
+		public String getHealthCheckPath() {
+			return healthCheckPath;
+		}
+
+		public void setHealthCheckPath(String healthCheckPath) {
+			this.healthCheckPath = healthCheckPath;
+		}
+
+		public Duration getHealthCheckInterval() {
+			return healthCheckInterval;
+		}
+
+		public void setHealthCheckInterval(Duration healthCheckInterval) {
+			this.healthCheckInterval = healthCheckInterval;
+		}
+
+		public Duration getHealthCheckTimeout() {
+			return healthCheckTimeout;
+		}
+
+		public void setHealthCheckTimeout(Duration healthCheckTimeout) {
+			this.healthCheckTimeout = healthCheckTimeout;
+		}
+
+		public int getUnhealthyThreshold() {
+			return unhealthyThreshold;
+		}
+
+		public void setUnhealthyThreshold(int unhealthyThreshold) {
+			this.unhealthyThreshold = unhealthyThreshold;
+		}
+
+		public int getConsecutiveFailures() {
+			return consecutiveFailures;
+		}
+
+		public void setConsecutiveFailures(int consecutiveFailures) {
+			this.consecutiveFailures = consecutiveFailures;
+		}
+
+		public Duration getSlowCallDuration() {
+			return slowCallDuration;
+		}
+
+		public void setSlowCallDuration(Duration slowCallDuration) {
+			this.slowCallDuration = slowCallDuration;
+		}
+
+		public Duration getEjectionDuration() {
+			return ejectionDuration;
+		}
+
+		public void setEjectionDuration(Duration ejectionDuration) {
+			this.ejectionDuration = ejectionDuration;
+		}
+
+		public Duration getMaxEjectionDuration() {
+			return maxEjectionDuration;
+		}
+
+		public void setMaxEjectionDuration(Duration maxEjectionDuration) {
+			this.maxEjectionDuration = maxEjectionDuration;
+		}
+	}
+
+	/**
+	 * Einstellungen für den Start der Anwendung (fhir-facade.startup.*), siehe
+	 * Profil fast-startup.
+	 */
+	public static class Startup {
+		// EAGER liest das FHIR-Modell der verarbeiteten Ressourcentypen vor dem
+		// Start ein; BACKGROUND erst danach in einem eigenen Thread, zusammen mit
+		// den verzögert erzeugten Beans
+		private Warmup warmup = Warmup.EAGER;
+
+		/**
+		 * Zeitpunkt des Aufwärmens.
+		 */
+		public enum Warmup {
+			EAGER, BACKGROUND
+		}
+
+		public Warmup getWarmup() {
+			return warmup;
+		}
+
+		public void setWarmup(Warmup warmup) {
+			this.warmup = warmup;
+		}
+	}
+
+	/**
+	 * Abbildung eines FHIR-Ressourcentyps auf einen Pfad der proprietären API
+	 * (fhir-facade.mappings.&lt;name&gt;.*). Die Ausdrücke sind eine Teilmenge von
+	 * FHIRPath, siehe {@link com.example.demo.mapping.PathExpression}.
+	 */
+	public static class Mapping {
+		// FHIR-Ressourcentyp, z.B. Patient
+		private String resourceType;
+		// Pfad der proprietären API, z.B. /Person
+		private String path;
+		// Felder, deren Werte Anfragen zum selben Patienten in Reihenfolge halten
+		private List<String> partitionKey = new ArrayList<>();
+		// Ausdrücke, die einen Wert liefern müssen, sonst wird die Ressource mit der
+		// Fehlermeldung abgelehnt
+		private List<Check> checks = new ArrayList<>();
+		// Felder des JSON-Anfragekörpers in dieser Reihenfolge
+		private Map<String, Field> fields = new LinkedHashMap<>();
+		// Feld für den Base64-Inhalt des Dokuments (content[0].attachment.data), wird
+		// aus dem Zwischenspeicher gestreamt und als letztes Feld geschrieben
+		private String contentField;
+		// Fehlermeldung, wenn der Inhalt fehlt; ohne Meldung wird null gesendet
+		private String contentIssue;
+
+		public Mapping() {
+		}
+
+		Mapping(String resourceType, String path, String... partitionKey) {
+			this.resourceType = resourceType;
+			this.path = path;
+			this.partitionKey.addAll(List.of(partitionKey));
+		}
+
+		/**
+		 * Die Abbildungen von Patient und DocumentReference, wie sie die proprietäre
+		 * API erwartet.
+		 */
+		static Map<String, Mapping> defaults() {
+			Map<String, Mapping> mappings = new LinkedHashMap<>();
+			mappings.put("patient", new Mapping("Patient", "/Person", "lastName", "firstName", "birthDate")
+					.check("name", "Missing patient name (Patient.name)")
+					.check("birthDate", "Missing birthdate (Patient.birthdate)")
+					.field("firstName", "name.first().given.join(' ')", FieldType.STRING)
+					.field("lastName", "name.first().family", FieldType.STRING)
+					.field("birthDate", "birthDate", FieldType.GERMAN_DATE));
+			Mapping documentReference = new Mapping("DocumentReference", "/Document", "patientId")
+					.check("type.coding.where(system = 'http://dvmd.de/fhir/CodeSystem/kdl')",
+							"Missing document type from KDL terminology (DocumentReference.type.coding:KDL)")
+					.check("context.encounter.identifier.where(type.coding.first().code = 'AN')",
+							"Missing billing number (DocumentReference.context.encounter.identifier:Abrechnungsnummer.type.coding:AN)")
+					.check("subject.identifier.value", "Missing patient id (DocumentReference.subject.identifier)")
+					.field("kdlCode", "type.coding.where(system = 'http://dvmd.de/fhir/CodeSystem/kdl').first().code",
+							FieldType.STRING)
+					.field("patientId", "subject.identifier.value", FieldType.INTEGER)
+					.field("visitNumber",
+							"context.encounter.identifier.where(type.coding.first().code = 'AN').first().value",
+							FieldType.INTEGER)
+					.field("dateCreated", "content.first().attachment.creation", FieldType.INSTANT);
+			documentReference.setContentField("contentB64");
+			documentReference.setContentIssue("Missing document content (DocumentReference.content.attachment.data)");
+			mappings.put("documentReference", documentReference);
+			return mappings;
+		}
+
+		private Mapping check(String expression, String issue) {
+			checks.add(new Check(expression, issue));
+			return this;
+		}
+
+		private Mapping field(String name, String expression, FieldType type) {
+			fields.put(name, new Field(expression, type));
+			return this;
+		}
+
+		public String getResourceType() {
+			return resourceType;
+		}
+
+		public void setResourceType(String resourceType) {
+			this.resourceType = resourceType;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public List<String> getPartitionKey() {
+			return partitionKey;
+		}
+
+		public void setPartitionKey(List<String> partitionKey) {
+			this.partitionKey = partitionKey;
+		}
+
+		public List<Check> getChecks() {
+			return checks;
+		}
+
+		public void setChecks(List<Check> checks) {
+			this.checks = checks;
+		}
+
+		public Map<String, Field> getFields() {
+			return fields;
+		}
+
+		public void setFields(Map<String, Field> fields) {
+			this.fields = fields;
+		}
+
+		public String getContentField() {
+			return contentField;
+		}
+
+		public void setContentField(String contentField) {
+			this.contentField = contentField;
+		}
+
+		public String getContentIssue() {
+			return contentIssue;
+		}
+
+		public void setContentIssue(String contentIssue) {
+			this.contentIssue = contentIssue;
+		}
+
+		/**
+		 * Eine Pflichtangabe.
+		 */
+		public static class Check {
+			// Ausdruck, der mindestens einen Wert liefern muss
+			private String expression;
+			// Fehlermeldung, das Element in Klammern am Ende wird als Kennzahl gezählt
+			private String issue;
+
+			public Check() {
+			}
+
+			Check(String expression, String issue) {
+				this.expression = expression;
+				this.issue = issue;
+			}
+
+			public String getExpression() {
+				return expression;
+			}
+
+			public void setExpression(String expression) {
+				this.expression = expression;
+			}
+
+			public String getIssue() {
+				return issue;
+			}
+
+			public void setIssue(String issue) {
+				this.issue = issue;
+			}
+		}
+
+		/**
+		 * Ein Feld des Anfragekörpers.
+		 */
+		public static class Field {
+			// Ausdruck, dessen erster Wert in das Feld geschrieben wird
+			private String expression;
+			// Typ des Feldes im Anfragekörper
+			private FieldType type = FieldType.STRING;
+
+			public Field() {
+			}
+
+			Field(String expression, FieldType type) {
+				this.expression = expression;
+				this.type = type;
+			}
+
+			public String getExpression() {
+				return expression;
+			}
+
+			public void setExpression(String expression) {
+				this.expression = expression;
+			}
+
+			public FieldType getType() {
+				return type;
+			}
+
+			public void setType(FieldType type) {
+				this.type = type;
+			}
+		}
+	}
 }
@@ -0,0 +1,150 @@
+package com.example.demo.config;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Die FHIR-Formate, in denen die Fassade Ressourcen annimmt und beantwortet.
+ * <p>
+ * Das Format eines Anfragekörpers folgt dem Content-Type: XML bei
+ * {@code application/fhir+xml}, {@code application/xml} oder
+ * {@code text/xml}, sonst wie bisher JSON. Für Antworten gilt wie in der
+ * FHIR-Spezifikation zuerst der Parameter {@code _format}, dann der
+ * Accept-Header und schließlich das Format des Anfragekörpers.
+ */
+public enum FhirFormat {
+
+	JSON(new MediaType("application", "fhir+json", StandardCharsets.UTF_8)),
+	XML(new MediaType("application", "fhir+xml", StandardCharsets.UTF_8));
+
+	private static final String FORMAT_PARAMETER = "_format";
+
+	private final MediaType mediaType;
+
+	FhirFormat(MediaType mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	/**
+	 * @return der Content-Type für Antworten in diesem Format
+	 */
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * @param contentType der Content-Type des Anfragekörpers oder null
+	 * @return das Format des Anfragekörpers, JSON ohne oder bei unbekanntem
+	 *         Content-Type
+	 */
+	public static FhirFormat ofContentType(String contentType) {
+		FhirFormat format = contentType != null ? of(parse(contentType)) : null;
+		return format != null ? format : JSON;
+	}
+
+	/**
+	 * @return das Format des Anfragekörpers
+	 * @see #ofContentType(String)
+	 */
+	public static FhirFormat ofRequest(HttpServletRequest request) {
+		return ofContentType(request.getContentType());
+	}
+
+	/**
+	 * Bestimmt das Format der Antwort aus {@code _format}, dem Accept-Header und
+	 * dem Content-Type der Anfrage.
+	 */
+	public static FhirFormat negotiate(HttpServletRequest request) {
+		return negotiate(formatParameter(request.getQueryString()), request.getHeader(HttpHeaders.ACCEPT),
+				request.getContentType());
+	}
+
+	/**
+	 * @param format      der Parameter {@code _format} oder null, z.B. xml oder
+	 *                    application/fhir+json
+	 * @param accept      der Accept-Header oder null
+	 * @param contentType der Content-Type der Anfrage oder null
+	 * @return das Format der Antwort
+	 */
+	static FhirFormat negotiate(String format, String accept, String contentType) {
+		if (format != null) {
+			String value = format.trim();
+			if (value.equalsIgnoreCase("json")) {
+				return JSON;
+			} else if (value.equalsIgnoreCase("xml")) {
+				return XML;
+			}
+			// Ein nicht kodiertes + im Query-String kommt als Leerzeichen an
+			FhirFormat requested = of(parse(value.replace(' ', '+')));
+			if (requested != null) {
+				return requested;
+			}
+		}
+		if (accept != null) {
+			List<MediaType> accepted;
+			try {
+				accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+			} catch (InvalidMediaTypeException e) {
+				accepted = new ArrayList<>();
+			}
+			// Stabil nach Qualität sortiert, bei Gleichstand gilt die Reihenfolge
+			accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+			for (MediaType mediaType : accepted) {
+				FhirFormat acceptable = mediaType.getQualityValue() > 0 ? of(mediaType) : null;
+				if (acceptable != null) {
+					return acceptable;
+				}
+			}
+		}
+		return ofContentType(contentType);
+	}
+
+	/**
+	 * @return XML oder JSON für passende Medientypen, sonst null (auch für
+	 *         Platzhalter wie {@code *}{@code /*})
+	 */
+	private static FhirFormat of(MediaType mediaType) {
+		if (mediaType == null || mediaType.isWildcardSubtype()) {
+			return null;
+		}
+		if ("xml".equals(mediaType.getSubtype()) || "xml".equals(mediaType.getSubtypeSuffix())) {
+			return XML;
+		}
+		if ("json".equals(mediaType.getSubtype()) || "json".equals(mediaType.getSubtypeSuffix())) {
+			return JSON;
+		}
+		return null;
+	}
+
+	private static MediaType parse(String mediaType) {
+		try {
+			return MediaType.parseMediaType(mediaType);
+		} catch (InvalidMediaTypeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Liest {@code _format} aus dem Query-String, nicht über
+	 * {@link HttpServletRequest#getParameter}, das bei Formularen den
+	 * Anfragekörper lesen würde.
+	 */
+	private static String formatParameter(String queryString) {
+		if (queryString == null) {
+			return null;
+		}
+		String format = UriComponentsBuilder.newInstance().query(queryString).build().getQueryParams()
+				.getFirst(FORMAT_PARAMETER);
+		return format != null ? URLDecoder.decode(format, StandardCharsets.UTF_8) : null;
+	}
+}
@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Wiederverwendbare FHIR-Parser.
+ * <p>
+ * Ein {@link IParser} ist nicht threadsicher. Statt pro Anfrage einen neuen
+ * Parser zu erzeugen, hält jeder Thread seine eigene Instanz, die für Parsen
+ * und Kodieren wiederverwendet wird. Die Parser dürfen daher nicht
+ * umkonfiguriert und nicht an andere Threads weitergegeben werden.
+ */
+public class FhirParsers {
+
+	private final FhirContext fhirContext;
+	private final ThreadLocal<IParser> jsonParser;
+	private final ThreadLocal<IParser> xmlParser;
+
+	public FhirParsers(FhirContext fhirContext) {
+		this.fhirContext = fhirContext;
+		this.jsonParser = ThreadLocal.withInitial(fhirContext::newJsonParser);
+		this.xmlParser = ThreadLocal.withInitial(fhirContext::newXmlParser);
+	}
+
+	/**
+	 * @return der JSON-Parser des aktuellen Threads
+	 */
+	public IParser jsonParser() {
+		return jsonParser.get();
+	}
+
+	/**
+	 * @return der XML-Parser des aktuellen Threads
+	 */
+	public IParser xmlParser() {
+		return xmlParser.get();
+	}
+
+	/**
+	 * @return der Parser des aktuellen Threads für das Format
+	 */
+	public IParser parser(FhirFormat format) {
+		return format == FhirFormat.XML ? xmlParser() : jsonParser();
+	}
+
+	/**
+	 * @return der geteilte FhirContext
+	 */
+	public FhirContext getFhirContext() {
+		return fhirContext;
+	}
+}
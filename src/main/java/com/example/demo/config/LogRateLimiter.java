@@ -0,0 +1,70 @@
+package com.example.demo.config;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Begrenzt die Anzahl der Logmeldungen je Art und Intervall.
+ * <p>
+ * Sendet ein Client massenhaft fehlerhafte Ressourcen oder fällt ein Teil der
+ * Anwendung dauerhaft aus, würde sonst jede Anfrage eine Meldung (im
+ * schlimmsten Fall mit Stacktrace) schreiben. Je Art werden höchstens
+ * {@code limit} Meldungen pro Intervall durchgelassen; wie viele unterdrückt
+ * wurden, erfährt die nächste durchgelassene Meldung.
+ * <p>
+ * Die Arten sollten eine kleine, feste Menge bilden (z.B. Klassennamen), da je
+ * Art ein Eintrag angelegt und nicht wieder entfernt wird.
+ */
+final class LogRateLimiter {
+
+	/**
+	 * Ergebnis von {@link LogRateLimiter#acquire}, wenn die Meldung unterdrückt
+	 * werden soll.
+	 */
+	static final long SUPPRESSED = -1;
+
+	private final int limit;
+	private final long intervalNanos;
+	private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+	LogRateLimiter(int limit, Duration interval) {
+		this.limit = limit;
+		this.intervalNanos = interval.toNanos();
+	}
+
+	/**
+	 * @param kind Art der Meldung
+	 * @return {@link #SUPPRESSED}, wenn die Meldung unterdrückt werden soll, sonst
+	 *         die Anzahl der seit der letzten Meldung dieser Art unterdrückten
+	 */
+	long acquire(String kind) {
+		return acquire(kind, System.nanoTime());
+	}
+
+	long acquire(String kind, long now) {
+		return windows.computeIfAbsent(kind, key -> new Window()).acquire(now);
+	}
+
+	private final class Window {
+		private boolean started;
+		private long start;
+		private int count;
+		private long suppressed;
+
+		synchronized long acquire(long now) {
+			if (!started || now - start >= intervalNanos) {
+				started = true;
+				start = now;
+				count = 0;
+			}
+			if (count < limit) {
+				count++;
+				long previous = suppressed;
+				suppressed = 0;
+				return previous;
+			}
+			suppressed++;
+			return SUPPRESSED;
+		}
+	}
+}
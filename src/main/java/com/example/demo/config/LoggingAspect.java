@@ -1,6 +1,6 @@
 package com.example.demo.config;
 
-import java.util.Arrays;
+import java.util.zip.ZipException;
 
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -10,11 +10,33 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import com.example.demo.controller.BadRequestException;
+import com.example.demo.service.CircuitOpenException;
+import com.example.demo.stream.JsonStreamException;
+import com.example.demo.stream.PayloadTooLargeException;
+import com.example.demo.stream.XmlStreamException;
+
+import ca.uhn.fhir.parser.DataFormatException;
+
+/**
+ * Protokolliert Ein- und Austritt der Methoden in Controller und Services auf
+ * DEBUG. Argumente und Rückgabewerte werden über den {@link TraceFormatter}
+ * gekürzt, geschwärzt und erst bei aktivem DEBUG-Level formatiert.
+ */
 @Aspect
 @Component
+@ConditionalOnProperty(prefix = "fhir-facade.tracing", name = "enabled", havingValue = "true", matchIfMissing = true)
 public class LoggingAspect {
+
+	private final TraceFormatter traceFormatter;
+
+	public LoggingAspect(FhirFacadeProperties fhirFacadeProperties) {
+		this.traceFormatter = new TraceFormatter(fhirFacadeProperties.getTracing());
+	}
+
 	/**
 	 * Pointcut that matches all Spring beans in the application's main packages.
 	 */
@@ -35,17 +57,30 @@ public class LoggingAspect {
 	}
 
 	/**
-	 * Advice that logs methods throwing exceptions.
+	 * Advice that logs methods throwing exceptions. Erwartete Fehler (ungültige Anfragen,
+	 * geöffneter Schutzschalter) werden nur auf DEBUG protokolliert, sie meldet der
+	 * {@link ExceptionAspect} bzw. die Fehlerdatei eines Bulk-Imports.
 	 *
 	 * @param joinPoint join point for advice.
 	 * @param e         exception.
 	 */
 	@AfterThrowing(pointcut = "applicationPackagePointcut()", throwing = "e")
 	public void logAfterThrowing(JoinPoint joinPoint, Throwable e) {
+		if (isExpected(e)) {
+			logger(joinPoint).debug("Rejected in {}(): {}", joinPoint.getSignature().getName(), e.getMessage());
+			return;
+		}
 		logger(joinPoint).error("Exception in {}() with cause = '{}' and exception = '{}'",
 				joinPoint.getSignature().getName(), e.getCause() != null ? e.getCause() : "NULL", e.getMessage(), e);
 	}
 
+	private static boolean isExpected(Throwable e) {
+		return e instanceof BadRequestException || e instanceof DataFormatException
+				|| e instanceof JsonStreamException || e instanceof XmlStreamException
+				|| e instanceof CircuitOpenException || e instanceof PayloadTooLargeException
+				|| e instanceof ZipException;
+	}
+
 	/**
 	 * Advice that logs when a method is entered and exited.
 	 *
@@ -56,18 +91,20 @@ public class LoggingAspect {
 	@Around("applicationPackagePointcut()")
 	public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
 		Logger log = logger(joinPoint);
-		if (log.isDebugEnabled()) {
+		boolean trace = log.isDebugEnabled() && traceFormatter.sample();
+		if (trace) {
 			log.debug("Enter: {}() with argument[s] = {}", joinPoint.getSignature().getName(),
-					Arrays.toString(joinPoint.getArgs()));
+					traceFormatter.formatAll(joinPoint.getArgs()));
 		}
 		try {
 			Object result = joinPoint.proceed();
-			if (log.isDebugEnabled()) {
-				log.debug("Exit: {}() with result = {}", joinPoint.getSignature().getName(), result);
+			if (trace) {
+				log.debug("Exit: {}() with result = {}", joinPoint.getSignature().getName(),
+						traceFormatter.format(result));
 			}
 			return result;
 		} catch (IllegalArgumentException e) {
-			log.error("Illegal argument: {} in {}()", Arrays.toString(joinPoint.getArgs()),
+			log.error("Illegal argument: {} in {}()", traceFormatter.formatAll(joinPoint.getArgs()),
 					joinPoint.getSignature().getName());
 			throw e;
 		}
@@ -0,0 +1,77 @@
+package com.example.demo.config;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wärmt die Anwendung nach dem Start in einem eigenen Thread auf, wenn
+ * {@code fhir-facade.startup.warmup=background} gesetzt ist (Profil
+ * fast-startup): Die Fassade nimmt bereits Anfragen an, während die verzögert
+ * erzeugten Beans angelegt und die FHIR-Modelle der verarbeiteten und
+ * abgebildeten Ressourcentypen eingelesen werden. Eine Anfrage, die früher
+ * eintrifft, erzeugt die benötigten Beans bzw. Modelle selbst.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(prefix = "fhir-facade.startup", name = "warmup", havingValue = "background")
+public class StartupWarmup implements ApplicationListener<ApplicationReadyEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		Thread thread = new Thread(() -> warmUp(event), "startup-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void warmUp(ApplicationReadyEvent event) {
+		long start = System.nanoTime();
+		try {
+			createLazySingletons(event.getApplicationContext().getBeanFactory());
+			FhirParsers fhirParsers = event.getApplicationContext().getBean(FhirParsers.class);
+			FhirFacadeProperties properties = event.getApplicationContext().getBean(FhirFacadeProperties.class);
+			Set<String> resourceTypes = new LinkedHashSet<>();
+			FhirConfiguration.RESOURCE_TYPES.forEach(type -> resourceTypes.add(type.getSimpleName()));
+			properties.getMappings().values().forEach(mapping -> resourceTypes.add(mapping.getResourceType()));
+			for (String resourceType : resourceTypes) {
+				fhirParsers.getFhirContext().getResourceDefinition(resourceType);
+			}
+			// Lädt die Klassen des Parsers und der Serialisierung
+			fhirParsers.jsonParser().parseResource(Patient.class,
+					fhirParsers.jsonParser().encodeResourceToString(new Patient().setActive(true)));
+			fhirParsers.jsonParser().encodeResourceToString(new OperationOutcome());
+			logger.info("Warm-up of {} finished in {} ms", resourceTypes, (System.nanoTime() - start) / 1_000_000);
+		} catch (RuntimeException e) {
+			// z.B. weil die Anwendung inzwischen beendet wird
+			logger.warn("Warm-up failed after {} ms", (System.nanoTime() - start) / 1_000_000, e);
+		}
+	}
+
+	/**
+	 * Erzeugt die verzögert erzeugten Singletons. Nicht über
+	 * {@code preInstantiateSingletons()}, das beim Start bereits gelaufen ist und
+	 * bei einem zweiten Aufruf u.a. die Event-Listener erneut registrieren würde.
+	 */
+	static void createLazySingletons(ConfigurableListableBeanFactory beanFactory) {
+		for (String name : beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition definition = beanFactory.getMergedBeanDefinition(name);
+			if (definition.isSingleton() && definition.isLazyInit() && !definition.isAbstract()
+					&& !beanFactory.containsSingleton(name)) {
+				beanFactory.getBean(name);
+			}
+		}
+	}
+}
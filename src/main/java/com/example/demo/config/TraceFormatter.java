@@ -0,0 +1,130 @@
+package com.example.demo.config;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Formatiert Methodenargumente und Rückgabewerte für das Tracing.
+ * <p>
+ * Die Formatierung ist verzögert: {@link #format(Object)} und
+ * {@link #formatAll(Object[])} liefern ein Objekt, dessen {@code toString()}
+ * erst aufgerufen wird, wenn der Logger die Meldung tatsächlich schreibt. Jeder
+ * Wert wird auf {@code maxLength} Zeichen gekürzt. Mit aktivierter Schwärzung
+ * werden nur Typ und Größe von Werten ausgegeben, die Patientendaten enthalten
+ * können (Zeichenketten, FHIR-Ressourcen, Datumswerte, unbekannte Objekte).
+ */
+public class TraceFormatter {
+
+	private static final String APPLICATION_PACKAGE = "com.example.demo.";
+
+	private final int maxLength;
+	private final boolean redact;
+	private final double sampleRate;
+
+	public TraceFormatter(int maxLength, boolean redact, double sampleRate) {
+		this.maxLength = maxLength;
+		this.redact = redact;
+		this.sampleRate = sampleRate;
+	}
+
+	public TraceFormatter(FhirFacadeProperties.Tracing tracing) {
+		this(tracing.getMaxArgumentLength(), tracing.isRedact(), tracing.getSampleRate());
+	}
+
+	/**
+	 * @return true, wenn der aktuelle Aufruf protokolliert werden soll
+	 */
+	public boolean sample() {
+		return sampleRate >= 1.0 || sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	/**
+	 * @return verzögert formatierter Wert
+	 */
+	public Object format(Object value) {
+		return new Lazy(() -> describe(value));
+	}
+
+	/**
+	 * @return verzögert formatierte Argumentliste
+	 */
+	public Object formatAll(Object[] values) {
+		return new Lazy(() -> {
+			StringBuilder builder = new StringBuilder("[");
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				builder.append(describe(values[i]));
+			}
+			return builder.append(']').toString();
+		});
+	}
+
+	/**
+	 * Kürzt einen Text auf die angegebene Länge und hängt die Anzahl der
+	 * ausgelassenen Zeichen an.
+	 */
+	public static String truncate(String text, int maxLength) {
+		if (text == null || text.length() <= maxLength) {
+			return text;
+		}
+		return text.substring(0, maxLength) + "...(+" + (text.length() - maxLength) + " chars)";
+	}
+
+	String describe(Object value) {
+		if (value == null) {
+			return "null";
+		}
+		if (value instanceof byte[]) {
+			return "byte[" + ((byte[]) value).length + "]";
+		}
+		if (value instanceof Number || value instanceof Boolean || value instanceof Enum) {
+			return String.valueOf(value);
+		}
+		if (value instanceof CharSequence) {
+			CharSequence text = (CharSequence) value;
+			return redact ? "String[" + text.length() + " chars]" : truncate(text.toString(), maxLength);
+		}
+		if (value instanceof IBaseResource) {
+			return redact ? ((IBaseResource) value).fhirType() : truncate(value.toString(), maxLength);
+		}
+		if (value instanceof ResponseEntity) {
+			ResponseEntity<?> response = (ResponseEntity<?>) value;
+			return "ResponseEntity[status=" + response.getStatusCode().value() + ", body="
+					+ describe(response.getBody()) + "]";
+		}
+		if (value instanceof Collection) {
+			return value.getClass().getSimpleName() + "[size=" + ((Collection<?>) value).size() + "]";
+		}
+		if (value instanceof Map) {
+			return value.getClass().getSimpleName() + "[size=" + ((Map<?, ?>) value).size() + "]";
+		}
+		// Eigene Klassen geben in toString() keine Patientendaten aus
+		if (!redact || value.getClass().getName().startsWith(APPLICATION_PACKAGE)) {
+			return truncate(String.valueOf(value), maxLength);
+		}
+		return value.getClass().getSimpleName();
+	}
+
+	/**
+	 * Formatiert erst beim Aufruf von {@link #toString()}.
+	 */
+	private static final class Lazy {
+		private final Supplier<String> supplier;
+
+		Lazy(Supplier<String> supplier) {
+			this.supplier = supplier;
+		}
+
+		@Override
+		public String toString() {
+			return supplier.get();
+		}
+	}
+}
@@ -2,10 +2,21 @@ package com.example.demo.controller;
 
 import java.util.List;
 
+/**
+ * Wird geworfen, wenn eine Ressource nicht abgebildet werden kann, weil
+ * Pflichtangaben fehlen oder ungültig sind.
+ * <p>
+ * Die Ausnahme beschreibt einen Fehler des Clients und wird häufig geworfen;
+ * sie trägt deshalb keinen Stacktrace, dessen Erzeugung teurer wäre als die
+ * Prüfung selbst.
+ */
 public class BadRequestException extends Exception {
+	private static final long serialVersionUID = 1L;
+
 	private final List<String> errorMessages;
 
 	public BadRequestException(List<String> errorMessages) {
+		super(String.join("; ", errorMessages), null, false, false);
 		this.errorMessages = errorMessages;
 	}
 
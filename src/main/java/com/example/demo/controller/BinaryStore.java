@@ -0,0 +1,177 @@
+package com.example.demo.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.stream.SpooledContent;
+
+/**
+ * Hochgeladene Binaries, bis eine DocumentReference sie mit attachment.url
+ * verwendet. Der Inhalt liegt Base64-kodiert in einem {@link SpooledContent},
+ * so wie ihn die proprietäre API erwartet.
+ * <p>
+ * Jedes Binary wird von genau einer DocumentReference übernommen
+ * ({@link #remove}) und danach mit ihr freigegeben, scheitert ihre
+ * Weiterleitung, wird es mit {@link #restore} zurückgelegt. Nicht verwendete Binaries
+ * verfallen nach der Lebensdauer, bei Überschreiten der Höchstzahl werden die
+ * ältesten verworfen.
+ */
+class BinaryStore implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinaryStore.class);
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	// In Einfügereihenfolge, die ältesten Einträge verfallen zuerst
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+	BinaryStore(int maxEntries, Duration ttl) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttl.toNanos();
+	}
+
+	/**
+	 * Ein gespeichertes Binary.
+	 */
+	static final class Entry {
+		private final String contentType;
+		private final SpooledContent content;
+		private final long expiresAt;
+
+		Entry(String contentType, SpooledContent content, long expiresAt) {
+			this.contentType = contentType;
+			this.content = content;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * @return der Content-Type des Uploads oder null
+		 */
+		String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @return der Base64-kodierte Inhalt
+		 */
+		SpooledContent getContent() {
+			return content;
+		}
+	}
+
+	/**
+	 * Speichert ein Binary unter einer neuen ID.
+	 *
+	 * @param contentType der Content-Type des Uploads oder null
+	 * @param content     der vollständig geschriebene, Base64-kodierte Inhalt
+	 * @return die ID des Binary
+	 */
+	String put(String contentType, SpooledContent content) {
+		String id = UUID.randomUUID().toString();
+		store(id, contentType, content);
+		return id;
+	}
+
+	private void store(String id, String contentType, SpooledContent content) {
+		List<Entry> evicted;
+		synchronized (this) {
+			long now = System.nanoTime();
+			evicted = evict(now);
+			entries.put(id, new Entry(contentType, content, now + ttlNanos));
+			Iterator<Entry> oldest = entries.values().iterator();
+			while (entries.size() > maxEntries) {
+				evicted.add(oldest.next());
+				oldest.remove();
+			}
+		}
+		release(evicted);
+	}
+
+	/**
+	 * @param id die ID des Binary
+	 * @return das Binary oder null, wenn es unbekannt, verfallen oder bereits
+	 *         verwendet ist; es bleibt gespeichert
+	 */
+	Entry get(String id) {
+		List<Entry> evicted;
+		Entry entry;
+		synchronized (this) {
+			evicted = evict(System.nanoTime());
+			entry = entries.get(id);
+		}
+		release(evicted);
+		return entry;
+	}
+
+	/**
+	 * Entfernt ein mit {@link #get} gelesenes Binary, der Aufrufer übernimmt die
+	 * Freigabe des Inhalts.
+	 *
+	 * @return false, wenn das Binary inzwischen verfallen oder von einer anderen
+	 *         DocumentReference übernommen ist
+	 */
+	synchronized boolean remove(String id, Entry entry) {
+		return entries.remove(id, entry);
+	}
+
+	/**
+	 * Legt ein mit {@link #remove} übernommenes Binary zurück, z.B. weil die
+	 * DocumentReference nicht weitergeleitet werden konnte. Es verfällt danach
+	 * wieder erst nach der vollen Lebensdauer.
+	 */
+	void restore(String id, Entry entry) {
+		store(id, entry.contentType, entry.content);
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() {
+		List<Entry> all;
+		synchronized (this) {
+			all = new ArrayList<>(entries.values());
+			entries.clear();
+		}
+		release(all);
+	}
+
+	private List<Entry> evict(long now) {
+		List<Entry> evicted = new ArrayList<>();
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry.expiresAt - now > 0) {
+				break;
+			}
+			evicted.add(entry);
+			iterator.remove();
+		}
+		return evicted;
+	}
+
+	/**
+	 * Gibt die Inhalte außerhalb der Sperre frei, dabei werden ggf. temporäre
+	 * Dateien gelöscht.
+	 */
+	private static void release(List<Entry> evicted) {
+		for (Entry entry : evicted) {
+			try {
+				entry.content.close();
+			} catch (IOException e) {
+				logger.warn("Could not release binary content {}", entry.content, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.demo.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.example.demo.bulk.BulkImport;
+import com.example.demo.bulk.ImportJob;
+import com.example.demo.config.FhirParsers;
+
+/**
+ * Endpunkte des Bulk-Imports nach dem Muster der FHIR Bulk Data API.
+ * <p>
+ * {@code POST /$import} nimmt NDJSON als Anfragekörper oder über
+ * {@code ?file=} eine lokale Datei aus {@code allowedDirectory} an und
+ * antwortet mit 202 und der Adresse des Status in {@code Content-Location}.
+ * Der Status liefert 202 mit dem Fortschritt in {@code X-Progress}, solange der
+ * Import läuft, danach 200 mit den Zählern und der Adresse der Fehlerdatei (ein
+ * OperationOutcome je fehlerhafter Zeile, ebenfalls NDJSON).
+ */
+@RestController
+@ConditionalOnProperty(prefix = "fhir-facade.bulk-import", name = "enabled", havingValue = "true",
+		matchIfMissing = true)
+public class BulkImportController {
+
+	static final String IMPORT = "/$import";
+	static final String STATUS = "/$import-poll-status/{id}";
+	static final MediaType NDJSON = MediaType.parseMediaType("application/fhir+ndjson");
+
+	private final BulkImport bulkImport;
+	private final FhirParsers fhirParsers;
+
+	public BulkImportController(BulkImport bulkImport, FhirParsers fhirParsers) {
+		this.bulkImport = bulkImport;
+		this.fhirParsers = fhirParsers;
+	}
+
+	@PostMapping(IMPORT)
+	public ResponseEntity<String> startImport(@RequestParam(name = "file", required = false) String file,
+			InputStream body) throws BadRequestException, IOException {
+		ImportJob job;
+		if (file != null) {
+			try {
+				job = bulkImport.start(file);
+			} catch (IllegalArgumentException e) {
+				throw new BadRequestException(List.of(e.getMessage()));
+			}
+		} else {
+			job = bulkImport.start(body);
+		}
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+				.header(HttpHeaders.CONTENT_LOCATION, statusUri(job).toString()).contentType(MediaType.APPLICATION_JSON)
+				.body(outcome(IssueSeverity.INFORMATION, IssueType.INFORMATIONAL,
+						"Import " + job.getId() + " accepted."));
+	}
+
+	@GetMapping(STATUS)
+	public ResponseEntity<?> importStatus(@PathVariable String id) {
+		ImportJob job = bulkImport.get(id);
+		if (job == null) {
+			return notFound(id);
+		}
+		switch (job.getStatus()) {
+		case IN_PROGRESS:
+			return ResponseEntity.status(HttpStatus.ACCEPTED)
+					.header("X-Progress",
+							job.getProgress() + "% (" + job.getLines() + " lines, " + job.getFailed() + " errors)")
+					.build();
+		case FAILED:
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+					.body(outcome(IssueSeverity.ERROR, IssueType.EXCEPTION,
+							"Import " + id + " failed: " + job.getFailure()));
+		default:
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(manifest(job));
+		}
+	}
+
+	@GetMapping(STATUS + "/errors")
+	public ResponseEntity<?> importErrors(@PathVariable String id) {
+		ImportJob job = bulkImport.get(id);
+		if (job == null) {
+			return notFound(id);
+		}
+		return ResponseEntity.ok().contentType(NDJSON).body(new FileSystemResource(job.getErrors()));
+	}
+
+	@DeleteMapping(STATUS)
+	public ResponseEntity<String> cancelImport(@PathVariable String id) {
+		if (!bulkImport.cancel(id)) {
+			return notFound(id);
+		}
+		return ResponseEntity.status(HttpStatus.ACCEPTED).contentType(MediaType.APPLICATION_JSON)
+				.body(outcome(IssueSeverity.INFORMATION, IssueType.INFORMATIONAL, "Import " + id + " cancelled."));
+	}
+
+	/**
+	 * Ergebnis eines abgeschlossenen Imports im Stil eines Bulk-Data-Manifests.
+	 */
+	private static Map<String, Object> manifest(ImportJob job) {
+		Map<String, Object> manifest = new LinkedHashMap<>();
+		manifest.put("transactionTime", job.getCreatedAt().toString());
+		manifest.put("request", ServletUriComponentsBuilder.fromCurrentContextPath().path(IMPORT).toUriString());
+		manifest.put("requiresAccessToken", false);
+		manifest.put("status", job.getStatus().name().toLowerCase());
+		manifest.put("output", List.of(Map.of("type", "Resource", "count", job.getSucceeded())));
+		manifest.put("error", List.of(Map.of("type", "OperationOutcome", "count", job.getFailed(), "url",
+				ServletUriComponentsBuilder.fromCurrentContextPath().path(STATUS + "/errors")
+						.buildAndExpand(job.getId()).toUriString())));
+		return manifest;
+	}
+
+	private static URI statusUri(ImportJob job) {
+		return ServletUriComponentsBuilder.fromCurrentContextPath().path(STATUS).buildAndExpand(job.getId()).toUri();
+	}
+
+	private ResponseEntity<String> notFound(String id) {
+		return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+				.body(outcome(IssueSeverity.ERROR, IssueType.NOTFOUND, "Unknown import " + id));
+	}
+
+	/**
+	 * Kodiert ein OperationOutcome als JSON. Die Meldungen nennen die ID des
+	 * Imports und wiederholen sich nicht, sie werden daher nicht im
+	 * {@link OperationOutcomeCache} abgelegt.
+	 */
+	private String outcome(IssueSeverity severity, IssueType code, String diagnostics) {
+		return fhirParsers.jsonParser().encodeResourceToString(OperationOutcomes.of(severity, code, diagnostics));
+	}
+}
@@ -1,157 +1,1077 @@
 package com.example.demo.controller;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 
-import org.hl7.fhir.instance.model.api.IPrimitiveType;
-import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryResponseComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.hl7.fhir.r4.model.DocumentReference;
 import org.hl7.fhir.r4.model.HumanName;
-import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
 import org.hl7.fhir.r4.model.Patient;
-import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.demo.admission.AdmissionFilter;
+import com.example.demo.bulk.ImportProcessor;
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFormat;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.index.PatientIndex;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.mapping.ResourceMapping;
+import com.example.demo.outbox.Outbox;
+import com.example.demo.service.CircuitOpenException;
+import com.example.demo.service.OutboundLimiter;
+import com.example.demo.service.OutboundRequest;
 import com.example.demo.service.ProprietaryApiService;
+import com.example.demo.stream.ContentHash;
+import com.example.demo.stream.CountingInputStream;
+import com.example.demo.stream.DocumentReferenceReader;
+import com.example.demo.stream.DocumentReferenceXmlReader;
+import com.example.demo.stream.FhirXmlReader;
+import com.example.demo.stream.HashingInputStream;
+import com.example.demo.stream.JsonPullReader;
+import com.example.demo.stream.JsonStreamException;
+import com.example.demo.stream.SelectiveExtractor;
+import com.example.demo.stream.SelectiveExtractor.ValueType;
+import com.example.demo.stream.SpooledContent;
+import com.example.demo.stream.StreamedDocumentReference;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController // Kennzeichnet diese Klasse als Spring REST Controller
 @RequestMapping // Basis-URL für alle Endpunkte in dieser Klasse
-public class FhirController {
+public class FhirController implements ImportProcessor, DisposableBean {
 
+	private static final Logger logger = LoggerFactory.getLogger(FhirController.class);
 	private static final String DOCUMENT_REFERENCE = "DocumentReference";
+	private static final String PATIENT = "Patient";
+	private static final String BUNDLE = "Bundle";
+	private static final String BINARY = "Binary";
+	private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+	private static final MediaType FHIR_XML = MediaType.parseMediaType("application/fhir+xml");
+	private static final String INBOUND = "inbound";
+	static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	static final String IF_NONE_EXIST = "If-None-Exist";
+	private static final String CONTENT_HASH = "Content-Hash";
+	// Von createPatient benötigte Elemente für die schnelle Extraktion
+	private static final String NAME = "name[0]";
+	private static final String GIVEN = "name[0].given[*]";
+	private static final String FAMILY = "name[0].family";
+	private static final String BIRTH_DATE = "birthDate";
+	// Patienten-ID für das Patientenverzeichnis
+	private static final String IDENTIFIER = "identifier[0].value";
+	// Öffentlich, damit der ParseBenchmark dieselben Pfade misst
+	public static final SelectiveExtractor PATIENT_EXTRACTOR = new SelectiveExtractor(PATIENT,
+			Map.of(NAME, ValueType.PRESENT, GIVEN, ValueType.STRING, FAMILY, ValueType.STRING, BIRTH_DATE,
+					ValueType.DATE, IDENTIFIER, ValueType.STRING));
+	// Die daraus in parsePatient übernommenen Elemente, siehe PathExpression.elements()
+	private static final Set<String> PATIENT_ELEMENTS = Set.of("name[*]", GIVEN, FAMILY, BIRTH_DATE, "identifier[*]",
+			IDENTIFIER);
 	private final ProprietaryApiService proprietaryApiService;
+	private final DocumentReferenceReader documentReferenceReader;
+	private final DocumentReferenceXmlReader documentReferenceXmlReader;
+	private final int documentSpoolThreshold;
+	// Hochgeladene Binaries bis zur Verwendung durch eine DocumentReference
+	private final BinaryStore binaryStore;
+	private final int bundleParallelism;
+	// Outbox für das Annehmen und spätere Zustellen, null wenn deaktiviert
+	private final Outbox outbox;
+	// Verzeichnis der angelegten Patienten, null wenn deaktiviert
+	private final PatientIndex patientIndex;
+	// Lehnt Dokumente zu unbekannten Patienten ab, statt sie nur zu zählen
+	private final boolean rejectUnknownPatients;
 
-	public FhirController(ProprietaryApiService proprietaryApiService) {
+	// Geteilte, pro Thread wiederverwendete FHIR-Parser
+	private final FhirParsers fhirParsers;
+	private final FacadeMetrics metrics;
+	// Antworten kürzlich weitergeleiteter Ressourcen, null wenn deaktiviert
+	private final IdempotencyCache<ResponseEntity<String>> idempotencyCache;
+	private final boolean contentHash;
+	// Header, an dem Idempotency-Keys wie in der Zugangskontrolle ihrem Client
+	// zugeordnet werden
+	private final String clientIdHeader;
+	private final boolean fastPathExtraction;
+	// false, wenn die Abbildung der DocumentReference mehr als die beim Streamen
+	// extrahierten Elemente liest
+	private final boolean streamDocumentReferences;
+	// Abbildungen der Ressourcentypen auf die proprietäre API
+	private final MappingEngine mappingEngine;
+
+	public FhirController(ProprietaryApiService proprietaryApiService, FhirFacadeProperties fhirFacadeProperties,
+			FhirParsers fhirParsers, MappingEngine mappingEngine, ObjectProvider<Outbox> outbox,
+			ObjectProvider<PatientIndex> patientIndex, FacadeMetrics metrics) {
 		this.proprietaryApiService = proprietaryApiService;
+		this.mappingEngine = mappingEngine;
+		this.metrics = metrics;
+		this.outbox = outbox.getIfAvailable();
+		this.patientIndex = patientIndex.getIfAvailable();
+		this.rejectUnknownPatients = fhirFacadeProperties.getPatientIndex()
+				.getMode() == FhirFacadeProperties.PatientIndex.Mode.REJECT;
+		this.fhirParsers = fhirParsers;
+		this.documentReferenceReader = new DocumentReferenceReader(fhirFacadeProperties.getDocumentSpoolThreshold());
+		this.documentReferenceXmlReader = new DocumentReferenceXmlReader(
+				fhirFacadeProperties.getDocumentSpoolThreshold());
+		this.documentSpoolThreshold = fhirFacadeProperties.getDocumentSpoolThreshold();
+		FhirFacadeProperties.Binary binary = fhirFacadeProperties.getBinary();
+		this.binaryStore = new BinaryStore(binary.getMaxEntries(), binary.getTtl());
+		this.bundleParallelism = fhirFacadeProperties.getBundleParallelism();
+		FhirFacadeProperties.Idempotency idempotency = fhirFacadeProperties.getIdempotency();
+		this.idempotencyCache = idempotency.isEnabled()
+				? new IdempotencyCache<>(idempotency.getMaxEntries(), idempotency.getTtl(),
+						response -> response.getStatusCode().is2xxSuccessful())
+				: null;
+		this.contentHash = idempotency.isEnabled() && idempotency.isContentHash();
+		this.clientIdHeader = fhirFacadeProperties.getAdmission().getClientIdHeader();
+		this.fastPathExtraction = fhirFacadeProperties.isFastPathExtraction() && readsOnly(PATIENT, PATIENT_ELEMENTS);
+		this.streamDocumentReferences = readsOnly(DOCUMENT_REFERENCE, StreamedDocumentReference.ELEMENTS);
+		if (fhirFacadeProperties.isFastPathExtraction() && !fastPathExtraction) {
+			logger.warn("The patient mapping reads elements the fast path extraction does not cover, "
+					+ "patients are parsed with HAPI");
+		}
+		if (!streamDocumentReferences) {
+			logger.warn("The document reference mapping reads elements the streaming reader does not cover, "
+					+ "document references are parsed with HAPI and held in memory");
+		}
 	}
 
-	// Erzeugt ein FhirContext-Objekt für FHIR R4
-	private final FhirContext fhirContext = FhirContext.forR4();
+	/**
+	 * @return true, wenn die Abbildung des Ressourcentyps nur die angegebenen
+	 *         Elemente liest oder keine Abbildung konfiguriert ist
+	 */
+	private boolean readsOnly(String resourceType, Set<String> elements) {
+		ResourceMapping mapping = mappingEngine.get(resourceType);
+		return mapping == null || mapping.readsOnly(elements);
+	}
 
-	@PostMapping("/Patient") // Mapped HTTP POST-Anfragen auf diesen Endpunkt
-	public ResponseEntity<String> createPatient(@RequestBody String patientResource) throws BadRequestException {
-		// Erzeugt einen JSON-Parser für FHIR
-		IParser parser = fhirContext.newJsonParser();
-		// Parsen des Patient-Ressource-Strings in ein Patient-Objekt
-		Patient patient = parser.parseResource(Patient.class, patientResource);
-		List<String> issues = new ArrayList<>();
-		List<HumanName> name = patient.getName();
-		if (name.isEmpty()) {
-			issues.add("Missing patient name (Patient.name)");
-		}
-		// Extrahieren des Geburtsdatums aus der Patient-Ressource
-		String birthDate = patient.getBirthDateElement().getValueAsString();
-		if (birthDate == null) {
-			issues.add("Missing birthdate (Patient.birthdate)");
-		}
-		// Falls Fehler aufgetreten sind, sammeln wir alle Fehlermeldungen in die
-		// Ausnahme
-		if (!issues.isEmpty()) {
-			throw new BadRequestException(issues);
+	@PostMapping("/" + PATIENT) // Mapped HTTP POST-Anfragen auf diesen Endpunkt
+	public CompletableFuture<ResponseEntity<String>> createPatient(InputStream patientResource,
+			@RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+			@RequestHeader(name = IF_NONE_EXIST, required = false) String ifNoneExist,
+			@RequestHeader(name = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+			HttpServletRequest servletRequest) throws BadRequestException, IOException {
+		// Parsen der Patient-Ressource in ein Patient-Objekt, als JSON mit der
+		// schnellen Extraktion, falls aktiviert
+		FhirFormat format = FhirFormat.ofContentType(contentType);
+		return create(PATIENT, patientResource, requestKeys(PATIENT, servletRequest, idempotencyKey, ifNoneExist),
+				body -> parsePatient(body, format));
+	}
+
+	/**
+	 * Nimmt eine Ressource eines weiteren Typs an, für den eine Abbildung
+	 * konfiguriert ist ({@code fhir-facade.mappings.*}), z.B. Encounter oder
+	 * Observation. Für andere Typen antwortet die Fassade mit 404 Not Found.
+	 */
+	@PostMapping("/{resourceType}")
+	public CompletableFuture<ResponseEntity<String>> createResource(@PathVariable String resourceType,
+			InputStream resource, @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+			@RequestHeader(name = IF_NONE_EXIST, required = false) String ifNoneExist,
+			HttpServletRequest servletRequest) throws BadRequestException, IOException {
+		if (mappingEngine.get(resourceType) == null) {
+			FhirFormat responseFormat = FhirFormat.negotiate(servletRequest);
+			OperationOutcome outcome = OperationOutcomes.of(IssueSeverity.ERROR, IssueType.NOTSUPPORTED,
+					"Unsupported resource type " + resourceType);
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND)
+					.contentType(responseFormat.getMediaType())
+					.body(fhirParsers.parser(responseFormat).encodeResourceToString(outcome)));
 		}
+		Class<? extends IBaseResource> type = fhirParsers.getFhirContext().getResourceDefinition(resourceType)
+				.getImplementingClass();
+		FhirFormat format = FhirFormat.ofRequest(servletRequest);
+		return create(resourceType, resource, requestKeys(resourceType, servletRequest, idempotencyKey, ifNoneExist),
+				body -> (Resource) parse(type, resourceType, body, format));
+	}
 
-		// Extrahieren des Vornamens aus der Patient-Ressource
-		String firstName = name.get(0).getGiven().stream().map(IPrimitiveType::getValue)
-				.collect(Collectors.joining(" "));
-		// Extrahieren des Nachnamens aus der Patient-Ressource
-		String lastName = name.get(0).getFamily();
+	/**
+	 * Liest, prüft und sendet eine Ressource, deren Typ über eine Abbildung an
+	 * die proprietäre API weitergeleitet wird.
+	 */
+	private CompletableFuture<ResponseEntity<String>> create(String resourceType, InputStream resourceBody,
+			List<String> requestKeys, ResourceParser parser) throws BadRequestException, IOException {
+		CompletableFuture<ResponseEntity<String>> response = new CompletableFuture<>();
+		try {
+			byte[] body = readBody(resourceType, resourceBody);
+			// Wiederholte Anfragen und gleicher Inhalt werden ohne Parsen und erneutes
+			// Senden beantwortet
+			String hash = hashes(requestKeys) ? ContentHash.of(body) : null;
+			CompletableFuture<ResponseEntity<String>> duplicate = claim(resourceType, requestKeys, hash, response);
+			if (duplicate != null) {
+				return duplicate;
+			}
+			Resource resource = parser.parse(body);
 
-		// Konvertierung des Geburtsdatums in das gewünschte Format
-		birthDate = convertDate(birthDate);
+			// Sendet die Daten an die proprietäre API, die Antwort wird asynchron
+			// geschrieben, sobald die API geantwortet hat
+			forward(resource, prepare(resource)).thenApply(status -> {
+				if (status == HttpStatus.CREATED) {
+					return ResponseEntity.status(status).body(resourceType + " created successfully.");
+				} else if (status == HttpStatus.ACCEPTED) {
+					return ResponseEntity.status(status).body(resourceType + " accepted for delivery.");
+				} else {
+					return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal Server Error.");
+				}
+			}).whenComplete(completeTo(response));
+			return response;
+		} catch (BadRequestException | IOException | RuntimeException e) {
+			response.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Prüft die Ressource und bildet sie mit der konfigurierten Abbildung ihres
+	 * Typs auf eine Anfrage an die proprietäre API ab.
+	 *
+	 * @param resource die Ressource
+	 * @return die Anfrage an die proprietäre API
+	 * @throws BadRequestException wenn Pflichtangaben fehlen
+	 */
+	OutboundRequest prepare(Resource resource) throws BadRequestException {
+		OutboundRequest request = mapping(resource.fhirType()).map(resource, null);
+		// Patienten mit numerischer ID teilen sich die Partition mit ihren Dokumenten
+		// (patientId) und landen damit auf derselben Instanz der proprietären API
+		Integer patientId = patientId(resource);
+		return patientId == null ? request : request.withPartitionKey(String.valueOf(patientId));
+	}
 
-		// Sendet die Patientendaten an die proprietäre API
-		boolean apiSuccess = proprietaryApiService.sendPatientData(firstName, lastName, birthDate);
+	@PostMapping("/" + DOCUMENT_REFERENCE)
+	public CompletableFuture<ResponseEntity<String>> createDocumentReference(InputStream documentReferenceResource,
+			@RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+			@RequestHeader(name = IF_NONE_EXIST, required = false) String ifNoneExist,
+			@RequestHeader(name = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+			HttpServletRequest servletRequest) throws BadRequestException, IOException {
+		CompletableFuture<ResponseEntity<String>> response = new CompletableFuture<>();
+		List<String> requestKeys = requestKeys(DOCUMENT_REFERENCE, servletRequest, idempotencyKey, ifNoneExist);
+		StreamedDocumentReference documentReference = null;
+		try {
+			// Liest die DocumentReference (JSON oder XML) als Stream, der Base64-Inhalt
+			// wird dabei unverändert zwischengespeichert und nicht dekodiert. Lesen und
+			// Parsen geschehen dabei in einem Schritt, der Hash des Inhalts wird nebenbei
+			// berechnet.
+			Timer.Sample sample = metrics.start();
+			CountingInputStream in = new CountingInputStream(documentReferenceResource);
+			HashingInputStream hashing = hashes(requestKeys) ? new HashingInputStream(in) : null;
+			documentReference = readDocumentReference(hashing != null ? hashing : in,
+					FhirFormat.ofContentType(contentType));
+			String hash = hashing != null ? hashing.finish() : null;
+			metrics.stage(sample, FacadeMetrics.PARSE, DOCUMENT_REFERENCE);
+			metrics.payloadSize(INBOUND, DOCUMENT_REFERENCE, in.getCount());
+			// Wiederholte Anfragen und gleicher Inhalt werden ohne erneutes Senden
+			// beantwortet
+			CompletableFuture<ResponseEntity<String>> duplicate = claim(DOCUMENT_REFERENCE, requestKeys, hash,
+					response);
+			if (duplicate != null) {
+				closeQuietly(documentReference);
+				return duplicate;
+			}
 
-		if (apiSuccess) {
-			return ResponseEntity.status(HttpStatus.CREATED).body("Patient created successfully.");
-		} else {
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal Server Error.");
+			// Sendet die Dokumentdaten an die proprietäre API, der Base64-Inhalt wird
+			// direkt aus dem Zwischenspeicher übertragen. Der Zwischenspeicher wird erst
+			// freigegeben, wenn der Aufruf abgeschlossen ist.
+			StreamedDocumentReference spooled = documentReference;
+			forward(prepareDocumentReference(documentReference))
+					.whenComplete((status, error) -> release(spooled, status)).thenApply(status -> {
+						if (status == HttpStatus.CREATED) {
+							// Gibt eine Erfolgsantwort zurück, wenn die API-Anfrage erfolgreich war
+							return ResponseEntity.status(status).body("Document created successfully.");
+						} else if (status == HttpStatus.ACCEPTED) {
+							// Das Dokument liegt in der Outbox und wird später zugestellt
+							return ResponseEntity.status(status).body("Document accepted for delivery.");
+						} else {
+							// Gibt eine Fehlerantwort zurück, wenn die API-Anfrage fehlschlägt
+							return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+									.body("Internal Server Error.");
+						}
+					}).whenComplete(completeTo(response));
+			return response;
+		} catch (BadRequestException | IOException | RuntimeException e) {
+			if (documentReference != null) {
+				release(documentReference, null);
+			}
+			response.completeExceptionally(e);
+			throw e;
 		}
 	}
 
-	private static final String KDL_SYSTEM = "http://dvmd.de/fhir/CodeSystem/kdl";
-	public static final String ABRECHNUNGSNUMMER = "AN";
+	/**
+	 * Nimmt den Inhalt eines Dokuments als Binary an: roh im eigenen Format (z.B.
+	 * application/pdf oder ein CDA-Dokument als application/xml) oder als
+	 * FHIR-Binary-Ressource in JSON bzw. XML (application/fhir+xml). Der rohe
+	 * Inhalt wird beim Empfang Base64-kodiert zwischengespeichert, da die
+	 * proprietäre API ihn so erwartet; die Base64-Daten einer Binary-Ressource
+	 * werden unverändert übernommen. Eine DocumentReference verwendet das Binary
+	 * anschließend mit {@code attachment.url} "Binary/&lt;id&gt;".
+	 */
+	@PostMapping("/" + BINARY)
+	public ResponseEntity<String> createBinary(InputStream binaryResource,
+			@RequestHeader(name = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+			HttpServletRequest servletRequest) throws BadRequestException, IOException {
+		Timer.Sample sample = metrics.start();
+		CountingInputStream in = new CountingInputStream(binaryResource);
+		SpooledContent content = null;
+		try {
+			String binaryContentType = contentType;
+			if (isMediaType(contentType, FHIR_JSON, MediaType.APPLICATION_JSON)) {
+				content = new SpooledContent(documentSpoolThreshold);
+				binaryContentType = readBinary(in, content);
+			} else if (isMediaType(contentType, FHIR_XML)) {
+				// Die Base64-Daten werden vor dem Parser in den Zwischenspeicher abgezweigt
+				try (FhirXmlReader reader = new FhirXmlReader(in, documentSpoolThreshold)) {
+					String resourceType = reader.root();
+					if (!BINARY.equals(resourceType)) {
+						throw new BadRequestException(
+								List.of("Unsupported resource type " + resourceType + " (resourceType)"));
+					}
+					binaryContentType = null;
+					int binary = reader.depth();
+					while (reader.nextChild(binary)) {
+						if ("contentType".equals(reader.name())) {
+							binaryContentType = reader.value();
+						} else if ("data".equals(reader.name()) && content == null) {
+							content = reader.data();
+						}
+					}
+				}
+			} else {
+				content = new SpooledContent(documentSpoolThreshold);
+				try (OutputStream out = Base64.getEncoder().wrap(content.outputStream())) {
+					in.transferTo(out);
+				}
+			}
+			metrics.stage(sample, FacadeMetrics.READ, BINARY);
+			metrics.payloadSize(INBOUND, BINARY, in.getCount());
+			if (content == null || content.size() == 0) {
+				throw new BadRequestException(List.of("Missing content (Binary.data)"));
+			}
+			String id = binaryStore.put(binaryContentType, content);
+			Binary created = new Binary();
+			created.setId(id);
+			created.setContentType(binaryContentType);
+			FhirFormat responseFormat = FhirFormat.negotiate(servletRequest);
+			return ResponseEntity.created(URI.create(BINARY + "/" + id)).contentType(responseFormat.getMediaType())
+					.body(fhirParsers.parser(responseFormat).encodeResourceToString(created));
+		} catch (BadRequestException | IOException | RuntimeException e) {
+			if (content != null) {
+				closeQuietly(content);
+			}
+			throw e;
+		}
+	}
 
-	@PostMapping("/" + DOCUMENT_REFERENCE)
-	public ResponseEntity<String> createDocumentReference(@RequestBody String documentReferenceResource)
+	/**
+	 * @return true, wenn der Content-Type zu einem der Medientypen passt
+	 */
+	private static boolean isMediaType(String contentType, MediaType... mediaTypes) {
+		if (contentType == null) {
+			return false;
+		}
+		MediaType mediaType = MediaType.parseMediaType(contentType);
+		for (MediaType candidate : mediaTypes) {
+			if (candidate.isCompatibleWith(mediaType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Liest eine Binary-Ressource als Stream und kopiert die Base64-Daten
+	 * unverändert in den Zwischenspeicher.
+	 *
+	 * @return Binary.contentType oder null
+	 */
+	private static String readBinary(InputStream in, SpooledContent content) throws BadRequestException, IOException {
+		JsonPullReader reader = new JsonPullReader(in);
+		if (reader.next() != JsonPullReader.Token.START_OBJECT) {
+			throw new JsonStreamException("Expected a JSON object");
+		}
+		String resourceType = null;
+		String contentType = null;
+		while (reader.next() == JsonPullReader.Token.FIELD_NAME) {
+			String field = reader.fieldName();
+			JsonPullReader.Token value = reader.next();
+			if ("resourceType".equals(field) && value == JsonPullReader.Token.STRING) {
+				resourceType = reader.stringValue();
+			} else if ("contentType".equals(field) && value == JsonPullReader.Token.STRING) {
+				contentType = reader.stringValue();
+			} else if ("data".equals(field) && value == JsonPullReader.Token.STRING) {
+				try (OutputStream out = content.outputStream()) {
+					reader.copyString(out);
+				}
+			} else {
+				reader.skipChildren();
+			}
+		}
+		if (!BINARY.equals(resourceType)) {
+			throw new BadRequestException(List.of("Unsupported resource type " + resourceType + " (resourceType)"));
+		}
+		return contentType;
+	}
+
+	/**
+	 * Verarbeitet eine Ressource eines Bulk-Imports ({@code $import}) mit den
+	 * Regeln des passenden Einzel-Endpunkts, ohne Erkennung von Wiederholungen.
+	 */
+	@Override
+	public CompletableFuture<Boolean> importResource(byte[] resource) throws BadRequestException, IOException {
+		String resourceType = resourceType(resource);
+		if (resourceType == null || mappingEngine.get(resourceType) == null) {
+			throw new BadRequestException(List.of("Unsupported resource type " + resourceType + " (resourceType)"));
+		}
+		metrics.payloadSize(INBOUND, resourceType, resource.length);
+		if (DOCUMENT_REFERENCE.equals(resourceType)) {
+			StreamedDocumentReference documentReference = readDocumentReference(new ByteArrayInputStream(resource),
+					FhirFormat.JSON);
+			try {
+				return forward(prepareDocumentReference(documentReference))
+						.whenComplete((status, error) -> release(documentReference, status))
+						.thenApply(status -> status != HttpStatus.INTERNAL_SERVER_ERROR);
+			} catch (BadRequestException | RuntimeException e) {
+				release(documentReference, null);
+				throw e;
+			}
+		}
+		Resource parsed = PATIENT.equals(resourceType) ? parsePatient(resource)
+				: (Resource) parse(fhirParsers.getFhirContext().getResourceDefinition(resourceType)
+						.getImplementingClass(), resourceType, resource, FhirFormat.JSON);
+		return forward(parsed, prepare(parsed)).thenApply(status -> status != HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	/**
+	 * @return der resourceType einer Ressource als JSON oder null, wenn er fehlt
+	 */
+	private static String resourceType(byte[] resource) throws IOException {
+		JsonPullReader reader = new JsonPullReader(new ByteArrayInputStream(resource));
+		if (reader.next() != JsonPullReader.Token.START_OBJECT) {
+			throw new JsonStreamException("Expected a JSON object");
+		}
+		while (reader.next() == JsonPullReader.Token.FIELD_NAME) {
+			String field = reader.fieldName();
+			JsonPullReader.Token value = reader.next();
+			if ("resourceType".equals(field) && value == JsonPullReader.Token.STRING) {
+				return reader.stringValue();
+			}
+			reader.skipChildren();
+		}
+		return null;
+	}
+
+	/**
+	 * Prüft die DocumentReference und extrahiert die Dokumentdaten. Ohne
+	 * attachment.data wird ein mit attachment.url referenziertes Binary
+	 * übernommen. Der Zwischenspeicher der DocumentReference muss vom Aufrufer
+	 * freigegeben werden.
+	 *
+	 * @param documentReference die gelesene DocumentReference
+	 * @return die Anfrage an die proprietäre API, sie liest den Inhalt aus dem
+	 *         Zwischenspeicher der DocumentReference
+	 * @throws BadRequestException wenn Pflichtangaben fehlen oder das Binary
+	 *                             unbekannt ist
+	 */
+	OutboundRequest prepareDocumentReference(StreamedDocumentReference documentReference)
 			throws BadRequestException {
-		// Erzeugt einen JSON-Parser für FHIR
-		IParser parser = fhirContext.newJsonParser();
-		// Parsen des Patient-Ressource-Strings in ein Patient-Objekt
-		DocumentReference documentReference = parser.parseResource(DocumentReference.class, documentReferenceResource);
-		List<String> issues = new ArrayList<>();
+		return prepareDocumentReference(documentReference, Set.of());
+	}
+
+	/**
+	 * @param bundlePatients Patienten-IDs, die im selben Bundle angelegt werden
+	 * @see #prepareDocumentReference(StreamedDocumentReference)
+	 */
+	private OutboundRequest prepareDocumentReference(StreamedDocumentReference documentReference,
+			Set<Integer> bundlePatients) throws BadRequestException {
+		checkPatient(documentReference, bundlePatients);
+		if (documentReference.isDataPresent()) {
+			return mapping(DOCUMENT_REFERENCE).map(documentReference.toResource(), documentReference.getData());
+		}
+		String url = documentReference.getAttachmentUrl();
+		String binaryId = binaryId(url);
+		if (binaryId == null) {
+			return mapping(DOCUMENT_REFERENCE).map(documentReference.toResource(), null);
+		}
+		BinaryStore.Entry binary = binaryStore.get(binaryId);
+		if (binary == null) {
+			throw new BadRequestException(
+					List.of("Unknown or expired Binary " + url + " (DocumentReference.content.attachment.url)"));
+		}
+		OutboundRequest request = mapping(DOCUMENT_REFERENCE).map(documentReference.toResource(),
+				binary.getContent());
+		// Erst nach erfolgreicher Prüfung übernommen, sonst bleibt es für einen
+		// korrigierten Versuch erhalten. Scheitert die Weiterleitung, wird es mit
+		// release() zurückgelegt.
+		if (!binaryStore.remove(binaryId, binary)) {
+			throw new BadRequestException(List.of(
+					"Binary " + url + " is expired or already used (DocumentReference.content.attachment.url)"));
+		}
+		documentReference.useBinary(binary.getContent(), () -> binaryStore.restore(binaryId, binary));
+		return request;
+	}
+
+	/**
+	 * Prüft im Patientenverzeichnis, ob der Patient der DocumentReference über die
+	 * Fassade angelegt wurde. Fehlende oder nicht-numerische IDs meldet die
+	 * Abbildung.
+	 *
+	 * @throws BadRequestException wenn der Patient unbekannt ist und unbekannte
+	 *                             Patienten abgelehnt werden
+	 */
+	private void checkPatient(StreamedDocumentReference documentReference, Set<Integer> bundlePatients)
+			throws BadRequestException {
+		if (patientIndex == null) {
+			return;
+		}
+		Integer patientId = subjectId(documentReference);
+		if (patientId == null) {
+			return;
+		}
+		boolean known = bundlePatients.contains(patientId) || patientIndex.contains(patientId);
+		metrics.patientLookup(known);
+		if (!known && rejectUnknownPatients) {
+			throw new BadRequestException(List.of("Unknown patient " + patientId
+					+ ", the Patient must be created first (DocumentReference.subject.identifier)"));
+		}
+	}
+
+	/**
+	 * @return die Patienten-ID (erster Identifier) oder null
+	 */
+	private static Integer patientId(Resource resource) {
+		if (!(resource instanceof Patient) || !((Patient) resource).hasIdentifier()) {
+			return null;
+		}
+		return PatientIndex.parseId(((Patient) resource).getIdentifierFirstRep().getValue());
+	}
+
+	/**
+	 * @return die Patienten-ID der DocumentReference
+	 *         (subject.identifier.value) oder null
+	 */
+	private static Integer subjectId(StreamedDocumentReference documentReference) {
+		if (documentReference.getSubjectIdentifier() == null) {
+			return null;
+		}
+		return PatientIndex.parseId(documentReference.getSubjectIdentifier().getValue());
+	}
+
+	/**
+	 * @return die ID aus einer Referenz "Binary/&lt;id&gt;" (auch als absolute
+	 *         URL), sonst null
+	 */
+	static String binaryId(String url) {
+		if (url == null) {
+			return null;
+		}
+		int index = url.lastIndexOf(BINARY + "/");
+		if (index < 0 || index > 0 && url.charAt(index - 1) != '/') {
+			return null;
+		}
+		String id = url.substring(index + BINARY.length() + 1);
+		return id.isEmpty() || id.indexOf('/') >= 0 ? null : id;
+	}
+
+	private ResourceMapping mapping(String resourceType) throws BadRequestException {
+		ResourceMapping mapping = mappingEngine.get(resourceType);
+		if (mapping == null) {
+			throw new BadRequestException(List.of("No mapping configured for resource type " + resourceType));
+		}
+		return mapping;
+	}
+
+	/**
+	 * Übergibt die Anfrage an die Outbox, falls aktiviert, sonst direkt an die
+	 * proprietäre API.
+	 *
+	 * @param request die Anfrage an die proprietäre API
+	 * @return {@link HttpStatus#ACCEPTED}, wenn die Anfrage in der Outbox liegt,
+	 *         {@link HttpStatus#CREATED}, wenn die API sie angenommen hat, sonst
+	 *         {@link HttpStatus#INTERNAL_SERVER_ERROR}; schlägt mit einer
+	 *         {@link CircuitOpenException} fehl, wenn der Schutzschalter des Pfads
+	 *         geöffnet ist
+	 */
+	private CompletableFuture<HttpStatus> forward(Resource resource, OutboundRequest request) {
+		CompletableFuture<HttpStatus> status = forward(request);
+		Integer patientId = patientIndex != null ? patientId(resource) : null;
+		if (patientId == null) {
+			return status;
+		}
+		// Angelegte Patienten werden vermerkt, bevor der Client die Antwort erhält
+		return status.thenApply(result -> {
+			if (result == HttpStatus.CREATED || result == HttpStatus.ACCEPTED) {
+				try {
+					patientIndex.add(patientId, result == HttpStatus.CREATED);
+				} catch (IOException e) {
+					logger.error("Could not add patient {} to the patient index", patientId, e);
+				}
+			}
+			return result;
+		});
+	}
+
+	private CompletableFuture<HttpStatus> forward(OutboundRequest request) {
+		if (outbox != null) {
+			try {
+				outbox.append(request);
+				return CompletableFuture.completedFuture(HttpStatus.ACCEPTED);
+			} catch (IOException e) {
+				logger.error("Could not store {} in outbox", request, e);
+				return CompletableFuture.completedFuture(HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+		}
+		return proprietaryApiService.send(request)
+				.thenApply(apiSuccess -> apiSuccess ? HttpStatus.CREATED : HttpStatus.INTERNAL_SERVER_ERROR);
+	}
 
-		// Extrahieren des KDL-Code aus der DocumentReference-Ressource
-		Optional<Coding> maybeKdlCoding = documentReference.getType().getCoding().stream()
-				.filter(coding -> KDL_SYSTEM.equals(coding.getSystem())).findFirst();
-		if (!maybeKdlCoding.isPresent()) {
-			issues.add("Missing document type from KDL terminology (DocumentReference.type.coding:KDL)");
-		}
-
-		Optional<Reference> maybeBillingNumber = documentReference.getContext().getEncounter().stream()
-				.filter(reference -> {
-					if (reference.getIdentifier() == null)
-						return false;
-					Identifier identifier = reference.getIdentifier();
-					return ABRECHNUNGSNUMMER.equals(identifier.getType().getCoding().get(0).getCode());
-				}).findFirst();
-		if (!maybeBillingNumber.isPresent()) {
-			issues.add(
-					"Missing billing number (DocumentReference.context.encounter.identifier:Abrechnungsnummer.type.coding:AN)");
-		}
-		// Falls Fehler aufgetreten sind, sammeln wir alle Fehlermeldungen in die
-		// Ausnahme
-		if (!issues.isEmpty()) {
+	/**
+	 * Verarbeitet ein Bundle vom Typ batch oder transaction. Alle Einträge werden
+	 * zunächst mit denselben Regeln wie bei den Einzel-Endpunkten geprüft und
+	 * anschließend mit begrenzter Parallelität an die proprietäre API gesendet.
+	 * Eine DocumentReference, deren Patient im selben Bundle angelegt wird, wird
+	 * erst nach diesem gesendet und nur, wenn er angelegt oder angenommen wurde,
+	 * sonst mit 424 Failed Dependency beantwortet.
+	 * <p>
+	 * Bei einer transaction wird das gesamte Bundle abgelehnt, sobald ein Eintrag
+	 * ungültig ist. Da die proprietäre API keine Transaktionen kennt, können
+	 * Fehler beim Senden einzelner Einträge jedoch nicht rückgängig gemacht
+	 * werden, sie werden pro Eintrag in der Antwort gemeldet.
+	 */
+	@PostMapping("/")
+	public CompletableFuture<ResponseEntity<String>> processBundle(InputStream bundleResource,
+			HttpServletRequest servletRequest) throws BadRequestException, IOException {
+		Bundle bundle = parse(Bundle.class, BUNDLE, readBody(BUNDLE, bundleResource),
+				FhirFormat.ofRequest(servletRequest));
+		FhirFormat responseFormat = FhirFormat.negotiate(servletRequest);
+		BundleType bundleType = bundle.getType();
+		if (bundleType != BundleType.BATCH && bundleType != BundleType.TRANSACTION) {
+			throw new BadRequestException(
+					List.of("Unsupported bundle type, expected batch or transaction (Bundle.type)"));
+		}
+		boolean transaction = bundleType == BundleType.TRANSACTION;
+
+		List<BundleEntryComponent> entries = bundle.getEntry();
+		BundleEntryResponseComponent[] responses = new BundleEntryResponseComponent[entries.size()];
+		OutboundRequest[] dispatches = new OutboundRequest[entries.size()];
+		// Zwischenspeicher der DocumentReferences und Ergebnis je Eintrag
+		StreamedDocumentReference[] documentReferences = new StreamedDocumentReference[entries.size()];
+		HttpStatus[] statuses = new HttpStatus[entries.size()];
+		List<String> issues = new ArrayList<>();
+		// Dokumente dürfen sich auf gültige Patienten beziehen, die im selben Bundle
+		// angelegt werden. Deshalb werden die DocumentReferences zuletzt geprüft.
+		Set<Integer> bundlePatients = new HashSet<>();
+		for (boolean documents : new boolean[] { false, true }) {
+			for (int i = 0; i < entries.size(); i++) {
+				if ((entries.get(i).getResource() instanceof DocumentReference) != documents) {
+					continue;
+				}
+				try {
+					dispatches[i] = prepareEntry(entries.get(i), i, documentReferences, bundlePatients);
+					Integer patientId = patientId(entries.get(i).getResource());
+					if (patientId != null) {
+						bundlePatients.add(patientId);
+					}
+				} catch (BadRequestException e) {
+					responses[i] = entryResponse("422 Unprocessable Entity",
+							OperationOutcomes.fromErrorMessages(e.getErrorMessages()));
+					int index = i;
+					e.getErrorMessages().forEach(message -> issues.add("Bundle.entry[" + index + "]: " + message));
+				} catch (RuntimeException e) {
+					String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+					responses[i] = entryResponse("400 Bad Request",
+							OperationOutcomes.of(IssueSeverity.ERROR, IssueType.INVALID, message));
+					issues.add("Bundle.entry[" + i + "]: " + message);
+				}
+			}
+		}
+		if (transaction && !issues.isEmpty()) {
+			release(documentReferences, statuses);
 			throw new BadRequestException(issues);
 		}
 
-		String kdlCode = maybeKdlCoding.get().getCode();
-		// Extrahieren des Patienten-ID aus der DocumentReference-Ressource
-		String patientenId = documentReference.getSubject().getIdentifier().getValue();
-		// Extrahieren des Abrechnungsfall-Nummer aus der DocumentReference-Ressource
-		String abrechnungsfallNummer = maybeBillingNumber.get().getIdentifier().getValue();
-		// Extrahieren des Erstelldatum aus der DocumentReference-Ressource
-		Date creationDate = documentReference.getContent().get(0).getAttachment().getCreation();
-		// Extrahieren der Dokument data
-		byte[] data = documentReference.getContent().get(0).getAttachment().getData();
+		// Sendet die gültigen Einträge parallel, höchstens bundleParallelism zugleich.
+		// Zuerst alle übrigen Einträge, damit die Patienten vor den DocumentReferences
+		// gesendet werden, die sich auf sie beziehen.
+		OutboundLimiter limiter = new OutboundLimiter(bundleParallelism,
+				Math.max(bundleParallelism, entries.size()));
+		List<CompletableFuture<Void>> pending = new ArrayList<>();
+		Map<Integer, CompletableFuture<HttpStatus>> patientForwards = new HashMap<>();
+		for (int i = 0; i < dispatches.length; i++) {
+			if (dispatches[i] == null || documentReferences[i] != null) {
+				continue;
+			}
+			OutboundRequest request = dispatches[i];
+			Resource resource = entries.get(i).getResource();
+			CompletableFuture<HttpStatus> forwarded = limiter.submit(() -> forward(resource, request));
+			Integer patientId = patientId(resource);
+			if (patientId != null) {
+				patientForwards.putIfAbsent(patientId, forwarded);
+			}
+			pending.add(complete(forwarded, i, statuses, responses));
+		}
+		// Eine DocumentReference wird erst gesendet, wenn ihr Patient aus demselben
+		// Bundle angelegt oder angenommen wurde, sonst mit 424 beantwortet
+		for (int i = 0; i < dispatches.length; i++) {
+			if (dispatches[i] == null || documentReferences[i] == null) {
+				continue;
+			}
+			int index = i;
+			OutboundRequest request = dispatches[i];
+			Resource resource = entries.get(i).getResource();
+			Integer patientId = subjectId(documentReferences[i]);
+			CompletableFuture<HttpStatus> patientForward = patientForwards.get(patientId);
+			if (patientForward == null) {
+				pending.add(complete(limiter.submit(() -> forward(resource, request)), i, statuses, responses));
+				continue;
+			}
+			pending.add(patientForward
+					.handle((status, error) -> status == HttpStatus.CREATED || status == HttpStatus.ACCEPTED)
+					.thenCompose(created -> {
+						if (created) {
+							return complete(limiter.submit(() -> forward(resource, request)), index, statuses,
+									responses);
+						}
+						responses[index] = entryResponse("424 Failed Dependency",
+								OperationOutcomes.of(IssueSeverity.ERROR, IssueType.PROCESSING, "Patient " + patientId
+										+ " of this bundle was not created (DocumentReference.subject.identifier)"));
+						return CompletableFuture.completedFuture(null);
+					}));
+		}
+
+		return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+				.whenComplete((result, error) -> release(documentReferences, statuses)).thenApply(result -> {
+					Bundle responseBundle = new Bundle();
+					responseBundle.setType(transaction ? BundleType.TRANSACTIONRESPONSE : BundleType.BATCHRESPONSE);
+					for (BundleEntryResponseComponent response : responses) {
+						responseBundle.addEntry().setResponse(response);
+					}
+					return ResponseEntity.ok().contentType(responseFormat.getMediaType())
+							.body(fhirParsers.parser(responseFormat).encodeResourceToString(responseBundle));
+				});
+	}
+
+	/**
+	 * Übernimmt das Ergebnis eines gesendeten Bundle-Eintrags in die Antwort.
+	 */
+	private static CompletableFuture<Void> complete(CompletableFuture<HttpStatus> forwarded, int index,
+			HttpStatus[] statuses, BundleEntryResponseComponent[] responses) {
+		return forwarded.handle((status, error) -> {
+			statuses[index] = status;
+			responses[index] = entryResponse(status, error);
+			return null;
+		});
+	}
+
+	/**
+	 * Prüft einen Bundle-Eintrag mit den Regeln des passenden Einzel-Endpunkts.
+	 *
+	 * @param entry              der Bundle-Eintrag
+	 * @param index              der Index des Eintrags
+	 * @param documentReferences sammelt Zwischenspeicher, die nach dem Senden
+	 *                           freigegeben werden müssen
+	 * @param bundlePatients     Patienten-IDs, die im selben Bundle angelegt
+	 *                           werden
+	 * @return die Anfrage an die proprietäre API
+	 */
+	private OutboundRequest prepareEntry(BundleEntryComponent entry, int index,
+			StreamedDocumentReference[] documentReferences, Set<Integer> bundlePatients) throws BadRequestException {
+		if (entry.hasRequest() && entry.getRequest().getMethod() != HTTPVerb.POST) {
+			throw new BadRequestException(List.of("Unsupported request method " + entry.getRequest().getMethod()
+					+ ", only POST is supported (Bundle.entry.request.method)"));
+		}
+		Resource resource = entry.getResource();
+		if (resource == null || mappingEngine.get(resource.fhirType()) == null) {
+			throw new BadRequestException(List.of("Unsupported resource type "
+					+ (resource != null ? resource.fhirType() : null) + " (Bundle.entry.resource)"));
+		}
+		if (resource instanceof DocumentReference) {
+			StreamedDocumentReference documentReference;
+			try {
+				documentReference = documentReferenceReader.read((DocumentReference) resource);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			documentReferences[index] = documentReference;
+			return prepareDocumentReference(documentReference, bundlePatients);
+		}
+		return prepare(resource);
+	}
+
+	/**
+	 * Liest den Anfragekörper vollständig.
+	 */
+	private byte[] readBody(String resource, InputStream body) throws IOException {
+		Timer.Sample sample = metrics.start();
+		byte[] bytes = body.readAllBytes();
+		metrics.stage(sample, FacadeMetrics.READ, resource);
+		metrics.payloadSize(INBOUND, resource, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * Parst den Anfragekörper als FHIR-Ressource im angegebenen Format; HAPI liest
+	 * XML dabei mit StAX.
+	 */
+	private <T extends IBaseResource> T parse(Class<T> resourceType, String resource, byte[] bytes,
+			FhirFormat format) {
+		Timer.Sample sample = metrics.start();
+		T parsed = fhirParsers.parser(format).parseResource(resourceType,
+				new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+		metrics.stage(sample, FacadeMetrics.PARSE, resource);
+		return parsed;
+	}
+
+	/**
+	 * Liest eine DocumentReference als Stream oder, wenn ihre Abbildung Elemente
+	 * liest, die dabei nicht extrahiert werden, vollständig mit HAPI.
+	 *
+	 * @return die DocumentReference; der Aufrufer muss das Ergebnis schließen
+	 */
+	private StreamedDocumentReference readDocumentReference(InputStream in, FhirFormat format) throws IOException {
+		if (streamDocumentReferences) {
+			return format == FhirFormat.XML ? documentReferenceXmlReader.read(in) : documentReferenceReader.read(in);
+		}
+		return documentReferenceReader.read(fhirParsers.parser(format).parseResource(DocumentReference.class,
+				new InputStreamReader(in, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Liest die Patient-Ressource. Mit der schnellen Extraktion werden nur Name
+	 * und Geburtsdatum gelesen und in ein sonst leeres Patient-Objekt übernommen,
+	 * Ressourcen, die sie nicht sicher lesen kann, werden mit HAPI geparst.
+	 */
+	Patient parsePatient(byte[] body) throws IOException {
+		return parsePatient(body, FhirFormat.JSON);
+	}
+
+	/**
+	 * Liest die Patient-Ressource im angegebenen Format, XML immer mit HAPI.
+	 *
+	 * @see #parsePatient(byte[])
+	 */
+	Patient parsePatient(byte[] body, FhirFormat format) throws IOException {
+		if (format == FhirFormat.XML) {
+			return parse(Patient.class, PATIENT, body, format);
+		}
+		if (fastPathExtraction) {
+			Timer.Sample sample = metrics.start();
+			SelectiveExtractor.Result extracted = PATIENT_EXTRACTOR.extract(new ByteArrayInputStream(body));
+			if (extracted != null) {
+				Patient patient = new Patient();
+				if (extracted.isPresent(NAME)) {
+					HumanName name = patient.addName().setFamily(extracted.value(FAMILY));
+					extracted.values(GIVEN).forEach(name::addGiven);
+				}
+				if (extracted.isPresent(BIRTH_DATE)) {
+					patient.getBirthDateElement().setValueAsString(extracted.value(BIRTH_DATE));
+				}
+				if (extracted.isPresent(IDENTIFIER)) {
+					patient.addIdentifier().setValue(extracted.value(IDENTIFIER));
+				}
+				metrics.stage(sample, FacadeMetrics.PARSE, PATIENT);
+				return patient;
+			}
+			metrics.extractionFallback(PATIENT);
+		}
+		return parse(Patient.class, PATIENT, body, FhirFormat.JSON);
+	}
 
-		int patientenIdInt = Integer.parseInt(patientenId);
-		int abrechnungsfallNummerInt = Integer.parseInt(abrechnungsfallNummer);
-		// Sendet die Dokumentdaten an die proprietäre API
-		boolean apiSuccess = proprietaryApiService.sendDocumentData(kdlCode, patientenIdInt, abrechnungsfallNummerInt,
-				creationDate, data);
+	private List<String> requestKeys(String resource, HttpServletRequest servletRequest, String idempotencyKey,
+			String ifNoneExist) {
+		if (idempotencyCache == null) {
+			return List.of();
+		}
+		return requestKeys(resource, AdmissionFilter.clientId(servletRequest, clientIdHeader), idempotencyKey,
+				ifNoneExist);
+	}
 
-		if (apiSuccess) {
-			// Loggt und gibt eine Erfolgsantwort zurück, wenn die API-Anfrage erfolgreich
-			// war
-			return ResponseEntity.status(HttpStatus.CREATED).body("Document created successfully.");
-		} else {
-			// Loggt und gibt eine Fehlerantwort zurück, wenn die API-Anfrage fehlschlägt
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal Server Error.");
+	/**
+	 * Bildet die Schlüssel einer Anfrage aus den Headern Idempotency-Key und
+	 * If-None-Exist. Ein Idempotency-Key gilt nur für den Client, der ihn
+	 * vergeben hat. Die Suchparameter von If-None-Exist werden sortiert, damit
+	 * ihre Reihenfolge keine Rolle spielt.
+	 */
+	static List<String> requestKeys(String resource, String client, String idempotencyKey, String ifNoneExist) {
+		List<String> keys = new ArrayList<>(2);
+		if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+			keys.add(IDEMPOTENCY_KEY + " " + resource + " " + client + " " + idempotencyKey.trim());
 		}
+		if (ifNoneExist != null && !ifNoneExist.isBlank()) {
+			String[] parameters = ifNoneExist.trim().split("&");
+			Arrays.sort(parameters);
+			keys.add(IF_NONE_EXIST + " " + resource + " " + String.join("&", parameters));
+		}
+		return keys;
+	}
 
+	private static String contentKey(String resource, String hash) {
+		return CONTENT_HASH + " " + resource + " " + hash;
 	}
 
-	private String convertDate(String birthDate) {
-		// Konvertierung des Geburtsdatums von YYYY-MM-DD zu DD.MM.YYYY
-		String[] parts = birthDate.split("-");
-		// Das Geburtsdatum kann mit YYYY oder YYYY-MM angegeben werden, in diesemFall
-		// wir verlieren die Info...
-		if (parts.length < 3) {
+	/**
+	 * @return true, wenn der Hash des Inhalts für die Erkennung wiederholter
+	 *         Anfragen benötigt wird
+	 */
+	private boolean hashes(List<String> requestKeys) {
+		return contentHash || requestKeys.stream().anyMatch(key -> key.startsWith(IDEMPOTENCY_KEY + " "));
+	}
+
+	/**
+	 * Sucht die Antwort einer gleichen Anfrage im Zwischenspeicher. Ist keine
+	 * vorhanden, wird die künftige Antwort dieser Anfrage unter den Schlüsseln
+	 * und, falls aktiviert, unter dem Hash ihres Inhalts abgelegt.
+	 *
+	 * @param requestKeys die Schlüssel aus den Headern der Anfrage
+	 * @param hash        der Hash des Inhalts oder null
+	 * @return die Antwort der gleichen Anfrage oder null
+	 * @throws BadRequestException wenn der Idempotency-Key bereits für einen
+	 *                             anderen Inhalt verwendet wurde
+	 */
+	private CompletableFuture<ResponseEntity<String>> claim(String resource, List<String> requestKeys, String hash,
+			CompletableFuture<ResponseEntity<String>> response) throws BadRequestException {
+		List<String> keys = new ArrayList<>(requestKeys);
+		if (contentHash && hash != null) {
+			keys.add(contentKey(resource, hash));
+		}
+		if (idempotencyCache == null || keys.isEmpty()) {
 			return null;
 		}
-		return parts[2] + "." + parts[1] + "." + parts[0];
+		IdempotencyCache.Duplicate<ResponseEntity<String>> duplicate = idempotencyCache.claim(keys, hash, response);
+		if (duplicate == null) {
+			return null;
+		}
+		String reason = duplicate.getKey().substring(0, duplicate.getKey().indexOf(' '));
+		if (reason.equals(IDEMPOTENCY_KEY) && hash != null && duplicate.getFingerprint() != null
+				&& !hash.equals(duplicate.getFingerprint())) {
+			throw new BadRequestException(
+					List.of(IDEMPOTENCY_KEY + " was already used with a different " + resource + " payload"));
+		}
+		metrics.deduplicated(reason);
+		// Bereits unter anderen Schlüsseln abgelegte Einträge dieser Anfrage erhalten
+		// dieselbe Antwort
+		duplicate.getResponse().whenComplete(completeTo(response));
+		if (reason.equals(IF_NONE_EXIST)) {
+			// Bedingtes Anlegen: die Ressource existiert bereits, 200 OK
+			return duplicate.getResponse().thenApply(existing -> existing.getStatusCode().is2xxSuccessful()
+					? ResponseEntity.ok(resource + " already exists.")
+					: existing);
+		}
+		return duplicate.getResponse();
+	}
+
+	private static <T> BiConsumer<T, Throwable> completeTo(CompletableFuture<T> target) {
+		return (value, error) -> {
+			if (error == null) {
+				target.complete(value);
+			} else {
+				target.completeExceptionally(unwrap(error));
+			}
+		};
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+
+	/**
+	 * @return die Antwort eines gesendeten Bundle-Eintrags
+	 */
+	private static BundleEntryResponseComponent entryResponse(HttpStatus status, Throwable error) {
+		if (error != null && unwrap(error) instanceof CircuitOpenException) {
+			return entryResponse("503 Service Unavailable",
+					OperationOutcomes.of(IssueSeverity.ERROR, IssueType.TRANSIENT, unwrap(error).getMessage()));
+		} else if (status == HttpStatus.CREATED) {
+			return entryResponse("201 Created", OperationOutcomes.of(IssueSeverity.INFORMATION,
+					IssueType.INFORMATIONAL, "Resource created successfully."));
+		} else if (status == HttpStatus.ACCEPTED) {
+			return entryResponse("202 Accepted", OperationOutcomes.of(IssueSeverity.INFORMATION,
+					IssueType.INFORMATIONAL, "Resource accepted for delivery."));
+		}
+		return entryResponse("500 Internal Server Error",
+				OperationOutcomes.of(IssueSeverity.ERROR, IssueType.EXCEPTION, "Internal Server Error."));
+	}
+
+	private static BundleEntryResponseComponent entryResponse(String status, OperationOutcome outcome) {
+		return new BundleEntryResponseComponent().setStatus(status).setOutcome(outcome);
+	}
+
+	@Override
+	public void destroy() {
+		binaryStore.close();
+	}
+
+	/**
+	 * Gibt die Zwischenspeicher einer DocumentReference frei. Wurde sie nicht
+	 * angenommen (201 oder 202), bleibt ein referenziertes Binary für einen
+	 * erneuten Versuch gespeichert.
+	 *
+	 * @param status das Ergebnis der Weiterleitung, null ohne Weiterleitung oder
+	 *               bei einem Fehler
+	 */
+	private void release(StreamedDocumentReference documentReference, HttpStatus status) {
+		if (status != HttpStatus.CREATED && status != HttpStatus.ACCEPTED) {
+			documentReference.returnBinary();
+		}
+		closeQuietly(documentReference);
+	}
+
+	private void release(StreamedDocumentReference[] documentReferences, HttpStatus[] statuses) {
+		for (int i = 0; i < documentReferences.length; i++) {
+			if (documentReferences[i] != null) {
+				release(documentReferences[i], statuses[i]);
+			}
+		}
+	}
+
+	private void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			logger.warn("Could not release temporary content", e);
+		}
+	}
 
+	/**
+	 * Liest eine Ressource aus dem Anfragekörper.
+	 */
+	@FunctionalInterface
+	private interface ResourceParser {
+		Resource parse(byte[] body) throws IOException;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package com.example.demo.controller;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Begrenzter Zwischenspeicher der Antworten kürzlich weitergeleiteter
+ * Ressourcen, mit dem wiederholte Anfragen beantwortet werden, ohne sie erneut
+ * zu verarbeiten oder an die proprietäre API zu senden.
+ * <p>
+ * Eine Antwort kann unter mehreren Schlüsseln abgelegt werden (Idempotency-Key,
+ * If-None-Exist, Hash des Inhalts), zusammen mit einem Fingerabdruck des
+ * Inhalts, an dem der Aufrufer einen wiederverwendeten Schlüssel erkennt. Einträge werden bereits abgelegt, während
+ * die Anfrage noch läuft, sodass gleichzeitige Wiederholungen auf dieselbe
+ * Antwort warten. Endet die Anfrage mit einem Fehler oder einer nicht
+ * zwischenspeicherbaren Antwort, werden ihre Einträge wieder entfernt. Einträge
+ * verfallen nach der Lebensdauer, bei Überschreiten der Höchstzahl werden die
+ * ältesten verdrängt.
+ *
+ * @param <V> Typ der Antwort
+ */
+class IdempotencyCache<V> {
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final Predicate<V> cacheable;
+	// In Einfügereihenfolge, die ältesten Einträge verfallen zuerst
+	private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>();
+
+	IdempotencyCache(int maxEntries, Duration ttl, Predicate<V> cacheable) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttl.toNanos();
+		this.cacheable = cacheable;
+	}
+
+	/**
+	 * Antwort einer gleichen, bereits angenommenen Anfrage.
+	 */
+	static final class Duplicate<V> {
+		private final String key;
+		private final String fingerprint;
+		private final CompletableFuture<V> response;
+
+		Duplicate(String key, String fingerprint, CompletableFuture<V> response) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.response = response;
+		}
+
+		/**
+		 * @return der Schlüssel, unter dem die Anfrage gefunden wurde
+		 */
+		String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return der Fingerabdruck des Inhalts der ersten Anfrage oder null
+		 */
+		String getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * @return die (ggf. noch ausstehende) Antwort der ersten Anfrage
+		 */
+		CompletableFuture<V> getResponse() {
+			return response;
+		}
+	}
+
+	/**
+	 * Sucht eine Antwort unter den angegebenen Schlüsseln. Wird keine gefunden,
+	 * wird die übergebene Antwort unter allen Schlüsseln abgelegt.
+	 *
+	 * @param keys        die Schlüssel der Anfrage
+	 * @param fingerprint der Fingerabdruck des Inhalts der Anfrage oder null
+	 * @param response    die künftige Antwort dieser Anfrage
+	 * @return die gefundene Antwort oder null, wenn die Anfrage neu ist
+	 */
+	synchronized Duplicate<V> claim(List<String> keys, String fingerprint, CompletableFuture<V> response) {
+		long now = System.nanoTime();
+		evict(now);
+		for (String key : keys) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null) {
+				return new Duplicate<>(key, entry.fingerprint, entry.response);
+			}
+		}
+		if (maxEntries <= 0) {
+			return null;
+		}
+		for (String key : keys) {
+			entries.put(key, new Entry<>(fingerprint, response, now + ttlNanos));
+		}
+		while (entries.size() > maxEntries) {
+			Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+			eldest.next();
+			eldest.remove();
+		}
+		response.whenComplete((value, error) -> {
+			if (error != null || !cacheable.test(value)) {
+				remove(keys, response);
+			}
+		});
+		return null;
+	}
+
+	/**
+	 * @return Anzahl der Einträge
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	private synchronized void remove(List<String> keys, CompletableFuture<V> response) {
+		for (String key : keys) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null && entry.response == response) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	private void evict(long now) {
+		Iterator<Entry<V>> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().expiresAt - now > 0) {
+				break;
+			}
+			iterator.remove();
+		}
+	}
+
+	private static final class Entry<V> {
+		final String fingerprint;
+		final CompletableFuture<V> response;
+		final long expiresAt;
+
+		Entry(String fingerprint, CompletableFuture<V> response, long expiresAt) {
+			this.fingerprint = fingerprint;
+			this.response = response;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.demo.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+
+import com.example.demo.config.FhirFormat;
+import com.example.demo.config.FhirParsers;
+
+/**
+ * Begrenzter Zwischenspeicher kodierter OperationOutcomes.
+ * <p>
+ * Abgelehnte Anfragen wiederholen meist dieselben Issues, etwa ein fehlendes
+ * Geburtsdatum. Statt für jede Ablehnung ein OperationOutcome aufzubauen und
+ * mit HAPI zu kodieren, wird der Text je Kombination aus Format, Schweregrad,
+ * Typ und Beschreibungen einmal erzeugt und wiederverwendet. Bei Überschreiten der
+ * Höchstzahl werden die am längsten nicht verwendeten Einträge verdrängt.
+ */
+public class OperationOutcomeCache {
+
+	private final FhirParsers fhirParsers;
+	private final int maxEntries;
+	// In Zugriffsreihenfolge, die am längsten nicht verwendeten Einträge zuerst
+	private final LinkedHashMap<List<Object>, String> entries;
+
+	public OperationOutcomeCache(FhirParsers fhirParsers, int maxEntries) {
+		this.fhirParsers = fhirParsers;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest) {
+				return size() > OperationOutcomeCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param format      JSON oder XML
+	 * @param severity    Schweregrad aller Issues
+	 * @param code        Typ aller Issues
+	 * @param diagnostics die Beschreibungen, eine pro Issue
+	 * @return das kodierte OperationOutcome
+	 */
+	public String encode(FhirFormat format, IssueSeverity severity, IssueType code, List<String> diagnostics) {
+		List<Object> key = List.of(format, severity, code, List.copyOf(diagnostics));
+		synchronized (entries) {
+			String encoded = entries.get(key);
+			if (encoded != null) {
+				return encoded;
+			}
+		}
+		// Außerhalb der Sperre kodieren; kodieren zwei Threads gleichzeitig, ist das
+		// Ergebnis dasselbe
+		String encoded = fhirParsers.parser(format)
+				.encodeResourceToString(OperationOutcomes.of(severity, code, diagnostics));
+		if (maxEntries > 0) {
+			synchronized (entries) {
+				entries.put(key, encoded);
+			}
+		}
+		return encoded;
+	}
+
+	/**
+	 * @see #encode(FhirFormat, IssueSeverity, IssueType, List)
+	 */
+	public String encode(FhirFormat format, IssueSeverity severity, IssueType code, String diagnostics) {
+		return encode(format, severity, code, List.of(diagnostics));
+	}
+
+	/**
+	 * @return das als JSON kodierte OperationOutcome
+	 * @see #encode(FhirFormat, IssueSeverity, IssueType, List)
+	 */
+	public String encode(IssueSeverity severity, IssueType code, List<String> diagnostics) {
+		return encode(FhirFormat.JSON, severity, code, diagnostics);
+	}
+
+	/**
+	 * @return das als JSON kodierte OperationOutcome
+	 * @see #encode(FhirFormat, IssueSeverity, IssueType, List)
+	 */
+	public String encode(IssueSeverity severity, IssueType code, String diagnostics) {
+		return encode(FhirFormat.JSON, severity, code, List.of(diagnostics));
+	}
+
+	/**
+	 * @return Anzahl der Einträge
+	 */
+	int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.example.demo.controller;
+
+import java.util.List;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.hl7.fhir.r4.model.OperationOutcome.OperationOutcomeIssueComponent;
+
+/**
+ * Erzeugt die OperationOutcome-Ressourcen, mit denen die Fassade Ergebnisse
+ * und Fehler an den FHIR-Client meldet.
+ */
+public final class OperationOutcomes {
+
+	private OperationOutcomes() {
+	}
+
+	/**
+	 * Erzeugt ein OperationOutcome mit einem Issue (Schweregrad FATAL, Typ
+	 * REQUIRED) pro Fehlermeldung.
+	 *
+	 * @param errorMessages die Fehlermeldungen
+	 * @return das OperationOutcome
+	 */
+	public static OperationOutcome fromErrorMessages(List<String> errorMessages) {
+		return of(IssueSeverity.FATAL, IssueType.REQUIRED, errorMessages);
+	}
+
+	/**
+	 * Erzeugt ein OperationOutcome mit einem Issue pro Beschreibung.
+	 *
+	 * @param severity    Schweregrad aller Issues
+	 * @param code        Typ aller Issues
+	 * @param diagnostics die Beschreibungen
+	 * @return das OperationOutcome
+	 */
+	public static OperationOutcome of(IssueSeverity severity, IssueType code, List<String> diagnostics) {
+		OperationOutcome operationOutcome = new OperationOutcome();
+		diagnostics.forEach(errorMessage -> {
+			OperationOutcomeIssueComponent issue = new OperationOutcomeIssueComponent();
+			issue.setSeverity(severity);
+			issue.setCode(code);
+			issue.setDiagnostics(errorMessage);
+			operationOutcome.addIssue(issue);
+		});
+		return operationOutcome;
+	}
+
+	/**
+	 * Erzeugt ein OperationOutcome mit genau einem Issue.
+	 *
+	 * @param severity    Schweregrad
+	 * @param code        Typ des Issues
+	 * @param diagnostics Beschreibung
+	 * @return das OperationOutcome
+	 */
+	public static OperationOutcome of(IssueSeverity severity, IssueType code, String diagnostics) {
+		OperationOutcome operationOutcome = new OperationOutcome();
+		operationOutcome.addIssue().setSeverity(severity).setCode(code).setDiagnostics(diagnostics);
+		return operationOutcome;
+	}
+}
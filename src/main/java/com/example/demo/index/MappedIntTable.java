@@ -0,0 +1,194 @@
+package com.example.demo.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Hashtabelle von int-Schlüsseln auf int-Zustände in einer memory-mapped
+ * Datei (offene Adressierung, lineares Sondieren). Die Einträge liegen
+ * außerhalb des Heaps, jede Änderung steht sofort in der Datei und übersteht
+ * damit einen Absturz der JVM; {@link #force()} schreibt sie zusätzlich auf
+ * den Datenträger.
+ * <p>
+ * Aufbau der Datei: Kopf aus Kennung, Version, Kapazität und Anzahl der
+ * Einträge (je 4 Bytes), danach {@code capacity} Plätze aus Schlüssel und
+ * Zustand. Ein Zustand 0 kennzeichnet einen freien Platz. Wird die Tabelle zu
+ * voll, wird sie in eine Datei doppelter Kapazität umkopiert, die die alte
+ * atomar ersetzt. Einträge werden nicht entfernt.
+ * <p>
+ * Nicht threadsicher.
+ */
+final class MappedIntTable {
+
+	private static final int MAGIC = 0x50494458; // "PIDX"
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int SIZE_OFFSET = 12;
+	private static final int SLOT = 8;
+	// Größte Kapazität, deren Datei noch in einen MappedByteBuffer passt
+	private static final int MAX_CAPACITY = 1 << 27;
+	// Anteil belegter Plätze, ab dem die Kapazität verdoppelt wird
+	private static final double MAX_LOAD = 0.7;
+
+	private final Path file;
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private int size;
+
+	private MappedIntTable(Path file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		this.capacity = buffer.getInt(CAPACITY_OFFSET);
+		this.size = buffer.getInt(SIZE_OFFSET);
+	}
+
+	/**
+	 * Öffnet die Tabelle in der Datei oder legt sie an.
+	 *
+	 * @param file            die Datei der Tabelle
+	 * @param expectedEntries erwartete Anzahl der Einträge einer neuen Tabelle
+	 * @throws IOException wenn die Datei keine gültige Tabelle enthält
+	 */
+	static MappedIntTable open(Path file, int expectedEntries) throws IOException {
+		if (Files.exists(file)) {
+			long length = Files.size(file);
+			MappedByteBuffer buffer = map(file, length);
+			if (length < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException("Not a patient index: " + file);
+			}
+			int capacity = buffer.getInt(CAPACITY_OFFSET);
+			if (Integer.bitCount(capacity) != 1 || length != HEADER + (long) capacity * SLOT) {
+				throw new IOException("Corrupt patient index " + file + " (capacity " + capacity + ", " + length
+						+ " bytes)");
+			}
+			return new MappedIntTable(file, buffer);
+		}
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		int capacity = 16;
+		while (capacity < MAX_CAPACITY && capacity * MAX_LOAD < expectedEntries) {
+			capacity <<= 1;
+		}
+		return new MappedIntTable(file, create(file, capacity));
+	}
+
+	/**
+	 * @return der Zustand des Schlüssels oder 0, wenn er fehlt
+	 */
+	int get(int key) {
+		return buffer.getInt(slot(key) + 4);
+	}
+
+	/**
+	 * Setzt den Zustand eines Schlüssels.
+	 *
+	 * @param key   der Schlüssel
+	 * @param state der Zustand, ungleich 0
+	 * @return der vorherige Zustand oder 0, wenn der Schlüssel neu ist
+	 * @throws IOException wenn die Tabelle nicht vergrößert werden kann
+	 */
+	int put(int key, int state) throws IOException {
+		if (state == 0) {
+			throw new IllegalArgumentException("State 0 marks a free slot");
+		}
+		int position = slot(key);
+		int previous = buffer.getInt(position + 4);
+		if (previous == 0 && size + 1 > capacity * MAX_LOAD) {
+			grow();
+			position = slot(key);
+		}
+		if (previous == 0) {
+			buffer.putInt(position, key);
+			size++;
+			buffer.putInt(SIZE_OFFSET, size);
+		}
+		buffer.putInt(position + 4, state);
+		return previous;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Schreibt die geänderten Seiten auf den Datenträger.
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * @return Position des Platzes mit dem Schlüssel oder des ersten freien
+	 *         Platzes seiner Sondierungsfolge
+	 */
+	private int slot(int key) {
+		int mask = capacity - 1;
+		for (int index = mix(key) & mask;; index = (index + 1) & mask) {
+			int position = HEADER + index * SLOT;
+			if (buffer.getInt(position + 4) == 0 || buffer.getInt(position) == key) {
+				return position;
+			}
+		}
+	}
+
+	private void grow() throws IOException {
+		if (capacity >= MAX_CAPACITY) {
+			throw new IOException("Patient index " + file + " is full (" + size + " entries)");
+		}
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		MappedByteBuffer old = buffer;
+		int oldCapacity = capacity;
+		buffer = create(tmp, capacity << 1);
+		capacity <<= 1;
+		for (int index = 0; index < oldCapacity; index++) {
+			int position = HEADER + index * SLOT;
+			int state = old.getInt(position + 4);
+			if (state != 0) {
+				int key = old.getInt(position);
+				int target = slot(key);
+				buffer.putInt(target, key);
+				buffer.putInt(target + 4, state);
+			}
+		}
+		buffer.putInt(SIZE_OFFSET, size);
+		buffer.force();
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static MappedByteBuffer create(Path file, int capacity) throws IOException {
+		Files.deleteIfExists(file);
+		MappedByteBuffer buffer = map(file, HEADER + (long) capacity * SLOT);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(SIZE_OFFSET, 0);
+		return buffer;
+	}
+
+	private static MappedByteBuffer map(Path file, long length) throws IOException {
+		// Die Abbildung bleibt nach dem Schließen des Kanals gültig
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+	}
+
+	/**
+	 * Verteilt fortlaufende Patienten-IDs über die Tabelle.
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.demo.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+
+/**
+ * Verzeichnis der Patienten-IDs, die über die Fassade angelegt (oder beim
+ * Start aus einer Datei geladen) wurden. Damit werden Dokumente zu unbekannten
+ * Patienten abgelehnt, bevor ihr Inhalt an die proprietäre API gesendet wird.
+ * <p>
+ * Die IDs liegen in einer memory-mapped {@link MappedIntTable} außerhalb des
+ * Heaps (8 Bytes je Platz), die zugleich der Snapshot für einen Neustart ist.
+ * Ein Nachschlagen kostet eine Sperre und wenige Speicherzugriffe.
+ */
+@Component
+// Lädt bulkLoad beim Start statt bei der ersten DocumentReference
+@Lazy(false)
+@ConditionalOnProperty(prefix = "fhir-facade.patient-index", name = "enabled", havingValue = "true")
+public class PatientIndex implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(PatientIndex.class);
+
+	// Die Person liegt in der Outbox und wird noch zugestellt
+	static final int ACCEPTED = 1;
+	// Die proprietäre API hat die Person angelegt
+	static final int CREATED = 2;
+
+	private final MappedIntTable table;
+
+	public PatientIndex(FhirFacadeProperties fhirFacadeProperties, FacadeMetrics metrics) throws IOException {
+		FhirFacadeProperties.PatientIndex config = fhirFacadeProperties.getPatientIndex();
+		this.table = MappedIntTable.open(Path.of(config.getFile()), config.getExpectedPatients());
+		logger.info("Opened patient index {} with {} patients", config.getFile(), table.size());
+		if (!config.getBulkLoad().isEmpty()) {
+			long loaded = bulkLoad(Path.of(config.getBulkLoad()));
+			logger.info("Loaded {} patient ids from {}, {} patients known", loaded, config.getBulkLoad(), size());
+		}
+		metrics.gauge("fhir.facade.patient.index.size", "Known patient ids", this, PatientIndex::size);
+	}
+
+	/**
+	 * @return true, wenn die Person angelegt oder zur Zustellung angenommen ist
+	 */
+	public synchronized boolean contains(int patientId) {
+		return table.get(patientId) != 0;
+	}
+
+	/**
+	 * Vermerkt eine über die Fassade angelegte Person. Ein bestätigter Eintrag
+	 * wird nicht auf "angenommen" zurückgesetzt.
+	 *
+	 * @param patientId die Patienten-ID
+	 * @param created   true, wenn die API die Person angelegt hat; false, wenn sie
+	 *                  in der Outbox liegt
+	 */
+	public synchronized void add(int patientId, boolean created) throws IOException {
+		if (created || table.get(patientId) == 0) {
+			table.put(patientId, created ? CREATED : ACCEPTED);
+		}
+	}
+
+	public synchronized int size() {
+		return table.size();
+	}
+
+	/**
+	 * Lädt bereits in der proprietären API vorhandene Patienten-IDs, eine pro
+	 * Zeile; bei CSV zählt die erste Spalte. Zeilen ohne ganzzahlige ID (z.B.
+	 * eine Kopfzeile) werden übersprungen.
+	 *
+	 * @return Anzahl der gelesenen IDs
+	 */
+	public long bulkLoad(Path file) throws IOException {
+		long loaded = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			for (String line; (line = reader.readLine()) != null;) {
+				Integer patientId = parseId(firstColumn(line));
+				if (patientId != null) {
+					add(patientId, true);
+					loaded++;
+				}
+			}
+		}
+		synchronized (this) {
+			table.force();
+		}
+		return loaded;
+	}
+
+	/**
+	 * @return die Patienten-ID als Zahl oder null, wenn sie keine ganze Zahl ist
+	 */
+	public static Integer parseId(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		table.force();
+	}
+
+	private static String firstColumn(String line) {
+		int end = line.length();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == ',' || c == ';' || c == '\t') {
+				end = i;
+				break;
+			}
+		}
+		return line.substring(0, end).replace("\"", "");
+	}
+}
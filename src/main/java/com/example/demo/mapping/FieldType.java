@@ -0,0 +1,72 @@
+package com.example.demo.mapping;
+
+import java.math.BigDecimal;
+
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.DateTimeType;
+
+/**
+ * Typ eines Feldes im Anfragekörper der proprietären API und die Umwandlung
+ * des FHIR-Werts in diesen Typ.
+ */
+public enum FieldType {
+	// Zeichenkette, unverändert
+	STRING,
+	// JSON-Zahl ohne Nachkommastellen, z.B. für Patienten-IDs
+	INTEGER,
+	// JSON-Zahl, z.B. für Messwerte
+	DECIMAL,
+	// Datum im Format DD.MM.YYYY, unvollständige Datumswerte werden zu null
+	GERMAN_DATE,
+	// Zeitpunkt, geschrieben als ISO-8601 in UTC
+	INSTANT;
+
+	/**
+	 * Wandelt einen FHIR-Wert um.
+	 *
+	 * @param value der erste Wert des Ausdrucks oder null
+	 * @return der Wert für den Anfragekörper oder null
+	 * @throws IllegalArgumentException wenn der Wert nicht umgewandelt werden kann
+	 */
+	Object convert(Base value) {
+		if (value == null) {
+			return null;
+		}
+		if (this == INSTANT && value instanceof BaseDateTimeType) {
+			return ((BaseDateTimeType) value).getValue();
+		}
+		String text = value.primitiveValue();
+		if (text == null) {
+			return null;
+		}
+		switch (this) {
+		case INTEGER:
+			return Integer.valueOf(text.trim());
+		case DECIMAL:
+			return new BigDecimal(text.trim());
+		case GERMAN_DATE:
+			return germanDate(text);
+		case INSTANT:
+			return new DateTimeType(text).getValue();
+		default:
+			return text;
+		}
+	}
+
+	/**
+	 * Konvertierung eines Datums von YYYY-MM-DD zu DD.MM.YYYY.
+	 *
+	 * @return das konvertierte Datum oder null, wenn nur YYYY oder YYYY-MM
+	 *         angegeben ist
+	 */
+	public static String germanDate(String date) {
+		String[] parts = date.split("-");
+		// Das Datum kann mit YYYY oder YYYY-MM angegeben werden, in diesem Fall
+		// verlieren wir die Info...
+		if (parts.length < 3) {
+			return null;
+		}
+		return parts[2] + "." + parts[1] + "." + parts[0];
+	}
+}
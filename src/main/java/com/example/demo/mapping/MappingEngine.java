@@ -0,0 +1,60 @@
+package com.example.demo.mapping;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Base;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Bildet FHIR-Ressourcen anhand der konfigurierten Abbildungen
+ * ({@code fhir-facade.mappings.*}) auf Anfragen an die proprietäre API ab.
+ * <p>
+ * Alle Ausdrücke werden beim Start gegen das FHIR-Modell geprüft und
+ * übersetzt. Eine ungültige Abbildung verhindert den Start der Anwendung, zur
+ * Laufzeit wird kein Ausdruck mehr interpretiert.
+ */
+@Component
+// Fehler in den konfigurierten Abbildungen verhindern den Start
+@Lazy(false)
+public class MappingEngine {
+
+	// Abbildung je Ressourcentyp
+	private final Map<String, ResourceMapping> mappings = new HashMap<>();
+
+	public MappingEngine(FhirFacadeProperties fhirFacadeProperties, FhirContext fhirContext, FacadeMetrics metrics) {
+		for (Map.Entry<String, FhirFacadeProperties.Mapping> entry : fhirFacadeProperties.getMappings().entrySet()) {
+			String name = entry.getKey();
+			FhirFacadeProperties.Mapping config = entry.getValue();
+			if (config.getResourceType() == null || config.getPath() == null) {
+				throw new IllegalArgumentException("Mapping " + name + ": resourceType and path are required");
+			}
+			Base prototype;
+			try {
+				prototype = (Base) fhirContext.getResourceDefinition(config.getResourceType()).newInstance();
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Mapping " + name + ": unknown resource type "
+						+ config.getResourceType(), e);
+			}
+			ResourceMapping mapping = new ResourceMapping(name, config, prototype, metrics);
+			if (mappings.putIfAbsent(config.getResourceType(), mapping) != null) {
+				throw new IllegalArgumentException(
+						"Mapping " + name + ": resource type " + config.getResourceType() + " is mapped twice");
+			}
+		}
+	}
+
+	/**
+	 * @return die Abbildung des Ressourcentyps oder null, wenn keine
+	 *         konfiguriert ist
+	 */
+	public ResourceMapping get(String resourceType) {
+		return mappings.get(resourceType);
+	}
+}
@@ -0,0 +1,380 @@
+package com.example.demo.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.StringType;
+
+/**
+ * Ein vorab übersetzter Ausdruck in einer Teilmenge von FHIRPath.
+ * <p>
+ * Unterstützt werden Pfade aus Elementnamen ({@code name.given}, optional mit
+ * dem Ressourcentyp am Anfang) und die Funktionen {@code first()},
+ * {@code where(pfad = 'text')} und {@code join('trenner')}, z.B.
+ * {@code context.encounter.identifier.where(type.coding.first().code = 'AN').value}.
+ * Wie in FHIRPath liefert jeder Schritt eine Liste von Werten. Primitive
+ * Elemente ohne Wert (nur mit Erweiterungen) zählen als nicht vorhanden,
+ * {@code join} liefert auch für eine leere Liste einen (leeren) Text.
+ * <p>
+ * Der Ausdruck wird beim Übersetzen gegen das Modell des Ressourcentyps
+ * geprüft, unbekannte Elemente fallen also beim Start auf. Zur Laufzeit wird
+ * nur noch die Folge der Schritte ausgeführt, die Elemente werden über den
+ * vorab berechneten Hash ihres Namens gelesen.
+ * <p>
+ * {@link #elements()} nennt die gelesenen Elemente in der Schreibweise des
+ * {@link com.example.demo.stream.SelectiveExtractor}, damit sich prüfen lässt,
+ * ob eine nur teilweise gelesene Ressource für den Ausdruck genügt.
+ */
+public final class PathExpression {
+
+	private final String source;
+	private final Step[] steps;
+	private final Set<String> elements;
+
+	private PathExpression(String source, Step[] steps, Set<String> elements) {
+		this.source = source;
+		this.steps = steps;
+		this.elements = Collections.unmodifiableSet(elements);
+	}
+
+	/**
+	 * Übersetzt einen Ausdruck.
+	 *
+	 * @param expression der Ausdruck
+	 * @param prototype  eine leere Instanz des Typs, auf den der Ausdruck
+	 *                   angewendet wird, zur Prüfung der Elementnamen
+	 * @return der übersetzte Ausdruck
+	 * @throws IllegalArgumentException wenn der Ausdruck ungültig ist oder
+	 *                                  unbekannte Elemente enthält
+	 */
+	public static PathExpression compile(String expression, Base prototype) {
+		Parser parser = new Parser(expression);
+		PathExpression compiled = parser.path(prototype, true, "");
+		if (!parser.atEnd()) {
+			throw parser.error("Unexpected '" + parser.rest() + "'");
+		}
+		return compiled;
+	}
+
+	/**
+	 * Wendet den Ausdruck an.
+	 *
+	 * @param input die Ressource bzw. das Element
+	 * @return die gefundenen Werte, leer wenn keine
+	 */
+	public List<Base> evaluate(Base input) {
+		List<Base> current = new ArrayList<>(1);
+		current.add(input);
+		for (Step step : steps) {
+			if (current.isEmpty() && !(step instanceof Join)) {
+				return current;
+			}
+			current = step.apply(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Die vom Ausdruck gelesenen Elemente, z.B. {@code name[0].given[*]} für
+	 * {@code name.first().given}: Listen werden mit {@code [*]} geschrieben, mit
+	 * {@code [0]}, wenn unmittelbar {@code first()} folgt. Die Pfade in
+	 * {@code where()} sind enthalten. Elemente, deren Typ nicht eindeutig ist,
+	 * gelten als Listen.
+	 *
+	 * @return die Pfade der gelesenen Elemente
+	 */
+	public Set<String> elements() {
+		return elements;
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/**
+	 * Ein Schritt des Ausdrucks, bildet eine Liste von Werten auf die nächste ab.
+	 */
+	private interface Step {
+		List<Base> apply(List<Base> input);
+	}
+
+	/**
+	 * Liest ein Element aller Werte.
+	 */
+	private static final class Child implements Step {
+		private final String name;
+		private final int hash;
+
+		Child(String name) {
+			this.name = name;
+			this.hash = name.hashCode();
+		}
+
+		@Override
+		public List<Base> apply(List<Base> input) {
+			List<Base> output = new ArrayList<>(input.size());
+			for (Base base : input) {
+				Base[] children;
+				try {
+					children = base.getProperty(hash, name, false);
+				} catch (FHIRException e) {
+					continue;
+				}
+				if (children == null) {
+					continue;
+				}
+				for (Base child : children) {
+					if (child != null && (!child.isPrimitive() || child.hasPrimitiveValue())) {
+						output.add(child);
+					}
+				}
+			}
+			return output;
+		}
+	}
+
+	/**
+	 * first()
+	 */
+	private static final class First implements Step {
+		@Override
+		public List<Base> apply(List<Base> input) {
+			return input.size() <= 1 ? input : input.subList(0, 1);
+		}
+	}
+
+	/**
+	 * where(pfad = 'text'): behält die Werte, bei denen der Pfad genau einen Wert
+	 * mit diesem Text liefert.
+	 */
+	private static final class Where implements Step {
+		private final PathExpression path;
+		private final String literal;
+
+		Where(PathExpression path, String literal) {
+			this.path = path;
+			this.literal = literal;
+		}
+
+		@Override
+		public List<Base> apply(List<Base> input) {
+			List<Base> output = new ArrayList<>(input.size());
+			for (Base base : input) {
+				List<Base> values = path.evaluate(base);
+				if (values.size() == 1 && literal.equals(values.get(0).primitiveValue())) {
+					output.add(base);
+				}
+			}
+			return output;
+		}
+	}
+
+	/**
+	 * join('trenner'): verbindet die Texte aller Werte.
+	 */
+	private static final class Join implements Step {
+		private final String separator;
+
+		Join(String separator) {
+			this.separator = separator;
+		}
+
+		@Override
+		public List<Base> apply(List<Base> input) {
+			StringBuilder joined = new StringBuilder();
+			for (Base base : input) {
+				if (joined.length() > 0) {
+					joined.append(separator);
+				}
+				joined.append(base.primitiveValue());
+			}
+			List<Base> output = new ArrayList<>(1);
+			output.add(new StringType(joined.toString()));
+			return output;
+		}
+	}
+
+	/**
+	 * Rekursiver Abstieg über den Ausdruck, prüft die Elementnamen gegen
+	 * Prototypen des jeweiligen Typs.
+	 */
+	private static final class Parser {
+		private final String expression;
+		private int pos;
+
+		Parser(String expression) {
+			this.expression = expression;
+		}
+
+		/**
+		 * @param prefix Pfad des Elements, auf das der Ausdruck angewendet wird, leer
+		 *               für die Ressource
+		 */
+		PathExpression path(Base prototype, boolean root, String prefix) {
+			int start = pos;
+			List<Step> steps = new ArrayList<>();
+			Set<String> elements = new LinkedHashSet<>();
+			String element = prefix;
+			boolean first = true;
+			boolean afterChild = false;
+			do {
+				skipWhitespace();
+				String name = identifier();
+				skipWhitespace();
+				if (peek() == '(') {
+					pos++;
+					Step step = function(name, prototype, element);
+					if (step instanceof Where) {
+						elements.addAll(((Where) step).path.elements());
+					} else if (step instanceof First && afterChild && element.endsWith("[*]")) {
+						// Nur das erste Element der Liste wird gelesen
+						element = element.substring(0, element.length() - 3) + "[0]";
+					}
+					afterChild = false;
+					steps.add(step);
+				} else if (first && root && prototype != null && name.equals(prototype.fhirType())) {
+					// Optionaler Ressourcentyp am Anfang, z.B. Patient.name
+				} else {
+					String segment = isList(prototype, name) ? name + "[*]" : name;
+					element = element.isEmpty() ? segment : element + "." + segment;
+					prototype = child(prototype, name);
+					steps.add(new Child(name));
+					afterChild = true;
+				}
+				first = false;
+				skipWhitespace();
+			} while (consume('.'));
+			elements.add(element);
+			return new PathExpression(expression.substring(start, pos).trim(), steps.toArray(new Step[0]), elements);
+		}
+
+		private Step function(String name, Base prototype, String element) {
+			skipWhitespace();
+			Step step;
+			switch (name) {
+			case "first":
+				step = new First();
+				break;
+			case "where":
+				PathExpression path = path(prototype, false, element);
+				skipWhitespace();
+				if (!consume('=')) {
+					throw error("Expected '=' in where()");
+				}
+				skipWhitespace();
+				step = new Where(path, string());
+				break;
+			case "join":
+				step = new Join(peek() == '\'' ? string() : "");
+				break;
+			default:
+				throw error("Unsupported function " + name + "()");
+			}
+			skipWhitespace();
+			if (!consume(')')) {
+				throw error("Expected ')' after " + name + "(");
+			}
+			return step;
+		}
+
+		/**
+		 * @return true, wenn das Element mehrfach vorkommen kann oder sein Typ nicht
+		 *         geprüft werden kann
+		 */
+		private static boolean isList(Base prototype, String name) {
+			if (prototype == null) {
+				return true;
+			}
+			try {
+				Property property = prototype.getNamedProperty(name);
+				return property == null || property.isList();
+			} catch (FHIRException e) {
+				return true;
+			}
+		}
+
+		/**
+		 * @return Prototyp des Elements, oder null, wenn der Typ nicht eindeutig ist
+		 *         (z.B. value[x]) und nicht weiter geprüft werden kann
+		 */
+		private Base child(Base prototype, String name) {
+			if (prototype == null) {
+				return null;
+			}
+			try {
+				String[] types = prototype.getTypesForProperty(name.hashCode(), name);
+				return types.length <= 1 ? prototype.makeProperty(name.hashCode(), name) : null;
+			} catch (FHIRException e) {
+				throw error("Unknown element " + name + " in " + prototype.fhirType());
+			}
+		}
+
+		private String identifier() {
+			int start = pos;
+			while (pos < expression.length() && (Character.isLetterOrDigit(expression.charAt(pos))
+					|| expression.charAt(pos) == '_')) {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("Expected element or function name");
+			}
+			return expression.substring(start, pos);
+		}
+
+		private String string() {
+			if (!consume('\'')) {
+				throw error("Expected string literal");
+			}
+			StringBuilder text = new StringBuilder();
+			while (pos < expression.length() && expression.charAt(pos) != '\'') {
+				char c = expression.charAt(pos++);
+				if (c == '\\' && pos < expression.length()) {
+					c = expression.charAt(pos++);
+				}
+				text.append(c);
+			}
+			if (!consume('\'')) {
+				throw error("Unterminated string literal");
+			}
+			return text.toString();
+		}
+
+		private void skipWhitespace() {
+			while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean consume(char c) {
+			if (peek() == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private int peek() {
+			return pos < expression.length() ? expression.charAt(pos) : -1;
+		}
+
+		boolean atEnd() {
+			skipWhitespace();
+			return pos == expression.length();
+		}
+
+		String rest() {
+			return expression.substring(pos);
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + pos + " in '" + expression + "'");
+		}
+	}
+}
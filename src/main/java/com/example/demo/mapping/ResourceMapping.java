@@ -0,0 +1,219 @@
+package com.example.demo.mapping;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.Base;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.controller.BadRequestException;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.stream.SpooledContent;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Die übersetzte Abbildung eines Ressourcentyps: Pflichtangaben, Felder und
+ * Partitionsschlüssel liegen als Arrays vorab übersetzter Ausdrücke vor.
+ */
+public final class ResourceMapping {
+
+	private final String resourceType;
+	private final String path;
+	private final PathExpression[] checks;
+	private final String[] issues;
+	private final String[] names;
+	private final PathExpression[] expressions;
+	private final FieldType[] types;
+	// Indizes der Felder des Partitionsschlüssels
+	private final int[] partitionKey;
+	private final String contentField;
+	private final String contentIssue;
+	// Alle von den Ausdrücken gelesenen Elemente, siehe PathExpression.elements()
+	private final Set<String> elements = new HashSet<>();
+	private final FacadeMetrics metrics;
+
+	/**
+	 * @param config    die konfigurierte Abbildung
+	 * @param prototype eine leere Instanz des Ressourcentyps
+	 * @throws IllegalArgumentException wenn ein Ausdruck ungültig ist oder bei
+	 *                                  einem Inhaltsfeld attachment.data liest
+	 */
+	ResourceMapping(String name, FhirFacadeProperties.Mapping config, Base prototype, FacadeMetrics metrics) {
+		this.resourceType = config.getResourceType();
+		this.path = config.getPath();
+		this.metrics = metrics;
+		List<FhirFacadeProperties.Mapping.Check> checkConfig = config.getChecks();
+		this.checks = new PathExpression[checkConfig.size()];
+		this.issues = new String[checkConfig.size()];
+		for (int i = 0; i < checks.length; i++) {
+			checks[i] = compile(name, checkConfig.get(i).getExpression(), prototype);
+			issues[i] = checkConfig.get(i).getIssue();
+		}
+		int size = config.getFields().size();
+		this.names = new String[size];
+		this.expressions = new PathExpression[size];
+		this.types = new FieldType[size];
+		int i = 0;
+		for (Map.Entry<String, FhirFacadeProperties.Mapping.Field> field : config.getFields().entrySet()) {
+			names[i] = field.getKey();
+			expressions[i] = compile(name, field.getValue().getExpression(), prototype);
+			types[i] = field.getValue().getType();
+			i++;
+		}
+		this.partitionKey = new int[config.getPartitionKey().size()];
+		for (int k = 0; k < partitionKey.length; k++) {
+			partitionKey[k] = List.of(names).indexOf(config.getPartitionKey().get(k));
+			if (partitionKey[k] < 0) {
+				throw new IllegalArgumentException("Mapping " + name + ": partition key "
+						+ config.getPartitionKey().get(k) + " is not a field");
+			}
+		}
+		this.contentField = config.getContentField();
+		this.contentIssue = config.getContentIssue();
+		for (PathExpression check : checks) {
+			elements.addAll(check.elements());
+		}
+		for (PathExpression expression : expressions) {
+			elements.addAll(expression.elements());
+		}
+		// Der Dokumentinhalt wird als Stream übertragen und liegt nie in der Ressource
+		if (contentField != null) {
+			for (String element : elements) {
+				if (element.endsWith("attachment.data")) {
+					throw new IllegalArgumentException("Mapping " + name + ": " + element
+							+ " is only available as content field " + contentField);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prüft, ob die Abbildung nur die angegebenen Elemente liest, also auf eine
+	 * nur teilweise gelesene Ressource angewendet werden kann. Ein mit
+	 * {@code [*]} angegebenes Element deckt auch {@code [0]} ab.
+	 *
+	 * @param available die vorhandenen Elemente in der Schreibweise von
+	 *                  {@link PathExpression#elements()}
+	 * @return true, wenn alle gelesenen Elemente vorhanden sind
+	 */
+	public boolean readsOnly(Set<String> available) {
+		for (String element : elements) {
+			if (!available.contains(element)
+					&& available.stream().noneMatch(candidate -> covers(candidate, element))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean covers(String available, String element) {
+		String[] availableSegments = available.split("\\.");
+		String[] elementSegments = element.split("\\.");
+		if (availableSegments.length != elementSegments.length) {
+			return false;
+		}
+		for (int i = 0; i < elementSegments.length; i++) {
+			String segment = elementSegments[i];
+			if (!segment.equals(availableSegments[i]) && !(segment.endsWith("[0]")
+					&& availableSegments[i].equals(segment.substring(0, segment.length() - 3) + "[*]"))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prüft die Ressource und baut die Anfrage an die proprietäre API.
+	 *
+	 * @param resource   die Ressource
+	 * @param contentB64 der Base64-kodierte Dokumentinhalt oder null; muss
+	 *                   geöffnet bleiben, bis die Anfrage gesendet wurde
+	 * @return die Anfrage
+	 * @throws BadRequestException wenn Pflichtangaben fehlen oder Werte nicht
+	 *                             umgewandelt werden können
+	 */
+	public OutboundRequest map(Base resource, SpooledContent contentB64) throws BadRequestException {
+		Timer.Sample sample = metrics.start();
+		List<String> errors = new ArrayList<>();
+		for (int i = 0; i < checks.length; i++) {
+			if (checks[i].evaluate(resource).isEmpty()) {
+				errors.add(issues[i]);
+			}
+		}
+		if (contentField != null && contentB64 == null && contentIssue != null) {
+			errors.add(contentIssue);
+		}
+		// Falls Fehler aufgetreten sind, sammeln wir alle Fehlermeldungen in die
+		// Ausnahme
+		if (!errors.isEmpty()) {
+			throw new BadRequestException(errors);
+		}
+		metrics.stage(sample, FacadeMetrics.VALIDATE, resourceType);
+
+		sample = metrics.start();
+		Object[] values = new Object[names.length];
+		for (int i = 0; i < names.length; i++) {
+			List<Base> result = expressions[i].evaluate(resource);
+			try {
+				values[i] = types[i].convert(result.isEmpty() ? null : result.get(0));
+			} catch (IllegalArgumentException e) {
+				errors.add("Invalid value '" + result.get(0).primitiveValue() + "' for " + names[i] + " ("
+						+ resourceType + "." + expressions[i] + ")");
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new BadRequestException(errors);
+		}
+		metrics.stage(sample, FacadeMetrics.MAP, resourceType);
+
+		sample = metrics.start();
+		OutboundRequest request = OutboundRequest.json(path, partitionKey(values), names, values, contentField,
+				contentB64);
+		metrics.stage(sample, FacadeMetrics.BUILD, resourceType);
+		return request;
+	}
+
+	/**
+	 * @return der FHIR-Ressourcentyp
+	 */
+	public String getResourceType() {
+		return resourceType;
+	}
+
+	/**
+	 * @return Pfad der proprietären API
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	private String partitionKey(Object[] values) {
+		if (partitionKey.length == 1) {
+			return String.valueOf(values[partitionKey[0]]);
+		}
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < partitionKey.length; i++) {
+			if (i > 0) {
+				key.append('|');
+			}
+			key.append(values[partitionKey[i]]);
+		}
+		return key.toString();
+	}
+
+	private static PathExpression compile(String name, String expression, Base prototype) {
+		if (expression == null || expression.isBlank()) {
+			throw new IllegalArgumentException("Mapping " + name + ": missing expression");
+		}
+		try {
+			return PathExpression.compile(expression, prototype);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Mapping " + name + ": " + e.getMessage(), e);
+		}
+	}
+}
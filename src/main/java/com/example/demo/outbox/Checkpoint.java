@@ -0,0 +1,52 @@
+package com.example.demo.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Speichert die Position des ältesten noch nicht zugestellten Eintrags. Die
+ * Datei wird über eine temporäre Datei ersetzt, sodass sie auch nach einem
+ * Absturz immer einen vollständigen Wert enthält.
+ */
+class Checkpoint {
+
+	private final Path file;
+	private final Path temporaryFile;
+	private final boolean forceWrites;
+
+	Checkpoint(Path file, boolean forceWrites) {
+		this.file = file;
+		this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		this.forceWrites = forceWrites;
+	}
+
+	/**
+	 * @return die gespeicherte Position oder 0, wenn noch keine gespeichert wurde
+	 */
+	long read() throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		byte[] content = Files.readAllBytes(file);
+		if (content.length != Long.BYTES) {
+			throw new IOException("Invalid checkpoint file " + file);
+		}
+		return ByteBuffer.wrap(content).getLong();
+	}
+
+	void write(long offset) throws IOException {
+		try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, offset));
+			if (forceWrites) {
+				channel.force(false);
+			}
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
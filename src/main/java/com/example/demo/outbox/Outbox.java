@@ -0,0 +1,74 @@
+package com.example.demo.outbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+
+/**
+ * Nimmt geprüfte Anfragen an die proprietäre API an, speichert sie dauerhaft
+ * in einem lokalen {@link SegmentLog} und stellt sie im Hintergrund zu. Nur
+ * aktiv, wenn {@code fhir-facade.outbox.enabled=true} gesetzt ist.
+ */
+@Service
+// Stellt nach einem Neustart ausstehende Einträge zu, auch ohne Anfrage
+@Lazy(false)
+@ConditionalOnProperty(prefix = "fhir-facade.outbox", name = "enabled", havingValue = "true")
+public class Outbox implements DisposableBean {
+
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+	private final SegmentLog log;
+	private final SegmentLog deadLetters;
+	private final OutboxDeliveryEngine deliveryEngine;
+
+	public Outbox(FhirFacadeProperties fhirFacadeProperties, ProprietaryApiService proprietaryApiService,
+			FacadeMetrics metrics) throws IOException {
+		FhirFacadeProperties.Outbox config = fhirFacadeProperties.getOutbox();
+		Path directory = Paths.get(config.getDirectory());
+		log = new SegmentLog(directory, config.getSegmentSize().toBytes(), config.isForceWrites());
+		deadLetters = new SegmentLog(directory.resolve(DEAD_LETTER_DIRECTORY), config.getSegmentSize().toBytes(),
+				config.isForceWrites());
+		deliveryEngine = new OutboxDeliveryEngine(log,
+				new Checkpoint(directory.resolve(CHECKPOINT_FILE), config.isForceWrites()), deadLetters,
+				proprietaryApiService::deliver, config);
+		deliveryEngine.start();
+		metrics.gauge("fhir.facade.outbox.backlog", "Bytes in the outbox not yet delivered", deliveryEngine,
+				OutboxDeliveryEngine::getBacklog);
+	}
+
+	/**
+	 * Speichert die Anfrage dauerhaft. Nach der Rückkehr ist die Anfrage
+	 * angenommen und wird auch nach einem Neustart zugestellt.
+	 *
+	 * @param request die Anfrage an die proprietäre API
+	 * @return Position der Anfrage in der Outbox
+	 * @throws IOException wenn die Anfrage nicht gespeichert werden kann
+	 */
+	public long append(OutboundRequest request) throws IOException {
+		long offset;
+		try (InputStream body = request.openBody()) {
+			offset = log.append(request.getPath(), request.getPartitionKey(), request.getContentLength(), body);
+		}
+		deliveryEngine.wakeUp();
+		return offset;
+	}
+
+	@Override
+	public void destroy() throws IOException, InterruptedException {
+		deliveryEngine.shutdown();
+		log.close();
+		deadLetters.close();
+	}
+}
@@ -0,0 +1,254 @@
+package com.example.demo.outbox;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.service.ApiResult;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.stream.ByteBufferInputStream;
+
+/**
+ * Stellt die Einträge des {@link SegmentLog} im Hintergrund zu.
+ * <p>
+ * Einträge werden in Log-Reihenfolge gelesen und parallel zugestellt, Einträge
+ * mit demselben Partitionsschlüssel (also zum selben Patienten) jedoch strikt
+ * nacheinander. Vorübergehend fehlgeschlagene Zustellungen werden mit
+ * exponentiell wachsender Wartezeit wiederholt. Von der API dauerhaft
+ * abgelehnte Einträge und solche, die nach maxAttempts Versuchen nicht
+ * zugestellt sind, werden in das Dead-Letter-Log verschoben, damit sie
+ * nachfolgende Einträge zum selben Patienten und das Löschen alter Segmente
+ * nicht blockieren. Die Position des ältesten noch offenen Eintrags wird
+ * regelmäßig als Checkpoint gespeichert, Segmente davor werden gelöscht. Nach
+ * einem Neustart wird ab dem Checkpoint zugestellt, einzelne Einträge können
+ * dabei doppelt ankommen.
+ * <p>
+ * Der gesamte Zustand wird ausschließlich im Thread der Outbox verändert.
+ */
+class OutboxDeliveryEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboxDeliveryEngine.class);
+	// Anzahl gelesener, aber noch nicht zugestellter Einträge je erlaubter
+	// gleichzeitiger Zustellung
+	private static final int READ_AHEAD_FACTOR = 64;
+
+	private final SegmentLog log;
+	private final Checkpoint checkpoint;
+	// Nicht zustellbare Einträge
+	private final SegmentLog deadLetters;
+	private final Function<OutboundRequest, CompletableFuture<ApiResult>> sender;
+	private final int maxInFlight;
+	private final int maxPending;
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final long pollIntervalMillis;
+	private final ScheduledExecutorService executor;
+	private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+
+	// Gelesene, noch nicht zugestellte Einträge nach Offset
+	private final TreeMap<Long, Delivery> pending = new TreeMap<>();
+	private long readOffset;
+	// Zuletzt gespeicherter Checkpoint, wird auch von anderen Threads gelesen
+	private volatile long committedOffset;
+	private int inFlight;
+
+	OutboxDeliveryEngine(SegmentLog log, Checkpoint checkpoint, SegmentLog deadLetters,
+			Function<OutboundRequest, CompletableFuture<ApiResult>> sender, FhirFacadeProperties.Outbox config)
+			throws IOException {
+		this.log = log;
+		this.checkpoint = checkpoint;
+		this.deadLetters = deadLetters;
+		this.sender = sender;
+		this.maxInFlight = config.getMaxInFlight();
+		this.maxPending = Math.max(1, maxInFlight) * READ_AHEAD_FACTOR;
+		this.maxAttempts = config.getMaxAttempts();
+		this.initialBackoffNanos = config.getInitialBackoff().toNanos();
+		this.maxBackoffNanos = config.getMaxBackoff().toNanos();
+		this.pollIntervalMillis = config.getPollInterval().toMillis();
+		// Ohne Segmente gibt es nichts zuzustellen, ein alter Checkpoint ist ungültig
+		this.readOffset = log.segmentCount() == 0 ? 0 : Math.max(checkpoint.read(), log.firstOffset());
+		this.committedOffset = readOffset;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "outbox-delivery");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	void start() {
+		if (readOffset < log.endOffset()) {
+			logger.info("Resuming outbox delivery at offset {}", readOffset);
+		}
+		executor.scheduleWithFixedDelay(() -> {
+			commit();
+			pump();
+		}, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Signalisiert, dass neue Einträge vorliegen.
+	 */
+	void wakeUp() {
+		if (wakeUpRequested.compareAndSet(false, true)) {
+			executor.execute(() -> {
+				wakeUpRequested.set(false);
+				pump();
+			});
+		}
+	}
+
+	/**
+	 * Beendet die Zustellung und speichert den Checkpoint. Laufende Zustellungen
+	 * werden nach einem Neustart wiederholt.
+	 */
+	void shutdown() throws InterruptedException {
+		executor.execute(this::commit);
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return Bytes im Log ab dem zuletzt gespeicherten Checkpoint
+	 */
+	long getBacklog() {
+		return log.endOffset() - committedOffset;
+	}
+
+	private void pump() {
+		try {
+			while (pending.size() < maxPending) {
+				OutboxRecord record = log.read(readOffset);
+				if (record == null) {
+					break;
+				}
+				pending.put(record.getOffset(), new Delivery(record));
+				readOffset = record.getNextOffset();
+			}
+
+			long now = System.nanoTime();
+			// Pro Partitionsschlüssel ist nur der älteste offene Eintrag zustellbar
+			Set<String> seenKeys = new HashSet<>();
+			for (Delivery delivery : pending.values()) {
+				if (inFlight >= maxInFlight) {
+					break;
+				}
+				if (seenKeys.add(delivery.record.getPartitionKey()) && !delivery.inFlight
+						&& delivery.notBefore - now <= 0) {
+					dispatch(delivery);
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.error("Outbox delivery failed", e);
+		}
+	}
+
+	private void dispatch(Delivery delivery) {
+		delivery.inFlight = true;
+		delivery.attempts++;
+		inFlight++;
+		OutboxRecord record = delivery.record;
+		OutboundRequest request = new OutboundRequest(record.getPath(), record.getPartitionKey(),
+				record.getBody().remaining(), () -> new ByteBufferInputStream(record.getBody()));
+		CompletableFuture<ApiResult> result;
+		try {
+			result = sender.apply(request);
+		} catch (RuntimeException e) {
+			result = CompletableFuture.failedFuture(e);
+		}
+		// Ausnahmen (z.B. ein geöffneter Schutzschalter) sind vorübergehend
+		result.whenComplete((apiResult, error) -> executor
+				.execute(() -> complete(delivery, apiResult != null ? apiResult : ApiResult.RETRYABLE)));
+	}
+
+	private void complete(Delivery delivery, ApiResult result) {
+		delivery.inFlight = false;
+		inFlight--;
+		OutboxRecord record = delivery.record;
+		if (result == ApiResult.SUCCESS) {
+			pending.remove(record.getOffset());
+		} else if (result == ApiResult.REJECTED) {
+			deadLetter(record, "rejected by the proprietary API");
+			pending.remove(record.getOffset());
+		} else if (maxAttempts > 0 && delivery.attempts >= maxAttempts) {
+			deadLetter(record, "not delivered after " + delivery.attempts + " attempts");
+			pending.remove(record.getOffset());
+		} else {
+			long backoff = backoff(delivery.attempts);
+			delivery.notBefore = System.nanoTime() + backoff;
+			logger.warn("Delivery of {} failed (attempt {}), retrying in {} ms", record, delivery.attempts,
+					TimeUnit.NANOSECONDS.toMillis(backoff));
+		}
+		pump();
+	}
+
+	/**
+	 * Verschiebt einen nicht zustellbaren Eintrag in das Dead-Letter-Log. Kann er
+	 * dort nicht gespeichert werden, wird er verworfen.
+	 */
+	private void deadLetter(OutboxRecord record, String reason) {
+		try {
+			long offset = deadLetters.append(record.getPath(), record.getPartitionKey(),
+					record.getBody().remaining(), new ByteBufferInputStream(record.getBody()));
+			logger.error("Moved {} to the dead letter log at offset {}: {}", record, offset, reason);
+		} catch (IOException e) {
+			logger.error("Discarding {} ({}), dead letter log not writable", record, reason, e);
+		}
+	}
+
+	/**
+	 * Wartezeit vor dem nächsten Versuch: verdoppelt sich mit jedem Versuch bis
+	 * zur Obergrenze, zufällig um bis zu die Hälfte verkürzt, damit nach einem
+	 * Ausfall nicht alle Wiederholungen zugleich eintreffen.
+	 */
+	private long backoff(int attempts) {
+		long backoff = initialBackoffNanos << Math.min(attempts - 1, 30);
+		if (backoff <= 0 || backoff > maxBackoffNanos) {
+			backoff = maxBackoffNanos;
+		}
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	private void commit() {
+		long offset = pending.isEmpty() ? readOffset : pending.firstKey();
+		if (offset <= committedOffset) {
+			return;
+		}
+		try {
+			checkpoint.write(offset);
+			committedOffset = offset;
+			int deleted = log.deleteBefore(offset);
+			if (deleted > 0) {
+				logger.debug("Deleted {} delivered outbox segment(s)", deleted);
+			}
+		} catch (IOException e) {
+			logger.warn("Could not write outbox checkpoint", e);
+		}
+	}
+
+	/**
+	 * Zustellzustand eines Eintrags.
+	 */
+	private static final class Delivery {
+		final OutboxRecord record;
+		int attempts;
+		long notBefore = System.nanoTime();
+		boolean inFlight;
+
+		Delivery(OutboxRecord record) {
+			this.record = record;
+		}
+	}
+}
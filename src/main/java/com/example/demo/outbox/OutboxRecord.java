@@ -0,0 +1,65 @@
+package com.example.demo.outbox;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ein aus dem {@link SegmentLog} gelesener Eintrag. Der Anfragekörper verweist
+ * direkt auf das gemappte Segment und wird nicht kopiert.
+ */
+class OutboxRecord {
+
+	private final long offset;
+	private final long nextOffset;
+	private final String path;
+	private final String partitionKey;
+	private final ByteBuffer body;
+
+	OutboxRecord(long offset, long nextOffset, String path, String partitionKey, ByteBuffer body) {
+		this.offset = offset;
+		this.nextOffset = nextOffset;
+		this.path = path;
+		this.partitionKey = partitionKey;
+		this.body = body;
+	}
+
+	/**
+	 * @return Position des Eintrags im Log
+	 */
+	long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Position des nächsten Eintrags im Log
+	 */
+	long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * @return Pfad relativ zur Basis-URL der proprietären API
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Schlüssel, unter dem Einträge zum selben Patienten in Reihenfolge
+	 *         zugestellt werden
+	 */
+	String getPartitionKey() {
+		return partitionKey;
+	}
+
+	/**
+	 * @return schreibgeschützte Sicht auf den Anfragekörper
+	 */
+	ByteBuffer getBody() {
+		return body.asReadOnlyBuffer();
+	}
+
+	@Override
+	public String toString() {
+		return "OutboxRecord[offset=" + offset + ", path=" + path + ", size=" + body.remaining() + "]";
+	}
+}
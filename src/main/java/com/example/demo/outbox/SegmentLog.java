@@ -0,0 +1,410 @@
+package com.example.demo.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only Log aus memory-mapped Segmentdateien.
+ * <p>
+ * Jeder Eintrag hat eine Position (Offset), die über alle Segmente hinweg
+ * eindeutig und aufsteigend ist. Eine Segmentdatei ist nach dem Offset ihres
+ * ersten Bytes benannt. Aufbau eines Eintrags:
+ *
+ * <pre>
+ * [int Länge der Nutzdaten][int CRC32 der Nutzdaten]
+ * [short Länge][Pfad][short Länge][Partitionsschlüssel][Anfragekörper]
+ * </pre>
+ *
+ * Die Länge wird zuletzt geschrieben und markiert den Eintrag damit als
+ * vollständig. Beim Öffnen werden alle Segmente bis zum ersten unvollständigen
+ * oder beschädigten Eintrag gelesen, danach wird weitergeschrieben.
+ * <p>
+ * Unter der Sperre wird nur der Platz eines Eintrags reserviert und seine Länge
+ * geschrieben, den Anfragekörper kopieren mehrere Aufrufer gleichzeitig. Die
+ * Einträge werden in der Reihenfolge ihrer Reservierung freigegeben. Bricht das
+ * Kopieren ab, nachdem schon ein späterer Eintrag reserviert wurde, wird der
+ * Platz als Füllung mit leerem Pfad freigegeben, die beim Lesen übersprungen
+ * wird.
+ */
+class SegmentLog implements Closeable {
+
+	static final int HEADER_SIZE = 8;
+	private static final String SUFFIX = ".seg";
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final long segmentSize;
+	private final boolean forceWrites;
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	// Reservierte, noch nicht freigegebene Einträge in der Reihenfolge ihrer
+	// Reservierung
+	private final Deque<Reservation> reservations = new ArrayDeque<>();
+	private Segment active;
+	// Position hinter dem letzten freigegebenen Eintrag
+	private long end;
+
+	/**
+	 * Öffnet das Log im angegebenen Verzeichnis und stellt vorhandene Segmente
+	 * wieder her.
+	 *
+	 * @param directory   Verzeichnis der Segmentdateien
+	 * @param segmentSize Größe eines neuen Segments in Bytes
+	 * @param forceWrites schreibt jeden Eintrag sofort auf den Datenträger
+	 */
+	SegmentLog(Path directory, long segmentSize, boolean forceWrites) throws IOException {
+		if (segmentSize < HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid segment size " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.forceWrites = forceWrites;
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				long baseOffset = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+				Segment segment = new Segment(baseOffset, file, Files.size(file));
+				segment.recover();
+				segments.put(baseOffset, segment);
+			}
+		}
+		active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+		end = active == null ? 0 : active.baseOffset + active.limit;
+	}
+
+	/**
+	 * Hängt einen Eintrag an das Log an. Der Anfragekörper wird außerhalb der
+	 * Sperre direkt in das gemappte Segment kopiert. Die Methode kehrt zurück,
+	 * sobald der Eintrag freigegeben ist, also auch alle vorher reservierten.
+	 *
+	 * @param path         Pfad relativ zur Basis-URL der proprietären API
+	 * @param partitionKey Schlüssel für die Reihenfolge der Zustellung
+	 * @param bodyLength   Länge des Anfragekörpers
+	 * @param body         Anfragekörper
+	 * @return Offset des Eintrags
+	 * @throws IOException wenn der Eintrag nicht geschrieben werden kann
+	 */
+	long append(String path, String partitionKey, long bodyLength, InputStream body) throws IOException {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		byte[] keyBytes = partitionKey.getBytes(StandardCharsets.UTF_8);
+		if (pathBytes.length > Short.MAX_VALUE || keyBytes.length > Short.MAX_VALUE) {
+			throw new IOException("Path or partition key too long");
+		}
+		if (pathBytes.length == 0) {
+			// Ein leerer Pfad kennzeichnet die Füllung abgebrochener Einträge
+			throw new IOException("Empty path");
+		}
+		long payloadLength = 4L + pathBytes.length + keyBytes.length + bodyLength;
+		if (payloadLength > Integer.MAX_VALUE - HEADER_SIZE) {
+			throw new IOException("Outbox entry too large: " + bodyLength + " bytes");
+		}
+		Reservation reservation = reserve(HEADER_SIZE + (int) payloadLength);
+
+		try {
+			ByteBuffer payload = reservation.payload();
+			payload.putShort((short) pathBytes.length).put(pathBytes);
+			payload.putShort((short) keyBytes.length).put(keyBytes);
+			byte[] chunk = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(1, bodyLength))];
+			for (int read; (read = body.read(chunk, 0, Math.min(chunk.length, payload.remaining()))) > 0;) {
+				payload.put(chunk, 0, read);
+			}
+			if (payload.hasRemaining() || body.read() != -1) {
+				throw new IOException("Body does not match declared length of " + bodyLength + " bytes");
+			}
+			reservation.crc = crc(payload.flip());
+		} catch (IOException | RuntimeException e) {
+			abort(reservation);
+			throw e;
+		}
+		publish(reservation);
+		if (forceWrites) {
+			reservation.segment.buffer.force();
+		}
+		return reservation.segment.baseOffset + reservation.position;
+	}
+
+	/**
+	 * Reserviert den Platz für einen Eintrag, bei Bedarf in einem neuen Segment.
+	 */
+	private synchronized Reservation reserve(int recordSize) throws IOException {
+		if (active == null || active.capacity - active.reserved < recordSize) {
+			roll(recordSize);
+		}
+		Reservation reservation = new Reservation(active, active.reserved, recordSize);
+		active.reserved += recordSize;
+		reservations.add(reservation);
+		return reservation;
+	}
+
+	/**
+	 * Gibt den Platz eines abgebrochenen Eintrags zurück, wenn er zuletzt
+	 * reserviert wurde, und füllt ihn sonst mit einem leeren Eintrag.
+	 */
+	private void abort(Reservation reservation) {
+		synchronized (this) {
+			Segment segment = reservation.segment;
+			if (reservations.peekLast() == reservation
+					&& segment.reserved == reservation.position + reservation.size) {
+				reservations.pollLast();
+				segment.reserved = reservation.position;
+				return;
+			}
+		}
+		ByteBuffer payload = reservation.payload();
+		payload.putShort((short) 0).putShort((short) 0);
+		reservation.crc = crc(payload.rewind());
+		publish(reservation);
+	}
+
+	/**
+	 * Markiert den Eintrag als geschrieben, gibt alle vollständigen Einträge in
+	 * der Reihenfolge ihrer Reservierung frei und wartet, bis auch dieser
+	 * freigegeben ist.
+	 */
+	private synchronized void publish(Reservation reservation) {
+		reservation.written = true;
+		while (!reservations.isEmpty() && reservations.peek().written) {
+			Reservation next = reservations.poll();
+			Segment segment = next.segment;
+			int limit = next.position + next.size;
+			// Markiert das Ende des Logs hinter dem Eintrag, dann wird der Eintrag mit
+			// seiner Länge freigegeben
+			if (segment.capacity - limit >= Integer.BYTES) {
+				segment.buffer.putInt(limit, 0);
+			}
+			segment.buffer.putInt(next.position + Integer.BYTES, next.crc);
+			segment.buffer.putInt(next.position, next.size - HEADER_SIZE);
+			segment.limit = limit;
+			end = segment.baseOffset + limit;
+			next.published = true;
+		}
+		notifyAll();
+		boolean interrupted = false;
+		while (!reservation.published) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// Der Eintrag wird in jedem Fall freigegeben
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static int crc(ByteBuffer payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Liest den Eintrag an der angegebenen Position. Liegt die Position vor dem
+	 * ersten noch vorhandenen Segment, wird ab dem ersten Segment gelesen.
+	 *
+	 * @param offset Position eines Eintrags oder das Ende des vorherigen
+	 * @return der Eintrag oder null, wenn (noch) keiner vorhanden ist
+	 */
+	synchronized OutboxRecord read(long offset) {
+		OutboxRecord record = readAt(offset);
+		// Überspringt die Füllung abgebrochener Einträge
+		while (record != null && record.getPath().isEmpty()) {
+			record = readAt(record.getNextOffset());
+		}
+		return record;
+	}
+
+	private OutboxRecord readAt(long offset) {
+		Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+		if (entry == null) {
+			if (segments.isEmpty()) {
+				return null;
+			}
+			entry = segments.firstEntry();
+			offset = entry.getKey();
+		}
+		Segment segment = entry.getValue();
+		long position = offset - segment.baseOffset;
+		if (position >= segment.limit) {
+			entry = segments.higherEntry(segment.baseOffset);
+			if (entry == null) {
+				return null;
+			}
+			segment = entry.getValue();
+			position = 0;
+			if (segment.limit == 0) {
+				return null;
+			}
+		}
+		ByteBuffer buffer = segment.buffer.duplicate();
+		int start = (int) position;
+		int payloadLength = buffer.getInt(start);
+		buffer.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + payloadLength);
+		ByteBuffer payload = buffer.slice();
+		String path = readString(payload);
+		String partitionKey = readString(payload);
+		return new OutboxRecord(segment.baseOffset + start, segment.baseOffset + start + HEADER_SIZE + payloadLength,
+				path, partitionKey, payload.slice());
+	}
+
+	/**
+	 * Löscht alle Segmente, deren Einträge vollständig vor der angegebenen
+	 * Position liegen. Das aktive Segment bleibt erhalten.
+	 *
+	 * @param offset Position des ältesten noch benötigten Eintrags
+	 * @return Anzahl der gelöschten Segmente
+	 */
+	synchronized int deleteBefore(long offset) throws IOException {
+		int deleted = 0;
+		Iterator<Segment> iterator = segments.values().iterator();
+		while (iterator.hasNext()) {
+			Segment segment = iterator.next();
+			if (segment == active || segment.reserved > segment.limit
+					|| segment.baseOffset + segment.limit > offset) {
+				break;
+			}
+			iterator.remove();
+			segment.channel.close();
+			Files.deleteIfExists(segment.file);
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * @return Position des ersten noch vorhandenen Eintrags
+	 */
+	synchronized long firstOffset() {
+		return segments.isEmpty() ? 0 : segments.firstKey();
+	}
+
+	/**
+	 * @return Position hinter dem letzten Eintrag
+	 */
+	synchronized long endOffset() {
+		return end;
+	}
+
+	/**
+	 * @return Anzahl der Segmentdateien
+	 */
+	synchronized int segmentCount() {
+		return segments.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (Segment segment : segments.values()) {
+			if (forceWrites) {
+				segment.buffer.force();
+			}
+			segment.channel.close();
+		}
+	}
+
+	private void roll(int recordSize) throws IOException {
+		long baseOffset = active == null ? 0 : active.baseOffset + active.capacity;
+		Path file = directory.resolve(String.format("%020d%s", baseOffset, SUFFIX));
+		active = new Segment(baseOffset, file, Math.max(segmentSize, recordSize));
+		segments.put(baseOffset, active);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Eine gemappte Segmentdatei.
+	 */
+	private static final class Segment {
+		final long baseOffset;
+		final Path file;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+		final int capacity;
+		// Position hinter dem letzten vollständigen Eintrag
+		int limit;
+		// Position hinter dem letzten reservierten Eintrag
+		int reserved;
+
+		Segment(long baseOffset, Path file, long capacity) throws IOException {
+			this.baseOffset = baseOffset;
+			this.file = file;
+			this.capacity = (int) capacity;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+
+		/**
+		 * Sucht das Ende des letzten vollständigen Eintrags.
+		 */
+		void recover() {
+			int position = 0;
+			CRC32 crc = new CRC32();
+			while (capacity - position >= HEADER_SIZE) {
+				int payloadLength = buffer.getInt(position);
+				if (payloadLength <= 0 || payloadLength > capacity - position - HEADER_SIZE) {
+					break;
+				}
+				ByteBuffer payload = buffer.duplicate();
+				payload.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + payloadLength);
+				crc.reset();
+				crc.update(payload);
+				if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+					break;
+				}
+				position += HEADER_SIZE + payloadLength;
+			}
+			limit = position;
+			reserved = position;
+		}
+	}
+
+	/**
+	 * Der reservierte Platz eines Eintrags.
+	 */
+	private static final class Reservation {
+		final Segment segment;
+		final int position;
+		final int size;
+		int crc;
+		// Nutzdaten vollständig geschrieben
+		boolean written;
+		// Länge geschrieben, der Eintrag ist lesbar
+		boolean published;
+
+		Reservation(Segment segment, int position, int size) {
+			this.segment = segment;
+			this.position = position;
+			this.size = size;
+		}
+
+		/**
+		 * @return die Nutzdaten des Eintrags im Segment
+		 */
+		ByteBuffer payload() {
+			ByteBuffer payload = segment.buffer.duplicate();
+			payload.position(position + HEADER_SIZE).limit(position + size);
+			return payload.slice();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.example.demo.service;
+
+/**
+ * Ergebnis eines Aufrufs der proprietären API. Unterscheidet vorübergehende
+ * Fehler, bei denen ein späterer Versuch gelingen kann, von dauerhaft
+ * abgelehnten Anfragen.
+ */
+public enum ApiResult {
+
+	/**
+	 * Die API hat die Anfrage angenommen (Status 200 oder 201).
+	 */
+	SUCCESS,
+	/**
+	 * Vorübergehender Fehler: Status 5xx, 408 oder 429, Zeitüberschreitung,
+	 * Verbindungsfehler oder volles Bulkhead.
+	 */
+	RETRYABLE,
+	/**
+	 * Die API hat die Anfrage dauerhaft abgelehnt (übrige Status 4xx), eine
+	 * Wiederholung führt zum selben Ergebnis.
+	 */
+	REJECTED;
+
+	private static final int REQUEST_TIMEOUT = 408;
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * @return true bei {@link #SUCCESS}
+	 */
+	public boolean isSuccess() {
+		return this == SUCCESS;
+	}
+
+	/**
+	 * @param statusCode Status der Antwort der API
+	 * @return das Ergebnis zum Status
+	 */
+	public static ApiResult ofStatus(int statusCode) {
+		if (statusCode == 200 || statusCode == 201) {
+			return SUCCESS;
+		}
+		if (statusCode >= 400 && statusCode < 500 && statusCode != REQUEST_TIMEOUT
+				&& statusCode != TOO_MANY_REQUESTS) {
+			return REJECTED;
+		}
+		return RETRYABLE;
+	}
+}
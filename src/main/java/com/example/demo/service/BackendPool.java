@@ -0,0 +1,321 @@
+package com.example.demo.service;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFacadeProperties.Backends.Routing;
+
+/**
+ * Die Instanzen (Knoten) der proprietären API und die Auswahl eines Knotens je
+ * Aufruf.
+ * <ul>
+ * <li>{@link Routing#CONSISTENT_HASH}: Der Partitionsschlüssel (Patienten-ID)
+ * wird auf einen Ring mit {@code virtualNodes} Punkten je Gewichtseinheit
+ * abgebildet, ein Patient und seine Dokumente landen so auf demselben Knoten.
+ * Fällt ein Knoten aus, wandern nur seine Schlüssel zum nächsten Knoten im
+ * Ring.</li>
+ * <li>{@link Routing#LEAST_OUTSTANDING}: der Knoten mit den wenigsten
+ * laufenden Aufrufen je Gewicht.</li>
+ * <li>{@link Routing#WEIGHTED_ROUND_ROBIN}: reihum im Verhältnis der Gewichte,
+ * gleichmäßig verteilt (wie in nginx).</li>
+ * </ul>
+ * Ein Knoten wird ausgeschlossen, wenn {@code consecutiveFailures} Aufrufe in
+ * Folge fehlschlagen oder langsam sind (passiv) oder
+ * {@code unhealthyThreshold} Health Checks in Folge fehlschlagen (aktiv). Nach
+ * dem passiven Ausschluss wird er wieder aufgenommen; die Dauer verdoppelt sich
+ * mit jedem Ausschluss ohne erfolgreichen Aufruf dazwischen. Sind alle Knoten
+ * ausgeschlossen, wird unter allen gewählt, dann entscheidet der Schutzschalter.
+ */
+final class BackendPool {
+
+	/**
+	 * Wird benachrichtigt, wenn ein Knoten ausgeschlossen oder wieder
+	 * aufgenommen wird.
+	 */
+	interface Listener {
+		/**
+		 * @param backend   der Knoten
+		 * @param available true, wenn der Knoten wieder aufgenommen wurde
+		 * @param reason    Grund, z.B. failures oder health-check
+		 */
+		void onAvailabilityChange(Backend backend, boolean available, String reason);
+	}
+
+	/**
+	 * Ein Knoten und sein Zustand, geschützt durch die Sperre des Pools.
+	 */
+	static final class Backend {
+		private final String url;
+		private final int weight;
+		private int outstanding;
+		// Fehlgeschlagene oder langsame Aufrufe in Folge
+		private int failures;
+		// Ausschlüsse ohne erfolgreichen Aufruf dazwischen
+		private int ejections;
+		private boolean ejected;
+		private long ejectedUntil;
+		private int failedChecks;
+		private boolean unhealthy;
+		// Laufendes Gewicht für WEIGHTED_ROUND_ROBIN
+		private int currentWeight;
+
+		Backend(String url, int weight) {
+			if (url == null || url.isBlank() || weight < 1) {
+				throw new IllegalArgumentException("Invalid backend " + url + " with weight " + weight);
+			}
+			URI.create(url);
+			this.url = url;
+			this.weight = weight;
+		}
+
+		/**
+		 * @return die Basis-URL des Knotens
+		 */
+		String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @param path Pfad der API, z.B. {@link OutboundRequest#PERSON_PATH}
+		 * @return die Adresse des Pfads auf diesem Knoten
+		 */
+		URI uri(String path) {
+			return URI.create(url + path);
+		}
+
+		@Override
+		public String toString() {
+			return url;
+		}
+	}
+
+	private final List<Backend> backends;
+	private final Routing routing;
+	private final int consecutiveFailures;
+	private final int unhealthyThreshold;
+	private final long slowCallNanos;
+	private final long ejectionNanos;
+	private final long maxEjectionNanos;
+	private final LongSupplier clock;
+	private final Listener listener;
+	// Hash-Ring: sortierte Punkte und der Knoten je Punkt
+	private final int[] ringPoints;
+	private final Backend[] ringOwners;
+	// Startpunkt für Gleichstände bei LEAST_OUTSTANDING
+	private int next;
+
+	/**
+	 * @param config die Einstellungen
+	 * @param nodes  die Knoten, mindestens einer
+	 * @param clock  Uhr in Nanosekunden
+	 */
+	BackendPool(FhirFacadeProperties.Backends config, List<FhirFacadeProperties.Backends.Node> nodes,
+			LongSupplier clock, Listener listener) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("At least one backend is required");
+		}
+		this.backends = new ArrayList<>();
+		for (FhirFacadeProperties.Backends.Node node : nodes) {
+			backends.add(new Backend(node.getUrl(), node.getWeight()));
+		}
+		this.routing = config.getRouting();
+		this.consecutiveFailures = Math.max(1, config.getConsecutiveFailures());
+		this.unhealthyThreshold = Math.max(1, config.getUnhealthyThreshold());
+		this.slowCallNanos = config.getSlowCallDuration().toNanos();
+		this.ejectionNanos = config.getEjectionDuration().toNanos();
+		this.maxEjectionNanos = Math.max(ejectionNanos, config.getMaxEjectionDuration().toNanos());
+		this.clock = clock;
+		this.listener = listener;
+
+		int virtualNodes = Math.max(1, config.getVirtualNodes());
+		long[] ring = new long[backends.stream().mapToInt(b -> b.weight * virtualNodes).sum()];
+		int point = 0;
+		for (int b = 0; b < backends.size(); b++) {
+			Backend backend = backends.get(b);
+			for (int v = 0; v < backend.weight * virtualNodes; v++) {
+				// Punkt in den oberen, Index des Knotens in den unteren 32 Bit
+				ring[point++] = (long) hash(backend.url + "#" + v) << 32 | b;
+			}
+		}
+		Arrays.sort(ring);
+		this.ringPoints = new int[ring.length];
+		this.ringOwners = new Backend[ring.length];
+		for (int i = 0; i < ring.length; i++) {
+			ringPoints[i] = (int) (ring[i] >> 32);
+			ringOwners[i] = backends.get((int) ring[i]);
+		}
+	}
+
+	/**
+	 * Wählt einen Knoten für einen Aufruf. Jeder gewählte Knoten muss mit
+	 * {@link #release} freigegeben werden.
+	 *
+	 * @param partitionKey Schlüssel für {@link Routing#CONSISTENT_HASH}
+	 * @return der Knoten
+	 */
+	synchronized Backend select(String partitionKey) {
+		long now = clock.getAsLong();
+		boolean any = false;
+		for (Backend backend : backends) {
+			any |= isAvailable(backend, now);
+		}
+		Backend selected = switch (routing) {
+		case CONSISTENT_HASH -> byHash(partitionKey, now, any);
+		case LEAST_OUTSTANDING -> leastOutstanding(now, any);
+		case WEIGHTED_ROUND_ROBIN -> weightedRoundRobin(now, any);
+		};
+		selected.outstanding++;
+		return selected;
+	}
+
+	/**
+	 * Verbucht das Ergebnis eines Aufrufs für den passiven Ausschluss.
+	 *
+	 * @param backend der mit {@link #select} gewählte Knoten
+	 * @param nanos   Dauer des Aufrufs
+	 * @param success false bei Verbindungsfehlern, Timeouts und 5xx-Antworten
+	 */
+	synchronized void release(Backend backend, long nanos, boolean success) {
+		backend.outstanding--;
+		if (success && nanos < slowCallNanos) {
+			backend.failures = 0;
+			backend.ejections = 0;
+			return;
+		}
+		if (++backend.failures >= consecutiveFailures && !backend.ejected) {
+			backend.failures = 0;
+			backend.ejections++;
+			backend.ejected = true;
+			backend.ejectedUntil = clock.getAsLong() + ejectionNanos(backend.ejections);
+			listener.onAvailabilityChange(backend, false, success ? "slow" : "failures");
+		}
+	}
+
+	/**
+	 * Gibt einen mit {@link #select} gewählten Knoten frei, dessen Aufruf nicht
+	 * gestartet werden konnte; das zählt weder als Erfolg noch als Fehler.
+	 */
+	synchronized void cancel(Backend backend) {
+		backend.outstanding--;
+	}
+
+	/**
+	 * Verbucht das Ergebnis eines aktiven Health Checks.
+	 *
+	 * @param healthy true, wenn der Knoten mit 2xx geantwortet hat
+	 */
+	synchronized void onHealthCheck(Backend backend, boolean healthy) {
+		if (healthy) {
+			backend.failedChecks = 0;
+			if (backend.unhealthy) {
+				backend.unhealthy = false;
+				listener.onAvailabilityChange(backend, true, "health-check");
+			}
+		} else if (++backend.failedChecks >= unhealthyThreshold && !backend.unhealthy) {
+			backend.unhealthy = true;
+			listener.onAvailabilityChange(backend, false, "health-check");
+		}
+	}
+
+	/**
+	 * @return true, wenn der Knoten weder ausgeschlossen noch ungesund ist
+	 */
+	synchronized boolean isAvailable(Backend backend) {
+		return isAvailable(backend, clock.getAsLong());
+	}
+
+	/**
+	 * @return Anzahl der laufenden Aufrufe des Knotens
+	 */
+	synchronized int getOutstanding(Backend backend) {
+		return backend.outstanding;
+	}
+
+	List<Backend> getBackends() {
+		return backends;
+	}
+
+	private boolean isAvailable(Backend backend, long now) {
+		if (backend.ejected && now - backend.ejectedUntil >= 0) {
+			backend.ejected = false;
+			listener.onAvailabilityChange(backend, true, "ejection-expired");
+		}
+		return !backend.ejected && !backend.unhealthy;
+	}
+
+	private long ejectionNanos(int ejections) {
+		long nanos = ejectionNanos;
+		for (int i = 1; i < ejections && nanos < maxEjectionNanos; i++) {
+			nanos <<= 1;
+		}
+		return Math.min(nanos, maxEjectionNanos);
+	}
+
+	/**
+	 * Erster verfügbarer Knoten im Ring ab dem Punkt des Schlüssels, bei
+	 * {@code any == false} der erste Knoten überhaupt.
+	 */
+	private Backend byHash(String partitionKey, long now, boolean any) {
+		int index = Arrays.binarySearch(ringPoints, hash(partitionKey == null ? "" : partitionKey));
+		if (index < 0) {
+			index = -index - 1;
+		}
+		for (int i = 0; i < ringOwners.length; i++) {
+			Backend owner = ringOwners[(index + i) % ringOwners.length];
+			if (!any || isAvailable(owner, now)) {
+				return owner;
+			}
+		}
+		throw new IllegalStateException("Empty hash ring");
+	}
+
+	private Backend leastOutstanding(long now, boolean any) {
+		int start = next++ & Integer.MAX_VALUE;
+		Backend best = null;
+		for (int i = 0; i < backends.size(); i++) {
+			Backend backend = backends.get((start + i) % backends.size());
+			if ((!any || isAvailable(backend, now)) && (best == null
+					|| (long) backend.outstanding * best.weight < (long) best.outstanding * backend.weight)) {
+				best = backend;
+			}
+		}
+		return best;
+	}
+
+	private Backend weightedRoundRobin(long now, boolean any) {
+		Backend best = null;
+		int total = 0;
+		for (Backend backend : backends) {
+			if (!any || isAvailable(backend, now)) {
+				backend.currentWeight += backend.weight;
+				total += backend.weight;
+				if (best == null || backend.currentWeight > best.currentWeight) {
+					best = backend;
+				}
+			}
+		}
+		best.currentWeight -= total;
+		return best;
+	}
+
+	/**
+	 * FNV-1a über die UTF-8-Bytes mit abschließender Durchmischung, damit auch
+	 * fortlaufende Patienten-IDs gleichmäßig über den Ring verteilt werden.
+	 */
+	static int hash(String key) {
+		int h = 0x811c9dc5;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h = (h ^ (b & 0xff)) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+}
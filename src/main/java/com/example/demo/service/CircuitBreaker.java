@@ -0,0 +1,191 @@
+package com.example.demo.service;
+
+import java.util.function.LongSupplier;
+
+import com.example.demo.config.FhirFacadeProperties;
+
+/**
+ * Schutzschalter für einen Pfad der proprietären API.
+ * <p>
+ * Im Zustand {@link State#CLOSED} werden die Ergebnisse der letzten
+ * {@code windowSize} Aufrufe gezählt. Überschreitet der Anteil der
+ * Fehlschläge oder der langsamen Aufrufe (länger als {@code slowCallDuration})
+ * seine Schwelle, öffnet der Schalter: Für {@code openDuration} werden alle
+ * Aufrufe sofort abgelehnt. Danach lässt er im Zustand {@link State#HALF_OPEN}
+ * einige Probeaufrufe zu. Gelingen alle, schließt er wieder, sonst öffnet er
+ * erneut.
+ * <p>
+ * Ergebnisse werden nur in dem Zustand verbucht, in dem der Aufruf erlaubt
+ * wurde. Ein vor dem Öffnen gestarteter Aufruf zählt also weder als
+ * Probeaufruf noch gibt er einen Platz für Probeaufrufe frei.
+ */
+class CircuitBreaker {
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Wird bei jedem Zustandswechsel benachrichtigt.
+	 */
+	interface TransitionListener {
+		void onTransition(State from, State to);
+	}
+
+	/**
+	 * Erlaubnis für einen Aufruf, gilt nur in dem Zustand, in dem sie erteilt
+	 * wurde.
+	 */
+	static final class Permit {
+		private final long generation;
+
+		private Permit(long generation) {
+			this.generation = generation;
+		}
+	}
+
+	private final int windowSize;
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final double slowCallRateThreshold;
+	private final long slowCallNanos;
+	private final long openNanos;
+	private final int halfOpenCalls;
+	private final LongSupplier clock;
+	private final TransitionListener listener;
+
+	// Ringpuffer der letzten Ergebnisse, Bit 0 = fehlgeschlagen, Bit 1 = langsam
+	private final byte[] window;
+	private int position;
+	private int recorded;
+	private int failures;
+	private int slowCalls;
+
+	private State state = State.CLOSED;
+	// Zählt die Zustandswechsel, ältere Erlaubnisse werden nicht mehr verbucht
+	private long generation;
+	private long openedAt;
+	// Im Zustand HALF_OPEN gestartete und erfolgreich beendete Probeaufrufe
+	private int probesStarted;
+	private int probesSucceeded;
+
+	CircuitBreaker(FhirFacadeProperties.CircuitBreaker config, LongSupplier clock, TransitionListener listener) {
+		this.windowSize = Math.max(1, config.getWindowSize());
+		this.minimumCalls = Math.max(1, Math.min(config.getMinimumCalls(), windowSize));
+		this.failureRateThreshold = config.getFailureRateThreshold();
+		this.slowCallRateThreshold = config.getSlowCallRateThreshold();
+		this.slowCallNanos = config.getSlowCallDuration().toNanos();
+		this.openNanos = config.getOpenDuration().toNanos();
+		this.halfOpenCalls = Math.max(1, config.getHalfOpenCalls());
+		this.clock = clock;
+		this.listener = listener;
+		this.window = new byte[windowSize];
+	}
+
+	/**
+	 * Prüft, ob ein Aufruf erlaubt ist. Ein erlaubter Aufruf muss mit
+	 * {@link #onResult} oder {@link #onIgnored} abgeschlossen werden.
+	 *
+	 * @return die Erlaubnis für den Aufruf oder null, wenn er nicht gestartet
+	 *         werden darf
+	 */
+	synchronized Permit tryAcquire() {
+		if (state == State.OPEN) {
+			if (clock.getAsLong() - openedAt < openNanos) {
+				return null;
+			}
+			transition(State.HALF_OPEN);
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesStarted >= halfOpenCalls) {
+				return null;
+			}
+			probesStarted++;
+		}
+		return new Permit(generation);
+	}
+
+	/**
+	 * Verbucht das Ergebnis eines erlaubten Aufrufs.
+	 *
+	 * @param permit  die Erlaubnis des Aufrufs
+	 * @param nanos   Dauer des Aufrufs
+	 * @param success false bei Verbindungsfehlern, Timeouts und 5xx-Antworten
+	 */
+	synchronized void onResult(Permit permit, long nanos, boolean success) {
+		if (permit.generation != generation) {
+			// Aufruf wurde vor dem letzten Zustandswechsel erlaubt
+			return;
+		}
+		boolean slow = nanos >= slowCallNanos;
+		if (state == State.HALF_OPEN) {
+			if (!success || slow) {
+				open();
+			} else if (++probesSucceeded >= halfOpenCalls) {
+				transition(State.CLOSED);
+			}
+			return;
+		}
+		byte outcome = (byte) ((success ? 0 : 1) | (slow ? 2 : 0));
+		if (recorded == windowSize) {
+			byte evicted = window[position];
+			failures -= evicted & 1;
+			slowCalls -= (evicted >> 1) & 1;
+		} else {
+			recorded++;
+		}
+		window[position] = outcome;
+		position = (position + 1) % windowSize;
+		failures += outcome & 1;
+		slowCalls += (outcome >> 1) & 1;
+
+		if (recorded >= minimumCalls && (failures >= failureRateThreshold * recorded
+				|| slowCalls >= slowCallRateThreshold * recorded)) {
+			open();
+		}
+	}
+
+	/**
+	 * Schließt einen erlaubten Aufruf ab, der nicht gestartet wurde, z.B. weil
+	 * das Bulkhead voll war. Ein Probeaufruf gibt seinen Platz frei.
+	 *
+	 * @param permit die Erlaubnis des Aufrufs
+	 */
+	synchronized void onIgnored(Permit permit) {
+		if (permit.generation == generation && state == State.HALF_OPEN && probesStarted > 0) {
+			probesStarted--;
+		}
+	}
+
+	synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return Nanosekunden, bis der geöffnete Schalter Probeaufrufe zulässt
+	 */
+	synchronized long getRemainingOpenNanos() {
+		return state == State.OPEN ? Math.max(0, openNanos - (clock.getAsLong() - openedAt)) : 0;
+	}
+
+	private void open() {
+		openedAt = clock.getAsLong();
+		transition(State.OPEN);
+	}
+
+	private void transition(State to) {
+		State from = state;
+		state = to;
+		generation++;
+		// Jeder Zustand beginnt mit leerem Fenster und ohne Probeaufrufe
+		recorded = 0;
+		position = 0;
+		failures = 0;
+		slowCalls = 0;
+		probesStarted = 0;
+		probesSucceeded = 0;
+		if (from != to) {
+			listener.onTransition(from, to);
+		}
+	}
+}
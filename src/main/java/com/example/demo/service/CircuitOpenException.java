@@ -0,0 +1,36 @@
+package com.example.demo.service;
+
+import java.time.Duration;
+
+/**
+ * Der Aufruf der proprietären API wurde nicht gestartet, weil der
+ * Schutzschalter des Pfads geöffnet ist.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String path;
+	private final Duration retryAfter;
+
+	public CircuitOpenException(String path, Duration retryAfter) {
+		// Ohne Stacktrace, die Ausnahme ist ein erwarteter, häufiger Fall
+		super("Circuit breaker for " + path + " is open", null, false, false);
+		this.path = path;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return der Pfad der proprietären API
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Zeit, bis der Schalter wieder Probeaufrufe zulässt
+	 */
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,277 @@
+package com.example.demo.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Schreibt die JSON-Anfragekörper der proprietären API direkt als UTF-8 in
+ * einen wiederverwendbaren Puffer, ohne Zwischen-Strings.
+ * <p>
+ * Zeichenketten werden nach RFC 8259 maskiert (Anführungszeichen, Backslash,
+ * Steuerzeichen, einzelne Surrogate), Datumswerte als ISO-8601-Zeitpunkt in
+ * UTC geschrieben. Jeder Thread hält eine eigene Instanz, siehe
+ * {@link #acquire()}; sie darf nicht an andere Threads weitergegeben werden.
+ */
+final class JsonBodyWriter {
+
+	// Größere Puffer werden nach Gebrauch verkleinert, damit ein einzelner großer
+	// Körper nicht dauerhaft Speicher belegt
+	private static final int INITIAL_CAPACITY = 512;
+	private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+	private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ISO_INSTANT;
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+			'f' };
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final ThreadLocal<JsonBodyWriter> WRITERS = ThreadLocal.withInitial(JsonBodyWriter::new);
+
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+	private int count;
+	// true, solange im aktuellen Objekt noch kein Feld geschrieben wurde
+	private boolean firstField;
+	// Ziel der Datumsformatierung, wird wiederverwendet
+	private final StringBuilder scratch = new StringBuilder(32);
+
+	private JsonBodyWriter() {
+	}
+
+	/**
+	 * @return der geleerte Writer des aktuellen Threads
+	 */
+	static JsonBodyWriter acquire() {
+		JsonBodyWriter writer = WRITERS.get();
+		if (writer.buffer.length > MAX_RETAINED_CAPACITY) {
+			writer.buffer = new byte[INITIAL_CAPACITY];
+		}
+		writer.count = 0;
+		return writer;
+	}
+
+	JsonBodyWriter beginObject() {
+		ensureCapacity(1);
+		buffer[count++] = '{';
+		firstField = true;
+		return this;
+	}
+
+	JsonBodyWriter endObject() {
+		ensureCapacity(1);
+		buffer[count++] = '}';
+		return this;
+	}
+
+	JsonBodyWriter field(String name, String value) {
+		name(name);
+		if (value == null) {
+			writeAscii(NULL);
+		} else {
+			string(value);
+		}
+		return this;
+	}
+
+	JsonBodyWriter field(String name, Integer value) {
+		name(name);
+		if (value == null) {
+			writeAscii(NULL);
+		} else {
+			number(value);
+		}
+		return this;
+	}
+
+	JsonBodyWriter field(String name, Date value) {
+		name(name);
+		if (value == null) {
+			writeAscii(NULL);
+		} else {
+			scratch.setLength(0);
+			DATE_TIME.formatTo(Instant.ofEpochMilli(value.getTime()), scratch);
+			ensureCapacity(scratch.length() + 2);
+			buffer[count++] = '"';
+			for (int i = 0; i < scratch.length(); i++) {
+				buffer[count++] = (byte) scratch.charAt(i);
+			}
+			buffer[count++] = '"';
+		}
+		return this;
+	}
+
+	JsonBodyWriter field(String name, BigDecimal value) {
+		name(name);
+		if (value == null) {
+			writeAscii(NULL);
+		} else {
+			writeAscii(value.toPlainString());
+		}
+		return this;
+	}
+
+	/**
+	 * Schreibt ein Feld mit einem Wert vom Typ String, Integer, BigDecimal oder
+	 * Date.
+	 *
+	 * @throws IllegalArgumentException bei anderen Typen
+	 */
+	JsonBodyWriter field(String name, Object value) {
+		if (value == null || value instanceof String) {
+			return field(name, (String) value);
+		} else if (value instanceof Integer) {
+			return field(name, (Integer) value);
+		} else if (value instanceof BigDecimal) {
+			return field(name, (BigDecimal) value);
+		} else if (value instanceof Date) {
+			return field(name, (Date) value);
+		}
+		throw new IllegalArgumentException("Unsupported value type " + value.getClass().getName() + " for " + name);
+	}
+
+	/**
+	 * Schreibt den Feldnamen und das öffnende Anführungszeichen eines Werts, der
+	 * anschließend außerhalb des Writers angehängt wird (z.B. Base64-Inhalt).
+	 */
+	JsonBodyWriter openStringField(String name) {
+		name(name);
+		ensureCapacity(1);
+		buffer[count++] = '"';
+		return this;
+	}
+
+	/**
+	 * @return Kopie der geschriebenen Bytes
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, count);
+	}
+
+	private void name(String name) {
+		if (!firstField) {
+			ensureCapacity(1);
+			buffer[count++] = ',';
+		}
+		firstField = false;
+		string(name);
+		ensureCapacity(1);
+		buffer[count++] = ':';
+	}
+
+	private void number(int value) {
+		if (value == Integer.MIN_VALUE) {
+			writeAscii(Integer.toString(value));
+			return;
+		}
+		ensureCapacity(11);
+		if (value < 0) {
+			buffer[count++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (int rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int end = count + digits;
+		for (int i = end - 1; i >= count; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		count = end;
+	}
+
+	private void string(String value) {
+		// Höchstens 6 Bytes je Zeichen (\\uXXXX) plus Anführungszeichen
+		ensureCapacity(value.length() * 6 + 2);
+		byte[] out = buffer;
+		int pos = count;
+		out[pos++] = '"';
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c == '"' || c == '\\') {
+					out[pos++] = '\\';
+					out[pos++] = (byte) c;
+				} else if (c < 0x20) {
+					pos = escapeControl(out, pos, c);
+				} else {
+					out[pos++] = (byte) c;
+				}
+			} else if (c < 0x800) {
+				out[pos++] = (byte) (0xc0 | c >> 6);
+				out[pos++] = (byte) (0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				out[pos++] = (byte) (0xf0 | codePoint >> 18);
+				out[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+				out[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+				out[pos++] = (byte) (0x80 | codePoint & 0x3f);
+			} else if (Character.isSurrogate(c)) {
+				// Einzelne Surrogate sind in UTF-8 nicht darstellbar
+				pos = unicodeEscape(out, pos, c);
+			} else {
+				out[pos++] = (byte) (0xe0 | c >> 12);
+				out[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+				out[pos++] = (byte) (0x80 | c & 0x3f);
+			}
+		}
+		out[pos++] = '"';
+		count = pos;
+	}
+
+	private static int escapeControl(byte[] out, int pos, char c) {
+		switch (c) {
+		case '\n':
+			out[pos++] = '\\';
+			out[pos++] = 'n';
+			return pos;
+		case '\r':
+			out[pos++] = '\\';
+			out[pos++] = 'r';
+			return pos;
+		case '\t':
+			out[pos++] = '\\';
+			out[pos++] = 't';
+			return pos;
+		case '\b':
+			out[pos++] = '\\';
+			out[pos++] = 'b';
+			return pos;
+		case '\f':
+			out[pos++] = '\\';
+			out[pos++] = 'f';
+			return pos;
+		default:
+			return unicodeEscape(out, pos, c);
+		}
+	}
+
+	private static int unicodeEscape(byte[] out, int pos, char c) {
+		out[pos++] = '\\';
+		out[pos++] = 'u';
+		out[pos++] = HEX[c >> 12 & 0xf];
+		out[pos++] = HEX[c >> 8 & 0xf];
+		out[pos++] = HEX[c >> 4 & 0xf];
+		out[pos++] = HEX[c & 0xf];
+		return pos;
+	}
+
+	private void writeAscii(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, count, bytes.length);
+		count += bytes.length;
+	}
+
+	private void writeAscii(String value) {
+		ensureCapacity(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			buffer[count++] = (byte) value.charAt(i);
+		}
+	}
+
+	private void ensureCapacity(int additional) {
+		if (count + additional > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + additional));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.example.demo.service;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Begrenzt die Anzahl gleichzeitig laufender asynchroner Aufrufe, ohne dabei
+ * Threads zu blockieren.
+ * <p>
+ * Bis zu {@code maxConcurrent} Aufrufe werden sofort gestartet, weitere warten
+ * in einer Warteschlange und werden gestartet, sobald ein laufender Aufruf
+ * abgeschlossen ist. Sind bereits {@code maxInFlight} Aufrufe laufend oder
+ * wartend, wird der Aufruf mit einer {@link RejectedExecutionException}
+ * abgelehnt.
+ */
+public class OutboundLimiter {
+
+	private final int maxConcurrent;
+	private final int maxInFlight;
+	private final Queue<Runnable> waiting = new ArrayDeque<>();
+	private int running;
+	private int inFlight;
+
+	public OutboundLimiter(int maxConcurrent, int maxInFlight) {
+		if (maxConcurrent < 1 || maxInFlight < maxConcurrent) {
+			throw new IllegalArgumentException(
+					"Expected 1 <= maxConcurrent <= maxInFlight but got " + maxConcurrent + "/" + maxInFlight);
+		}
+		this.maxConcurrent = maxConcurrent;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Führt den Aufruf aus, sobald die Begrenzung es zulässt.
+	 *
+	 * @param call startet den asynchronen Aufruf
+	 * @return Future mit dem Ergebnis des Aufrufs
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		Runnable task = () -> start(call, result);
+		synchronized (this) {
+			if (inFlight == maxInFlight) {
+				return CompletableFuture.failedFuture(
+						new RejectedExecutionException("Too many outbound requests in flight: " + inFlight));
+			}
+			inFlight++;
+			if (running == maxConcurrent) {
+				waiting.add(task);
+				return result;
+			}
+			running++;
+		}
+		task.run();
+		return result;
+	}
+
+	/**
+	 * @return Anzahl der laufenden und wartenden Aufrufe
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (RuntimeException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		future.whenComplete((value, error) -> {
+			release();
+			if (error != null) {
+				result.completeExceptionally(error);
+			} else {
+				result.complete(value);
+			}
+		});
+	}
+
+	private void release() {
+		Runnable next;
+		synchronized (this) {
+			inFlight--;
+			next = waiting.poll();
+			if (next == null) {
+				running--;
+			}
+		}
+		if (next != null) {
+			next.run();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.example.demo.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import com.example.demo.stream.SpooledContent;
+
+/**
+ * Eine fertig aufgebaute Anfrage an die proprietäre API: Zielpfad,
+ * Anfragekörper und ein Partitionsschlüssel, der Anfragen zum selben Patienten
+ * zusammenfasst.
+ * <p>
+ * Der Anfragekörper wird erst beim Senden (bzw. beim Ablegen in der Outbox)
+ * gelesen, große Dokumente werden dabei direkt aus dem Zwischenspeicher
+ * gestreamt.
+ */
+public final class OutboundRequest {
+
+	public static final String PERSON_PATH = "/Person";
+	public static final String DOCUMENT_PATH = "/Document";
+
+	// Abschluss des Anfragekörpers nach dem Base64-Inhalt
+	static final byte[] CONTENT_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Quelle des Anfragekörpers, kann mehrfach geöffnet werden.
+	 */
+	@FunctionalInterface
+	public interface Body {
+		InputStream open() throws IOException;
+	}
+
+	private final String path;
+	private final String partitionKey;
+	private final long contentLength;
+	private final Body body;
+
+	public OutboundRequest(String path, String partitionKey, long contentLength, Body body) {
+		this.path = path;
+		this.partitionKey = partitionKey;
+		this.contentLength = contentLength;
+		this.body = body;
+	}
+
+	/**
+	 * Erstellt eine Anfrage mit einem JSON-Objekt als Anfragekörper. Ist ein
+	 * Inhaltsfeld angegeben, wird es als letztes Feld geschrieben; der
+	 * Base64-Inhalt wird dabei nicht in den Anfragekörper kopiert, sondern beim
+	 * Lesen direkt aus dem Zwischenspeicher zwischen Präfix und Suffix eingefügt.
+	 * Der Zwischenspeicher muss daher geöffnet bleiben, bis die Anfrage gesendet
+	 * wurde.
+	 *
+	 * @param path         Pfad der proprietären API, z.B. {@link #PERSON_PATH}
+	 * @param partitionKey Schlüssel für die Reihenfolge der Zustellung
+	 * @param names        Namen der Felder
+	 * @param values       Werte der Felder (String, Integer, BigDecimal, Date oder
+	 *                     null), Zeitpunkte werden als ISO-8601 in UTC
+	 *                     geschrieben, z.B. 2021-01-01T04:50:50Z
+	 * @param contentField Name des Feldes für den Base64-Inhalt oder null
+	 * @param contentB64   der Base64-kodierte Inhalt oder null
+	 * @return die Anfrage
+	 */
+	public static OutboundRequest json(String path, String partitionKey, String[] names, Object[] values,
+			String contentField, SpooledContent contentB64) {
+		if (contentField == null || contentB64 == null) {
+			byte[] requestBody = requestBody(names, values, contentField);
+			return new OutboundRequest(path, partitionKey, requestBody.length,
+					() -> new ByteArrayInputStream(requestBody));
+		}
+		byte[] prefix = requestPrefix(names, values, contentField);
+		return new OutboundRequest(path, partitionKey, prefix.length + contentB64.size() + CONTENT_SUFFIX.length,
+				() -> new SequenceInputStream(Collections.enumeration(List.of(new ByteArrayInputStream(prefix),
+						contentB64.openStream(), new ByteArrayInputStream(CONTENT_SUFFIX)))));
+	}
+
+	/**
+	 * Erstellt den vollständigen Anfragekörper, ein Inhaltsfeld ohne Inhalt wird
+	 * als null geschrieben.
+	 */
+	static byte[] requestBody(String[] names, Object[] values, String contentField) {
+		JsonBodyWriter writer = fields(names, values);
+		if (contentField != null) {
+			writer.field(contentField, (String) null);
+		}
+		return writer.endObject().toByteArray();
+	}
+
+	/**
+	 * Erstellt den Anfang des Anfragekörpers bis einschließlich des öffnenden
+	 * Anführungszeichens des Inhaltsfeldes. Danach folgen der Base64-Inhalt und
+	 * {@link #CONTENT_SUFFIX}.
+	 */
+	static byte[] requestPrefix(String[] names, Object[] values, String contentField) {
+		return fields(names, values).openStringField(contentField).toByteArray();
+	}
+
+	private static JsonBodyWriter fields(String[] names, Object[] values) {
+		JsonBodyWriter writer = JsonBodyWriter.acquire().beginObject();
+		for (int i = 0; i < names.length; i++) {
+			writer.field(names[i], values[i]);
+		}
+		return writer;
+	}
+
+	/**
+	 * @return Pfad relativ zur Basis-URL der proprietären API
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Schlüssel, unter dem Anfragen zum selben Patienten in Reihenfolge
+	 *         zugestellt werden
+	 */
+	public String getPartitionKey() {
+		return partitionKey;
+	}
+
+	/**
+	 * @param partitionKey der neue Partitionsschlüssel
+	 * @return die Anfrage mit demselben Pfad und Anfragekörper
+	 */
+	public OutboundRequest withPartitionKey(String partitionKey) {
+		return new OutboundRequest(path, partitionKey, contentLength, body);
+	}
+
+	/**
+	 * @return Länge des Anfragekörpers in Bytes
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Öffnet einen neuen Stream auf den Anfragekörper.
+	 *
+	 * @return der Anfragekörper
+	 * @throws IOException wenn der Inhalt nicht gelesen werden kann
+	 */
+	public InputStream openBody() throws IOException {
+		return body.open();
+	}
+
+	/**
+	 * Schreibt den Anfragekörper in den angegebenen Stream.
+	 *
+	 * @param out Ziel des Anfragekörpers
+	 * @return Anzahl der geschriebenen Bytes
+	 * @throws IOException bei Lese- oder Schreibfehlern
+	 */
+	public long writeTo(OutputStream out) throws IOException {
+		try (InputStream in = body.open()) {
+			return in.transferTo(out);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OutboundRequest[path=" + path + ", contentLength=" + contentLength + "]";
+	}
+}
@@ -1,122 +1,364 @@
 package com.example.demo.service;
 
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import com.example.demo.config.FacadeMetrics;
 import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFacadeProperties.Outbound.ContentEncoding;
+import com.example.demo.config.TraceFormatter;
+import com.example.demo.stream.CompressingInputStream;
 
-import java.util.Base64;
-import java.util.Base64.Encoder;
-import java.util.Date;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import io.micrometer.core.instrument.Timer;
 
 @Service // Kennzeichnet diese Klasse als Spring Service-Komponente
-public class ProprietaryApiService {
+// Startet die aktiven Health Checks beim Start
+@Lazy(false)
+public class ProprietaryApiService implements DisposableBean {
 
 	private static final Logger logger = Logger.getLogger(ProprietaryApiService.class.getName());
+	// Maximale Länge einer protokollierten Fehlerantwort der proprietären API
+	private static final int MAX_LOGGED_RESPONSE_LENGTH = 1000;
 
-	// Erzeugt ein RestTemplate-Objekt für HTTP-Anfragen
-	private final RestTemplate restTemplate = new RestTemplate();
+	// Instanzen der proprietären API und die Auswahl je Aufruf
+	private final BackendPool backends;
+	// Führt die aktiven Health Checks aus, null ohne healthCheckPath
+	private final ScheduledExecutorService healthChecks;
+	private final Duration readTimeout;
+	// Content-Encoding der Anfragekörper ab compressionMinSize Bytes
+	private final ContentEncoding compression;
+	private final long compressionMinSize;
+	private final Executor executor;
+	// Nicht-blockierender HTTP-Client, der seine Verbindungen wiederverwendet
+	private final HttpClient httpClient;
+	// Bulkhead und Schutzschalter je Pfad der API
+	private final Endpoint person;
+	private final Endpoint document;
+	private final FacadeMetrics metrics;
+	private final List<ResponseListener> responseListeners = new CopyOnWriteArrayList<>();
 
-	private final String proprietaryBaseUrl;
+	/**
+	 * Wird nach jedem abgeschlossenen Aufruf der proprietären API benachrichtigt.
+	 */
+	public interface ResponseListener {
+		/**
+		 * @param path    der aufgerufene Pfad, z.B. {@link OutboundRequest#PERSON_PATH}
+		 * @param nanos   Dauer des Aufrufs ohne Wartezeit im Limiter
+		 * @param success true, wenn die API den Aufruf angenommen hat
+		 */
+		void onResponse(String path, long nanos, boolean success);
+	}
 
-	public ProprietaryApiService(FhirFacadeProperties fhirFacadeProperties) {
-		proprietaryBaseUrl = fhirFacadeProperties.getProprietaryBaseUrl();
+	public ProprietaryApiService(FhirFacadeProperties fhirFacadeProperties, FacadeMetrics metrics) {
+		FhirFacadeProperties.Outbound outbound = fhirFacadeProperties.getOutbound();
+		readTimeout = outbound.getReadTimeout();
+		compression = outbound.getCompression();
+		compressionMinSize = outbound.getCompressionMinSize().toBytes();
+		executor = executor(outbound);
+		httpClient = HttpClient.newBuilder().connectTimeout(outbound.getConnectTimeout()).executor(executor)
+				.version(HttpClient.Version.HTTP_1_1).build();
+		this.metrics = metrics;
+		backends = backendPool(fhirFacadeProperties);
+		healthChecks = healthChecks(fhirFacadeProperties.getBackends());
+		FhirFacadeProperties.CircuitBreaker circuitBreaker = fhirFacadeProperties.getCircuitBreaker();
+		person = new Endpoint(OutboundRequest.PERSON_PATH,
+				new OutboundLimiter(outbound.getMaxConnections(), outbound.getMaxInFlight()), circuitBreaker);
+		document = new Endpoint(OutboundRequest.DOCUMENT_PATH,
+				new OutboundLimiter(outbound.getDocumentMaxConnections(), outbound.getDocumentMaxInFlight()),
+				circuitBreaker);
 	}
 
 	/**
-	 * Sendet Patientendaten an eine proprietäre API.
-	 * 
-	 * @param firstName Der Vorname des Patienten
-	 * @param lastName  Der Nachname des Patienten
-	 * @param birthDate Das Geburtsdatum des Patienten
-	 * @return true, wenn die API-Anfrage erfolgreich war; false, wenn ein Fehler
-	 *         aufgetreten ist
+	 * Bulkhead und Schutzschalter eines Pfads der API.
 	 */
+	private final class Endpoint {
+		// Begrenzt gleichzeitig laufende und wartende Aufrufe
+		final OutboundLimiter limiter;
+		// null, wenn die Schutzschalter deaktiviert sind
+		final CircuitBreaker breaker;
 
-	public boolean sendPatientData(String firstName, String lastName, String birthDate) {
-		try {
-			// URL der proprietären API
-			String url =  proprietaryBaseUrl + "/Person";
-			// Erstellen des Anfragekörpers mit den Patientendaten
-			String requestBody = String.format("{\"firstName\":\"%s\",\"lastName\":\"%s\",\"birthDate\":\"%s\"}",
-					firstName, lastName, birthDate);
-
-			// Loggt die URL und den Anfragekörper
-			logger.info("Sending request to proprietary API: " + url);
-			logger.info("Request body: " + requestBody);
-
-			// Sendet eine POST-Anfrage an die proprietäre API
-			ResponseEntity<String> response = restTemplate.postForEntity(url, requestBody, String.class);
-
-			// Loggt den Statuscode der Antwort
-			logger.info("Response from proprietary API: " + response.getStatusCode());
-			HttpStatus statusCode = response.getStatusCode();
-
-			// Akzeptiere sowohl 200 (OK) als auch 201 (Created) als erfolgreichen Status
-			if (statusCode == HttpStatus.OK || statusCode == HttpStatus.CREATED) {
-				return true;
-			} else {
-				// Loggt einen Fehler, wenn der Statuscode nicht 200 oder 201 ist
-				logger.severe("Proprietary API returned an error: " + response.getBody());
-				return false;
+		Endpoint(String path, OutboundLimiter limiter, FhirFacadeProperties.CircuitBreaker config) {
+			this.limiter = limiter;
+			this.breaker = config.isEnabled() ? new CircuitBreaker(config, System::nanoTime, (from, to) -> {
+				logger.warning(() -> "Circuit breaker for " + path + " changed from " + from + " to " + to);
+				metrics.circuitTransition(path, from.name().toLowerCase(), to.name().toLowerCase());
+			}) : null;
+			metrics.gauge("fhir.facade.outbound.in.flight", "Running and queued calls to the proprietary API",
+					limiter, OutboundLimiter::getInFlight, "path", path);
+			if (breaker != null) {
+				// 0 = geschlossen, 1 = halb geöffnet, 2 = geöffnet
+				metrics.gauge("fhir.facade.circuit.state", "Circuit breaker state (0 closed, 1 half-open, 2 open)",
+						breaker, b -> b.getState() == CircuitBreaker.State.OPEN ? 2
+								: b.getState() == CircuitBreaker.State.HALF_OPEN ? 1 : 0,
+						"path", path);
 			}
-		} catch (Exception e) {
-			// Loggt eine Ausnahme, falls eine auftritt
-			logger.log(Level.SEVERE, "Exception occurred while sending patient data", e);
-			return false;
 		}
 	}
-	
+
 	/**
-	 * Sendet Dokumenten an eine proprietäre API.
-	 * 
-	 * @param kdlCode Der Kode der Klinische Dokumentenklassen-Liste (KDL)
-	 * @param patientenId  Der Id es Patienten
-	 * @param abrechnungsfallNummer Die Abrechnungsfallnummer
-	 * @param creationDate Das Erstelldatum 
-	 * @param data die eigentliche Binary
-	 * @return true, wenn die API-Anfrage erfolgreich war; false, wenn ein Fehler
-	 *         aufgetreten ist
+	 * Sendet eine Anfrage (Patienten- oder Dokumentdaten) asynchron an die
+	 * proprietäre API.
+	 *
+	 * @param outboundRequest die Anfrage, siehe {@link OutboundRequest#json}
+	 * @return Future mit true, wenn die API-Anfrage erfolgreich war (Status 200
+	 *         oder 201); false, wenn ein Fehler aufgetreten ist. Ist der
+	 *         Schutzschalter des Pfads geöffnet, schlägt das Future sofort mit
+	 *         einer {@link CircuitOpenException} fehl.
+	 * @see #deliver(OutboundRequest)
 	 */
+	public CompletableFuture<Boolean> send(OutboundRequest outboundRequest) {
+		return deliver(outboundRequest).thenApply(ApiResult::isSuccess);
+	}
 
-	public boolean sendDocumentData(String kdlCode, Integer patientenId, Integer abrechnungsfallNummer,
-			Date creationDate, byte[] data) {
+	/**
+	 * Sendet eine Anfrage wie {@link #send(OutboundRequest)}, unterscheidet aber
+	 * vorübergehende Fehler von dauerhaft abgelehnten Anfragen, z.B. für
+	 * Wiederholungen in der Outbox.
+	 *
+	 * @param outboundRequest die Anfrage, siehe {@link OutboundRequest#json}
+	 * @return Future mit dem Ergebnis; bei geöffnetem Schutzschalter schlägt es
+	 *         sofort mit einer {@link CircuitOpenException} fehl
+	 */
+	public CompletableFuture<ApiResult> deliver(OutboundRequest outboundRequest) {
+		String path = outboundRequest.getPath();
+		Endpoint endpoint = OutboundRequest.DOCUMENT_PATH.equals(path) ? document : person;
+		CircuitBreaker breaker = endpoint.breaker;
+		CircuitBreaker.Permit permit = breaker != null ? breaker.tryAcquire() : null;
+		if (breaker != null && permit == null) {
+			metrics.circuitRejected(path);
+			return CompletableFuture
+					.failedFuture(new CircuitOpenException(path, Duration.ofNanos(breaker.getRemainingOpenNanos())));
+		}
+		// Der Knoten wird erst beim Start des Aufrufs gewählt, die Anfrage bis auf die
+		// URL vorher aufgebaut
+		HttpRequest.Builder template;
 		try {
-			// URL der proprietären API
-			String url =  proprietaryBaseUrl + "/Document";
-			Encoder encoder = Base64.getEncoder();
-			String contentB64 = encoder.encodeToString(data);
-			// Erstellen des Anfragekörpers mit den Patientendaten
-			String requestBody = String.format("{\"kdlCode\":\"%s\",\"patientId\":%d,\"visitNumber\":%d,\"dateCreated\":\"%s\",\"contentB64\":\"%s\"}",
-					kdlCode, patientenId, abrechnungsfallNummer, creationDate, contentB64);
-
-			// Loggt die URL und den Anfragekörper
-			logger.info("Sending request to proprietary API: " + url);
-			logger.info("Request body: " + requestBody);
-
-			// Sendet eine POST-Anfrage an die proprietäre API
-			ResponseEntity<String> response = restTemplate.postForEntity(url, requestBody, String.class);
-
-			// Loggt den Statuscode der Antwort
-			logger.info("Response from proprietary API: " + response.getStatusCode());
-			HttpStatus statusCode = response.getStatusCode();
-
-			// Akzeptiere sowohl 200 (OK) als auch 201 (Created) als erfolgreichen Status
-			if (statusCode == HttpStatus.OK || statusCode == HttpStatus.CREATED) {
-				return true;
-			} else {
-				// Loggt einen Fehler, wenn der Statuscode nicht 200 oder 201 ist
-				logger.severe("Proprietary API returned an error: " + response.getBody());
-				return false;
+			// Der Anfragekörper wird beim Senden gestreamt und ggf. dabei komprimiert;
+			// die komprimierte Länge ist vorab unbekannt
+			boolean compress = compression != ContentEncoding.NONE
+					&& outboundRequest.getContentLength() >= compressionMinSize;
+			BodyPublisher stream = BodyPublishers.ofInputStream(() -> {
+				try {
+					InputStream in = outboundRequest.openBody();
+					return compress ? compress(in) : in;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			BodyPublisher body = compress ? stream
+					: BodyPublishers.fromPublisher(stream, outboundRequest.getContentLength());
+			template = HttpRequest.newBuilder().timeout(readTimeout).header("Content-Type", "application/json");
+			if (compress) {
+				template.header("Content-Encoding", compression.name().toLowerCase());
+			}
+			template.POST(body);
+		} catch (IllegalArgumentException e) {
+			if (breaker != null) {
+				breaker.onIgnored(permit);
+			}
+			logger.log(Level.SEVERE, "Exception occurred while sending " + outboundRequest, e);
+			// Die Anfrage kann nicht aufgebaut werden, auch nicht bei einem weiteren Versuch
+			return CompletableFuture.completedFuture(ApiResult.REJECTED);
+		}
+		metrics.payloadSize("outbound", path, outboundRequest.getContentLength());
+
+		// Ob der Aufruf begonnen hat, sonst hat das Bulkhead ihn abgelehnt
+		AtomicBoolean started = new AtomicBoolean();
+		return endpoint.limiter.submit(() -> {
+			started.set(true);
+			BackendPool.Backend backend;
+			try {
+				backend = backends.select(outboundRequest.getPartitionKey());
+			} catch (RuntimeException e) {
+				if (breaker != null) {
+					breaker.onIgnored(permit);
+				}
+				throw e;
+			}
+			// Die Zeitmessung beginnt erst, wenn der Aufruf nicht mehr wartet
+			Timer.Sample sample = metrics.start();
+			long start = System.nanoTime();
+			CompletableFuture<HttpResponse<String>> call;
+			try {
+				HttpRequest request = template.copy().uri(backend.uri(path)).build();
+				// Loggt die URL und die Größe des Anfragekörpers, nicht aber den Inhalt
+				logger.fine(() -> "Sending request to proprietary API: " + request.uri() + " ("
+						+ outboundRequest.getContentLength() + " bytes)");
+				call = httpClient.sendAsync(request, BodyHandlers.ofString());
+			} catch (RuntimeException e) {
+				// Der Aufruf wurde nicht gestartet, Knoten und Schutzschalter werden ohne
+				// Ergebnis freigegeben
+				backends.cancel(backend);
+				if (breaker != null) {
+					breaker.onIgnored(permit);
+				}
+				throw e;
+			}
+			return call.whenComplete((response, error) -> {
+				// Abgelehnte Daten (4xx) sagen nichts über den Zustand der API aus
+				boolean healthy = error == null && response.statusCode() < 500;
+				long nanos = System.nanoTime() - start;
+				backends.release(backend, nanos, healthy);
+				if (breaker != null) {
+					breaker.onResult(permit, nanos, healthy);
+				}
+			}).thenApply(this::handleResponse).whenComplete((result, error) -> {
+				boolean success = result != null && result.isSuccess();
+				metrics.backend(sample, path, success);
+				long nanos = System.nanoTime() - start;
+				for (ResponseListener listener : responseListeners) {
+					listener.onResponse(path, nanos, success);
+				}
+			});
+		}).exceptionally(e -> {
+			if (breaker != null && !started.get()) {
+				// Das Bulkhead ist voll, der Aufruf wurde nicht gestartet
+				breaker.onIgnored(permit);
 			}
-		} catch (Exception e) {
 			// Loggt eine Ausnahme, falls eine auftritt
-			logger.log(Level.SEVERE, "Exception occurred while sending patient data", e);
-			return false;
+			logger.log(Level.SEVERE, "Exception occurred while sending " + outboundRequest, e);
+			return ApiResult.RETRYABLE;
+		});
+	}
+
+	/**
+	 * Registriert einen Empfänger für die Dauer der Aufrufe, z.B. für die
+	 * Zugangskontrolle.
+	 */
+	public void addResponseListener(ResponseListener listener) {
+		responseListeners.add(listener);
+	}
+
+	@Override
+	public void destroy() {
+		if (healthChecks != null) {
+			healthChecks.shutdownNow();
 		}
+		if (executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	private ApiResult handleResponse(HttpResponse<String> response) {
+		// Loggt den Statuscode der Antwort
+		int statusCode = response.statusCode();
+		logger.fine(() -> "Response from proprietary API: " + statusCode);
+
+		// Akzeptiere sowohl 200 (OK) als auch 201 (Created) als erfolgreichen Status
+		ApiResult result = ApiResult.ofStatus(statusCode);
+		if (!result.isSuccess()) {
+			// Loggt einen Fehler, wenn der Statuscode nicht 200 oder 201 ist, die
+			// Antwort wird dabei gekürzt
+			logger.severe("Proprietary API returned an error " + statusCode + ": "
+					+ TraceFormatter.truncate(response.body(), MAX_LOGGED_RESPONSE_LENGTH));
+		}
+		return result;
+	}
+
+	/**
+	 * Die konfigurierten Knoten oder, ohne Knoten, nur proprietaryBaseUrl.
+	 */
+	private BackendPool backendPool(FhirFacadeProperties fhirFacadeProperties) {
+		FhirFacadeProperties.Backends config = fhirFacadeProperties.getBackends();
+		List<FhirFacadeProperties.Backends.Node> nodes = config.getNodes().isEmpty()
+				? List.of(new FhirFacadeProperties.Backends.Node(fhirFacadeProperties.getProprietaryBaseUrl(), 1))
+				: config.getNodes();
+		BackendPool pool = new BackendPool(config, nodes, System::nanoTime, (backend, available, reason) -> {
+			if (available) {
+				logger.info(() -> "Backend " + backend + " readmitted (" + reason + ")");
+			} else {
+				logger.warning(() -> "Backend " + backend + " ejected (" + reason + ")");
+				metrics.backendEjection(backend.getUrl(), reason);
+			}
+		});
+		for (BackendPool.Backend backend : pool.getBackends()) {
+			metrics.gauge("fhir.facade.backend.available", "Proprietary API instance available (1) or ejected (0)",
+					backend, b -> pool.isAvailable(b) ? 1 : 0, "backend", backend.getUrl());
+			metrics.gauge("fhir.facade.backend.outstanding", "Running calls per proprietary API instance", backend,
+					pool::getOutstanding, "backend", backend.getUrl());
+		}
+		return pool;
+	}
+
+	/**
+	 * Startet die aktiven Health Checks, falls ein Pfad konfiguriert ist. Jeder
+	 * Knoten wird je Intervall einmal mit GET abgefragt.
+	 */
+	private ScheduledExecutorService healthChecks(FhirFacadeProperties.Backends config) {
+		if (config.getHealthCheckPath().isEmpty()) {
+			return null;
+		}
+		ScheduledExecutorService scheduler = Executors
+				.newSingleThreadScheduledExecutor(daemonThreads("backend-health-"));
+		long interval = config.getHealthCheckInterval().toMillis();
+		scheduler.scheduleWithFixedDelay(() -> {
+			for (BackendPool.Backend backend : backends.getBackends()) {
+				HttpRequest check = HttpRequest.newBuilder(backend.uri(config.getHealthCheckPath()))
+						.timeout(config.getHealthCheckTimeout()).GET().build();
+				httpClient.sendAsync(check, BodyHandlers.discarding()).whenComplete((response, error) -> backends
+						.onHealthCheck(backend, error == null && response.statusCode() / 100 == 2));
+			}
+		}, 0, interval, TimeUnit.MILLISECONDS);
+		return scheduler;
+	}
+
+	/**
+	 * Komprimiert mit der schnellsten Stufe: Der Inhalt wird beim Senden
+	 * komprimiert und soll den Aufruf nicht merklich verlängern.
+	 */
+	private InputStream compress(InputStream in) {
+		return compression == ContentEncoding.GZIP ? CompressingInputStream.gzip(in, Deflater.BEST_SPEED)
+				: CompressingInputStream.deflate(in, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Threads für den HTTP-Client: ein virtueller Thread je Aufgabe, falls
+	 * aktiviert und von der JVM unterstützt, sonst ioThreads Plattform-Threads.
+	 */
+	private static Executor executor(FhirFacadeProperties.Outbound outbound) {
+		if (outbound.isVirtualThreads()) {
+			try {
+				return new VirtualThreadTaskExecutor("proprietary-api-");
+			} catch (UnsupportedOperationException e) {
+				logger.warning("Virtual threads require Java 21, using " + outbound.getIoThreads() + " io threads");
+			}
+		}
+		return Executors.newFixedThreadPool(outbound.getIoThreads(), daemonThreads("proprietary-api-"));
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
 	}
-}
\ No newline at end of file
+}
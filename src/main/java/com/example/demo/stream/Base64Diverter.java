@@ -0,0 +1,408 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Zweigt die Base64-Werte von data-Elementen (z.B.
+ * {@code <data value="..."/>} eines Attachments oder Binary) aus FHIR-XML ab,
+ * bevor der StAX-Parser sie sieht.
+ * <p>
+ * StAX liefert Attributwerte nur als Ganzes; ein Dokument von 50 MB läge damit
+ * mehrfach im Heap. Dieser Stream erkennt die value-Attribute von
+ * data-Elementen beim Durchreichen, kopiert ihren Inhalt ohne Leerraum in je
+ * einen {@link SpooledContent} und ersetzt ihn durch die laufende Nummer des
+ * abgezweigten Werts. Erkannt werden dazu nur Tags, Attributwerte, Kommentare,
+ * CDATA-Abschnitte und Processing Instructions; die übrige Prüfung des XML
+ * übernimmt der Parser. DOCTYPE-Deklarationen sind in FHIR nicht erlaubt und
+ * werden abgelehnt.
+ */
+final class Base64Diverter extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+	// Längere Namen werden nicht vollständig gemerkt, sie können weder data noch
+	// value sein
+	private static final int MAX_NAME_LENGTH = 64;
+	private static final String DATA = "data";
+	private static final String VALUE = "value";
+	private static final String COMMENT_START = "--";
+	private static final String CDATA_START = "[CDATA[";
+	private static final String DOCTYPE = "DOCTYPE";
+
+	private static final int TEXT = 0;
+	private static final int MARKUP = 1;
+	private static final int BANG = 2;
+	private static final int COMMENT = 3;
+	private static final int CDATA = 4;
+	private static final int PROCESSING_INSTRUCTION = 5;
+	private static final int END_TAG = 6;
+	private static final int TAG_NAME = 7;
+	private static final int IN_TAG = 8;
+	private static final int ATTRIBUTE_NAME = 9;
+	private static final int AFTER_ATTRIBUTE_NAME = 10;
+	private static final int BEFORE_VALUE = 11;
+	private static final int ATTRIBUTE_VALUE = 12;
+	private static final int DIVERT = 13;
+	private static final int DIVERT_REFERENCE = 14;
+
+	private final InputStream in;
+	private final int spoolThreshold;
+	// Abgezweigte Werte in Dokumentreihenfolge, null nach take
+	private final List<SpooledContent> diverted = new ArrayList<>();
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private byte[] output = new byte[BUFFER_SIZE + 16];
+	private int outputPos;
+	private int outputLimit;
+	private boolean eof;
+
+	private int state = TEXT;
+	// Name des aktuellen Elements bzw. Attributs, Anfang einer <!-Deklaration oder
+	// Zeichenreferenz im abgezweigten Wert
+	private final StringBuilder name = new StringBuilder();
+	private boolean dataElement;
+	private boolean divertValue;
+	private byte quote;
+	// Bereits gelesene Zeichen des Endes von Kommentar, CDATA oder PI
+	private int matched;
+	private OutputStream divertOut;
+
+	/**
+	 * @param in             FHIR-XML
+	 * @param spoolThreshold Anzahl Bytes, ab der ein abgezweigter Wert in eine
+	 *                       temporäre Datei ausgelagert wird
+	 */
+	Base64Diverter(InputStream in, int spoolThreshold) {
+		this.in = in;
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Übernimmt einen abgezweigten Wert, der Aufrufer muss ihn schließen.
+	 *
+	 * @param index die Nummer, die anstelle des Werts im XML steht
+	 * @return der Base64-Inhalt oder null, wenn es keinen solchen Wert gibt oder
+	 *         er bereits übernommen wurde
+	 */
+	SpooledContent take(String index) {
+		int i;
+		try {
+			i = Integer.parseInt(index);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (i < 0 || i >= diverted.size()) {
+			return null;
+		}
+		return diverted.set(i, null);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (outputPos == outputLimit) {
+			if (eof) {
+				return -1;
+			}
+			fill();
+		}
+		int n = Math.min(len, outputLimit - outputPos);
+		System.arraycopy(output, outputPos, b, off, n);
+		outputPos += n;
+		return n;
+	}
+
+	/**
+	 * Gibt alle nicht übernommenen Werte frei.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (SpooledContent content : diverted) {
+			try {
+				if (content != null) {
+					content.close();
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		diverted.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private void fill() throws IOException {
+		outputPos = 0;
+		outputLimit = 0;
+		int read = in.read(input);
+		if (read < 0) {
+			eof = true;
+			return;
+		}
+		for (int i = 0; i < read; i++) {
+			if (state == DIVERT || state == DIVERT_REFERENCE) {
+				i = divert(i, read);
+			} else {
+				scan(input[i]);
+			}
+		}
+	}
+
+	/**
+	 * Verarbeitet ein Byte außerhalb eines abgezweigten Werts und reicht es
+	 * weiter.
+	 */
+	private void scan(byte c) throws IOException {
+		switch (state) {
+		case TEXT:
+			if (c == '<') {
+				state = MARKUP;
+			}
+			break;
+		case MARKUP:
+			if (c == '!') {
+				state = BANG;
+				name.setLength(0);
+			} else if (c == '?') {
+				state = PROCESSING_INSTRUCTION;
+				matched = 0;
+			} else if (c == '/') {
+				state = END_TAG;
+			} else {
+				state = TAG_NAME;
+				name.setLength(0);
+				name.append((char) c);
+			}
+			break;
+		case BANG:
+			name.append((char) c);
+			declaration(name.toString());
+			break;
+		case COMMENT:
+			matched = end(c, '-', matched);
+			break;
+		case CDATA:
+			matched = end(c, ']', matched);
+			break;
+		case PROCESSING_INSTRUCTION:
+			if (c == '>' && matched == 1) {
+				state = TEXT;
+			}
+			matched = c == '?' ? 1 : 0;
+			break;
+		case END_TAG:
+			if (c == '>') {
+				state = TEXT;
+			}
+			break;
+		case TAG_NAME:
+			if (c == '>' || c == '/' || isWhitespace(c)) {
+				dataElement = isLocalName(DATA);
+				state = IN_TAG;
+				scan(c);
+				return;
+			}
+			appendName(c);
+			break;
+		case IN_TAG:
+			if (c == '>') {
+				state = TEXT;
+			} else if (c != '/' && !isWhitespace(c)) {
+				state = ATTRIBUTE_NAME;
+				name.setLength(0);
+				name.append((char) c);
+			}
+			break;
+		case ATTRIBUTE_NAME:
+			if (c == '=' || isWhitespace(c)) {
+				divertValue = dataElement && VALUE.contentEquals(name);
+				state = c == '=' ? BEFORE_VALUE : AFTER_ATTRIBUTE_NAME;
+			} else {
+				appendName(c);
+			}
+			break;
+		case AFTER_ATTRIBUTE_NAME:
+			if (c == '=') {
+				state = BEFORE_VALUE;
+			} else if (!isWhitespace(c)) {
+				// Ungültig, der Parser meldet den Fehler
+				state = IN_TAG;
+				scan(c);
+				return;
+			}
+			break;
+		case BEFORE_VALUE:
+			if (c == '"' || c == '\'') {
+				quote = c;
+				if (divertValue) {
+					startDivert();
+					return;
+				}
+				state = ATTRIBUTE_VALUE;
+			} else if (!isWhitespace(c)) {
+				state = IN_TAG;
+				scan(c);
+				return;
+			}
+			break;
+		case ATTRIBUTE_VALUE:
+			if (c == quote) {
+				state = IN_TAG;
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unexpected state " + state);
+		}
+		emit(c);
+	}
+
+	/**
+	 * Unterscheidet nach {@code <!} Kommentar, CDATA und DOCTYPE.
+	 */
+	private void declaration(String start) throws XmlStreamException {
+		if (start.equals(COMMENT_START)) {
+			state = COMMENT;
+			matched = 0;
+		} else if (start.equals(CDATA_START)) {
+			state = CDATA;
+			matched = 0;
+		} else if (start.equals(DOCTYPE)) {
+			throw new XmlStreamException("DOCTYPE declarations are not allowed");
+		} else if (!COMMENT_START.startsWith(start) && !CDATA_START.startsWith(start) && !DOCTYPE.startsWith(start)) {
+			throw new XmlStreamException("Unsupported markup <!" + start);
+		}
+	}
+
+	/**
+	 * Erkennt das Ende eines Kommentars ({@code -->}) bzw. CDATA-Abschnitts
+	 * ({@code ]]>}).
+	 *
+	 * @return die Anzahl der zuletzt gelesenen Endzeichen
+	 */
+	private int end(byte c, char endChar, int count) {
+		if (c == endChar) {
+			return count + 1;
+		}
+		if (c == '>' && count >= 2) {
+			state = TEXT;
+		}
+		return 0;
+	}
+
+	private void startDivert() {
+		SpooledContent content = new SpooledContent(spoolThreshold);
+		divertOut = content.outputStream();
+		emit(quote);
+		for (byte digit : Integer.toString(diverted.size()).getBytes(StandardCharsets.US_ASCII)) {
+			emit(digit);
+		}
+		diverted.add(content);
+		state = DIVERT;
+	}
+
+	/**
+	 * Kopiert den abgezweigten Wert ab {@code start} bis zum schließenden
+	 * Anführungszeichen bzw. Ende des Puffers in den Zwischenspeicher.
+	 *
+	 * @return die Position des zuletzt verarbeiteten Bytes
+	 */
+	private int divert(int start, int limit) throws IOException {
+		int runStart = start;
+		for (int i = start; i < limit; i++) {
+			byte c = input[i];
+			if (state == DIVERT_REFERENCE) {
+				// Zeichenreferenzen wie &#10; dürfen nur Leerraum kodieren
+				if (c == ';') {
+					reference();
+					state = DIVERT;
+					runStart = i + 1;
+				} else if (name.length() < MAX_NAME_LENGTH) {
+					name.append((char) c);
+				} else {
+					throw new XmlStreamException("Invalid character reference in Base64 data");
+				}
+				continue;
+			}
+			if (isBase64(c)) {
+				continue;
+			}
+			divertOut.write(input, runStart, i - runStart);
+			runStart = i + 1;
+			if (c == quote) {
+				divertOut.close();
+				divertOut = null;
+				emit(quote);
+				state = IN_TAG;
+				return i;
+			} else if (c == '&') {
+				state = DIVERT_REFERENCE;
+				name.setLength(0);
+			} else if (!isWhitespace(c)) {
+				throw new XmlStreamException("Invalid character '" + (char) (c & 0xff) + "' in Base64 data");
+			}
+		}
+		if (state == DIVERT) {
+			divertOut.write(input, runStart, limit - runStart);
+		}
+		return limit - 1;
+	}
+
+	private void reference() throws XmlStreamException {
+		String reference = name.toString();
+		int codePoint = -1;
+		try {
+			if (reference.startsWith("#x")) {
+				codePoint = Integer.parseInt(reference.substring(2), 16);
+			} else if (reference.startsWith("#")) {
+				codePoint = Integer.parseInt(reference.substring(1));
+			}
+		} catch (NumberFormatException e) {
+			codePoint = -1;
+		}
+		if (codePoint < 0 || codePoint > 0x7f || !isWhitespace((byte) codePoint)) {
+			throw new XmlStreamException("Invalid character reference &" + reference + "; in Base64 data");
+		}
+	}
+
+	private void appendName(byte c) {
+		if (name.length() < MAX_NAME_LENGTH) {
+			name.append((char) c);
+		}
+	}
+
+	private boolean isLocalName(String localName) {
+		int colon = name.lastIndexOf(":");
+		return name.length() - colon - 1 == localName.length()
+				&& name.indexOf(localName, colon + 1) == colon + 1;
+	}
+
+	private void emit(byte c) {
+		if (outputLimit == output.length) {
+			output = Arrays.copyOf(output, output.length * 2);
+		}
+		output[outputLimit++] = c;
+	}
+
+	private static boolean isBase64(byte c) {
+		return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/'
+				|| c == '=';
+	}
+
+	private static boolean isWhitespace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+}
@@ -0,0 +1,120 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Komprimiert einen Stream beim Lesen im Format gzip (RFC 1952) oder deflate
+ * (zlib, RFC 1950), z.B. für einen gestreamten Anfragekörper mit
+ * Content-Encoding. Anders als {@link java.util.zip.GZIPOutputStream} braucht
+ * es dafür weder einen Puffer für den ganzen Inhalt noch einen zweiten Thread.
+ */
+public final class CompressingInputStream extends InputStream {
+
+	// Kopf eines gzip-Members: Kennung, Verfahren deflate, keine Flags, keine
+	// Zeit, kein Extra-Flag, Betriebssystem unbekannt
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private final Deflater deflater;
+	private final DeflaterInputStream body;
+	// Prüfsumme des unkomprimierten Inhalts, null bei deflate
+	private final CRC32 crc;
+	private byte[] header;
+	private byte[] trailer;
+	private int position;
+	private boolean bodyDone;
+
+	private CompressingInputStream(InputStream in, boolean gzip, int level) {
+		this.deflater = new Deflater(level, gzip);
+		this.crc = gzip ? new CRC32() : null;
+		this.body = new DeflaterInputStream(gzip ? new CheckedInputStream(in, crc) : in, deflater);
+		this.header = gzip ? GZIP_HEADER : null;
+	}
+
+	/**
+	 * @param in    der unkomprimierte Inhalt
+	 * @param level Kompressionsstufe von {@link Deflater#BEST_SPEED} bis
+	 *              {@link Deflater#BEST_COMPRESSION}
+	 * @return der Inhalt im Format gzip
+	 */
+	public static CompressingInputStream gzip(InputStream in, int level) {
+		return new CompressingInputStream(in, true, level);
+	}
+
+	/**
+	 * @param in    der unkomprimierte Inhalt
+	 * @param level Kompressionsstufe von {@link Deflater#BEST_SPEED} bis
+	 *              {@link Deflater#BEST_COMPRESSION}
+	 * @return der Inhalt im Format deflate (zlib)
+	 */
+	public static CompressingInputStream deflate(InputStream in, int level) {
+		return new CompressingInputStream(in, false, level);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int read = read(single, 0, 1);
+		return read < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (header != null) {
+			int count = Math.min(len, header.length - position);
+			System.arraycopy(header, position, b, off, count);
+			position += count;
+			if (position == header.length) {
+				header = null;
+				position = 0;
+			}
+			return count;
+		}
+		if (!bodyDone) {
+			int read = body.read(b, off, len);
+			if (read >= 0) {
+				return read;
+			}
+			bodyDone = true;
+			if (crc != null) {
+				trailer = trailer((int) crc.getValue(), (int) deflater.getBytesRead());
+			}
+		}
+		if (trailer == null || position == trailer.length) {
+			return -1;
+		}
+		int count = Math.min(len, trailer.length - position);
+		System.arraycopy(trailer, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			body.close();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Abschluss eines gzip-Members: CRC-32 und Länge modulo 2^32, jeweils
+	 * little-endian.
+	 */
+	private static byte[] trailer(int crc, int size) {
+		byte[] trailer = new byte[8];
+		for (int i = 0; i < 4; i++) {
+			trailer[i] = (byte) (crc >>> (8 * i));
+			trailer[4 + i] = (byte) (size >>> (8 * i));
+		}
+		return trailer;
+	}
+}
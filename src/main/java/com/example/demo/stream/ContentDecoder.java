@@ -0,0 +1,137 @@
+package com.example.demo.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Entpackt einen Anfragekörper mit Content-Encoding gzip oder deflate beim
+ * Lesen. Die entpackte Größe ist begrenzt, damit ein kleiner komprimierter
+ * Körper nicht beliebig viel Speicher oder Platz im Zwischenspeicher belegt.
+ */
+public final class ContentDecoder {
+
+	private ContentDecoder() {
+	}
+
+	/**
+	 * @param contentEncoding der Wert des Headers Content-Encoding
+	 * @return true, wenn die Kodierung entpackt werden kann
+	 */
+	public static boolean isSupported(String contentEncoding) {
+		String encoding = normalize(contentEncoding);
+		return "gzip".equals(encoding) || "x-gzip".equals(encoding) || "deflate".equals(encoding)
+				|| "identity".equals(encoding);
+	}
+
+	/**
+	 * @param contentEncoding der Wert des Headers Content-Encoding
+	 * @param in              der komprimierte Körper
+	 * @param maxSize         maximale Größe des entpackten Körpers in Bytes
+	 * @return der entpackte Körper; beim Lesen über maxSize hinaus wird eine
+	 *         {@link PayloadTooLargeException} geworfen
+	 * @throws IllegalArgumentException bei einer nicht unterstützten Kodierung
+	 */
+	public static InputStream decode(String contentEncoding, InputStream in, long maxSize) throws IOException {
+		String encoding = normalize(contentEncoding);
+		InputStream decoded;
+		if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+			decoded = new GZIPInputStream(in, 8192);
+		} else if ("deflate".equals(encoding)) {
+			decoded = inflate(in);
+		} else if ("identity".equals(encoding)) {
+			decoded = in;
+		} else {
+			throw new IllegalArgumentException("Unsupported Content-Encoding " + contentEncoding);
+		}
+		return new LimitedInputStream(decoded, maxSize);
+	}
+
+	/**
+	 * deflate ist laut HTTP das zlib-Format, manche Clients senden aber rohes
+	 * deflate; unterschieden wird am zlib-Kopf.
+	 */
+	private static InputStream inflate(InputStream in) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		int first = pushback.read();
+		int second = first >= 0 ? pushback.read() : -1;
+		if (second >= 0) {
+			pushback.unread(second);
+		}
+		if (first >= 0) {
+			pushback.unread(first);
+		}
+		boolean zlib = second >= 0 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+		Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(pushback, inflater, 8192) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+	private static String normalize(String contentEncoding) {
+		return contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Wirft beim Lesen über die Höchstgröße hinaus eine
+	 * {@link PayloadTooLargeException}.
+	 */
+	private static final class LimitedInputStream extends FilterInputStream {
+		private final long maxSize;
+		private long count;
+
+		LimitedInputStream(InputStream in, long maxSize) {
+			super(in);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void count(long n) throws PayloadTooLargeException {
+			count += n;
+			if (count > maxSize) {
+				throw new PayloadTooLargeException(maxSize);
+			}
+		}
+	}
+}
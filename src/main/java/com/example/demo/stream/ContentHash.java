@@ -0,0 +1,73 @@
+package com.example.demo.stream;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * SHA-256 über einen JSON-Text, der dabei normalisiert wird: Leerzeichen,
+ * Tabulatoren und Zeilenumbrüche außerhalb von Zeichenketten werden
+ * übersprungen. Unterschiedlich formatierte, aber sonst gleiche Ressourcen
+ * ergeben so denselben Hash. Der Text wird stückweise übergeben und nie
+ * vollständig gehalten.
+ */
+public class ContentHash {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final MessageDigest digest;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int buffered;
+	private boolean inString;
+	private boolean escaped;
+
+	public ContentHash() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return Hash des gesamten JSON-Texts
+	 */
+	public static String of(byte[] json) {
+		ContentHash hash = new ContentHash();
+		hash.update(json, 0, json.length);
+		return hash.finish();
+	}
+
+	public void update(byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			byte b = bytes[i];
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					inString = false;
+				}
+			} else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+				continue;
+			} else if (b == '"') {
+				inString = true;
+			}
+			buffer[buffered++] = b;
+			if (buffered == BUFFER_SIZE) {
+				digest.update(buffer, 0, buffered);
+				buffered = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return Base64-kodierter Hash, danach ist das Objekt nicht mehr verwendbar
+	 */
+	public String finish() {
+		digest.update(buffer, 0, buffered);
+		buffered = 0;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+	}
+}
@@ -0,0 +1,297 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Reference;
+
+import com.example.demo.stream.JsonPullReader.Token;
+
+/**
+ * Liest eine DocumentReference-Ressource im JSON-Format als Stream und
+ * extrahiert nur die Elemente, die für die Weiterleitung an die proprietäre
+ * API benötigt werden.
+ * <p>
+ * Der Base64-Inhalt aus {@code content[0].attachment.data} wird weder dekodiert
+ * noch als String aufgebaut, sondern unverändert in einen
+ * {@link SpooledContent} kopiert.
+ */
+public class DocumentReferenceReader {
+
+	private static final String RESOURCE_TYPE = "DocumentReference";
+
+	private final int spoolThreshold;
+
+	/**
+	 * @param spoolThreshold Anzahl Bytes, ab der der Dokumentinhalt in eine
+	 *                       temporäre Datei ausgelagert wird
+	 */
+	public DocumentReferenceReader(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Liest die DocumentReference aus dem Stream.
+	 *
+	 * @param in JSON-Darstellung der Ressource
+	 * @return die extrahierten Elemente; der Aufrufer muss das Ergebnis schließen
+	 * @throws IOException bei Lesefehlern oder ungültigem JSON
+	 */
+	public StreamedDocumentReference read(InputStream in) throws IOException {
+		StreamedDocumentReference result = new StreamedDocumentReference(new SpooledContent(spoolThreshold));
+		try {
+			JsonPullReader reader = new JsonPullReader(in);
+			expect(reader.next(), Token.START_OBJECT);
+			while (reader.next() == Token.FIELD_NAME) {
+				String field = reader.fieldName();
+				Token value = reader.next();
+				switch (field) {
+				case "resourceType":
+					String resourceType = value == Token.STRING ? reader.stringValue() : null;
+					if (!RESOURCE_TYPE.equals(resourceType)) {
+						throw new JsonStreamException("Expected resourceType " + RESOURCE_TYPE + " but found "
+								+ resourceType);
+					}
+					break;
+				case "type":
+					readCodeableConcept(reader, value, result.getTypeCoding()::add);
+					break;
+				case "subject":
+					readSubject(reader, value, result);
+					break;
+				case "content":
+					readContent(reader, value, result);
+					break;
+				case "context":
+					readContext(reader, value, result);
+					break;
+				default:
+					reader.skipChildren();
+				}
+			}
+			result.getData().outputStream().close();
+			return result;
+		} catch (IOException | RuntimeException e) {
+			result.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Übernimmt die benötigten Elemente aus einer bereits von HAPI geparsten
+	 * DocumentReference (z.B. aus einem Bundle). Der Dokumentinhalt wird dabei
+	 * Base64-kodiert in den Zwischenspeicher geschrieben, die Ressource selbst
+	 * liefert {@link StreamedDocumentReference#toResource()} unverändert.
+	 *
+	 * @param documentReference die DocumentReference-Ressource
+	 * @return die extrahierten Elemente; der Aufrufer muss das Ergebnis schließen
+	 * @throws IOException wenn der Zwischenspeicher nicht geschrieben werden kann
+	 */
+	public StreamedDocumentReference read(DocumentReference documentReference) throws IOException {
+		StreamedDocumentReference result = new StreamedDocumentReference(new SpooledContent(spoolThreshold));
+		try {
+			result.setResource(documentReference);
+			result.getTypeCoding().addAll(documentReference.getType().getCoding());
+			if (documentReference.getSubject().hasIdentifier()) {
+				result.setSubjectIdentifier(documentReference.getSubject().getIdentifier());
+			}
+			result.getEncounter().addAll(documentReference.getContext().getEncounter());
+			Attachment attachment = documentReference.hasContent()
+					? documentReference.getContentFirstRep().getAttachment()
+					: new Attachment();
+			if (attachment.hasCreation()) {
+				result.setCreation(attachment.getCreationElement());
+			}
+			if (attachment.hasUrl()) {
+				result.setAttachmentUrl(attachment.getUrl());
+			}
+			try (OutputStream out = Base64.getEncoder().wrap(result.getData().outputStream())) {
+				if (attachment.hasData()) {
+					out.write(attachment.getData());
+					result.setDataPresent(true);
+				}
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			result.close();
+			throw e;
+		}
+	}
+
+	private void readSubject(JsonPullReader reader, Token value, StreamedDocumentReference result)
+			throws IOException {
+		forEachField(reader, value, field -> {
+			if ("identifier".equals(field)) {
+				Identifier identifier = readIdentifier(reader, reader.next());
+				if (identifier != null && result.getSubjectIdentifier() == null) {
+					result.setSubjectIdentifier(identifier);
+				}
+			} else {
+				reader.next();
+				reader.skipChildren();
+			}
+		});
+	}
+
+	private void readContent(JsonPullReader reader, Token value, StreamedDocumentReference result)
+			throws IOException {
+		if (value != Token.START_ARRAY) {
+			reader.skipChildren();
+			return;
+		}
+		boolean first = true;
+		while (reader.next() != Token.END_ARRAY) {
+			if (!first) {
+				reader.skipChildren();
+				continue;
+			}
+			first = false;
+			forEachField(reader, reader.current(), field -> {
+				if ("attachment".equals(field)) {
+					readAttachment(reader, reader.next(), result);
+				} else {
+					reader.next();
+					reader.skipChildren();
+				}
+			});
+		}
+	}
+
+	private void readAttachment(JsonPullReader reader, Token value, StreamedDocumentReference result)
+			throws IOException {
+		forEachField(reader, value, field -> {
+			Token attachmentValue = reader.next();
+			if ("data".equals(field) && attachmentValue == Token.STRING) {
+				try (OutputStream out = result.getData().outputStream()) {
+					reader.copyString(out);
+				}
+				result.setDataPresent(true);
+			} else if ("creation".equals(field) && attachmentValue == Token.STRING) {
+				result.setCreation(new DateTimeType(reader.stringValue()));
+			} else if ("url".equals(field) && attachmentValue == Token.STRING) {
+				result.setAttachmentUrl(reader.stringValue());
+			} else {
+				reader.skipChildren();
+			}
+		});
+	}
+
+	private void readContext(JsonPullReader reader, Token value, StreamedDocumentReference result)
+			throws IOException {
+		forEachField(reader, value, field -> {
+			Token contextValue = reader.next();
+			if ("encounter".equals(field) && contextValue == Token.START_ARRAY) {
+				while (reader.next() != Token.END_ARRAY) {
+					Reference encounter = new Reference();
+					forEachField(reader, reader.current(), encounterField -> {
+						if ("identifier".equals(encounterField)) {
+							Identifier identifier = readIdentifier(reader, reader.next());
+							if (identifier != null && !encounter.hasIdentifier()) {
+								encounter.setIdentifier(identifier);
+							}
+						} else {
+							reader.next();
+							reader.skipChildren();
+						}
+					});
+					result.getEncounter().add(encounter);
+				}
+			} else {
+				reader.skipChildren();
+			}
+		});
+	}
+
+	/**
+	 * Liest einen Identifier. Wird (wie in einigen Beispielressourcen) ein Array
+	 * angeliefert, wird das erste Element verwendet.
+	 */
+	private Identifier readIdentifier(JsonPullReader reader, Token value) throws IOException {
+		if (value == Token.START_ARRAY) {
+			Identifier first = null;
+			while (reader.next() != Token.END_ARRAY) {
+				Identifier identifier = readIdentifier(reader, reader.current());
+				if (first == null) {
+					first = identifier;
+				}
+			}
+			return first;
+		}
+		if (value != Token.START_OBJECT) {
+			return null;
+		}
+		Identifier identifier = new Identifier();
+		forEachField(reader, value, field -> {
+			Token identifierValue = reader.next();
+			if ("value".equals(field) && identifierValue == Token.STRING) {
+				identifier.setValue(reader.stringValue());
+			} else if ("system".equals(field) && identifierValue == Token.STRING) {
+				identifier.setSystem(reader.stringValue());
+			} else if ("type".equals(field)) {
+				readCodeableConcept(reader, identifierValue, identifier.getType().getCoding()::add);
+			} else {
+				reader.skipChildren();
+			}
+		});
+		return identifier;
+	}
+
+	private void readCodeableConcept(JsonPullReader reader, Token value, Consumer<Coding> consumer)
+			throws IOException {
+		forEachField(reader, value, field -> {
+			Token conceptValue = reader.next();
+			if ("coding".equals(field) && conceptValue == Token.START_ARRAY) {
+				while (reader.next() != Token.END_ARRAY) {
+					Coding coding = new Coding();
+					forEachField(reader, reader.current(), codingField -> {
+						Token codingValue = reader.next();
+						if ("system".equals(codingField) && codingValue == Token.STRING) {
+							coding.setSystem(reader.stringValue());
+						} else if ("code".equals(codingField) && codingValue == Token.STRING) {
+							coding.setCode(reader.stringValue());
+						} else {
+							reader.skipChildren();
+						}
+					});
+					consumer.accept(coding);
+				}
+			} else {
+				reader.skipChildren();
+			}
+		});
+	}
+
+	/**
+	 * Ruft den Handler für jedes Feld des aktuellen Objekts auf. Der Handler muss
+	 * den Wert des Feldes vollständig konsumieren. Ist das aktuelle Token kein
+	 * Objekt, wird der Wert übersprungen.
+	 */
+	private void forEachField(JsonPullReader reader, Token value, FieldHandler handler) throws IOException {
+		if (value != Token.START_OBJECT) {
+			reader.skipChildren();
+			return;
+		}
+		while (reader.next() == Token.FIELD_NAME) {
+			handler.handle(reader.fieldName());
+		}
+	}
+
+	private static void expect(Token actual, Token expected) throws JsonStreamException {
+		if (actual != expected) {
+			throw new JsonStreamException("Expected " + expected + " but found " + actual);
+		}
+	}
+
+	@FunctionalInterface
+	private interface FieldHandler {
+		void handle(String fieldName) throws IOException;
+	}
+}
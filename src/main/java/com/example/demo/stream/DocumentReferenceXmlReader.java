@@ -0,0 +1,179 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Reference;
+
+/**
+ * Liest eine DocumentReference-Ressource im XML-Format mit dem
+ * {@link FhirXmlReader} und extrahiert dieselben Elemente wie der
+ * {@link DocumentReferenceReader} für JSON.
+ * <p>
+ * Der Base64-Inhalt aus {@code content[0].attachment.data} wird schon vor dem
+ * StAX-Parser abgezweigt und unverändert in einen {@link SpooledContent}
+ * kopiert, weder dekodiert noch als String aufgebaut.
+ */
+public class DocumentReferenceXmlReader {
+
+	private static final String RESOURCE_TYPE = "DocumentReference";
+
+	private final int spoolThreshold;
+
+	/**
+	 * @param spoolThreshold Anzahl Bytes, ab der der Dokumentinhalt in eine
+	 *                       temporäre Datei ausgelagert wird
+	 */
+	public DocumentReferenceXmlReader(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Liest die DocumentReference aus dem Stream.
+	 *
+	 * @param in XML-Darstellung der Ressource
+	 * @return die extrahierten Elemente; der Aufrufer muss das Ergebnis schließen
+	 * @throws IOException bei Lesefehlern oder ungültigem XML
+	 */
+	public StreamedDocumentReference read(InputStream in) throws IOException {
+		StreamedDocumentReference result = new StreamedDocumentReference(new SpooledContent(spoolThreshold));
+		try (FhirXmlReader reader = new FhirXmlReader(in, spoolThreshold)) {
+			String resourceType = reader.root();
+			if (!RESOURCE_TYPE.equals(resourceType)) {
+				throw new XmlStreamException("Expected resourceType " + RESOURCE_TYPE + " but found " + resourceType);
+			}
+			int resource = reader.depth();
+			boolean firstContent = true;
+			while (reader.nextChild(resource)) {
+				switch (reader.name()) {
+				case "type":
+					readCodeableConcept(reader, result.getTypeCoding()::add);
+					break;
+				case "subject":
+					readSubject(reader, result);
+					break;
+				case "content":
+					if (firstContent) {
+						firstContent = false;
+						readContent(reader, result);
+					}
+					break;
+				case "context":
+					readContext(reader, result);
+					break;
+				default:
+					// Wird mit dem nächsten Element übersprungen
+				}
+			}
+			result.getData().outputStream().close();
+			return result;
+		} catch (IOException | RuntimeException e) {
+			result.close();
+			throw e;
+		}
+	}
+
+	private void readSubject(FhirXmlReader reader, StreamedDocumentReference result) throws IOException {
+		int subject = reader.depth();
+		while (reader.nextChild(subject)) {
+			if ("identifier".equals(reader.name()) && result.getSubjectIdentifier() == null) {
+				result.setSubjectIdentifier(readIdentifier(reader));
+			}
+		}
+	}
+
+	private void readContent(FhirXmlReader reader, StreamedDocumentReference result) throws IOException {
+		int content = reader.depth();
+		while (reader.nextChild(content)) {
+			if ("attachment".equals(reader.name())) {
+				readAttachment(reader, result);
+			}
+		}
+	}
+
+	private void readAttachment(FhirXmlReader reader, StreamedDocumentReference result) throws IOException {
+		int attachment = reader.depth();
+		while (reader.nextChild(attachment)) {
+			switch (reader.name()) {
+			case "data":
+				SpooledContent data = reader.data();
+				if (data != null) {
+					result.replaceData(data);
+					result.setDataPresent(true);
+				}
+				break;
+			case "creation":
+				if (reader.value() != null) {
+					result.setCreation(new DateTimeType(reader.value()));
+				}
+				break;
+			case "url":
+				result.setAttachmentUrl(reader.value());
+				break;
+			default:
+				// Wird mit dem nächsten Element übersprungen
+			}
+		}
+	}
+
+	private void readContext(FhirXmlReader reader, StreamedDocumentReference result) throws IOException {
+		int context = reader.depth();
+		while (reader.nextChild(context)) {
+			if (!"encounter".equals(reader.name())) {
+				continue;
+			}
+			Reference encounter = new Reference();
+			int reference = reader.depth();
+			while (reader.nextChild(reference)) {
+				if ("identifier".equals(reader.name()) && !encounter.hasIdentifier()) {
+					encounter.setIdentifier(readIdentifier(reader));
+				}
+			}
+			result.getEncounter().add(encounter);
+		}
+	}
+
+	private Identifier readIdentifier(FhirXmlReader reader) throws IOException {
+		Identifier identifier = new Identifier();
+		int element = reader.depth();
+		while (reader.nextChild(element)) {
+			switch (reader.name()) {
+			case "value":
+				identifier.setValue(reader.value());
+				break;
+			case "system":
+				identifier.setSystem(reader.value());
+				break;
+			case "type":
+				readCodeableConcept(reader, identifier.getType().getCoding()::add);
+				break;
+			default:
+				// Wird mit dem nächsten Element übersprungen
+			}
+		}
+		return identifier;
+	}
+
+	private void readCodeableConcept(FhirXmlReader reader, Consumer<Coding> consumer) throws IOException {
+		int concept = reader.depth();
+		while (reader.nextChild(concept)) {
+			if (!"coding".equals(reader.name())) {
+				continue;
+			}
+			Coding coding = new Coding();
+			int element = reader.depth();
+			while (reader.nextChild(element)) {
+				if ("system".equals(reader.name())) {
+					coding.setSystem(reader.value());
+				} else if ("code".equals(reader.name())) {
+					coding.setCode(reader.value());
+				}
+			}
+			consumer.accept(coding);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.example.demo.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Liest eine FHIR-Ressource im XML-Format als Stream mit StAX, ohne einen
+ * Baum aufzubauen.
+ * <p>
+ * Elemente werden über ihre Tiefe durchlaufen: {@link #nextChild(int)} springt
+ * zum nächsten Kindelement und überspringt dabei alles, was der Aufrufer nicht
+ * gelesen hat, z.B. die Narrative. Primitive Werte stehen in FHIR im Attribut
+ * value ({@link #value()}). Base64-Werte von data-Elementen werden schon vor
+ * dem Parser in einen {@link SpooledContent} abgezweigt ({@link #data()}), der
+ * Speicherbedarf bleibt damit auch bei großen Anhängen konstant.
+ */
+public final class FhirXmlReader implements Closeable {
+
+	public static final String FHIR_NAMESPACE = "http://hl7.org/fhir";
+
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	private final Base64Diverter diverter;
+	private final XMLStreamReader reader;
+	// Tiefe des aktuellen Elements, 1 für das Wurzelelement
+	private int depth;
+
+	/**
+	 * @param in             FHIR-XML in UTF-8
+	 * @param spoolThreshold Anzahl Bytes, ab der ein Base64-Wert in eine
+	 *                       temporäre Datei ausgelagert wird
+	 * @throws IOException wenn der Anfang des Dokuments nicht gelesen werden kann
+	 */
+	public FhirXmlReader(InputStream in, int spoolThreshold) throws IOException {
+		this.diverter = new Base64Diverter(in, spoolThreshold);
+		try {
+			this.reader = FACTORY.createXMLStreamReader(diverter);
+		} catch (XMLStreamException e) {
+			diverter.close();
+			throw error(e);
+		}
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		// Keine DTDs und externen Entitäten (XXE)
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		return factory;
+	}
+
+	/**
+	 * Liest bis zum Wurzelelement.
+	 *
+	 * @return der Ressourcentyp (Name des Wurzelelements)
+	 * @throws XmlStreamException wenn das Wurzelelement nicht im
+	 *                            FHIR-Namensraum liegt
+	 */
+	public String root() throws IOException {
+		while (next() != XMLStreamConstants.START_ELEMENT) {
+			if (reader.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+				throw new XmlStreamException("Missing root element");
+			}
+		}
+		if (!FHIR_NAMESPACE.equals(reader.getNamespaceURI())) {
+			throw new XmlStreamException("Expected namespace " + FHIR_NAMESPACE + " but found "
+					+ reader.getNamespaceURI());
+		}
+		return reader.getLocalName();
+	}
+
+	/**
+	 * @return die Tiefe des aktuellen Elements, 1 für das Wurzelelement
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Geht zum nächsten Kindelement des Elements in der angegebenen Tiefe.
+	 * Nicht gelesene Nachfahren des vorherigen Kindelements werden übersprungen.
+	 *
+	 * @param parent die Tiefe des Elternelements, {@link #depth()} vor dem
+	 *               ersten Aufruf
+	 * @return false am Ende des Elternelements
+	 */
+	public boolean nextChild(int parent) throws IOException {
+		if (depth < parent || depth == parent && reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+			return false;
+		}
+		while (true) {
+			int event = next();
+			if (event == XMLStreamConstants.START_ELEMENT && depth == parent + 1) {
+				return true;
+			} else if (event == XMLStreamConstants.END_ELEMENT && depth == parent) {
+				return false;
+			} else if (event == XMLStreamConstants.END_DOCUMENT) {
+				throw new XmlStreamException("Unexpected end of document");
+			}
+		}
+	}
+
+	/**
+	 * @return der Name des aktuellen Elements ohne Präfix
+	 */
+	public String name() {
+		return reader.getLocalName();
+	}
+
+	/**
+	 * @return das Attribut value des aktuellen Elements oder null
+	 */
+	public String value() {
+		return reader.getAttributeValue(null, "value");
+	}
+
+	/**
+	 * Übernimmt den Base64-Inhalt des aktuellen data-Elements, der Aufrufer muss
+	 * ihn schließen.
+	 *
+	 * @return der Inhalt oder null ohne value
+	 */
+	public SpooledContent data() {
+		String index = value();
+		return index != null ? diverter.take(index) : null;
+	}
+
+	/**
+	 * Gibt den Parser und alle nicht übernommenen Base64-Inhalte frei. Der
+	 * zugrunde liegende Stream wird nicht geschlossen.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw error(e);
+		} finally {
+			diverter.close();
+		}
+	}
+
+	private int next() throws IOException {
+		try {
+			if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			return event;
+		} catch (XMLStreamException e) {
+			throw error(e);
+		}
+	}
+
+	private static IOException error(XMLStreamException e) {
+		// Fehler des Base64Diverter kommen als Ursache der XMLStreamException
+		if (e.getNestedException() instanceof IOException) {
+			return (IOException) e.getNestedException();
+		}
+		return new XmlStreamException(e.getMessage());
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.demo.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Berechnet beim Lesen den {@link ContentHash} der gelesenen Bytes.
+ */
+public class HashingInputStream extends FilterInputStream {
+
+	private final ContentHash hash = new ContentHash();
+	private final byte[] single = new byte[1];
+
+	public HashingInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			single[0] = (byte) b;
+			hash.update(single, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) {
+			hash.update(b, off, read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		// Übersprungene Bytes müssen in den Hash eingehen
+		return n <= 0 ? 0 : Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Liest den Stream bis zum Ende und liefert den Hash aller Bytes.
+	 */
+	public String finish() throws IOException {
+		byte[] rest = new byte[8192];
+		while (read(rest) >= 0) {
+			// Rest des Anfragekörpers, z.B. abschließende Leerzeichen
+		}
+		return hash.finish();
+	}
+}
@@ -0,0 +1,416 @@
+package com.example.demo.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimaler Pull-Parser für JSON, der direkt auf einem {@link InputStream}
+ * arbeitet.
+ * <p>
+ * Im Gegensatz zu einem Objektmodell-Parser werden String-Werte erst auf
+ * Anforderung gelesen: Nach einem {@link Token#STRING} kann der Aufrufer den
+ * Wert mit {@link #stringValue()} dekodieren, mit {@link #copyString(OutputStream)}
+ * unverändert weiterreichen oder ihn durch den nächsten Aufruf von
+ * {@link #next()} überspringen. Dadurch können auch sehr große Werte (z.B.
+ * Base64-kodierte Dokumente) mit konstantem Speicherbedarf verarbeitet werden.
+ */
+public final class JsonPullReader implements Closeable {
+
+	public enum Token {
+		START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL, END
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+	// Obergrenze für dekodierte Strings, damit ein Client den Heap nicht über
+	// einen einzelnen Wert füllen kann
+	private static final int MAX_STRING_LENGTH = 1 << 20;
+	private static final int MAX_SCALAR_LENGTH = 64;
+
+	private static final byte OBJECT = 1;
+	private static final byte ARRAY = 2;
+
+	private static final int EXPECT_VALUE = 0;
+	private static final int EXPECT_FIRST_KEY_OR_END = 1;
+	private static final int EXPECT_KEY = 2;
+	private static final int EXPECT_FIRST_VALUE_OR_END = 3;
+	private static final int EXPECT_SEPARATOR = 4;
+	private static final int DONE = 5;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private long consumed;
+
+	private byte[] scopes = new byte[16];
+	private int depth;
+	private int state = EXPECT_VALUE;
+
+	private Token current;
+	private String fieldName;
+	private String scalar;
+	private boolean pendingString;
+
+	public JsonPullReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Liest das nächste Token. Ein noch nicht gelesener String-Wert wird dabei
+	 * übersprungen.
+	 *
+	 * @return das nächste Token, {@link Token#END} am Ende des Dokuments
+	 * @throws IOException bei Lesefehlern oder ungültigem JSON
+	 */
+	public Token next() throws IOException {
+		if (pendingString) {
+			copyString(null);
+		}
+		int c = nextNonWhitespace();
+		switch (state) {
+		case DONE:
+			if (c != -1) {
+				throw error("Unexpected content after end of document");
+			}
+			return current = Token.END;
+		case EXPECT_SEPARATOR:
+			if (c != ',') {
+				return close(c);
+			}
+			state = scopes[depth - 1] == OBJECT ? EXPECT_KEY : EXPECT_VALUE;
+			c = nextNonWhitespace();
+			break;
+		case EXPECT_FIRST_KEY_OR_END:
+		case EXPECT_FIRST_VALUE_OR_END:
+			if (c == '}' || c == ']') {
+				return close(c);
+			}
+			state = state == EXPECT_FIRST_KEY_OR_END ? EXPECT_KEY : EXPECT_VALUE;
+			break;
+		default:
+			break;
+		}
+		if (state == EXPECT_KEY) {
+			if (c != '"') {
+				throw error("Expected field name");
+			}
+			fieldName = readString();
+			if (nextNonWhitespace() != ':') {
+				throw error("Expected ':' after field name");
+			}
+			state = EXPECT_VALUE;
+			return current = Token.FIELD_NAME;
+		}
+		return readValue(c);
+	}
+
+	/**
+	 * @return das aktuelle Token
+	 */
+	public Token current() {
+		return current;
+	}
+
+	/**
+	 * @return der Name des aktuellen Feldes, solange {@link Token#FIELD_NAME}
+	 *         das aktuelle Token ist
+	 */
+	public String fieldName() {
+		return fieldName;
+	}
+
+	/**
+	 * @return der Text einer Zahl oder eines Literals (true, false, null)
+	 */
+	public String scalarValue() {
+		return scalar;
+	}
+
+	/**
+	 * Dekodiert den aktuellen String-Wert.
+	 *
+	 * @return der dekodierte Wert
+	 * @throws IOException bei Lesefehlern, ungültigem JSON oder wenn der Wert
+	 *                     länger als das zulässige Maximum ist
+	 */
+	public String stringValue() throws IOException {
+		if (!pendingString) {
+			throw new IllegalStateException("Current token is not an unread string value: " + current);
+		}
+		pendingString = false;
+		return readString();
+	}
+
+	/**
+	 * Kopiert den aktuellen String-Wert unverändert (ohne Anführungszeichen und
+	 * ohne Escape-Sequenzen aufzulösen) in den angegebenen Stream. Da die Bytes
+	 * bereits gültiger JSON-String-Inhalt sind, können sie direkt in ein anderes
+	 * JSON-Dokument geschrieben werden.
+	 *
+	 * @param out Ziel der Bytes, oder {@code null} um den Wert zu verwerfen
+	 * @return Anzahl der kopierten Bytes
+	 * @throws IOException bei Lesefehlern oder ungültigem JSON
+	 */
+	public long copyString(OutputStream out) throws IOException {
+		if (!pendingString) {
+			throw new IllegalStateException("Current token is not an unread string value: " + current);
+		}
+		pendingString = false;
+		long copied = 0;
+		boolean escaped = false;
+		while (true) {
+			if (pos == limit && !fill()) {
+				throw error("Unterminated string");
+			}
+			int start = pos;
+			while (pos < limit) {
+				byte b = buffer[pos];
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					break;
+				} else if ((b & 0xFF) < 0x20) {
+					throw error("Unescaped control character in string");
+				}
+				pos++;
+			}
+			int length = pos - start;
+			if (out != null && length > 0) {
+				out.write(buffer, start, length);
+			}
+			copied += length;
+			if (pos < limit) {
+				// schließendes Anführungszeichen
+				pos++;
+				return copied;
+			}
+		}
+	}
+
+	/**
+	 * Überspringt den Inhalt des aktuellen Objekts bzw. Arrays. Danach ist das
+	 * zugehörige {@link Token#END_OBJECT} bzw. {@link Token#END_ARRAY} das
+	 * aktuelle Token. Für alle anderen Tokens passiert nichts.
+	 *
+	 * @throws IOException bei Lesefehlern oder ungültigem JSON
+	 */
+	public void skipChildren() throws IOException {
+		if (current != Token.START_OBJECT && current != Token.START_ARRAY) {
+			return;
+		}
+		int target = depth - 1;
+		while (depth > target) {
+			if (next() == Token.END) {
+				throw error("Unexpected end of document");
+			}
+		}
+	}
+
+	/**
+	 * @return Anzahl der bisher aus dem Stream gelesenen Bytes
+	 */
+	public long position() {
+		return consumed - (limit - pos);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private Token readValue(int c) throws IOException {
+		switch (c) {
+		case '{':
+			push(OBJECT);
+			state = EXPECT_FIRST_KEY_OR_END;
+			return current = Token.START_OBJECT;
+		case '[':
+			push(ARRAY);
+			state = EXPECT_FIRST_VALUE_OR_END;
+			return current = Token.START_ARRAY;
+		case '"':
+			pendingString = true;
+			valueDone();
+			return current = Token.STRING;
+		case 't':
+			return literal(c, "true", Token.TRUE);
+		case 'f':
+			return literal(c, "false", Token.FALSE);
+		case 'n':
+			return literal(c, "null", Token.NULL);
+		case -1:
+			throw error("Unexpected end of document");
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				scalar = readScalar(c);
+				valueDone();
+				return current = Token.NUMBER;
+			}
+			throw error("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private Token literal(int c, String expected, Token token) throws IOException {
+		scalar = readScalar(c);
+		if (!expected.equals(scalar)) {
+			throw error("Unexpected literal '" + scalar + "'");
+		}
+		valueDone();
+		return current = token;
+	}
+
+	private Token close(int c) throws IOException {
+		byte scope = depth > 0 ? scopes[depth - 1] : 0;
+		if (c == '}' && scope == OBJECT) {
+			depth--;
+			valueDone();
+			return current = Token.END_OBJECT;
+		}
+		if (c == ']' && scope == ARRAY) {
+			depth--;
+			valueDone();
+			return current = Token.END_ARRAY;
+		}
+		if (c == -1) {
+			throw error("Unexpected end of document");
+		}
+		throw error("Unexpected character '" + (char) c + "'");
+	}
+
+	private void valueDone() {
+		state = depth == 0 ? DONE : EXPECT_SEPARATOR;
+	}
+
+	private void push(byte scope) {
+		if (depth == scopes.length) {
+			byte[] grown = new byte[depth * 2];
+			System.arraycopy(scopes, 0, grown, 0, depth);
+			scopes = grown;
+		}
+		scopes[depth++] = scope;
+	}
+
+	private String readScalar(int first) throws IOException {
+		StringBuilder text = new StringBuilder();
+		text.append((char) first);
+		while (pos < limit || fill()) {
+			byte b = buffer[pos];
+			if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+				break;
+			}
+			if (text.length() == MAX_SCALAR_LENGTH) {
+				throw error("Scalar value too long");
+			}
+			text.append((char) (b & 0xFF));
+			pos++;
+		}
+		return text.toString();
+	}
+
+	private String readString() throws IOException {
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		StringBuilder text = null;
+		while (true) {
+			if (pos == limit && !fill()) {
+				throw error("Unterminated string");
+			}
+			byte b = buffer[pos++];
+			if (b == '"') {
+				break;
+			}
+			if ((b & 0xFF) < 0x20) {
+				throw error("Unescaped control character in string");
+			}
+			if (b != '\\') {
+				raw.write(b);
+			} else {
+				if (text == null) {
+					text = new StringBuilder();
+				}
+				// bisher gesammelte UTF-8 Bytes übernehmen, dann das Escape auflösen
+				text.append(raw.toString(StandardCharsets.UTF_8));
+				raw.reset();
+				text.append(readEscape());
+			}
+			if (raw.size() + (text != null ? text.length() : 0) > MAX_STRING_LENGTH) {
+				throw error("String value too long");
+			}
+		}
+		if (text == null) {
+			return raw.toString(StandardCharsets.UTF_8);
+		}
+		return text.append(raw.toString(StandardCharsets.UTF_8)).toString();
+	}
+
+	private char readEscape() throws IOException {
+		int c = read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0) {
+					throw error("Invalid unicode escape");
+				}
+				value = (value << 4) | digit;
+			}
+			return (char) value;
+		default:
+			throw error("Invalid escape sequence");
+		}
+	}
+
+	private int read() throws IOException {
+		if (pos == limit && !fill()) {
+			throw error("Unexpected end of document");
+		}
+		return buffer[pos++] & 0xFF;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (pos < limit || fill()) {
+			byte b = buffer[pos++];
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+				return b & 0xFF;
+			}
+		}
+		return -1;
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			pos = 0;
+			limit = 0;
+			return false;
+		}
+		consumed += read;
+		pos = 0;
+		limit = read;
+		return true;
+	}
+
+	private JsonStreamException error(String message) {
+		return new JsonStreamException(message + " at byte " + position());
+	}
+}
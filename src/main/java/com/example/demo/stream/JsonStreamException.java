@@ -0,0 +1,14 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+
+/**
+ * Wird geworfen, wenn der {@link JsonPullReader} auf ungültiges JSON trifft.
+ */
+public class JsonStreamException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public JsonStreamException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,166 @@
+package com.example.demo.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Liest NDJSON (eine JSON-Ressource pro Zeile) zeilenweise aus einem Stream.
+ * <p>
+ * Im Speicher liegt nur die aktuelle Zeile. Zu jeder Zeile werden ihre Nummer
+ * und ihre Position im Stream geliefert, damit ein Import nach einem Abbruch
+ * an einer Zeilengrenze fortgesetzt werden kann. Leere Zeilen werden
+ * übersprungen, Zeilen über der Höchstlänge ohne Inhalt geliefert.
+ */
+public final class NdjsonReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final int maxLineLength;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	// Position des nächsten ungelesenen Bytes im Stream
+	private long offset;
+	private long lineNumber;
+	private byte[] line = new byte[1024];
+	private int length;
+
+	/**
+	 * @param in            der Stream, bereits an {@code offset} positioniert
+	 * @param offset        Position des Streams, z.B. aus einem Checkpoint
+	 * @param lineNumber    Nummer der zuletzt vor {@code offset} gelesenen Zeile
+	 * @param maxLineLength Höchstlänge einer Zeile in Bytes
+	 */
+	public NdjsonReader(InputStream in, long offset, long lineNumber, int maxLineLength) {
+		this.in = in;
+		this.offset = offset;
+		this.lineNumber = lineNumber;
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Eine Zeile des Streams.
+	 */
+	public static final class Line {
+		private final long number;
+		private final long offset;
+		private final long nextOffset;
+		private final byte[] content;
+
+		Line(long number, long offset, long nextOffset, byte[] content) {
+			this.number = number;
+			this.offset = offset;
+			this.nextOffset = nextOffset;
+			this.content = content;
+		}
+
+		/**
+		 * @return Nummer der Zeile, beginnend mit 1
+		 */
+		public long getNumber() {
+			return number;
+		}
+
+		/**
+		 * @return Position des ersten Bytes der Zeile
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return Position der folgenden Zeile
+		 */
+		public long getNextOffset() {
+			return nextOffset;
+		}
+
+		/**
+		 * @return Inhalt der Zeile ohne Zeilenende oder null, wenn die Zeile die
+		 *         Höchstlänge überschreitet
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+	}
+
+	/**
+	 * @return die nächste nicht leere Zeile oder null am Ende des Streams
+	 */
+	public Line next() throws IOException {
+		while (true) {
+			long start = offset;
+			length = 0;
+			boolean tooLong = false;
+			boolean terminated = false;
+			while (!terminated) {
+				if (pos == limit && !fill()) {
+					if (offset == start) {
+						return null;
+					}
+					break;
+				}
+				int end = pos;
+				while (end < limit && buffer[end] != '\n') {
+					end++;
+				}
+				terminated = end < limit;
+				int chunk = end - pos;
+				if (!tooLong && length + chunk > maxLineLength) {
+					// Der Rest der Zeile wird nur noch übersprungen
+					tooLong = true;
+					length = 0;
+				}
+				if (!tooLong) {
+					append(pos, chunk);
+				}
+				offset += chunk + (terminated ? 1 : 0);
+				pos = terminated ? end + 1 : end;
+			}
+			lineNumber++;
+			if (tooLong) {
+				return new Line(lineNumber, start, offset, null);
+			}
+			if (!isBlank()) {
+				int trimmed = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+				return new Line(lineNumber, start, offset, Arrays.copyOf(line, trimmed));
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void append(int from, int count) {
+		if (length + count > line.length) {
+			line = Arrays.copyOf(line, Math.max(length + count, line.length * 2));
+		}
+		System.arraycopy(buffer, from, line, length, count);
+		length += count;
+	}
+
+	private boolean isBlank() {
+		for (int i = 0; i < length; i++) {
+			byte b = line[i];
+			if (b != ' ' && b != '\t' && b != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			return false;
+		}
+		pos = 0;
+		limit = read;
+		return true;
+	}
+}
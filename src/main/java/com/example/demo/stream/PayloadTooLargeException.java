@@ -0,0 +1,19 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+
+/**
+ * Wird geworfen, wenn ein (entpackter) Anfragekörper die erlaubte Größe
+ * überschreitet.
+ */
+public class PayloadTooLargeException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public PayloadTooLargeException(long maxSize) {
+		super("Decompressed request body exceeds " + maxSize + " bytes");
+	}
+
+	public PayloadTooLargeException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,317 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.example.demo.stream.JsonPullReader.Token;
+
+/**
+ * Liest aus einer FHIR-Ressource im JSON-Format nur die Elemente einer
+ * festen Liste von Pfaden, ohne das HAPI-Objektmodell aufzubauen.
+ * <p>
+ * Ein Pfad besteht aus durch Punkte getrennten Feldnamen, optional mit einem
+ * Array-Index ({@code name[0]}) oder allen Elementen ({@code given[*]}), z.B.
+ * {@code name[0].given[*]}. Die Pfade werden einmalig zu einem Baum übersetzt,
+ * die Ressource wird in einem Durchlauf gelesen und alle übrigen Elemente
+ * werden übersprungen, ohne ihre Werte zu dekodieren.
+ * <p>
+ * Erweiterungen einzelner primitiver Elemente (z.B. {@code _birthDate})
+ * ändern deren Wert nicht und werden übersprungen. Enthält die Ressource an
+ * einem der Pfade etwas, das nur HAPI korrekt auswerten kann (Erweiterungen
+ * von Arrays primitiver Elemente wie {@code _given}, null-Werte, unerwartete
+ * JSON-Typen, ungültige Datumswerte, einen anderen resourceType oder
+ * ungültiges JSON), liefert {@link #extract(InputStream)} {@code null} und der
+ * Aufrufer parst die Ressource mit HAPI.
+ */
+public final class SelectiveExtractor {
+
+	/**
+	 * Erwarteter Wert an einem Pfad.
+	 */
+	public enum ValueType {
+		// Nicht-leere Zeichenkette
+		STRING,
+		// FHIR-Datum (YYYY, YYYY-MM oder YYYY-MM-DD)
+		DATE,
+		// Beliebiger Wert außer null, es wird nur das Vorhandensein festgehalten
+		PRESENT
+	}
+
+	private static final String RESOURCE_TYPE = "resourceType";
+	private static final Pattern DATE = Pattern.compile(
+			"([0-9]([0-9]([0-9][1-9]|[1-9]0)|[1-9]00)|[1-9]000)(-(0[1-9]|1[0-2])(-(0[1-9]|[1-2][0-9]|3[0-1]))?)?");
+	// Selektor eines Feldes ohne Array
+	private static final int SCALAR = -1;
+	// Selektor [*]
+	private static final int ALL = -2;
+
+	private final String resourceType;
+	private final Node root = new Node(SCALAR);
+	// Index des Ergebnisses je Pfad
+	private final Map<String, Integer> slots = new HashMap<>();
+
+	/**
+	 * @param resourceType der erwartete resourceType
+	 * @param paths        die zu lesenden Pfade und ihre erwarteten Werte
+	 * @throws IllegalArgumentException wenn ein Pfad ungültig ist oder Pfade sich
+	 *                                  widersprechen
+	 */
+	public SelectiveExtractor(String resourceType, Map<String, ValueType> paths) {
+		this.resourceType = resourceType;
+		for (Map.Entry<String, ValueType> path : new LinkedHashMap<>(paths).entrySet()) {
+			compile(path.getKey(), path.getValue());
+		}
+	}
+
+	/**
+	 * Liest die Elemente der Pfade aus dem Stream.
+	 *
+	 * @param in JSON-Darstellung der Ressource
+	 * @return die gelesenen Werte oder {@code null}, wenn die Ressource mit HAPI
+	 *         geparst werden muss
+	 * @throws IOException bei Lesefehlern des Streams
+	 */
+	public Result extract(InputStream in) throws IOException {
+		Result result = new Result(slots);
+		try {
+			JsonPullReader reader = new JsonPullReader(in);
+			if (reader.next() != Token.START_OBJECT || !readObject(reader, root, result, true)) {
+				return null;
+			}
+			if (reader.next() != Token.END) {
+				return null;
+			}
+		} catch (JsonStreamException e) {
+			// HAPI liefert die gewohnte Fehlermeldung
+			return null;
+		}
+		return resourceType.equals(result.resourceType) ? result : null;
+	}
+
+	private boolean readObject(JsonPullReader reader, Node node, Result result, boolean root) throws IOException {
+		while (reader.next() == Token.FIELD_NAME) {
+			String field = reader.fieldName();
+			Token value = reader.next();
+			Node child = node.children.get(field);
+			if (child != null) {
+				if (!readField(reader, child, value, result)) {
+					return false;
+				}
+			} else if (root && RESOURCE_TYPE.equals(field)) {
+				if (value != Token.STRING || result.resourceType != null) {
+					return false;
+				}
+				result.resourceType = reader.stringValue();
+			} else if (field.startsWith("_") && !isValueNeutral(node.children.get(field.substring(1)))) {
+				// Erweiterungen von Arrays werden den Werten über ihre Position zugeordnet
+				// und können Elemente ohne Wert hinzufügen, das kann nur HAPI
+				return false;
+			} else {
+				reader.skipChildren();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true, wenn die Erweiterung {@code _feld} eines Feldes nichts an den
+	 *         gelesenen Werten ändert
+	 */
+	private static boolean isValueNeutral(Node node) {
+		return node == null || (node.selector == SCALAR && (node.type == ValueType.STRING
+				|| node.type == ValueType.DATE) && node.children.isEmpty());
+	}
+
+	private boolean readField(JsonPullReader reader, Node node, Token value, Result result) throws IOException {
+		if (node.selector == SCALAR) {
+			return readValue(reader, node, value, result);
+		}
+		if (value != Token.START_ARRAY) {
+			return false;
+		}
+		int index = 0;
+		while (reader.next() != Token.END_ARRAY) {
+			Token element = reader.current();
+			if (element == Token.NULL) {
+				// HAPI überspringt null-Elemente, die Indizes verschieben sich
+				return false;
+			}
+			if (node.selector == ALL || node.selector == index) {
+				if (!readValue(reader, node, element, result)) {
+					return false;
+				}
+			} else {
+				reader.skipChildren();
+			}
+			index++;
+		}
+		return true;
+	}
+
+	private boolean readValue(JsonPullReader reader, Node node, Token value, Result result) throws IOException {
+		if (value == Token.NULL) {
+			return false;
+		}
+		if (node.type == ValueType.PRESENT) {
+			if (!result.add(node, "")) {
+				return false;
+			}
+		} else if (node.type != null) {
+			if (value != Token.STRING) {
+				return false;
+			}
+			String text = reader.stringValue();
+			if (text.isEmpty() || (node.type == ValueType.DATE && !DATE.matcher(text).matches())
+					|| !result.add(node, text)) {
+				return false;
+			}
+			return true;
+		}
+		if (node.children.isEmpty()) {
+			reader.skipChildren();
+			return true;
+		}
+		if (value != Token.START_OBJECT) {
+			return false;
+		}
+		return readObject(reader, node, result, false);
+	}
+
+	private void compile(String path, ValueType type) {
+		Node node = root;
+		boolean single = true;
+		for (String segment : path.split("\\.", -1)) {
+			String field = segment;
+			int selector = SCALAR;
+			int bracket = segment.indexOf('[');
+			if (bracket >= 0) {
+				if (!segment.endsWith("]")) {
+					throw new IllegalArgumentException("Invalid path segment '" + segment + "' in " + path);
+				}
+				field = segment.substring(0, bracket);
+				String index = segment.substring(bracket + 1, segment.length() - 1);
+				if ("*".equals(index)) {
+					selector = ALL;
+					single = false;
+				} else {
+					try {
+						selector = Integer.parseInt(index);
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid index '" + index + "' in " + path);
+					}
+					if (selector < 0) {
+						throw new IllegalArgumentException("Invalid index '" + index + "' in " + path);
+					}
+				}
+			}
+			if (field.isEmpty() || (node == root && RESOURCE_TYPE.equals(field))) {
+				throw new IllegalArgumentException("Invalid path segment '" + segment + "' in " + path);
+			}
+			Node child = node.children.get(field);
+			if (child == null) {
+				if (node.type != null && node.type != ValueType.PRESENT) {
+					throw new IllegalArgumentException("Path " + path + " descends into a primitive value");
+				}
+				child = new Node(selector);
+				node.children.put(field, child);
+			} else if (child.selector != selector) {
+				throw new IllegalArgumentException("Path " + path + " conflicts with another selector of " + field);
+			}
+			node = child;
+		}
+		if (node.type != null || (type != ValueType.PRESENT && !node.children.isEmpty())) {
+			throw new IllegalArgumentException("Path " + path + " conflicts with another path");
+		}
+		node.type = type;
+		node.single = single;
+		node.slot = slots.size();
+		slots.put(path, node.slot);
+	}
+
+	/**
+	 * Ein Feld im Pfadbaum.
+	 */
+	private static final class Node {
+		final int selector;
+		final Map<String, Node> children = new HashMap<>(4);
+		// Erwarteter Wert, null für reine Zwischenknoten
+		ValueType type;
+		// true, wenn der Pfad höchstens einen Wert haben kann
+		boolean single;
+		int slot;
+
+		Node(int selector) {
+			this.selector = selector;
+		}
+	}
+
+	/**
+	 * Die an den Pfaden gelesenen Werte.
+	 */
+	public static final class Result {
+		private final Map<String, Integer> slots;
+		private final List<List<String>> values;
+		private String resourceType;
+
+		Result(Map<String, Integer> slots) {
+			this.slots = slots;
+			this.values = new ArrayList<>(Collections.nCopies(slots.size(), null));
+		}
+
+		/**
+		 * @return alle Werte des Pfads in Dokumentreihenfolge, leer wenn keiner
+		 *         angeliefert wurde
+		 * @throws IllegalArgumentException wenn der Pfad nicht übersetzt wurde
+		 */
+		public List<String> values(String path) {
+			List<String> list = values.get(slot(path));
+			return list != null ? list : List.of();
+		}
+
+		/**
+		 * @return der erste Wert des Pfads oder null
+		 */
+		public String value(String path) {
+			List<String> list = values.get(slot(path));
+			return list != null ? list.get(0) : null;
+		}
+
+		/**
+		 * @return true, wenn der Pfad in der Ressource vorkommt
+		 */
+		public boolean isPresent(String path) {
+			return values.get(slot(path)) != null;
+		}
+
+		/**
+		 * @return false, wenn ein Pfad ohne [*] einen zweiten Wert erhält (z.B.
+		 *         durch ein doppeltes Feld)
+		 */
+		boolean add(Node node, String value) {
+			List<String> list = values.get(node.slot);
+			if (list == null) {
+				list = node.single ? new ArrayList<>(1) : new ArrayList<>(4);
+				values.set(node.slot, list);
+			} else if (node.single) {
+				return false;
+			}
+			list.add(value);
+			return true;
+		}
+
+		private int slot(String path) {
+			Integer slot = slots.get(path);
+			if (slot == null) {
+				throw new IllegalArgumentException("Unknown path " + path);
+			}
+			return slot;
+		}
+	}
+}
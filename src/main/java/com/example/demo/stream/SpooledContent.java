@@ -0,0 +1,154 @@
+package com.example.demo.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Zwischenspeicher für große Inhalte (z.B. Base64-kodierte Dokumente).
+ * <p>
+ * Bis zur konfigurierten Schwelle werden die Bytes im Speicher gehalten,
+ * danach wird der Inhalt in eine temporäre Datei ausgelagert. Der Heap-Bedarf
+ * pro Anfrage bleibt damit unabhängig von der Dokumentgröße begrenzt. Die
+ * temporäre Datei wird mit {@link #close()} gelöscht.
+ */
+public class SpooledContent implements Closeable {
+
+	private final int threshold;
+	private byte[] memory = new byte[256];
+	private int count;
+	private Path file;
+	private OutputStream fileOut;
+	private long size;
+	private boolean writing = true;
+
+	/**
+	 * @param threshold Anzahl Bytes, ab der der Inhalt in eine Datei ausgelagert
+	 *                  wird
+	 */
+	public SpooledContent(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Liefert den Stream, über den der Inhalt geschrieben wird. Das Schließen des
+	 * Streams beendet den Schreibvorgang.
+	 *
+	 * @return Stream zum Befüllen des Zwischenspeichers
+	 */
+	public OutputStream outputStream() {
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) throws IOException {
+				append(bytes, offset, length);
+			}
+
+			@Override
+			public void close() throws IOException {
+				finish();
+			}
+		};
+	}
+
+	/**
+	 * @return Anzahl der gespeicherten Bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return true, wenn der Inhalt in eine temporäre Datei ausgelagert wurde
+	 */
+	public boolean isOnDisk() {
+		return file != null;
+	}
+
+	/**
+	 * Öffnet einen Stream auf den gespeicherten Inhalt.
+	 *
+	 * @return Stream auf den Inhalt
+	 * @throws IOException wenn die temporäre Datei nicht gelesen werden kann
+	 */
+	public InputStream openStream() throws IOException {
+		finish();
+		if (file == null) {
+			return new ByteArrayInputStream(memory, 0, count);
+		}
+		return new BufferedInputStream(Files.newInputStream(file));
+	}
+
+	/**
+	 * Schreibt den gespeicherten Inhalt in den angegebenen Stream.
+	 *
+	 * @param out Ziel des Inhalts
+	 * @throws IOException bei Lese- oder Schreibfehlern
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		finish();
+		if (file == null) {
+			out.write(memory, 0, count);
+		} else {
+			Files.copy(file, out);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		memory = null;
+		if (file != null) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SpooledContent[size=" + size + ", onDisk=" + isOnDisk() + "]";
+	}
+
+	private void append(byte[] bytes, int offset, int length) throws IOException {
+		if (!writing) {
+			throw new IllegalStateException("Content is already complete");
+		}
+		if (file == null && count + length > threshold) {
+			file = Files.createTempFile("fhir-facade-", ".spool");
+			fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+			fileOut.write(memory, 0, count);
+			memory = null;
+			count = 0;
+		}
+		if (file != null) {
+			fileOut.write(bytes, offset, length);
+		} else {
+			if (count + length > memory.length) {
+				memory = Arrays.copyOf(memory, Math.min(threshold, Math.max(memory.length * 2, count + length)));
+			}
+			System.arraycopy(bytes, offset, memory, count, length);
+			count += length;
+		}
+		size += length;
+	}
+
+	private void finish() throws IOException {
+		if (writing) {
+			writing = false;
+			if (fileOut != null) {
+				fileOut.close();
+				fileOut = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.example.demo.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Reference;
+
+/**
+ * Die vom {@link DocumentReferenceReader} extrahierten Elemente einer
+ * DocumentReference. Der Dokumentinhalt liegt weiterhin Base64-kodiert im
+ * {@link SpooledContent} und wird mit {@link #close()} freigegeben. Verweist
+ * die DocumentReference mit attachment.url auf ein hochgeladenes Binary, wird
+ * dessen Inhalt mit {@link #useBinary} übernommen und ebenfalls freigegeben.
+ */
+public class StreamedDocumentReference implements Closeable {
+
+	/**
+	 * Die von den Readern extrahierten Elemente in der Schreibweise von
+	 * {@link com.example.demo.mapping.PathExpression#elements()}. Eine Abbildung,
+	 * die weitere Elemente liest, braucht die vollständige Ressource.
+	 */
+	public static final Set<String> ELEMENTS = Set.of("type.coding[*]", "type.coding[*].system",
+			"type.coding[*].code", "subject.identifier", "subject.identifier.value", "subject.identifier.system",
+			"subject.identifier.type.coding[*]", "subject.identifier.type.coding[*].system",
+			"subject.identifier.type.coding[*].code", "context.encounter[*]", "context.encounter[*].identifier",
+			"context.encounter[*].identifier.value", "context.encounter[*].identifier.system",
+			"context.encounter[*].identifier.type.coding[*]", "context.encounter[*].identifier.type.coding[*].system",
+			"context.encounter[*].identifier.type.coding[*].code", "content[0].attachment.creation",
+			"content[0].attachment.url");
+
+	private final List<Coding> typeCoding = new ArrayList<>();
+	private final List<Reference> encounter = new ArrayList<>();
+	private SpooledContent data;
+	private Identifier subjectIdentifier;
+	private DateTimeType creation;
+	private String attachmentUrl;
+	private boolean dataPresent;
+	// Inhalt eines referenzierten Binary, null ohne Referenz
+	private SpooledContent binary;
+	// Gibt das Binary an seinen Speicher zurück
+	private Runnable returnBinary;
+	// Die vollständig geparste Ressource, null beim Lesen als Stream
+	private DocumentReference resource;
+
+	public StreamedDocumentReference(SpooledContent data) {
+		this.data = data;
+	}
+
+	/**
+	 * @return DocumentReference.type.coding
+	 */
+	public List<Coding> getTypeCoding() {
+		return typeCoding;
+	}
+
+	/**
+	 * @return DocumentReference.context.encounter
+	 */
+	public List<Reference> getEncounter() {
+		return encounter;
+	}
+
+	/**
+	 * @return DocumentReference.subject.identifier oder null
+	 */
+	public Identifier getSubjectIdentifier() {
+		return subjectIdentifier;
+	}
+
+	public void setSubjectIdentifier(Identifier subjectIdentifier) {
+		this.subjectIdentifier = subjectIdentifier;
+	}
+
+	/**
+	 * @return DocumentReference.content[0].attachment.creation oder null
+	 */
+	public DateTimeType getCreation() {
+		return creation;
+	}
+
+	public void setCreation(DateTimeType creation) {
+		this.creation = creation;
+	}
+
+	/**
+	 * @return DocumentReference.content[0].attachment.url oder null
+	 */
+	public String getAttachmentUrl() {
+		return attachmentUrl;
+	}
+
+	public void setAttachmentUrl(String attachmentUrl) {
+		this.attachmentUrl = attachmentUrl;
+	}
+
+	/**
+	 * @return der Base64-kodierte Inhalt aus
+	 *         DocumentReference.content[0].attachment.data
+	 */
+	public SpooledContent getData() {
+		return data;
+	}
+
+	/**
+	 * Übernimmt den vom {@link FhirXmlReader} abgezweigten Inhalt, der bisherige
+	 * (leere) Zwischenspeicher wird freigegeben.
+	 */
+	void replaceData(SpooledContent data) throws IOException {
+		SpooledContent replaced = this.data;
+		this.data = data;
+		replaced.close();
+	}
+
+	/**
+	 * @return true, wenn DocumentReference.content[0].attachment.data angeliefert
+	 *         wurde
+	 */
+	public boolean isDataPresent() {
+		return dataPresent;
+	}
+
+	public void setDataPresent(boolean dataPresent) {
+		this.dataPresent = dataPresent;
+	}
+
+	/**
+	 * Übernimmt den Inhalt eines referenzierten Binary, er wird mit
+	 * {@link #close()} freigegeben, sofern er nicht vorher mit
+	 * {@link #returnBinary()} zurückgegeben wurde.
+	 *
+	 * @param binary       der Base64-kodierte Inhalt des Binary
+	 * @param returnBinary legt das Binary wieder in seinen Speicher
+	 */
+	public void useBinary(SpooledContent binary, Runnable returnBinary) {
+		this.binary = binary;
+		this.returnBinary = returnBinary;
+	}
+
+	/**
+	 * Gibt ein übernommenes Binary zurück, statt es freizugeben, damit es nach
+	 * einer gescheiterten Weiterleitung erneut verwendet werden kann.
+	 */
+	public void returnBinary() {
+		if (binary != null) {
+			binary = null;
+			returnBinary.run();
+		}
+	}
+
+	void setResource(DocumentReference resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @return die vollständige DocumentReference, wenn sie mit HAPI geparst
+	 *         wurde, sonst eine, die nur die extrahierten Elemente
+	 *         ({@link #ELEMENTS}) enthält, ohne den Dokumentinhalt
+	 */
+	public DocumentReference toResource() {
+		if (resource != null) {
+			return resource;
+		}
+		DocumentReference documentReference = new DocumentReference();
+		documentReference.getType().getCoding().addAll(typeCoding);
+		if (subjectIdentifier != null) {
+			documentReference.getSubject().setIdentifier(subjectIdentifier);
+		}
+		documentReference.getContext().getEncounter().addAll(encounter);
+		documentReference.addContent().getAttachment().setCreationElement(creation).setUrl(attachmentUrl);
+		return documentReference;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			data.close();
+		} finally {
+			if (binary != null) {
+				binary.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.example.demo.stream;
+
+import java.io.IOException;
+
+/**
+ * Wird geworfen, wenn der {@link FhirXmlReader} auf ungültiges oder nicht
+ * unterstütztes XML trifft.
+ */
+public class XmlStreamException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public XmlStreamException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,118 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lasttest für den Betrieb auf virtuellen Threads: Tausende gleichzeitige
+ * Anfragen warten auf eine langsame proprietäre API, ohne dass die Anzahl der
+ * Plattform-Threads wächst.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.threads.virtual.enabled=true", "fhir-facade.idempotency.enabled=false",
+		"fhir-facade.admission.maxConcurrentPerClient=10000", "fhir-facade.admission.patient.maxConcurrent=10000",
+		"fhir-facade.outbound.maxConnections=10000", "fhir-facade.outbound.maxInFlight=10000",
+		// Der Test-Server nimmt Verbindungen nur in einem Thread an
+		"fhir-facade.outbound.connectTimeout=60s", "fhir-facade.circuit-breaker.slowCallDuration=60s",
+		"server.tomcat.max-connections=10000", "server.tomcat.accept-count=10000" })
+class VirtualThreadsLoadTest {
+
+	private static final int REQUESTS = 2000;
+	// Lang genug, dass alle Anfragen zugleich warten, auch wenn das Absenden auf
+	// einer langsamen Maschine einige Sekunden dauert
+	private static final Duration BACKEND_LATENCY = Duration.ofSeconds(20);
+	// Obergrenze der Plattform-Threads der gesamten JVM (Tomcat, HTTP-Clients,
+	// Carrier der virtuellen Threads, JUnit)
+	private static final int MAX_PLATFORM_THREADS = 150;
+
+	private static HttpServer backend;
+	// Gleichzeitig in der proprietären API wartende Anfragen
+	private static final AtomicInteger waiting = new AtomicInteger();
+	private static final AtomicInteger maxWaiting = new AtomicInteger();
+
+	@LocalServerPort
+	private int port;
+
+	@DynamicPropertySource
+	static void backend(DynamicPropertyRegistry registry) throws IOException {
+		// Antwortet nach BACKEND_LATENCY, jede Anfrage auf einem virtuellen Thread
+		backend = HttpServer.create(new InetSocketAddress("localhost", 0), REQUESTS);
+		backend.setExecutor(new VirtualThreadTaskExecutor("backend-"));
+		backend.createContext("/fhir", exchange -> {
+			try {
+				exchange.getRequestBody().readAllBytes();
+				maxWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+				Thread.sleep(BACKEND_LATENCY.toMillis());
+				waiting.decrementAndGet();
+				exchange.sendResponseHeaders(201, -1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				exchange.close();
+			}
+		});
+		backend.start();
+		registry.add("fhir-facade.proprietaryBaseUrl",
+				() -> "http://localhost:" + backend.getAddress().getPort() + "/fhir");
+	}
+
+	@AfterAll
+	static void stopBackend() {
+		backend.stop(0);
+	}
+
+	@Test
+	void holdsThousandsOfSlowRequestsWithoutGrowingThreadPool() throws Exception {
+		byte[] patient = new ClassPathResource("Beispiel-FHIR-Ressource-Patient.json").getInputStream()
+				.readAllBytes();
+		HttpClient client = HttpClient.newBuilder().executor(new VirtualThreadTaskExecutor("client-")).build();
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/fhir/Patient"))
+				.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofByteArray(patient))
+				.build();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < REQUESTS; i++) {
+			responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+		}
+		Map<Integer, Long> statuses = responses.stream()
+				.collect(Collectors.groupingBy(response -> response.join().statusCode(), Collectors.counting()));
+
+		assertEquals(Map.of(201, (long) REQUESTS), statuses);
+		assertEquals(REQUESTS, maxWaiting.get());
+		assertTrue(threads.getPeakThreadCount() < MAX_PLATFORM_THREADS,
+				"peak platform threads " + threads.getPeakThreadCount());
+	}
+}
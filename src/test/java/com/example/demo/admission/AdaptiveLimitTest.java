@@ -0,0 +1,44 @@
+package com.example.demo.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimitTest {
+
+	private static final long MILLIS = 1_000_000;
+
+	@Test
+	void risingLatencyLowersLimitAndRecoveryRaisesIt() {
+		AdaptiveLimit limit = new AdaptiveLimit(2, 64);
+		for (int i = 0; i < 200; i++) {
+			limit.onSample(10 * MILLIS, true, limit.get());
+		}
+		assertEquals(64, limit.get());
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(100 * MILLIS, true, limit.get());
+		}
+		int congested = limit.get();
+		assertTrue(congested < 16, "limit " + congested);
+
+		for (int i = 0; i < 200; i++) {
+			limit.onSample(10 * MILLIS, true, limit.get());
+		}
+		assertTrue(limit.get() > congested, "limit " + limit.get());
+	}
+
+	@Test
+	void failuresLowerLimitDownToMinimum() {
+		AdaptiveLimit limit = new AdaptiveLimit(2, 64);
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(0, false, 0);
+		}
+		assertEquals(2, limit.get());
+
+		// Ohne ausgeschöpfte Grenze wird nicht erhöht
+		limit.onSample(10 * MILLIS, true, 0);
+		assertEquals(2, limit.get());
+	}
+}
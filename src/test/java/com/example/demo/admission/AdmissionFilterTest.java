@@ -0,0 +1,122 @@
+package com.example.demo.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.service.ProprietaryApiService;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionFilterTest {
+
+	private static final FhirParsers PARSERS = new FhirParsers(FhirContext.forR4());
+
+	@Test
+	void clientOverItsLimitGets429UntilItsRequestCompletes() throws Exception {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getAdmission().setMaxConcurrentPerClient(1);
+		AdmissionFilter filter = filter(properties);
+
+		MockHttpServletRequest running = request("/Patient", "client-a", 100);
+		filter.doFilter(running, new MockHttpServletResponse(), startsAsync(running));
+
+		MockHttpServletResponse rejected = new MockHttpServletResponse();
+		filter.doFilter(request("/Patient", "client-a", 100), rejected, new MockFilterChain());
+		assertEquals(429, rejected.getStatus());
+		assertEquals("1", rejected.getHeader("Retry-After"));
+		assertTrue(rejected.getContentAsString().contains("throttled"));
+
+		MockHttpServletResponse otherClient = new MockHttpServletResponse();
+		filter.doFilter(request("/Patient", "client-b", 100), otherClient, new MockFilterChain());
+		assertEquals(200, otherClient.getStatus());
+
+		running.getAsyncContext().complete();
+		assertEquals(0, filter.getReserved());
+		MockHttpServletResponse admitted = new MockHttpServletResponse();
+		filter.doFilter(request("/Patient", "client-a", 100), admitted, new MockFilterChain());
+		assertEquals(200, admitted.getStatus());
+	}
+
+	@Test
+	void exhaustedMemoryBudgetGets503() throws Exception {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getAdmission().setMemoryBudget(DataSize.ofBytes(1000));
+		AdmissionFilter filter = filter(properties);
+
+		MockHttpServletRequest running = request("/DocumentReference", "client-a", 600);
+		filter.doFilter(running, new MockHttpServletResponse(), startsAsync(running));
+		assertEquals(600, filter.getReserved());
+
+		MockHttpServletResponse rejected = new MockHttpServletResponse();
+		filter.doFilter(request("/DocumentReference", "client-b", 600), rejected, new MockFilterChain());
+		assertEquals(503, rejected.getStatus());
+		assertTrue(rejected.getContentAsString().contains("memory budget"));
+
+		// Allein darf auch eine Anfrage über dem Budget laufen
+		running.getAsyncContext().complete();
+		MockHttpServletResponse oversized = new MockHttpServletResponse();
+		filter.doFilter(request("/DocumentReference", "client-b", 5000), oversized, new MockFilterChain());
+		assertEquals(200, oversized.getStatus());
+		assertEquals(0, filter.getReserved());
+	}
+
+	@Test
+	void fullDocumentLaneDoesNotBlockPatients() throws Exception {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		FhirFacadeProperties.Admission.Lane documents = properties.getAdmission().getDocumentReference();
+		documents.setMaxConcurrent(1);
+		documents.setMaxQueue(1);
+		documents.setQueueTimeout(Duration.ofMillis(20));
+		AdmissionFilter filter = filter(properties);
+
+		MockHttpServletRequest running = request("/DocumentReference", "client-a", 100);
+		filter.doFilter(running, new MockHttpServletResponse(), startsAsync(running));
+
+		MockHttpServletResponse timedOut = new MockHttpServletResponse();
+		filter.doFilter(request("/DocumentReference", "client-b", 100), timedOut, new MockFilterChain());
+		assertEquals(503, timedOut.getStatus());
+		assertTrue(timedOut.getContentAsString().contains("transient"));
+
+		MockHttpServletResponse patient = new MockHttpServletResponse();
+		filter.doFilter(request("/Patient", "client-b", 100), patient, new MockFilterChain());
+		assertEquals(200, patient.getStatus());
+	}
+
+	private static AdmissionFilter filter(FhirFacadeProperties properties) {
+		return new AdmissionFilter(properties, mock(ProprietaryApiService.class), PARSERS,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+	}
+
+	private static MockHttpServletRequest request(String path, String client, int length) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+		request.addHeader("X-Client-Id", client);
+		request.setContent(new byte[length]);
+		request.setAsyncSupported(true);
+		return request;
+	}
+
+	/**
+	 * Simuliert einen Controller, der eine asynchrone Antwort beginnt.
+	 */
+	private static MockFilterChain startsAsync(MockHttpServletRequest request) {
+		return new MockFilterChain() {
+			@Override
+			public void doFilter(jakarta.servlet.ServletRequest req, jakarta.servlet.ServletResponse res) {
+				request.startAsync();
+			}
+		};
+	}
+}
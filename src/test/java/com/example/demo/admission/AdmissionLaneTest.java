@@ -0,0 +1,45 @@
+package com.example.demo.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionLaneTest {
+
+	private static final long MILLIS = 1_000_000;
+
+	@Test
+	void risingLimitWakesWaitingRequests() throws Exception {
+		AdaptiveLimit limit = new AdaptiveLimit(1, 64);
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(0, false, 0);
+		}
+		AdmissionLane lane = new AdmissionLane("test", limit, 1, Duration.ofSeconds(30));
+		assertTrue(lane.tryAcquire());
+		CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				return lane.tryAcquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		});
+		while (lane.getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+		assertFalse(waiting.isDone());
+
+		// Ohne release(), nur durch die gestiegene Grenze
+		while (lane.getLimit() < 2) {
+			lane.onResponse(10 * MILLIS, true);
+		}
+		assertTrue(waiting.get(5, TimeUnit.SECONDS));
+		assertEquals(2, lane.getInFlight());
+	}
+}
@@ -0,0 +1,173 @@
+package com.example.demo.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.controller.BadRequestException;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BulkImportTest {
+
+	private static final FhirParsers PARSERS = new FhirParsers(FhirContext.forR4());
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Lehnt Zeilen mit "invalid" ab und schließt die übrigen in umgekehrter
+	 * Reihenfolge ab, die Fehlerdatei bleibt trotzdem in Zeilenreihenfolge.
+	 */
+	@Test
+	void linesAreProcessedInParallelAndErrorsReportedInOrder() throws Exception {
+		Set<String> imported = ConcurrentHashMap.newKeySet();
+		ImportProcessor processor = resource -> {
+			String line = new String(resource, StandardCharsets.UTF_8);
+			if (line.contains("invalid")) {
+				throw new BadRequestException(List.of("Missing name (Patient.name)"));
+			}
+			int number = Integer.parseInt(line.replaceAll("\\D", ""));
+			return CompletableFuture.supplyAsync(() -> imported.add(line),
+					CompletableFuture.delayedExecutor(100 - number, TimeUnit.MILLISECONDS));
+		};
+		BulkImport bulkImport = new BulkImport(properties(), processor, PARSERS,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+		try {
+			StringBuilder ndjson = new StringBuilder();
+			for (int i = 0; i < 50; i++) {
+				ndjson.append(i % 10 == 3 ? "{\"invalid\":" + i + "}" : "{\"n\":" + i + "}").append('\n');
+			}
+			ImportJob job = bulkImport
+					.start(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+			await(job);
+
+			assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+			assertEquals(45, job.getSucceeded());
+			assertEquals(45, imported.size());
+			assertEquals(5, job.getFailed());
+			List<String> errors = Files.readAllLines(job.getErrors());
+			assertEquals(5, errors.size());
+			for (int i = 0; i < errors.size(); i++) {
+				assertTrue(errors.get(i).contains("Line " + (i * 10 + 4) + ": Missing name"), errors.get(i));
+			}
+			// Der gespeicherte Anfragekörper wird nach dem Import gelöscht
+			awaitDeleted(job.getSource());
+			assertEquals(ImportJob.Status.COMPLETED, ImportJob.load(job.getDirectory()).getStatus());
+		} finally {
+			bulkImport.destroy();
+		}
+	}
+
+	/**
+	 * Ein unterbrochener Import wird beim Start ab dem Checkpoint fortgesetzt,
+	 * Fehler nach dem Checkpoint werden verworfen und neu geschrieben.
+	 */
+	@Test
+	void interruptedImportIsResumedFromCheckpoint() throws Exception {
+		Path jobDirectory = Files.createDirectories(directory.resolve("import").resolve("job"));
+		byte[] ndjson = "{\"n\":1}\n{\"invalid\":2}\n{\"n\":3}\n{\"invalid\":4}\n".getBytes(StandardCharsets.UTF_8);
+		Path input = Files.write(jobDirectory.resolve(BulkImport.INPUT_FILE), ndjson);
+		ImportJob interrupted = new ImportJob("job", jobDirectory, input, Instant.now(), ndjson.length);
+		String firstError = "{\"resourceType\":\"OperationOutcome\"}\n";
+		// Zeilen 1 und 2 sind übernommen, danach wurde noch ein Fehler geschrieben
+		interrupted.advance(8, 1, true, 0);
+		interrupted.advance(22, 2, false, firstError.length());
+		interrupted.save();
+		Files.writeString(interrupted.getErrors(), firstError + "{\"stale\":true}\n");
+
+		Set<String> imported = ConcurrentHashMap.newKeySet();
+		ImportProcessor processor = resource -> {
+			String line = new String(resource, StandardCharsets.UTF_8);
+			if (line.contains("invalid")) {
+				throw new BadRequestException(List.of("invalid"));
+			}
+			imported.add(line);
+			return CompletableFuture.completedFuture(true);
+		};
+		BulkImport bulkImport = new BulkImport(properties(), processor, PARSERS,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+		try {
+			ImportJob job = bulkImport.get("job");
+			await(job);
+
+			assertEquals(Set.of("{\"n\":3}"), imported);
+			assertEquals(2, job.getSucceeded());
+			assertEquals(2, job.getFailed());
+			assertEquals(4, job.getLines());
+			List<String> errors = Files.readAllLines(job.getErrors());
+			assertEquals(2, errors.size());
+			assertTrue(errors.get(1).contains("Line 4: invalid"), errors.get(1));
+		} finally {
+			bulkImport.destroy();
+		}
+	}
+
+	@Test
+	void localFilesMustBeInAllowedDirectory() throws Exception {
+		FhirFacadeProperties properties = properties();
+		Path allowed = Files.createDirectories(directory.resolve("allowed"));
+		Files.writeString(allowed.resolve("patients.ndjson"), "{\"n\":1}\n");
+		Files.writeString(directory.resolve("secret.ndjson"), "{\"n\":2}\n");
+		properties.getBulkImport().setAllowedDirectory(allowed.toString());
+		BulkImport bulkImport = new BulkImport(properties, resource -> CompletableFuture.completedFuture(true), PARSERS,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+		try {
+			assertThrows(IllegalArgumentException.class, () -> bulkImport.start("../secret.ndjson"));
+			assertThrows(IllegalArgumentException.class, () -> bulkImport.start("missing.ndjson"));
+			ImportJob job = bulkImport.start("patients.ndjson");
+			await(job);
+			assertEquals(1, job.getSucceeded());
+			// Lokale Dateien werden nicht gelöscht
+			assertTrue(Files.exists(allowed.resolve("patients.ndjson")));
+		} finally {
+			bulkImport.destroy();
+		}
+	}
+
+	private FhirFacadeProperties properties() {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getBulkImport().setDirectory(directory.resolve("import").toString());
+		properties.getBulkImport().setMaxInFlight(8);
+		properties.getBulkImport().setCheckpointInterval(10);
+		return properties;
+	}
+
+	private static void awaitDeleted(Path file) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (Files.exists(file) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(Files.notExists(file), file + " was not deleted");
+	}
+
+	private static void await(ImportJob job) throws InterruptedException, IOException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (job.getStatus() == ImportJob.Status.IN_PROGRESS) {
+			if (System.nanoTime() > deadline) {
+				throw new IOException("Import did not finish: " + job);
+			}
+			Thread.sleep(10);
+		}
+	}
+}
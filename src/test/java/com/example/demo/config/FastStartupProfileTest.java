@@ -0,0 +1,76 @@
+package com.example.demo.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.example.demo.service.ProprietaryApiService;
+
+/**
+ * Im Profil fast-startup werden die Beans verzögert erzeugt, die Beans mit
+ * Aufgaben beim Start aber weiterhin sofort, und die erste Anfrage gelingt.
+ */
+@SpringBootTest(properties = "fhir-facade.admission.enabled=false")
+@AutoConfigureMockMvc
+@ActiveProfiles("fast-startup")
+class FastStartupProfileTest {
+
+	@Autowired
+	private ConfigurableApplicationContext context;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	@Test
+	void beansAreLazyExceptThoseWithStartupDuties() {
+		assertTrue(context.getBeanFactory().getBeanDefinition("fhirController").isLazyInit());
+		assertFalse(context.getBeanFactory().getBeanDefinition("mappingEngine").isLazyInit());
+		assertEquals(1, context.getBeanNamesForType(StartupWarmup.class).length);
+		assertEquals(FhirFacadeProperties.Startup.Warmup.BACKGROUND,
+				context.getBean(FhirFacadeProperties.class).getStartup().getWarmup());
+	}
+
+	@Test
+	void warmUpCreatesOnlyMissingLazySingletons() {
+		StartupWarmup.createLazySingletons(context.getBeanFactory());
+		assertTrue(context.getBeanFactory().containsSingleton("fhirController"));
+		// Ein zweiter Durchlauf erzeugt nichts neu
+		Object fhirController = context.getBean("fhirController");
+		StartupWarmup.createLazySingletons(context.getBeanFactory());
+		assertSame(fhirController, context.getBean("fhirController"));
+	}
+
+	@Test
+	void firstRequestSucceeds() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		byte[] patient = new ClassPathResource("Beispiel-FHIR-Ressource-Patient.json").getInputStream()
+				.readAllBytes();
+		MvcResult mvcResult = mockMvc.perform(post("/Patient").content(patient).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isCreated());
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.demo.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class FhirFormatTest {
+
+	@Test
+	void requestBodyFormatFollowsContentType() {
+		assertEquals(FhirFormat.XML, FhirFormat.ofContentType("application/fhir+xml;charset=UTF-8"));
+		assertEquals(FhirFormat.XML, FhirFormat.ofContentType("text/xml"));
+		assertEquals(FhirFormat.JSON, FhirFormat.ofContentType("application/fhir+json"));
+		assertEquals(FhirFormat.JSON, FhirFormat.ofContentType("text/plain"));
+		assertEquals(FhirFormat.JSON, FhirFormat.ofContentType("not a media type"));
+		assertEquals(FhirFormat.JSON, FhirFormat.ofContentType(null));
+	}
+
+	@Test
+	void formatParameterTakesPrecedence() {
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate("xml", "application/fhir+json", "application/fhir+json"));
+		assertEquals(FhirFormat.JSON, FhirFormat.negotiate("json", "application/fhir+xml", null));
+		// Nicht kodiertes + aus dem Query-String
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate("application/fhir xml", null, null));
+		// Unbekannte Werte werden ignoriert
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate("turtle", "application/fhir+xml", null));
+	}
+
+	@Test
+	void acceptIsOrderedByQuality() {
+		assertEquals(FhirFormat.XML,
+				FhirFormat.negotiate(null, "application/fhir+json;q=0.5, application/fhir+xml", null));
+		assertEquals(FhirFormat.JSON,
+				FhirFormat.negotiate(null, "application/fhir+json, application/fhir+xml", "application/fhir+xml"));
+		assertEquals(FhirFormat.JSON, FhirFormat.negotiate(null, "text/html, application/json;q=0.1", null));
+		assertEquals(FhirFormat.JSON, FhirFormat.negotiate(null, "application/fhir+xml;q=0", null));
+	}
+
+	@Test
+	void wildcardsFallBackToRequestFormat() {
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate(null, "*/*", "application/fhir+xml"));
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate(null, "application/*", "application/fhir+xml"));
+		assertEquals(FhirFormat.JSON, FhirFormat.negotiate(null, "invalid;;", null));
+	}
+
+	@Test
+	void negotiatesFromServletRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/Patient");
+		request.setContentType("application/fhir+json");
+		request.setQueryString("_format=application%2Ffhir%2Bxml");
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate(request));
+		assertEquals(FhirFormat.JSON, FhirFormat.ofRequest(request));
+
+		request.setQueryString("foo=bar");
+		request.addHeader("Accept", "application/fhir+xml");
+		assertEquals(FhirFormat.XML, FhirFormat.negotiate(request));
+	}
+}
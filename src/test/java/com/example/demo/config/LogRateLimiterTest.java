@@ -0,0 +1,28 @@
+package com.example.demo.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class LogRateLimiterTest {
+
+	private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+	@Test
+	void suppressesAboveLimitAndReportsSuppressedCount() {
+		LogRateLimiter limiter = new LogRateLimiter(2, Duration.ofSeconds(1));
+		assertEquals(0, limiter.acquire("a", 0));
+		assertEquals(0, limiter.acquire("a", 1));
+		assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire("a", 2));
+		assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire("a", 3));
+		// Andere Arten haben ein eigenes Kontingent
+		assertEquals(0, limiter.acquire("b", 3));
+
+		// Im nächsten Intervall erfährt die erste Meldung, wie viele unterdrückt wurden
+		assertEquals(2, limiter.acquire("a", SECOND));
+		assertEquals(0, limiter.acquire("a", SECOND + 1));
+		assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire("a", SECOND + 2));
+	}
+}
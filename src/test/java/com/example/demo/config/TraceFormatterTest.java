@@ -0,0 +1,37 @@
+package com.example.demo.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+class TraceFormatterTest {
+
+	@Test
+	void redactsPossiblePatientData() {
+		TraceFormatter formatter = new TraceFormatter(10, true, 1.0);
+		Patient patient = new Patient();
+		patient.addName().setFamily("Chalmers");
+		Object[] arguments = { "{\"resourceType\":\"Patient\"}", patient, new byte[1024], 42, null };
+		assertEquals("[String[26 chars], Patient, byte[1024], 42, null]",
+				formatter.formatAll(arguments).toString());
+		assertEquals("ResponseEntity[status=201, body=String[29 chars]]",
+				formatter.format(ResponseEntity.status(201).body("Patient created successfully.")).toString());
+	}
+
+	@Test
+	void truncatesLongValues() {
+		TraceFormatter formatter = new TraceFormatter(10, false, 1.0);
+		assertEquals("0123456789...(+5 chars)", formatter.format("012345678901234").toString());
+		assertEquals("short", formatter.format("short").toString());
+	}
+
+	@Test
+	void samplesConfiguredShareOfCalls() {
+		assertTrue(new TraceFormatter(10, true, 1.0).sample());
+		assertFalse(new TraceFormatter(10, true, 0.0).sample());
+	}
+}
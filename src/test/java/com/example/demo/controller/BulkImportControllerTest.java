@@ -0,0 +1,123 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.example.demo.service.ProprietaryApiService;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+@SpringBootTest(properties = "fhir-facade.admission.enabled=false")
+@AutoConfigureMockMvc
+class BulkImportControllerTest {
+
+	@TempDir
+	static Path directory;
+
+	@DynamicPropertySource
+	static void importDirectory(DynamicPropertyRegistry registry) {
+		registry.add("fhir-facade.bulk-import.directory", () -> directory.toString());
+		registry.add("fhir-facade.bulk-import.maxSize", () -> "1MB");
+	}
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	@Test
+	void importedLinesAreForwardedAndErrorsReported() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		String ndjson = line("Beispiel-FHIR-Ressource-Patient") + "\n"
+				+ line("Beispiel-FHIR-Ressource-Patient-Ohne-Namen") + "\n"
+				+ line("Beispiel-FHIR-Ressource-DocumentReference") + "\n" + "{\"resourceType\":\"Medication\"}\n"
+				+ "{\"resourceType\":\"Patient\", \n";
+
+		MvcResult accepted = mockMvc.perform(post("/$import").content(ndjson).contentType("application/fhir+ndjson"))
+				.andExpect(status().isAccepted()).andExpect(header().exists("Content-Location")).andReturn();
+		String statusUrl = accepted.getResponse().getHeader("Content-Location");
+		assertTrue(statusUrl.contains("/$import-poll-status/"), statusUrl);
+
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (mockMvc.perform(get(statusUrl)).andReturn().getResponse().getStatus() == 202) {
+			assertTrue(System.nanoTime() < deadline, "Import did not finish");
+			Thread.sleep(20);
+		}
+		mockMvc.perform(get(statusUrl)).andExpect(status().isOk()).andExpect(jsonPath("$.status").value("completed"))
+				.andExpect(jsonPath("$.output[0].count").value(2)).andExpect(jsonPath("$.error[0].count").value(3));
+		verify(proprietaryApiService, times(2)).send(any());
+
+		String[] errors = mockMvc.perform(get(statusUrl + "/errors")).andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "application/fhir+ndjson")).andReturn().getResponse()
+				.getContentAsString().split("\n");
+		assertEquals(3, errors.length);
+		assertTrue(errors[0].contains("Line 2: Missing patient name (Patient.name)"), errors[0]);
+		assertTrue(errors[1].contains("Line 4: Unsupported resource type Medication"), errors[1]);
+		assertTrue(errors[2].contains("\"code\":\"structure\""), errors[2]);
+	}
+
+	@Test
+	void oversizedBodiesAreRejected() throws Exception {
+		long jobs;
+		try (Stream<Path> files = Files.list(directory)) {
+			jobs = files.count();
+		}
+		byte[] ndjson = (line("Beispiel-FHIR-Ressource-Patient") + "\n").repeat(1000).getBytes(StandardCharsets.UTF_8);
+		mockMvc.perform(post("/$import").content(ndjson).contentType("application/fhir+ndjson"))
+				.andExpect(status().isPayloadTooLarge()).andExpect(jsonPath("$.issue[0].code").value("too-long"));
+		// Der teilweise gespeicherte Anfragekörper wird gelöscht
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(jobs, files.count());
+		}
+	}
+
+	@Test
+	void localFilesAreRejectedWithoutAllowedDirectory() throws Exception {
+		mockMvc.perform(post("/$import").param("file", "/etc/passwd")).andExpect(status().isUnprocessableEntity());
+	}
+
+	@Test
+	void unknownImportIsNotFound() throws Exception {
+		mockMvc.perform(get("/$import-poll-status/unknown")).andExpect(status().isNotFound());
+	}
+
+	/**
+	 * @return die Beispiel-Ressource in einer Zeile
+	 */
+	private static String line(String name) throws IOException {
+		IParser parser = FhirContext.forR4Cached().newJsonParser();
+		return parser.encodeResourceToString(
+				parser.parseResource(new ClassPathResource(name + ".json").getInputStream()));
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirParsers;
+import com.example.demo.index.PatientIndex;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.outbox.Outbox;
+import com.example.demo.service.ProprietaryApiService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Die schnelle Extraktion muss für jede Patient-Ressource dieselbe Anfrage an
+ * die proprietäre API bzw. dieselben Fehlermeldungen liefern wie HAPI.
+ */
+class FhirControllerFastPathTest {
+
+	private static final FhirParsers PARSERS = new FhirConfiguration()
+			.fhirParsers(new FhirConfiguration().fhirContext(new FhirFacadeProperties()));
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final FhirController fastPath = controller(true);
+	private final FhirController hapi = controller(false);
+
+	@Test
+	void samplePatientsGiveSameRequestAsHapi() throws IOException {
+		for (String sample : List.of("Beispiel-FHIR-Ressource-Patient", "Beispiel-FHIR-Ressource-Patient-Ohne-Namen",
+				"Beispiel-FHIR-Ressource-Patient-Ohne-Geburtsdatum")) {
+			byte[] body = new ClassPathResource(sample + ".json").getInputStream().readAllBytes();
+			assertEquals(prepare(hapi, body), prepare(fastPath, body), sample);
+		}
+		assertEquals(0, meterRegistry.counter(FacadeMetrics.EXTRACTION_FALLBACK, "resource", "Patient").count());
+	}
+
+	@Test
+	void unusualPatientsGiveSameRequestAsHapi() throws IOException {
+		for (String json : List.of("{\"resourceType\":\"Patient\",\"name\":[{}],\"birthDate\":\"1974-12-25\"}",
+				"{\"resourceType\":\"Patient\",\"name\":[{\"text\":\"Jim\"}],\"birthDate\":\"1974-12\"}",
+				"{\"name\":[{\"given\":[\"J\\u00fcrgen \\\"Jim\\\"\",\"\\ud83d\\ude00\"],\"family\":\"O'Neil\"}],"
+						+ "\"birthDate\":\"2000-02-29\",\"resourceType\":\"Patient\"}",
+				"{\"resourceType\":\"Patient\",\"name\":[{\"given\":[\"Peter\",\"James\"],\"_given\":[null,"
+						+ "{\"extension\":[]}]}],\"birthDate\":\"1974-12-25\"}",
+				"{\"resourceType\":\"Patient\",\"name\":[{\"family\":\"Chalmers\"}],\"birthDate\":\"1974-12-25\","
+						+ "\"_birthDate\":{\"extension\":[{\"url\":\"http://example.org\",\"valueString\":\"x\"}]}}")) {
+			byte[] body = json.getBytes(StandardCharsets.UTF_8);
+			assertEquals(prepare(hapi, body), prepare(fastPath, body), json);
+		}
+	}
+
+	/**
+	 * @return der Anfragekörper an die proprietäre API oder die Fehlermeldungen
+	 */
+	private static String prepare(FhirController controller, byte[] body) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			controller.prepare(controller.parsePatient(body)).writeTo(out);
+			return out.toString(StandardCharsets.UTF_8);
+		} catch (BadRequestException e) {
+			return e.getErrorMessages().toString();
+		}
+	}
+
+	private FhirController controller(boolean fastPathExtraction) {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.setFastPathExtraction(fastPathExtraction);
+		FacadeMetrics metrics = new FacadeMetrics(meterRegistry);
+		return new FhirController(mock(ProprietaryApiService.class), properties, PARSERS,
+				new MappingEngine(properties, PARSERS.getFhirContext(), metrics),
+				new StaticListableBeanFactory().getBeanProvider(Outbox.class),
+				new StaticListableBeanFactory().getBeanProvider(PatientIndex.class), metrics);
+	}
+}
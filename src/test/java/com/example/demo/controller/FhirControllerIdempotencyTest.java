@@ -0,0 +1,131 @@
+package com.example.demo.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.service.ProprietaryApiService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@WebMvcTest(FhirController.class)
+@TestPropertySource(properties = "fhir-facade.idempotency.enabled=true")
+@Import({ FhirFacadeProperties.class, FhirConfiguration.class, FacadeMetrics.class, SimpleMeterRegistry.class,
+		MappingEngine.class })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FhirControllerIdempotencyTest {
+
+	private static final String PATIENT_IDENTIFIER = "identifier=urn:oid:1.2.36.146.595.217.0.1|12345";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	private String getJsonString(String jsonFile) throws IOException {
+		return new String(new ClassPathResource(jsonFile + ".json").getInputStream().readAllBytes());
+	}
+
+	private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+		return this.mockMvc.perform(asyncDispatch(mvcResult));
+	}
+
+	@Test
+	void repeatedPatientShouldBeAnsweredFromCache() throws Exception {
+		String patientJsonString = getJsonString("Beispiel-FHIR-Ressource-Patient");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isCreated());
+		// Anders formatiert, aber gleicher Inhalt
+		performAsync(post("/Patient").content(patientJsonString.replace("\n", "\r\n  "))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		verify(proprietaryApiService, times(1)).send(any());
+	}
+
+	@Test
+	void failedPatientShouldNotBeCached() throws Exception {
+		String patientJsonString = getJsonString("Beispiel-FHIR-Ressource-Patient");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isInternalServerError());
+		performAsync(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isInternalServerError());
+		verify(proprietaryApiService, times(2)).send(any());
+	}
+
+	@Test
+	void repeatedIdempotencyKeyShouldBeAnsweredFromCache() throws Exception {
+		String documentJsonString = getJsonString("Beispiel-FHIR-Ressource-DocumentReference");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/DocumentReference").header(FhirController.IDEMPOTENCY_KEY, "abc")
+				.content(documentJsonString).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		performAsync(post("/DocumentReference").header(FhirController.IDEMPOTENCY_KEY, "abc")
+				.content(documentJsonString).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		verify(proprietaryApiService, times(1)).send(any());
+	}
+
+	@Test
+	void idempotencyKeyWithDifferentPayloadShouldBeUnprocessable() throws Exception {
+		String patientJsonString = getJsonString("Beispiel-FHIR-Ressource-Patient");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").header(FhirController.IDEMPOTENCY_KEY, "abc").content(patientJsonString)
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		this.mockMvc.perform(post("/Patient").header(FhirController.IDEMPOTENCY_KEY, "abc")
+				.content(patientJsonString.replace("Chalmers", "Windsor")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isUnprocessableEntity());
+		verify(proprietaryApiService, times(1)).send(any());
+	}
+
+	@Test
+	void idempotencyKeyShouldBeScopedToClient() throws Exception {
+		String patientJsonString = getJsonString("Beispiel-FHIR-Ressource-Patient");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").header(FhirController.IDEMPOTENCY_KEY, "abc").header("X-Client-Id", "a")
+				.content(patientJsonString).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		performAsync(post("/Patient").header(FhirController.IDEMPOTENCY_KEY, "abc").header("X-Client-Id", "b")
+				.content(patientJsonString.replace("Chalmers", "Windsor")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isCreated());
+		verify(proprietaryApiService, times(2)).send(any());
+	}
+
+	@Test
+	void conditionalCreateOfExistingPatientShouldBeOk() throws Exception {
+		String patientJsonString = getJsonString("Beispiel-FHIR-Ressource-Patient");
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").header(FhirController.IF_NONE_EXIST, PATIENT_IDENTIFIER)
+				.content(patientJsonString).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isCreated());
+		performAsync(post("/Patient").header(FhirController.IF_NONE_EXIST, PATIENT_IDENTIFIER)
+				.content(patientJsonString).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(content().string("Patient already exists."));
+		verify(proprietaryApiService, times(1)).send(any());
+	}
+}
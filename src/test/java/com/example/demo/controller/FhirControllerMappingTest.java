@@ -0,0 +1,122 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Überschriebene Abbildungen, die Elemente außerhalb der schnellen Extraktion
+ * bzw. des Streamings lesen, erhalten die vollständige Ressource.
+ */
+@WebMvcTest(FhirController.class)
+@TestPropertySource(properties = { "fhir-facade.idempotency.enabled=false", "fhir-facade.fastPathExtraction=true",
+		"fhir-facade.mappings.patient.resourceType=Patient", "fhir-facade.mappings.patient.path=/Person",
+		"fhir-facade.mappings.patient.fields.lastName.expression=name.first().family",
+		"fhir-facade.mappings.patient.fields.gender.expression=gender",
+		"fhir-facade.mappings.documentReference.resourceType=DocumentReference",
+		"fhir-facade.mappings.documentReference.path=/Document",
+		"fhir-facade.mappings.documentReference.partitionKey=patientId",
+		"fhir-facade.mappings.documentReference.fields.patientId.expression=subject.identifier.value",
+		"fhir-facade.mappings.documentReference.fields.patientId.type=INTEGER",
+		"fhir-facade.mappings.documentReference.fields.description.expression=description",
+		"fhir-facade.mappings.documentReference.contentField=contentB64" })
+@Import({ FhirFacadeProperties.class, FhirConfiguration.class, FacadeMetrics.class, SimpleMeterRegistry.class,
+		MappingEngine.class })
+class FhirControllerMappingTest {
+
+	private static final MediaType FHIR_XML = MediaType.parseMediaType("application/fhir+xml");
+	private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	private static byte[] getResource(String file) throws IOException {
+		return new ClassPathResource(file).getInputStream().readAllBytes();
+	}
+
+	private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+		return this.mockMvc.perform(asyncDispatch(mvcResult));
+	}
+
+	/**
+	 * Beantwortet Anfragen an den angegebenen Pfad mit Erfolg und merkt sich die
+	 * gesendeten Körper.
+	 */
+	private List<JsonNode> captureSent(String path) throws IOException {
+		List<JsonNode> sent = new ArrayList<>();
+		when(proprietaryApiService.send(argThat(request -> request != null && path.equals(request.getPath()))))
+				.thenAnswer(invocation -> {
+					try (InputStream body = invocation.<OutboundRequest>getArgument(0).openBody()) {
+						sent.add(new ObjectMapper().readTree(new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+					}
+					return CompletableFuture.completedFuture(true);
+				});
+		return sent;
+	}
+
+	@Test
+	void patientMappingReadsElementsOutsideFastPath() throws Exception {
+		List<JsonNode> sent = captureSent(OutboundRequest.PERSON_PATH);
+		performAsync(post("/Patient").content(getResource("Beispiel-FHIR-Ressource-Patient.json"))
+				.contentType(FHIR_JSON)).andDo(print()).andExpect(status().isCreated());
+		assertEquals(1, sent.size());
+		assertEquals("Chalmers", sent.get(0).get("lastName").textValue());
+		assertEquals("male", sent.get(0).get("gender").textValue());
+	}
+
+	@Test
+	void documentReferenceMappingReadsElementsOutsideStreaming() throws Exception {
+		List<JsonNode> sent = captureSent(OutboundRequest.DOCUMENT_PATH);
+		performAsync(post("/DocumentReference").content(getResource("Beispiel-FHIR-Ressource-DocumentReference.json"))
+				.contentType(FHIR_JSON)).andDo(print()).andExpect(status().isCreated());
+		performAsync(post("/DocumentReference").content(getResource("Beispiel-FHIR-Ressource-DocumentReference.xml"))
+				.contentType(FHIR_XML)).andDo(print()).andExpect(status().isCreated());
+		assertEquals(2, sent.size());
+		for (JsonNode body : sent) {
+			assertEquals(654321, body.get("patientId").intValue());
+			assertEquals("Molekularpathologiebefund vom 31.12.21", body.get("description").textValue());
+			assertEquals("JVBERi0xLjUNJeLjz9MNCjEw", body.get("contentB64").textValue());
+		}
+	}
+}
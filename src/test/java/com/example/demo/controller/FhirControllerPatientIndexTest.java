@@ -0,0 +1,171 @@
+package com.example.demo.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.index.PatientIndex;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Die Tests verwenden je eigene Patienten-IDs, da sich das Verzeichnis den
+ * Kontext teilt.
+ */
+@WebMvcTest(FhirController.class)
+@Import({ FhirFacadeProperties.class, FhirConfiguration.class, FacadeMetrics.class, SimpleMeterRegistry.class,
+		MappingEngine.class, PatientIndex.class })
+@TestPropertySource(properties = { "fhir-facade.idempotency.enabled=false", "fhir-facade.patient-index.enabled=true" })
+class FhirControllerPatientIndexTest {
+
+	@TempDir
+	static Path directory;
+
+	@DynamicPropertySource
+	static void indexFile(DynamicPropertyRegistry registry) {
+		registry.add("fhir-facade.patient-index.file", () -> directory.resolve("patients.idx").toString());
+	}
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PatientIndex patientIndex;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	private String getJsonString(String jsonFile) throws IOException {
+		return new String(new ClassPathResource(jsonFile + ".json").getInputStream().readAllBytes());
+	}
+
+	private String patient(String patientId) throws IOException {
+		return getJsonString("Beispiel-FHIR-Ressource-Patient").replace("\"12345\"", "\"" + patientId + "\"");
+	}
+
+	private String document(String patientId) throws IOException {
+		return getJsonString("Beispiel-FHIR-Ressource-DocumentReference").replace("\"654321\"",
+				"\"" + patientId + "\"");
+	}
+
+	private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+		return this.mockMvc.perform(asyncDispatch(mvcResult));
+	}
+
+	private static OutboundRequest toDocument() {
+		return argThat(request -> request != null && OutboundRequest.DOCUMENT_PATH.equals(request.getPath()));
+	}
+
+	@Test
+	void documentOfUnknownPatientShouldNotBeSent() throws Exception {
+		this.mockMvc
+				.perform(post("/DocumentReference").content(document("1001")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isUnprocessableEntity())
+				.andExpect(jsonPath("$.issue[0].diagnostics").value("Unknown patient 1001, the Patient must be "
+						+ "created first (DocumentReference.subject.identifier)"));
+		verify(proprietaryApiService, never()).send(any());
+	}
+
+	@Test
+	void documentOfCreatedPatientShouldBeCreated() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").content(patient("1002")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isCreated());
+		performAsync(post("/DocumentReference").content(document("1002")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isCreated());
+		verify(proprietaryApiService, times(1)).send(toDocument());
+	}
+
+	@Test
+	void failedPatientShouldStayUnknown() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/Patient").content(patient("1003")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isInternalServerError());
+		this.mockMvc
+				.perform(post("/DocumentReference").content(document("1003")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isUnprocessableEntity());
+	}
+
+	@Test
+	void documentOfPatientInSameBundleShouldBeAccepted() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		String bundle = "{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":[" //
+				+ "{\"resource\":" + patient("1004") + ",\"request\":{\"method\":\"POST\",\"url\":\"Patient\"}}," //
+				+ "{\"resource\":" + document("1004")
+				+ ",\"request\":{\"method\":\"POST\",\"url\":\"DocumentReference\"}}]}";
+		performAsync(post("/").content(bundle).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.entry[1].response.status").value("201 Created"));
+		verify(proprietaryApiService, times(1)).send(toDocument());
+	}
+
+	private String batch(String patient, String document) {
+		return "{\"resourceType\":\"Bundle\",\"type\":\"batch\",\"entry\":[" //
+				+ "{\"resource\":" + patient + ",\"request\":{\"method\":\"POST\",\"url\":\"Patient\"}}," //
+				+ "{\"resource\":" + document + ",\"request\":{\"method\":\"POST\",\"url\":\"DocumentReference\"}}]}";
+	}
+
+	@Test
+	void documentOfInvalidPatientInSameBatchShouldNotBeSent() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		String patient = getJsonString("Beispiel-FHIR-Ressource-Patient-Ohne-Namen").replace("\"12345\"",
+				"\"1006\"");
+		performAsync(post("/").content(batch(patient, document("1006"))).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.entry[0].response.status").value("422 Unprocessable Entity"))
+				.andExpect(jsonPath("$.entry[1].response.status").value("422 Unprocessable Entity"));
+		verify(proprietaryApiService, never()).send(any());
+	}
+
+	@Test
+	void documentOfFailedPatientInSameBatchShouldNotBeSent() throws Exception {
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/").content(batch(patient("1007"), document("1007")))
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.entry[0].response.status").value("500 Internal Server Error"))
+				.andExpect(jsonPath("$.entry[1].response.status").value("424 Failed Dependency"));
+		verify(proprietaryApiService, never()).send(toDocument());
+	}
+
+	@Test
+	void documentOfBulkLoadedPatientShouldBeCreated() throws Exception {
+		patientIndex.add(1005, true);
+		when(proprietaryApiService.send(any())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/DocumentReference").content(document("1005")).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isCreated());
+	}
+}
@@ -1,26 +1,68 @@
 package com.example.demo.controller;
 
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.service.CircuitOpenException;
+import com.example.demo.service.OutboundRequest;
 import com.example.demo.service.ProprietaryApiService;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @WebMvcTest(FhirController.class)
+// Gleiche Anfragen werden in mehreren Tests mit unterschiedlichen Ergebnissen
+// erwartet, siehe FhirControllerIdempotencyTest
+@TestPropertySource(properties = "fhir-facade.idempotency.enabled=false")
+@Import({ FhirFacadeProperties.class, FhirConfiguration.class, FacadeMetrics.class, SimpleMeterRegistry.class,
+		MappingEngine.class })
 class FhirControllerTest {
 
 	private static final String BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON = "Beispiel-FHIR-Ressource-Patient";
@@ -36,40 +78,62 @@ class FhirControllerTest {
 		return new String(allBytes);
 	}
 
+	/**
+	 * Führt eine Anfrage aus, deren Antwort asynchron geschrieben wird, und
+	 * liefert das Ergebnis nach Abschluss der asynchronen Verarbeitung.
+	 */
+	private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+		return this.mockMvc.perform(asyncDispatch(mvcResult));
+	}
+
+	private static OutboundRequest toPerson() {
+		return argThat(request -> request != null && OutboundRequest.PERSON_PATH.equals(request.getPath()));
+	}
+
+	private static OutboundRequest toDocument() {
+		return argThat(request -> request != null && OutboundRequest.DOCUMENT_PATH.equals(request.getPath()));
+	}
+
 	@Autowired
 	private MockMvc mockMvc;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@MockBean
 	private ProprietaryApiService proprietaryApiService;
 
 	@Test
 	void sentPatientToServiceShouldBeCreated() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(true);
-		this.mockMvc.perform(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isCreated());
 	}
 
 	@Test
 	void serverErroredPatientToServiceShouldBeServerErrored() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(false);
-		this.mockMvc.perform(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().is5xxServerError());
 	}
 
 	@Test
 	void sentPatientWoNameShouldBeUnprocessableEntityErrored() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON_OHNE_NAMEN);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(true);
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(true));
+		double rejected = meterRegistry.counter(FacadeMetrics.ISSUES, "issue", "Patient.name").count();
 		this.mockMvc.perform(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isUnprocessableEntity());
+		assertEquals(rejected + 1, meterRegistry.counter(FacadeMetrics.ISSUES, "issue", "Patient.name").count());
 	}
 
 	@Test
 	void sentPatientWoBirthdateShouldBeUnprocessableEntityErrored() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON_OHNE_GEBURTSDATUM);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(true);
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(true));
 		this.mockMvc.perform(post("/Patient").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isUnprocessableEntity());
 	}
@@ -77,24 +141,119 @@ class FhirControllerTest {
 	@Test
 	void sentDocumentToServiceShouldBeCreated() throws Exception {
 		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE);
-		when(proprietaryApiService.sendDocumentData(anyString(), any(), any(), any(), any())).thenReturn(true);
-		this.mockMvc
-				.perform(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+		when(proprietaryApiService.send(toDocument())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isCreated());
 	}
 
 	@Test
 	void serverErroredDocumentToServiceShouldBeServerErrored() throws Exception {
 		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE);
-		when(proprietaryApiService.sendDocumentData(anyString(), any(), any(), any(), any())).thenReturn(false);
-		this.mockMvc.perform(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+		when(proprietaryApiService.send(toDocument())).thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().is5xxServerError());
 	}
 
+	@Test
+	void openCircuitShouldBeServiceUnavailable() throws Exception {
+		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE);
+		when(proprietaryApiService.send(toDocument())).thenReturn(CompletableFuture
+				.failedFuture(new CircuitOpenException(OutboundRequest.DOCUMENT_PATH, Duration.ofMillis(2500))));
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isServiceUnavailable()).andExpect(header().string("Retry-After", "3"))
+				.andExpect(jsonPath("$.resourceType").value("OperationOutcome"))
+				.andExpect(jsonPath("$.issue[0].code").value("transient"));
+	}
+
+	@Test
+	void malformedPatientShouldBeBadRequest() throws Exception {
+		double malformed = meterRegistry.counter(FacadeMetrics.ISSUES, "issue", "structure").count();
+		this.mockMvc.perform(post("/Patient").content("{\"resourceType\": \"Patient\", \"name\": [").contentType(
+				MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.resourceType").value("OperationOutcome"))
+				.andExpect(jsonPath("$.issue[0].code").value("structure"));
+		assertEquals(malformed + 1, meterRegistry.counter(FacadeMetrics.ISSUES, "issue", "structure").count());
+		verify(proprietaryApiService, never()).send(argThat(request -> true));
+	}
+
+	@Test
+	void malformedDocumentShouldBeBadRequest() throws Exception {
+		this.mockMvc.perform(post("/DocumentReference").content("{\"resourceType\": \"DocumentReference\", }")
+				.contentType(MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.issue[0].code").value("structure"));
+	}
+
+	@Test
+	void documentReferencingBinaryShouldSendBinaryContent() throws Exception {
+		byte[] pdf = "%PDF-1.5 binary content".getBytes(StandardCharsets.US_ASCII);
+		MvcResult created = this.mockMvc
+				.perform(post("/Binary").content(pdf).contentType(MediaType.APPLICATION_PDF)).andDo(print())
+				.andExpect(status().isCreated()).andExpect(jsonPath("$.resourceType").value("Binary"))
+				.andExpect(jsonPath("$.contentType", startsWith(MediaType.APPLICATION_PDF_VALUE))).andReturn();
+		String location = created.getResponse().getHeader("Location");
+		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE)
+				.replace("\"data\": \"JVBERi0xLjUNJeLjz9MNCjEw\"", "\"url\": \"" + location + "\"");
+		String[] sent = new String[1];
+		when(proprietaryApiService.send(toDocument())).thenAnswer(invocation -> {
+			try (InputStream body = invocation.<OutboundRequest>getArgument(0).openBody()) {
+				sent[0] = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+			}
+			return CompletableFuture.completedFuture(true);
+		});
+
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isCreated());
+		assertTrue(sent[0].contains(Base64.getEncoder().encodeToString(pdf)), sent[0]);
+
+		// Jedes Binary wird nur von einer DocumentReference verwendet
+		this.mockMvc.perform(post("/DocumentReference").content(documentJsonString)
+				.contentType(MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isUnprocessableEntity());
+	}
+
+	@Test
+	void binaryShouldRemainAvailableAfterFailedForward() throws Exception {
+		byte[] pdf = "%PDF-1.5 binary content".getBytes(StandardCharsets.US_ASCII);
+		String location = this.mockMvc.perform(post("/Binary").content(pdf).contentType(MediaType.APPLICATION_PDF))
+				.andExpect(status().isCreated()).andReturn().getResponse().getHeader("Location");
+		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE)
+				.replace("\"data\": \"JVBERi0xLjUNJeLjz9MNCjEw\"", "\"url\": \"" + location + "\"");
+		List<String> sent = new ArrayList<>();
+		when(proprietaryApiService.send(toDocument())).thenAnswer(invocation -> {
+			try (InputStream body = invocation.<OutboundRequest>getArgument(0).openBody()) {
+				sent.add(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			// Die API lehnt den ersten Versuch ab
+			return CompletableFuture.completedFuture(sent.size() > 1);
+		});
+
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isInternalServerError());
+		// Der erneute Versuch verwendet dasselbe Binary
+		performAsync(post("/DocumentReference").content(documentJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isCreated());
+		assertEquals(2, sent.size());
+		assertTrue(sent.get(1).contains(Base64.getEncoder().encodeToString(pdf)), sent.get(1));
+	}
+
+	@Test
+	void gzipEncodedDocumentShouldBeCreated() throws Exception {
+		String documentJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE);
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(gzip)) {
+			out.write(documentJsonString.getBytes(StandardCharsets.UTF_8));
+		}
+		when(proprietaryApiService.send(toDocument())).thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/DocumentReference").content(gzip.toByteArray()).header("Content-Encoding", "gzip")
+				.contentType(MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isCreated());
+
+		this.mockMvc.perform(post("/DocumentReference").content(gzip.toByteArray()).header("Content-Encoding", "br")
+				.contentType(MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isUnsupportedMediaType());
+	}
+
 	@Test
 	void sentDocumentWoKdlShouldBeUnprocessableEntityErrored() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE_WO_KDL);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(true);
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(true));
 		this.mockMvc.perform(post("/DocumentReference").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isUnprocessableEntity());
 	}
@@ -102,8 +261,86 @@ class FhirControllerTest {
 	@Test
 	void sentDocumentWoBillingNumberShouldBeUnprocessableEntityErrored() throws Exception {
 		String patientJsonString = getJsonString(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE_WO_BILLING_NUMMER);
-		when(proprietaryApiService.sendPatientData(anyString(), anyString(), anyString())).thenReturn(true);
+		when(proprietaryApiService.send(toPerson())).thenReturn(CompletableFuture.completedFuture(true));
 		this.mockMvc.perform(post("/DocumentReference").content(patientJsonString).contentType(MediaType.APPLICATION_JSON))
 				.andDo(print()).andExpect(status().isUnprocessableEntity());
 	}
+
+	private String getBundleString(BundleType bundleType, String... jsonFiles) throws IOException {
+		IParser parser = FhirContext.forR4().newJsonParser();
+		Bundle bundle = new Bundle().setType(bundleType);
+		for (String jsonFile : jsonFiles) {
+			org.hl7.fhir.r4.model.Resource resource = (org.hl7.fhir.r4.model.Resource) parser
+					.parseResource(getJsonString(jsonFile));
+			bundle.addEntry().setResource(resource).getRequest().setMethod(HTTPVerb.POST)
+					.setUrl(resource.fhirType());
+		}
+		return parser.encodeResourceToString(bundle);
+	}
+
+	@Test
+	void sentBatchBundleShouldAnswerPerEntry() throws Exception {
+		String bundleJsonString = getBundleString(BundleType.BATCH, BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON,
+				BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON_OHNE_NAMEN, BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE);
+		when(proprietaryApiService.send(toPerson()))
+				.thenReturn(CompletableFuture.completedFuture(true));
+		when(proprietaryApiService.send(toDocument()))
+				.thenReturn(CompletableFuture.completedFuture(false));
+		performAsync(post("/").content(bundleJsonString).contentType(MediaType.APPLICATION_JSON)).andDo(print())
+				.andExpect(status().isOk()).andExpect(jsonPath("$.type").value("batch-response"))
+				.andExpect(jsonPath("$.entry[0].response.status").value("201 Created"))
+				.andExpect(jsonPath("$.entry[1].response.status").value("422 Unprocessable Entity"))
+				.andExpect(jsonPath("$.entry[1].response.outcome.issue[0].diagnostics")
+						.value("Missing patient name (Patient.name)"))
+				.andExpect(jsonPath("$.entry[2].response.status").value("500 Internal Server Error"));
+	}
+
+	@Test
+	void sentTransactionBundleWithInvalidEntryShouldBeUnprocessableEntityErrored() throws Exception {
+		String bundleJsonString = getBundleString(BundleType.TRANSACTION, BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON,
+				BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE_WO_KDL);
+		when(proprietaryApiService.send(toPerson()))
+				.thenReturn(CompletableFuture.completedFuture(true));
+		this.mockMvc.perform(post("/").content(bundleJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isUnprocessableEntity());
+		verify(proprietaryApiService, never()).send(toPerson());
+	}
+
+	@Test
+	void documentInBundleShouldBeSentAfterItsPatient() throws Exception {
+		String bundleJsonString = getBundleString(BundleType.BATCH, BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE,
+				BEISPIEL_FHIR_RESSOURCE_PATIENT_JSON).replace("\"654321\"", "\"12345\"");
+		CompletableFuture<Boolean> person = new CompletableFuture<>();
+		when(proprietaryApiService.send(toPerson())).thenReturn(person);
+		when(proprietaryApiService.send(toDocument())).thenReturn(CompletableFuture.completedFuture(true));
+		MvcResult mvcResult = this.mockMvc.perform(post("/").content(bundleJsonString)
+				.contentType(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+		verify(proprietaryApiService, never()).send(toDocument());
+
+		person.complete(true);
+		this.mockMvc.perform(asyncDispatch(mvcResult)).andDo(print()).andExpect(status().isOk())
+				.andExpect(jsonPath("$.entry[0].response.status").value("201 Created"))
+				.andExpect(jsonPath("$.entry[1].response.status").value("201 Created"));
+		verify(proprietaryApiService).send(toDocument());
+	}
+
+	@Test
+	void sentEncounterShouldBeMappedFromConfiguration() throws Exception {
+		String encounterJsonString = "{\"resourceType\":\"Encounter\",\"status\":\"finished\","
+				+ "\"class\":{\"code\":\"IMP\"},\"identifier\":[{\"type\":{\"coding\":[{\"code\":\"AN\"}]},"
+				+ "\"value\":\"123456789\"}],\"subject\":{\"identifier\":{\"value\":\"654321\"}},"
+				+ "\"period\":{\"start\":\"2021-01-01T05:50:50+01:00\"}}";
+		when(proprietaryApiService.send(argThat(request -> request != null
+				&& "/Encounter".equals(request.getPath()) && "654321".equals(request.getPartitionKey()))))
+				.thenReturn(CompletableFuture.completedFuture(true));
+		performAsync(post("/Encounter").content(encounterJsonString).contentType(MediaType.APPLICATION_JSON))
+				.andDo(print()).andExpect(status().isCreated());
+	}
+
+	@Test
+	void sentResourceWithoutMappingShouldBeNotFound() throws Exception {
+		performAsync(post("/Medication").content("{\"resourceType\":\"Medication\"}")
+				.contentType(MediaType.APPLICATION_JSON)).andDo(print()).andExpect(status().isNotFound())
+				.andExpect(jsonPath("$.issue[0].code").value("not-supported"));
+	}
 }
@@ -0,0 +1,178 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.xpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirConfiguration;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFormat;
+import com.example.demo.mapping.MappingEngine;
+import com.example.demo.service.OutboundRequest;
+import com.example.demo.service.ProprietaryApiService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Anfragen und Antworten im Format application/fhir+xml sowie die Auswahl des
+ * Antwortformats.
+ */
+@WebMvcTest(FhirController.class)
+@TestPropertySource(properties = "fhir-facade.idempotency.enabled=false")
+@Import({ FhirFacadeProperties.class, FhirConfiguration.class, FacadeMetrics.class, SimpleMeterRegistry.class,
+		MappingEngine.class })
+class FhirControllerXmlTest {
+
+	private static final MediaType FHIR_XML = MediaType.parseMediaType("application/fhir+xml");
+	private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+	private static final Map<String, String> NS = Map.of("f", "http://hl7.org/fhir");
+
+	private static final String BEISPIEL_FHIR_RESSOURCE_PATIENT = "Beispiel-FHIR-Ressource-Patient";
+	private static final String BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE = "Beispiel-FHIR-Ressource-DocumentReference";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ProprietaryApiService proprietaryApiService;
+
+	private static byte[] getResource(String file) throws IOException {
+		return new ClassPathResource(file).getInputStream().readAllBytes();
+	}
+
+	private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+		MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+		return this.mockMvc.perform(asyncDispatch(mvcResult));
+	}
+
+	/**
+	 * Beantwortet Anfragen an den angegebenen Pfad mit Erfolg und merkt sich die
+	 * gesendeten Körper.
+	 */
+	private List<String> captureSent(String path) throws IOException {
+		List<String> sent = new ArrayList<>();
+		when(proprietaryApiService.send(argThat(request -> request != null && path.equals(request.getPath()))))
+				.thenAnswer(invocation -> {
+					try (InputStream body = invocation.<OutboundRequest>getArgument(0).openBody()) {
+						sent.add(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+					}
+					return CompletableFuture.completedFuture(true);
+				});
+		return sent;
+	}
+
+	@Test
+	void xmlPatientShouldBeSentLikeJsonPatient() throws Exception {
+		List<String> sent = captureSent(OutboundRequest.PERSON_PATH);
+		performAsync(post("/Patient").content(getResource(BEISPIEL_FHIR_RESSOURCE_PATIENT + ".json"))
+				.contentType(FHIR_JSON)).andDo(print()).andExpect(status().isCreated());
+		performAsync(post("/Patient").content(getResource(BEISPIEL_FHIR_RESSOURCE_PATIENT + ".xml"))
+				.contentType(FHIR_XML)).andDo(print()).andExpect(status().isCreated());
+		assertEquals(2, sent.size());
+		assertEquals(sent.get(0), sent.get(1));
+	}
+
+	@Test
+	void xmlDocumentReferenceShouldBeSentLikeJsonDocumentReference() throws Exception {
+		List<String> sent = captureSent(OutboundRequest.DOCUMENT_PATH);
+		performAsync(post("/DocumentReference")
+				.content(getResource(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE + ".json")).contentType(FHIR_JSON))
+				.andDo(print()).andExpect(status().isCreated());
+		performAsync(post("/DocumentReference")
+				.content(getResource(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE + ".xml")).contentType(FHIR_XML))
+				.andDo(print()).andExpect(status().isCreated());
+		assertEquals(2, sent.size());
+		assertEquals(sent.get(0), sent.get(1));
+	}
+
+	@Test
+	void invalidXmlPatientShouldBeAnsweredInXml() throws Exception {
+		String patient = new String(getResource(BEISPIEL_FHIR_RESSOURCE_PATIENT + ".xml"), StandardCharsets.UTF_8)
+				.replaceAll("(?s)<birthDate.*?</birthDate>", "");
+		this.mockMvc.perform(post("/Patient").content(patient).contentType(FHIR_XML)).andDo(print())
+				.andExpect(status().isUnprocessableEntity())
+				.andExpect(content().contentType(FhirFormat.XML.getMediaType()))
+				.andExpect(xpath("/f:OperationOutcome/f:issue/f:code/@value", NS).string("required"));
+		verify(proprietaryApiService, never()).send(argThat(request -> true));
+	}
+
+	@Test
+	void malformedXmlShouldBeBadRequest() throws Exception {
+		this.mockMvc.perform(post("/DocumentReference")
+				.content("<DocumentReference xmlns=\"http://hl7.org/fhir\"><content>").contentType(FHIR_XML))
+				.andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(content().contentType(FhirFormat.XML.getMediaType()))
+				.andExpect(xpath("/f:OperationOutcome/f:issue/f:code/@value", NS).string("structure"));
+		this.mockMvc.perform(post("/Patient").content("<Patient xmlns=\"http://hl7.org/fhir\"><name>")
+				.contentType(FHIR_XML)).andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(xpath("/f:OperationOutcome/f:issue/f:code/@value", NS).string("structure"));
+	}
+
+	@Test
+	void acceptAndFormatShouldSelectResponseFormat() throws Exception {
+		String malformed = "{\"resourceType\": \"Patient\", \"name\": [";
+		this.mockMvc.perform(post("/Patient").content(malformed).contentType(FHIR_JSON)).andDo(print())
+				.andExpect(status().isBadRequest()).andExpect(content().contentType(FhirFormat.JSON.getMediaType()))
+				.andExpect(jsonPath("$.resourceType").value("OperationOutcome"));
+		this.mockMvc.perform(post("/Patient").content(malformed).contentType(FHIR_JSON).accept(FHIR_XML))
+				.andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(content().contentType(FhirFormat.XML.getMediaType()))
+				.andExpect(xpath("/f:OperationOutcome/f:issue/f:code/@value", NS).string("structure"));
+		this.mockMvc.perform(post("/Patient?_format=json").content("<Patient xmlns=\"http://hl7.org/fhir\"><name>")
+				.contentType(FHIR_XML).accept(FHIR_XML)).andDo(print()).andExpect(status().isBadRequest())
+				.andExpect(content().contentType(FhirFormat.JSON.getMediaType()))
+				.andExpect(jsonPath("$.issue[0].code").value("structure"));
+	}
+
+	@Test
+	void xmlBinaryShouldBeReferencedFromXmlDocumentReference() throws Exception {
+		String binary = "<Binary xmlns=\"http://hl7.org/fhir\"><contentType value=\"application/pdf\"/>"
+				+ "<data value=\"JVBERi0xLjUgYmluYXJ5\n Y29udGVudA==\"/></Binary>";
+		MvcResult created = this.mockMvc.perform(post("/Binary").content(binary).contentType(FHIR_XML))
+				.andDo(print()).andExpect(status().isCreated())
+				.andExpect(content().contentType(FhirFormat.XML.getMediaType()))
+				.andExpect(xpath("/f:Binary/f:contentType/@value", NS).string("application/pdf")).andReturn();
+		String location = created.getResponse().getHeader("Location");
+		String documentReference = new String(getResource(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE + ".xml"),
+				StandardCharsets.UTF_8).replaceAll("(?s)<data value=\"[^\"]*\"/>", "<url value=\"" + location + "\"/>");
+		List<String> sent = captureSent(OutboundRequest.DOCUMENT_PATH);
+
+		performAsync(post("/DocumentReference").content(documentReference).contentType(FHIR_XML)).andDo(print())
+				.andExpect(status().isCreated());
+		assertEquals(1, sent.size());
+		assertTrue(sent.get(0).contains("JVBERi0xLjUgYmluYXJ5Y29udGVudA=="), sent.get(0));
+	}
+}
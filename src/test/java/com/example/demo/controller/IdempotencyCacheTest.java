@@ -0,0 +1,49 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+class IdempotencyCacheTest {
+
+	@Test
+	void pendingResponseIsSharedAndFailuresAreRemoved() {
+		IdempotencyCache<String> cache = new IdempotencyCache<>(10, Duration.ofMinutes(1), "ok"::equals);
+		CompletableFuture<String> first = new CompletableFuture<>();
+		assertNull(cache.claim(List.of("a", "b"), null, first));
+		assertSame(first, cache.claim(List.of("b"), null, new CompletableFuture<>()).getResponse());
+
+		first.complete("failed");
+		assertEquals(0, cache.size());
+		assertNull(cache.claim(List.of("a"), null, CompletableFuture.completedFuture("ok")));
+		assertNotNull(cache.claim(List.of("a"), null, new CompletableFuture<>()));
+	}
+
+	@Test
+	void duplicatesReportTheFirstFingerprint() {
+		IdempotencyCache<String> cache = new IdempotencyCache<>(10, Duration.ofMinutes(1), "ok"::equals);
+		assertNull(cache.claim(List.of("a"), "hash", CompletableFuture.completedFuture("ok")));
+		assertEquals("hash", cache.claim(List.of("a"), "other", new CompletableFuture<>()).getFingerprint());
+	}
+
+	@Test
+	void evictsOldestAndExpiredEntries() throws InterruptedException {
+		IdempotencyCache<String> cache = new IdempotencyCache<>(2, Duration.ofMillis(50), "ok"::equals);
+		cache.claim(List.of("a"), null, CompletableFuture.completedFuture("ok"));
+		cache.claim(List.of("b"), null, CompletableFuture.completedFuture("ok"));
+		cache.claim(List.of("c"), null, CompletableFuture.completedFuture("ok"));
+		assertEquals(2, cache.size());
+		assertNull(cache.claim(List.of("a"), null, CompletableFuture.completedFuture("ok")));
+
+		Thread.sleep(100);
+		assertNull(cache.claim(List.of("b"), null, CompletableFuture.completedFuture("ok")));
+		assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,63 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.FhirFormat;
+import com.example.demo.config.FhirParsers;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class OperationOutcomeCacheTest {
+
+	private static final FhirParsers PARSERS = new FhirParsers(FhirContext.forR4());
+
+	@Test
+	void recurringIssuesAreEncodedOnce() {
+		OperationOutcomeCache cache = new OperationOutcomeCache(PARSERS, 10);
+		List<String> issues = List.of("Missing birthdate (Patient.birthDate)");
+		String encoded = cache.encode(IssueSeverity.FATAL, IssueType.REQUIRED, issues);
+
+		assertEquals(PARSERS.jsonParser().encodeResourceToString(OperationOutcomes.fromErrorMessages(issues)),
+				encoded);
+		assertSame(encoded, cache.encode(IssueSeverity.FATAL, IssueType.REQUIRED,
+				List.of("Missing birthdate (Patient.birthDate)")));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntries() {
+		OperationOutcomeCache cache = new OperationOutcomeCache(PARSERS, 2);
+		String a = cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "a");
+		cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "b");
+		// a wird verwendet, b ist danach der älteste Eintrag
+		assertSame(a, cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "a"));
+		String c = cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "c");
+
+		assertEquals(2, cache.size());
+		assertSame(a, cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "a"));
+		assertSame(c, cache.encode(IssueSeverity.ERROR, IssueType.STRUCTURE, "c"));
+		// Anderer Typ, anderer Eintrag
+		assertNotEquals(a, cache.encode(IssueSeverity.ERROR, IssueType.INVALID, "a"));
+	}
+
+	@Test
+	void formatsAreCachedSeparately() {
+		OperationOutcomeCache cache = new OperationOutcomeCache(PARSERS, 10);
+		List<String> issues = List.of("Missing birthdate (Patient.birthDate)");
+		String json = cache.encode(FhirFormat.JSON, IssueSeverity.FATAL, IssueType.REQUIRED, issues);
+		String xml = cache.encode(FhirFormat.XML, IssueSeverity.FATAL, IssueType.REQUIRED, issues);
+
+		assertEquals(PARSERS.xmlParser().encodeResourceToString(OperationOutcomes.fromErrorMessages(issues)), xml);
+		assertSame(json, cache.encode(IssueSeverity.FATAL, IssueType.REQUIRED, issues));
+		assertSame(xml, cache.encode(FhirFormat.XML, IssueSeverity.FATAL, IssueType.REQUIRED, issues));
+		assertEquals(2, cache.size());
+	}
+}
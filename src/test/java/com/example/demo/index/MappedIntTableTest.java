@@ -0,0 +1,57 @@
+package com.example.demo.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedIntTableTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void growsAndKeepsAllEntries() throws IOException {
+		MappedIntTable table = MappedIntTable.open(directory.resolve("patients.idx"), 0);
+		assertEquals(16, table.capacity());
+		for (int key = -500; key < 1500; key++) {
+			assertEquals(0, table.put(key, 1));
+		}
+		assertEquals(1, table.put(42, 2));
+		assertEquals(2000, table.size());
+		assertEquals(4096, table.capacity());
+		for (int key = -500; key < 1500; key++) {
+			assertEquals(key == 42 ? 2 : 1, table.get(key));
+		}
+		assertEquals(0, table.get(1500));
+		assertEquals(0, table.get(Integer.MIN_VALUE));
+	}
+
+	@Test
+	void reopensFromFile() throws IOException {
+		Path file = directory.resolve("patients.idx");
+		MappedIntTable table = MappedIntTable.open(file, 100);
+		table.put(12345, 2);
+		table.put(0, 1);
+		table.force();
+
+		MappedIntTable reopened = MappedIntTable.open(file, 0);
+		assertEquals(2, reopened.size());
+		assertEquals(256, reopened.capacity());
+		assertEquals(2, reopened.get(12345));
+		assertEquals(1, reopened.get(0));
+		assertEquals(0, reopened.get(54321));
+	}
+
+	@Test
+	void rejectsForeignFile() throws IOException {
+		Path file = directory.resolve("patients.idx");
+		Files.writeString(file, "12345\n654321\n");
+		assertThrows(IOException.class, () -> MappedIntTable.open(file, 0));
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.demo.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PatientIndexTest {
+
+	@TempDir
+	Path directory;
+
+	private PatientIndex open(String bulkLoad) throws IOException {
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getPatientIndex().setFile(directory.resolve("patients.idx").toString());
+		properties.getPatientIndex().setExpectedPatients(16);
+		properties.getPatientIndex().setBulkLoad(bulkLoad);
+		return new PatientIndex(properties, new FacadeMetrics(new SimpleMeterRegistry()));
+	}
+
+	@Test
+	void bulkLoadsFirstCsvColumn() throws IOException {
+		Path csv = directory.resolve("patients.csv");
+		Files.writeString(csv, "\"patientId\";\"name\"\n\"12345\";\"Erika\"\n654321;Max\n\n 7 \n");
+		PatientIndex index = open(csv.toString());
+		assertEquals(3, index.size());
+		assertTrue(index.contains(12345));
+		assertTrue(index.contains(654321));
+		assertTrue(index.contains(7));
+		assertFalse(index.contains(1));
+	}
+
+	@Test
+	void keepsCreatedPatientsAcrossRestarts() throws IOException {
+		PatientIndex index = open("");
+		index.add(12345, false);
+		index.add(654321, true);
+		index.add(654321, false);
+		index.destroy();
+
+		PatientIndex reopened = open("");
+		assertTrue(reopened.contains(12345));
+		assertTrue(reopened.contains(654321));
+		assertEquals(2, reopened.size());
+	}
+
+	@Test
+	void parsesOnlyIntegerIds() {
+		assertEquals(12345, PatientIndex.parseId(" 12345 "));
+		assertNull(PatientIndex.parseId("A-12345"));
+		assertNull(PatientIndex.parseId("99999999999"));
+		assertNull(PatientIndex.parseId(null));
+	}
+}
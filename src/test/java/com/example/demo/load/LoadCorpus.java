@@ -0,0 +1,99 @@
+package com.example.demo.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Reproduzierbar erzeugte Patient- und DocumentReference-Ressourcen für
+ * Lasttests, abgeleitet aus den Beispiel-Ressourcen in src/test/resources.
+ * <p>
+ * Jede Ressource hat eigene Namen, Geburtsdaten, Patienten-IDs,
+ * Abrechnungsnummern und Dokumentinhalte, damit die Fassade sie nicht als
+ * Wiederholungen erkennt. Derselbe Startwert liefert dieselben Ressourcen.
+ */
+public final class LoadCorpus {
+
+	private static final String PATIENT = "Beispiel-FHIR-Ressource-Patient";
+	private static final String DOCUMENT_REFERENCE = "Beispiel-FHIR-Ressource-DocumentReference";
+	private static final String SAMPLE_DATA = "JVBERi0xLjUNJeLjz9MNCjEw";
+	private static final String[] GIVEN_NAMES = { "Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta",
+			"Hannes", "Ida", "Jonas", "Karla", "Lukas", "Mia", "Noah", "Olga", "Paul" };
+	private static final String[] FAMILY_NAMES = { "Müller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer",
+			"Wagner", "Becker", "Schulz", "Hoffmann", "Schäfer", "Koch", "Bauer", "Richter", "Klein", "Wolf" };
+
+	private final List<byte[]> patients;
+	private final List<byte[]> documentReferences;
+
+	private LoadCorpus(List<byte[]> patients, List<byte[]> documentReferences) {
+		this.patients = patients;
+		this.documentReferences = documentReferences;
+	}
+
+	/**
+	 * @param size           Anzahl der Ressourcen je Typ
+	 * @param attachmentSize Größe der Dokumentinhalte in Bytes vor der
+	 *                       Base64-Kodierung
+	 * @param seed           Startwert der Zufallswerte
+	 */
+	public static LoadCorpus generate(int size, int attachmentSize, long seed) {
+		String patient = json(PATIENT);
+		String documentReference = json(DOCUMENT_REFERENCE);
+		SplittableRandom random = new SplittableRandom(seed);
+		List<byte[]> patients = new ArrayList<>(size);
+		List<byte[]> documentReferences = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			LocalDate birthDate = LocalDate.of(1930, 1, 1).plusDays(random.nextInt(365 * 90));
+			patients.add(patient.replace("\"Peter\"", quote(GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)]))
+					.replace("\"Chalmers\"", quote(FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)]))
+					.replace("\"1974-12-25\"", quote(birthDate.toString())).getBytes(StandardCharsets.UTF_8));
+
+			byte[] data = new byte[attachmentSize];
+			random.nextBytes(data);
+			documentReferences.add(documentReference
+					.replace("\"654321\"", quote(Integer.toString(100000 + random.nextInt(900000))))
+					.replace("\"0123456789\"", quote(Integer.toString(100000000 + random.nextInt(900000000))))
+					.replace(SAMPLE_DATA, Base64.getEncoder().encodeToString(data)).getBytes(StandardCharsets.UTF_8));
+		}
+		return new LoadCorpus(patients, documentReferences);
+	}
+
+	/**
+	 * @return die i-te Patient-Ressource, zyklisch über den Bestand
+	 */
+	public byte[] patient(long i) {
+		return patients.get((int) (i % patients.size()));
+	}
+
+	/**
+	 * @return die i-te DocumentReference, zyklisch über den Bestand
+	 */
+	public byte[] documentReference(long i) {
+		return documentReferences.get((int) (i % documentReferences.size()));
+	}
+
+	public int size() {
+		return patients.size();
+	}
+
+	private static String quote(String value) {
+		return '"' + value + '"';
+	}
+
+	private static String json(String name) {
+		try (InputStream in = LoadCorpus.class.getClassLoader().getResourceAsStream(name + ".json")) {
+			if (in == null) {
+				throw new IllegalArgumentException("Unknown resource " + name);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
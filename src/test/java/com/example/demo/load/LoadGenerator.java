@@ -0,0 +1,167 @@
+package com.example.demo.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+/**
+ * Sendet Patient- und DocumentReference-Ressourcen aus einem
+ * {@link LoadCorpus} mit fester Rate an die Fassade (offenes Lastmodell: die
+ * Anfragen werden unabhängig von den Antworten zu ihren geplanten Zeitpunkten
+ * gesendet) und misst die Latenzen.
+ */
+public final class LoadGenerator implements AutoCloseable {
+
+	static final String PATIENT = "Patient";
+	static final String DOCUMENT_REFERENCE = "DocumentReference";
+
+	private final URI baseUri;
+	private final LoadCorpus corpus;
+	private final double patientShare;
+	private final Duration requestTimeout;
+	private final SplittableRandom random;
+	private final Executor executor;
+	private final HttpClient client;
+	// Laufende Nummer über alle Läufe, damit das Aufwärmen andere Ressourcen
+	// sendet als die Messung
+	private long sequence;
+
+	/**
+	 * @param baseUri        Basis-URL der Fassade, z.B.
+	 *                       {@code http://localhost:8080/fhir}
+	 * @param corpus         die zu sendenden Ressourcen
+	 * @param patientShare   Anteil der Patient-Ressourcen zwischen 0 und 1, der
+	 *                       Rest sind DocumentReferences
+	 * @param requestTimeout Zeit bis eine Anfrage als fehlgeschlagen zählt
+	 * @param seed           Startwert für die Auswahl der Ressourcen
+	 */
+	public LoadGenerator(URI baseUri, LoadCorpus corpus, double patientShare, Duration requestTimeout, long seed) {
+		this.baseUri = baseUri.toString().endsWith("/") ? baseUri : URI.create(baseUri + "/");
+		this.corpus = corpus;
+		this.patientShare = patientShare;
+		this.requestTimeout = requestTimeout;
+		this.random = new SplittableRandom(seed);
+		this.executor = executor();
+		this.client = HttpClient.newBuilder().executor(executor).version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	/**
+	 * Sendet {@code rps * duration} Anfragen und wartet auf alle Antworten.
+	 *
+	 * @param label    Bezeichnung des Laufs im Ergebnis
+	 * @param rps      Anfragen je Sekunde
+	 * @param duration Dauer des Sendens
+	 * @return das Ergebnis
+	 */
+	public LoadReport run(String label, double rps, Duration duration) throws InterruptedException {
+		int total = (int) Math.max(1, Math.round(rps * duration.toNanos() / 1e9));
+		long interval = Math.round(1e9 / rps);
+		Recorder patients = new Recorder(total);
+		Recorder documents = new Recorder(total);
+		Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+		LongAdder failures = new LongAdder();
+		CountDownLatch done = new CountDownLatch(total);
+		long maxLag = 0;
+
+		System.gc();
+		LoadReport.JvmStats.resetPeaks();
+		LoadReport.JvmStats before = LoadReport.JvmStats.capture();
+		long start = System.nanoTime();
+		for (int i = 0; i < total; i++) {
+			long scheduled = start + i * interval;
+			for (long wait; (wait = scheduled - System.nanoTime()) > 0;) {
+				LockSupport.parkNanos(wait);
+			}
+			maxLag = Math.max(maxLag, System.nanoTime() - scheduled);
+			long n = sequence++;
+			boolean patient = random.nextDouble() < patientShare;
+			Recorder recorder = patient ? patients : documents;
+			HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(patient ? PATIENT : DOCUMENT_REFERENCE))
+					.timeout(requestTimeout).header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers
+							.ofByteArray(patient ? corpus.patient(n) : corpus.documentReference(n)))
+					.build();
+			client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+				if (error != null) {
+					failures.increment();
+				} else {
+					recorder.record(System.nanoTime() - scheduled);
+					statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+				}
+				done.countDown();
+			});
+		}
+		done.await(requestTimeout.toNanos() + TimeUnit.SECONDS.toNanos(10), TimeUnit.NANOSECONDS);
+		long elapsed = System.nanoTime() - start;
+		LoadReport.JvmStats after = LoadReport.JvmStats.capture();
+
+		Map<Integer, Long> statusCounts = new LinkedHashMap<>();
+		statuses.forEach((status, count) -> statusCounts.put(status, count.sum()));
+		Map<String, long[]> latencies = new LinkedHashMap<>();
+		latencies.put(PATIENT, patients.values());
+		latencies.put(DOCUMENT_REFERENCE, documents.values());
+		return new LoadReport(label, rps, elapsed, total, failures.sum() + done.getCount(), maxLag, statusCounts,
+				latencies, before, after);
+	}
+
+	@Override
+	public void close() {
+		if (executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdownNow();
+		}
+	}
+
+	/**
+	 * Virtuelle Threads für die Antworten, falls verfügbar, sonst ein kleiner
+	 * Pool; der HTTP-Client selbst arbeitet nicht-blockierend.
+	 */
+	private static Executor executor() {
+		try {
+			return new VirtualThreadTaskExecutor("load-");
+		} catch (UnsupportedOperationException e) {
+			AtomicInteger counter = new AtomicInteger();
+			return Executors.newFixedThreadPool(4, runnable -> {
+				Thread thread = new Thread(runnable, "load-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Sammelt die Latenzen einer Anfrageart ohne Sperren.
+	 */
+	private static final class Recorder {
+		private final long[] values;
+		private final AtomicInteger size = new AtomicInteger();
+
+		Recorder(int capacity) {
+			this.values = new long[capacity];
+		}
+
+		void record(long nanos) {
+			values[size.getAndIncrement()] = nanos;
+		}
+
+		long[] values() {
+			return Arrays.copyOf(values, size.get());
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.demo.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Sendet eine kurze, gemischte Last über den echten HTTP-Weg (Fassade,
+ * HTTP-Client, proprietäre API) und prüft, dass Lastgenerator, Fassade und
+ * {@link MockBackend} dieselben Anfragen zählen. Die Zugangskontrolle ist
+ * abgeschaltet, damit jede Anfrage die API erreicht.
+ * <p>
+ * Die Tests mit zufälligen Fehlern und Zeitfenstern sind mit {@value #LOAD}
+ * markiert und laufen nur im Profil load, bei jedem Build nur die kurze Last
+ * ohne Fehler.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"fhir-facade.idempotency.enabled=false", "fhir-facade.admission.enabled=false" })
+class LoadHarnessTest {
+
+	static final String LOAD = "load";
+
+	private static MockBackend backend;
+
+	@LocalServerPort
+	private int port;
+
+	@DynamicPropertySource
+	static void backend(DynamicPropertyRegistry registry) throws IOException {
+		backend = new MockBackend(0, MockBackend.Profile.parse("latency=2ms,p99=10ms"),
+				Map.of("/Document", MockBackend.Profile.parse("latency=5ms,errorRate=0.2")), 42);
+		registry.add("fhir-facade.proprietaryBaseUrl", backend::baseUrl);
+	}
+
+	@AfterAll
+	static void stopBackend() {
+		backend.close();
+	}
+
+	@Test
+	void smallLoadIsCountedConsistently() throws Exception {
+		LoadReport report;
+		long before = backend.stats("/Person").getCreated();
+		// Nur Patienten, deren Profil keine Fehler enthält
+		try (LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + port + "/fhir"),
+				LoadCorpus.generate(10, 1024, 42), 1.0, Duration.ofSeconds(30), 42)) {
+			report = generator.run("smoke", 20, Duration.ofSeconds(1));
+		}
+
+		assertEquals(20, report.getSent());
+		assertEquals(0, report.getFailures());
+		assertEquals(Map.of(201, 20L), report.getStatuses());
+		assertEquals(20, backend.stats("/Person").getCreated() - before);
+	}
+
+	@Test
+	@Tag(LOAD)
+	void mixedLoadIsCountedConsistently() throws Exception {
+		LoadCorpus corpus = LoadCorpus.generate(50, 4096, 42);
+		LoadReport report;
+		long personBefore;
+		long documentBefore;
+		long documentErrorsBefore;
+		long createdBefore;
+		try (LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + port + "/fhir"), corpus,
+				0.5, Duration.ofSeconds(30), 42)) {
+			generator.run("warmup", 50, Duration.ofSeconds(2));
+			personBefore = backend.stats("/Person").getReceived();
+			documentBefore = backend.stats("/Document").getReceived();
+			documentErrorsBefore = backend.stats("/Document").getErrors();
+			createdBefore = backend.stats("/Person").getCreated() + backend.stats("/Document").getCreated();
+			report = generator.run("test", 100, Duration.ofSeconds(2));
+		}
+
+		assertEquals(200, report.getSent());
+		assertEquals(0, report.getFailures());
+		assertEquals(200, report.getCompleted());
+		assertTrue(Set.of(201, 500).containsAll(report.getStatuses().keySet()), report.toString());
+		MockBackend.Stats person = backend.stats("/Person");
+		MockBackend.Stats document = backend.stats("/Document");
+		assertEquals(report.count(LoadGenerator.PATIENT), person.getReceived() - personBefore);
+		assertEquals(report.count(LoadGenerator.DOCUMENT_REFERENCE), document.getReceived() - documentBefore);
+		// Jede Fehlerantwort der API wird zu einem 500 der Fassade
+		assertEquals(document.getErrors() - documentErrorsBefore, report.getStatuses().getOrDefault(500, 0L));
+		assertEquals(person.getCreated() + document.getCreated() - createdBefore,
+				report.getStatuses().getOrDefault(201, 0L));
+		// Die Latenz der API ist in jeder Antwort enthalten
+		assertTrue(report.percentile(LoadGenerator.PATIENT, 0.5) >= Duration.ofMillis(2).toNanos(),
+				report.toString());
+		assertTrue(report.percentile(null, 0.5) <= report.percentile(null, 0.99));
+		assertTrue(report.getThroughput() > 0);
+	}
+
+	@Test
+	@Tag(LOAD)
+	void backendThrottlesAboveMaxRps() throws Exception {
+		try (MockBackend throttled = new MockBackend(0, MockBackend.Profile.parse("maxRps=10"), Map.of(), 1)) {
+			HttpClient client = HttpClient.newHttpClient();
+			HttpRequest request = HttpRequest.newBuilder(URI.create(throttled.baseUrl() + "/Person"))
+					.POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+			int created = 0;
+			int unavailable = 0;
+			// Puffer von einer Anfrage, danach wird bei 20 schnellen Anfragen gedrosselt
+			for (int i = 0; i < 20; i++) {
+				int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+				if (status == 201) {
+					created++;
+				} else if (status == 503) {
+					unavailable++;
+				}
+			}
+			assertEquals(20, created + unavailable);
+			assertTrue(unavailable > 0 && created > 0, "created " + created + ", throttled " + unavailable);
+			assertEquals(unavailable, throttled.stats("/Person").getThrottled());
+		}
+	}
+}
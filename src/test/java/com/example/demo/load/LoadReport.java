@@ -0,0 +1,246 @@
+package com.example.demo.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ergebnis eines Lastlaufs: Anzahl und Status der Anfragen, Latenzen je
+ * Ressourcentyp, Durchsatz sowie Heap und Garbage Collection der JVM während
+ * des Laufs.
+ * <p>
+ * Die Latenz wird ab dem geplanten Sendezeitpunkt gemessen. Gerät die Fassade
+ * in Rückstand, zählt die Wartezeit also mit (kein "coordinated omission").
+ */
+public final class LoadReport {
+
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9" };
+
+	private final String label;
+	private final double targetRps;
+	private final long elapsedNanos;
+	private final long sent;
+	private final long failures;
+	private final long maxDispatchLagNanos;
+	private final Map<Integer, Long> statuses;
+	// Sortierte Latenzen in Nanosekunden je Ressourcentyp
+	private final Map<String, long[]> latencies;
+	private final JvmStats before;
+	private final JvmStats after;
+
+	LoadReport(String label, double targetRps, long elapsedNanos, long sent, long failures,
+			long maxDispatchLagNanos, Map<Integer, Long> statuses, Map<String, long[]> latencies, JvmStats before,
+			JvmStats after) {
+		this.label = label;
+		this.targetRps = targetRps;
+		this.elapsedNanos = elapsedNanos;
+		this.sent = sent;
+		this.failures = failures;
+		this.maxDispatchLagNanos = maxDispatchLagNanos;
+		this.statuses = new TreeMap<>(statuses);
+		this.latencies = new LinkedHashMap<>();
+		latencies.forEach((type, values) -> {
+			long[] sorted = values.clone();
+			Arrays.sort(sorted);
+			this.latencies.put(type, sorted);
+		});
+		this.before = before;
+		this.after = after;
+	}
+
+	/**
+	 * @return Anzahl gesendeter Anfragen
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * @return Anzahl beantworteter Anfragen, unabhängig vom Status
+	 */
+	public long getCompleted() {
+		return statuses.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	/**
+	 * @return Anfragen ohne Antwort (Verbindungsfehler, Timeout)
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return Anzahl der Antworten je HTTP-Status
+	 */
+	public Map<Integer, Long> getStatuses() {
+		return statuses;
+	}
+
+	/**
+	 * @return Anzahl beantworteter Anfragen des Ressourcentyps
+	 */
+	public long count(String resourceType) {
+		long[] values = latencies.get(resourceType);
+		return values != null ? values.length : 0;
+	}
+
+	/**
+	 * @return beantwortete Anfragen je Sekunde
+	 */
+	public double getThroughput() {
+		return getCompleted() / (elapsedNanos / 1e9);
+	}
+
+	/**
+	 * @param resourceType der Ressourcentyp oder null für alle Anfragen
+	 * @param percentile   z.B. 0.99
+	 * @return die Latenz in Nanosekunden, 0 ohne Antworten
+	 */
+	public long percentile(String resourceType, double percentile) {
+		long[] values = resourceType != null ? latencies.getOrDefault(resourceType, new long[0]) : all();
+		if (values.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * values.length) - 1;
+		return values[Math.max(0, Math.min(values.length - 1, index))];
+	}
+
+	private long[] all() {
+		long[] all = latencies.values().stream().flatMapToLong(Arrays::stream).toArray();
+		Arrays.sort(all);
+		return all;
+	}
+
+	/**
+	 * @return das Ergebnis als verschachtelte Map, z.B. für eine JSON-Datei
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("label", label);
+		map.put("targetRps", targetRps);
+		map.put("durationSeconds", elapsedNanos / 1e9);
+		map.put("sent", sent);
+		map.put("completed", getCompleted());
+		map.put("failures", failures);
+		map.put("throughput", getThroughput());
+		map.put("maxDispatchLagMillis", maxDispatchLagNanos / 1e6);
+		Map<String, Long> statusMap = new LinkedHashMap<>();
+		statuses.forEach((status, count) -> statusMap.put(String.valueOf(status), count));
+		map.put("statuses", statusMap);
+		Map<String, Object> latencyMap = new LinkedHashMap<>();
+		latencyMap.put("all", percentiles(null));
+		for (String type : latencies.keySet()) {
+			latencyMap.put(type, percentiles(type));
+		}
+		map.put("latencyMillis", latencyMap);
+		Map<String, Object> heap = new LinkedHashMap<>();
+		heap.put("usedBeforeBytes", before.heapUsed);
+		heap.put("usedAfterBytes", after.heapUsed);
+		heap.put("peakBytes", after.heapPeak);
+		heap.put("committedBytes", after.heapCommitted);
+		map.put("heap", heap);
+		Map<String, Object> gc = new LinkedHashMap<>();
+		gc.put("collections", after.gcCount - before.gcCount);
+		gc.put("timeMillis", after.gcMillis - before.gcMillis);
+		map.put("gc", gc);
+		return map;
+	}
+
+	private Map<String, Object> percentiles(String resourceType) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			map.put(PERCENTILE_NAMES[i], percentile(resourceType, PERCENTILES[i]) / 1e6);
+		}
+		map.put("max", percentile(resourceType, 1) / 1e6);
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%s: %s rps for %.1f s%n", label, format(targetRps), elapsedNanos / 1e9));
+		text.append(String.format("  requests  %d sent, %d completed, %d failed, %.1f/s, max dispatch lag %.1f ms%n",
+				sent, getCompleted(), failures, getThroughput(), maxDispatchLagNanos / 1e6));
+		text.append("  status   ");
+		statuses.forEach((status, count) -> text.append(' ').append(status).append('=').append(count));
+		text.append('\n');
+		appendLatencies(text, "all", null);
+		for (String type : latencies.keySet()) {
+			appendLatencies(text, type, type);
+		}
+		text.append(String.format("  heap      used %s -> %s, peak %s, committed %s%n", megabytes(before.heapUsed),
+				megabytes(after.heapUsed), megabytes(after.heapPeak), megabytes(after.heapCommitted)));
+		text.append(String.format("  gc        %d collections, %d ms%n", after.gcCount - before.gcCount,
+				after.gcMillis - before.gcMillis));
+		return text.toString();
+	}
+
+	private void appendLatencies(StringBuilder text, String name, String resourceType) {
+		text.append(String.format("  %-9s", name));
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			text.append(String.format(" %s=%.1fms", PERCENTILE_NAMES[i],
+					percentile(resourceType, PERCENTILES[i]) / 1e6));
+		}
+		text.append(String.format(" max=%.1fms%n", percentile(resourceType, 1) / 1e6));
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+	}
+
+	private static String megabytes(long bytes) {
+		return (bytes >> 20) + " MB";
+	}
+
+	/**
+	 * Heap und Garbage Collection der JVM zu einem Zeitpunkt.
+	 */
+	static final class JvmStats {
+		final long heapUsed;
+		final long heapCommitted;
+		// Summe der Spitzenwerte aller Heap-Bereiche seit resetPeaks()
+		final long heapPeak;
+		final long gcCount;
+		final long gcMillis;
+
+		private JvmStats(long heapUsed, long heapCommitted, long heapPeak, long gcCount, long gcMillis) {
+			this.heapUsed = heapUsed;
+			this.heapCommitted = heapCommitted;
+			this.heapPeak = heapPeak;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+		}
+
+		static JvmStats capture() {
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			long peak = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+					peak += pool.getPeakUsage().getUsed();
+				}
+			}
+			long count = 0;
+			long millis = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				count += Math.max(0, gc.getCollectionCount());
+				millis += Math.max(0, gc.getCollectionTime());
+			}
+			return new JvmStats(heap.getUsed(), heap.getCommitted(), peak, count, millis);
+		}
+
+		static void resetPeaks() {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					pool.resetPeakUsage();
+				}
+			}
+		}
+	}
+}
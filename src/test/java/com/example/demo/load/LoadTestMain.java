@@ -0,0 +1,161 @@
+package com.example.demo.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.unit.DataSize;
+
+import com.example.demo.Demo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Startet die Fassade und die eingebettete proprietäre API
+ * ({@link MockBackend}) in dieser JVM, wärmt auf und sendet dann mit fester
+ * Rate Ressourcen aus einem {@link LoadCorpus}. Ausgegeben werden Latenzen
+ * (p50 bis p99.9), Durchsatz, Heap und Garbage Collection, zusätzlich als
+ * JSON-Datei für den Vergleich zwischen Versionen.
+ * <p>
+ * Argumente in der Form {@code --name=wert}:
+ *
+ * <pre>
+ * --rps=200                 Anfragen je Sekunde
+ * --duration=30s            Dauer der Messung
+ * --warmup=10s              Dauer des Aufwärmens (gleiche Rate, nicht ausgewertet)
+ * --patientShare=0.8        Anteil der Patienten, der Rest sind DocumentReferences
+ * --corpus=500              Anzahl erzeugter Ressourcen je Typ
+ * --attachmentSize=16KB     Größe der Dokumentinhalte
+ * --seed=42                 Startwert aller Zufallswerte
+ * --person=latency=20ms,p99=100ms                Profil von /Person (und weiteren Pfaden)
+ * --document=latency=50ms,p99=250ms              Profil von /Document
+ * --timeout=60s             Zeit bis eine Anfrage als fehlgeschlagen zählt
+ * --out=target/load-result.json
+ * --target=http://host:8080/fhir  bereits laufende Fassade statt der eingebetteten
+ * --backendOnly=3001        nur die proprietäre API auf diesem Port starten
+ * --fhir-facade.*, --spring.*, --server.*, --logging.*  Eigenschaften der Fassade
+ * </pre>
+ */
+public final class LoadTestMain {
+
+	private LoadTestMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		Map<String, Object> facadeProperties = new HashMap<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Expected --name=value, got " + arg);
+			}
+			String name = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			if (name.startsWith("fhir-facade.") || name.startsWith("spring.") || name.startsWith("server.")
+					|| name.startsWith("logging.")) {
+				facadeProperties.put(name, value);
+			} else {
+				options.put(name, value);
+			}
+		}
+		long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+		MockBackend.Profile person = MockBackend.Profile
+				.parse(options.getOrDefault("person", "latency=20ms,p99=100ms"));
+		MockBackend.Profile document = MockBackend.Profile
+				.parse(options.getOrDefault("document", "latency=50ms,p99=250ms"));
+
+		if (options.containsKey("backendOnly")) {
+			// Ersatz für die Mockoon-Umgebung, läuft bis zum Abbruch
+			MockBackend backend = new MockBackend(Integer.parseInt(options.get("backendOnly")), person,
+					Map.of("/Document", document), seed);
+			System.out.println("Mock backend listening on " + backend.baseUrl() + " (/Person: " + person
+					+ ", /Document: " + document + ")");
+			Thread.currentThread().join();
+			return;
+		}
+
+		double rps = Double.parseDouble(options.getOrDefault("rps", "200"));
+		Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+		Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+		Duration timeout = DurationStyle.detectAndParse(options.getOrDefault("timeout", "60s"));
+		double patientShare = Double.parseDouble(options.getOrDefault("patientShare", "0.8"));
+		int corpusSize = Integer.parseInt(options.getOrDefault("corpus", "500"));
+		int attachmentSize = (int) DataSize.parse(options.getOrDefault("attachmentSize", "16KB")).toBytes();
+		File out = new File(options.getOrDefault("out", "target/load-result.json"));
+
+		MockBackend backend = null;
+		ConfigurableApplicationContext facade = null;
+		try {
+			URI target;
+			if (options.containsKey("target")) {
+				target = URI.create(options.get("target"));
+			} else {
+				backend = new MockBackend(0, person, Map.of("/Document", document), seed);
+				facade = startFacade(backend, facadeProperties);
+				int port = ((WebServerApplicationContext) facade).getWebServer().getPort();
+				target = URI.create("http://localhost:" + port
+						+ facade.getEnvironment().getProperty("server.servlet.context-path", ""));
+			}
+			LoadCorpus corpus = LoadCorpus.generate(corpusSize, attachmentSize, seed);
+			try (LoadGenerator generator = new LoadGenerator(target, corpus, patientShare, timeout, seed)) {
+				if (!warmup.isZero()) {
+					System.out.println(generator.run("warmup", rps, warmup));
+				}
+				LoadReport report = generator.run("measurement", rps, duration);
+				System.out.println(report);
+				Map<String, Object> result = new LinkedHashMap<>(report.toMap());
+				if (backend != null) {
+					Map<String, Object> backendStats = new LinkedHashMap<>();
+					backendStats.put("/Person", backend.stats("/Person").toString());
+					backendStats.put("/Document", backend.stats("/Document").toString());
+					result.put("backend", backendStats);
+					System.out.println("  backend   /Person " + backend.stats("/Person"));
+					System.out.println("            /Document " + backend.stats("/Document"));
+				}
+				write(out, result);
+				System.out.println("Result written to " + out);
+			}
+		} finally {
+			if (facade != null) {
+				facade.close();
+			}
+			if (backend != null) {
+				backend.close();
+			}
+		}
+	}
+
+	/**
+	 * Startet die Fassade auf einem freien Port mit der eingebetteten
+	 * proprietären API. Wiederholungen werden nicht erkannt, da der Bestand
+	 * zyklisch gesendet wird, und Logausgaben auf Warnungen beschränkt.
+	 */
+	private static ConfigurableApplicationContext startFacade(MockBackend backend,
+			Map<String, Object> facadeProperties) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("server.port", "0");
+		properties.put("fhir-facade.proprietaryBaseUrl", backend.baseUrl());
+		properties.put("fhir-facade.idempotency.enabled", "false");
+		properties.put("logging.level.root", "WARN");
+		properties.put("logging.level.com.example.demo", "WARN");
+		properties.putAll(facadeProperties);
+		// Als Kommandozeilenargumente, damit sie application.properties überschreiben
+		return new SpringApplicationBuilder(Demo.class).run(properties.entrySet().stream()
+				.map(property -> "--" + property.getKey() + "=" + property.getValue()).toArray(String[]::new));
+	}
+
+	private static void write(File file, Map<String, Object> result) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, result);
+	}
+}
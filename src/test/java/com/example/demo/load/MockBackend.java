@@ -0,0 +1,298 @@
+package com.example.demo.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Eingebetteter Ersatz für die proprietäre API unter {@code /fhir} mit
+ * einstellbarer Latenz, Fehlerrate und Durchsatzgrenze je Pfad
+ * ({@code /Person}, {@code /Document} und weitere).
+ * <p>
+ * Jede Anfrage wird vollständig gelesen und nach der gezogenen Latenz mit
+ * {@code 201 Created} beantwortet, ein Anteil {@code errorRate} mit
+ * {@code 500}. Überschreitet ein Pfad {@code maxRps}, antwortet er sofort mit
+ * {@code 503} und {@code Retry-After}. Die Zufallswerte hängen nur vom
+ * Startwert und der laufenden Nummer der Anfrage ab.
+ */
+public final class MockBackend implements AutoCloseable {
+
+	// Pfade der proprietären API unterhalb der Basis-URL
+	static final String CONTEXT = "/fhir";
+
+	private final HttpServer server;
+	private final Executor executor;
+	private final Profile defaultProfile;
+	private final Map<String, Profile> profiles;
+	private final long seed;
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * @param port           der Port, 0 für einen freien Port
+	 * @param defaultProfile Verhalten aller Pfade ohne eigenes Profil
+	 * @param profiles       Verhalten je Pfad, z.B. {@code /Document}
+	 * @param seed           Startwert der Zufallswerte
+	 */
+	public MockBackend(int port, Profile defaultProfile, Map<String, Profile> profiles, long seed)
+			throws IOException {
+		this.defaultProfile = defaultProfile;
+		this.profiles = Map.copyOf(profiles);
+		this.seed = seed;
+		this.executor = executor();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, this::handle);
+		server.start();
+	}
+
+	/**
+	 * @return die Basis-URL für {@code fhir-facade.proprietaryBaseUrl}
+	 */
+	public String baseUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + CONTEXT;
+	}
+
+	/**
+	 * @return die Zähler des Pfads, z.B. {@code /Person}
+	 */
+	public Stats stats(String path) {
+		return stats.computeIfAbsent(path, p -> new Stats());
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		if (executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdownNow();
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+			Profile profile = profiles.getOrDefault(path, defaultProfile);
+			Stats pathStats = stats(path);
+			long bytes = drain(exchange.getRequestBody());
+			pathStats.received.increment();
+			pathStats.bytes.add(bytes);
+			if (!pathStats.tryAcquire(profile.maxRps, System.nanoTime())) {
+				pathStats.throttled.increment();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				respond(exchange, 503, "{\"error\":\"throughput limit exceeded\"}");
+				return;
+			}
+			// Reproduzierbare Zufallswerte je laufender Nummer der Anfrage
+			SplittableRandom random = new SplittableRandom(seed ^ path.hashCode()
+					^ pathStats.sequence.getAndIncrement() * 0x9E3779B97F4A7C15L);
+			long latency = profile.sampleLatencyNanos(random);
+			boolean error = random.nextDouble() < profile.errorRate;
+			if (latency > 0) {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			}
+			if (error) {
+				pathStats.errors.increment();
+				respond(exchange, 500, "{\"error\":\"simulated failure\"}");
+			} else {
+				pathStats.created.increment();
+				respond(exchange, 201, "{}");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static long drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[16384];
+		long total = 0;
+		for (int read; (read = in.read(buffer)) >= 0;) {
+			total += read;
+		}
+		return total;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Ein virtueller Thread je Anfrage, falls die JVM sie unterstützt, sonst
+	 * Plattform-Threads nach Bedarf. Wartende Anfragen belegen je einen Thread.
+	 */
+	private static Executor executor() {
+		try {
+			return new VirtualThreadTaskExecutor("mock-backend-");
+		} catch (UnsupportedOperationException e) {
+			AtomicInteger counter = new AtomicInteger();
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "mock-backend-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Verhalten eines Pfads, z.B. {@code latency=20ms,p99=80ms,errorRate=0.01,maxRps=500}.
+	 * <p>
+	 * Die Latenz ist log-normalverteilt mit dem Median {@code latency} und dem
+	 * 99. Perzentil {@code p99}; ohne {@code p99} ist sie konstant.
+	 */
+	public static final class Profile {
+		// Standardnormalverteiltes 99. Perzentil
+		private static final double Z_99 = 2.326;
+
+		private final long medianNanos;
+		private final double sigma;
+		private final double errorRate;
+		// 0 für unbegrenzt
+		private final double maxRps;
+
+		public Profile(Duration latency, Duration p99, double errorRate, double maxRps) {
+			if (p99 != null && p99.compareTo(latency) < 0) {
+				throw new IllegalArgumentException("p99 " + p99 + " is below the median latency " + latency);
+			}
+			if (errorRate < 0 || errorRate > 1 || maxRps < 0) {
+				throw new IllegalArgumentException("errorRate must be within [0, 1] and maxRps positive");
+			}
+			this.medianNanos = latency.toNanos();
+			this.sigma = p99 == null || latency.isZero() ? 0
+					: Math.log((double) p99.toNanos() / medianNanos) / Z_99;
+			this.errorRate = errorRate;
+			this.maxRps = maxRps;
+		}
+
+		/**
+		 * Liest ein Profil in der Form {@code schlüssel=wert,...}, fehlende Werte
+		 * sind 0 bzw. unbegrenzt.
+		 */
+		public static Profile parse(String spec) {
+			Duration latency = Duration.ZERO;
+			Duration p99 = null;
+			double errorRate = 0;
+			double maxRps = 0;
+			for (String part : spec.split(",")) {
+				if (part.isBlank()) {
+					continue;
+				}
+				int eq = part.indexOf('=');
+				if (eq < 0) {
+					throw new IllegalArgumentException("Expected key=value in profile '" + spec + "'");
+				}
+				String key = part.substring(0, eq).trim();
+				String value = part.substring(eq + 1).trim();
+				switch (key) {
+				case "latency":
+					latency = DurationStyle.detectAndParse(value);
+					break;
+				case "p99":
+					p99 = DurationStyle.detectAndParse(value);
+					break;
+				case "errorRate":
+					errorRate = Double.parseDouble(value);
+					break;
+				case "maxRps":
+					maxRps = Double.parseDouble(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown profile key " + key + " in '" + spec + "'");
+				}
+			}
+			return new Profile(latency, p99, errorRate, maxRps);
+		}
+
+		long sampleLatencyNanos(SplittableRandom random) {
+			if (sigma == 0) {
+				return medianNanos;
+			}
+			return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+		}
+
+		@Override
+		public String toString() {
+			return "latency=" + Duration.ofNanos(medianNanos).toMillis() + "ms,p99="
+					+ Math.round(medianNanos * Math.exp(sigma * Z_99) / 1_000_000) + "ms,errorRate=" + errorRate
+					+ ",maxRps=" + (maxRps == 0 ? "unlimited" : maxRps);
+		}
+	}
+
+	/**
+	 * Zähler eines Pfads.
+	 */
+	public static final class Stats {
+		private final LongAdder received = new LongAdder();
+		private final LongAdder created = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder throttled = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final AtomicLong sequence = new AtomicLong();
+		// Token-Bucket für maxRps, Puffer von einer Zehntelsekunde, anfangs voll
+		private double tokens = Double.NaN;
+		private long refilled = System.nanoTime();
+
+		private synchronized boolean tryAcquire(double maxRps, long now) {
+			if (maxRps <= 0) {
+				return true;
+			}
+			double burst = Math.max(1, maxRps / 10);
+			tokens = Double.isNaN(tokens) ? burst : Math.min(burst, tokens + (now - refilled) * maxRps / 1e9);
+			refilled = now;
+			if (tokens < 1) {
+				return false;
+			}
+			tokens--;
+			return true;
+		}
+
+		public long getReceived() {
+			return received.sum();
+		}
+
+		public long getCreated() {
+			return created.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public long getThrottled() {
+			return throttled.sum();
+		}
+
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		@Override
+		public String toString() {
+			return "received=" + getReceived() + ", created=" + getCreated() + ", errors=" + getErrors()
+					+ ", throttled=" + getThrottled() + ", bytes=" + getBytes();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.example.demo.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.FileSystemUtils;
+
+import com.example.demo.Demo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Misst die Zeit vom Start einer neuen JVM mit der Fassade bis zur ersten
+ * erfolgreichen Anfrage (201 auf POST /Patient gegen den {@link MockBackend}),
+ * also die Zeit, bis eine neu skalierte Instanz Last übernimmt. Jede Variante
+ * wird mehrfach in einer frischen JVM und einem leeren Arbeitsverzeichnis
+ * gestartet; ausgegeben werden Minimum, Median und Maximum, zusätzlich als
+ * JSON-Datei.
+ * <p>
+ * Varianten: {@code default} (Standardeinstellungen), {@code fast-startup}
+ * (Profil fast-startup) und {@code cds} (zusätzlich mit dem CDS-Archiv aus
+ * {@code mvn -Pcds package}, nur mit {@code --jar} und {@code --archive}).
+ * <p>
+ * Argumente in der Form {@code --name=wert}:
+ *
+ * <pre>
+ * --runs=5                  Starts je Variante
+ * --variants=default,fast-startup,cds
+ * --jar=target/app/demo-0.0.1-SNAPSHOT.jar  ausgepacktes Jar; ohne wird der Klassenpfad dieser JVM verwendet
+ * --archive=target/app/application.jsa     CDS-Archiv für die Variante cds
+ * --jvmArgs=-Xmx512m        zusätzliche JVM-Argumente aller Varianten, durch Leerzeichen getrennt
+ * --timeout=120s            Zeit bis ein Start als fehlgeschlagen zählt
+ * --out=target/startup-result.json
+ * </pre>
+ */
+public final class StartupBenchmark {
+
+	private static final String FAST_STARTUP = "--spring.profiles.active=fast-startup";
+
+	private StartupBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Expected --name=value, got " + arg);
+			}
+			options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+		List<String> variants = List.of(options.getOrDefault("variants", "default,fast-startup,cds").split(","));
+		File jar = options.containsKey("jar") ? new File(options.get("jar")) : null;
+		File archive = options.containsKey("archive") ? new File(options.get("archive")) : null;
+		List<String> jvmArgs = options.getOrDefault("jvmArgs", "").isBlank() ? List.of()
+				: List.of(options.get("jvmArgs").trim().split("\\s+"));
+		Duration timeout = DurationStyle.detectAndParse(options.getOrDefault("timeout", "120s"));
+		File out = new File(options.getOrDefault("out", "target/startup-result.json"));
+		if (jar != null && !jar.isFile()) {
+			System.out.println("No extracted jar at " + jar + ", using the class path (run mvn -Pcds package)");
+			jar = null;
+		}
+
+		byte[] patient = LoadCorpus.generate(1, 0, 42).patient(0);
+		Map<String, Object> result = new LinkedHashMap<>();
+		try (MockBackend backend = new MockBackend(0, MockBackend.Profile.parse("latency=1ms"), Map.of(), 42)) {
+			for (String variant : variants) {
+				List<String> variantJvmArgs = new ArrayList<>(jvmArgs);
+				List<String> appArgs = new ArrayList<>();
+				switch (variant.trim()) {
+				case "default":
+					break;
+				case "fast-startup":
+					appArgs.add(FAST_STARTUP);
+					break;
+				case "cds":
+					if (jar == null || archive == null || !archive.isFile()) {
+						System.out.println("Skipping cds: requires --jar and --archive from mvn -Pcds package");
+						continue;
+					}
+					variantJvmArgs.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+					appArgs.add(FAST_STARTUP);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown variant " + variant);
+				}
+				long[] millis = new long[runs];
+				for (int run = 0; run < runs; run++) {
+					millis[run] = timeToFirstRequest(jar, variantJvmArgs, appArgs, backend, patient, timeout);
+				}
+				long[] sorted = millis.clone();
+				Arrays.sort(sorted);
+				Map<String, Object> summary = new LinkedHashMap<>();
+				summary.put("minMs", sorted[0]);
+				summary.put("medianMs", sorted[runs / 2]);
+				summary.put("maxMs", sorted[runs - 1]);
+				summary.put("runsMs", millis);
+				result.put(variant.trim(), summary);
+				System.out.printf("%-13s time to first request: min %5d ms  median %5d ms  max %5d ms%n", variant,
+						sorted[0], sorted[runs / 2], sorted[runs - 1]);
+			}
+		}
+		if (out.getParentFile() != null) {
+			out.getParentFile().mkdirs();
+		}
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out, result);
+		System.out.println("Result written to " + out);
+	}
+
+	/**
+	 * Startet die Fassade in einer neuen JVM und sendet so lange eine
+	 * Patient-Ressource, bis sie angelegt wird.
+	 *
+	 * @return Millisekunden vom Start des Prozesses bis zur Antwort 201
+	 */
+	private static long timeToFirstRequest(File jar, List<String> jvmArgs, List<String> appArgs,
+			MockBackend backend, byte[] patient, Duration timeout) throws IOException, InterruptedException {
+		int port = freePort();
+		Path directory = Files.createTempDirectory("startup-benchmark-");
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmArgs);
+		if (jar != null) {
+			command.add("-jar");
+			command.add(jar.getAbsolutePath());
+		} else {
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(Demo.class.getName());
+		}
+		command.add("--server.port=" + port);
+		command.add("--fhir-facade.proprietaryBaseUrl=" + backend.baseUrl());
+		command.add("--logging.level.root=WARN");
+		command.addAll(appArgs);
+
+		HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/fhir/Patient"))
+				.timeout(timeout).header("Content-Type", "application/fhir+json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(patient)).build();
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).directory(directory.toFile())
+				.redirectErrorStream(true).redirectOutput(directory.resolve("facade.log").toFile()).start();
+		try {
+			while (System.nanoTime() - start < timeout.toNanos()) {
+				if (!process.isAlive()) {
+					throw new IllegalStateException("Facade exited with " + process.exitValue() + ", see "
+							+ directory.resolve("facade.log"));
+				}
+				int status;
+				try {
+					status = client.send(request, BodyHandlers.discarding()).statusCode();
+				} catch (IOException e) {
+					// Der Server lauscht noch nicht
+					Thread.sleep(10);
+					continue;
+				}
+				if (status != 201) {
+					throw new IllegalStateException("First request answered with " + status + ", see "
+							+ directory.resolve("facade.log"));
+				}
+				long millis = (System.nanoTime() - start) / 1_000_000;
+				// Das Log bleibt nur bei einem Fehlschlag erhalten
+				FileSystemUtils.deleteRecursively(directory);
+				return millis;
+			}
+			throw new IllegalStateException("Facade did not answer within " + timeout);
+		} finally {
+			process.destroy();
+			if (!process.waitFor(10, TimeUnit.SECONDS)) {
+				process.destroyForcibly().waitFor();
+			}
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
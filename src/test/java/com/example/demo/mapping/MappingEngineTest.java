@@ -0,0 +1,159 @@
+package com.example.demo.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.controller.BadRequestException;
+import com.example.demo.stream.StreamedDocumentReference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MappingEngineTest {
+
+	private static final FhirContext FHIR_CONTEXT = FhirContext.forR4Cached();
+
+	private static MappingEngine engine(Map<String, String> configuration) {
+		Map<String, String> source = new HashMap<>();
+		configuration.forEach((key, value) -> source.put("fhir-facade.mappings." + key, value));
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		new Binder(new MapConfigurationPropertySource(source)).bind("fhir-facade", Bindable.ofInstance(properties));
+		return new MappingEngine(properties, FHIR_CONTEXT, new FacadeMetrics(new SimpleMeterRegistry()));
+	}
+
+	private static String body(ResourceMapping mapping, Resource resource)
+			throws BadRequestException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		mapping.map(resource, null).writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void configuredMappingIsAddedToTheDefaults() throws Exception {
+		MappingEngine engine = engine(Map.of("encounter.resourceType", "Encounter", "encounter.path", "/Encounter",
+				"encounter.partitionKey", "patientId", "encounter.checks[0].expression", "subject.identifier.value",
+				"encounter.checks[0].issue", "Missing patient id", "encounter.fields.patientId.expression",
+				"subject.identifier.value", "encounter.fields.patientId.type", "INTEGER",
+				"encounter.fields.visitStatus.expression", "status"));
+		assertNotNull(engine.get("Patient"));
+		assertNotNull(engine.get("DocumentReference"));
+		assertNull(engine.get("Observation"));
+
+		Encounter encounter = new Encounter();
+		encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+		encounter.getSubject().getIdentifier().setValue("654321");
+		ResourceMapping mapping = engine.get("Encounter");
+		assertEquals("/Encounter", mapping.getPath());
+		JsonNode json = new ObjectMapper().readTree(body(mapping, encounter));
+		assertEquals(654321, json.get("patientId").intValue());
+		assertEquals("finished", json.get("visitStatus").textValue());
+		assertEquals("654321", mapping.map(encounter, null).getPartitionKey());
+
+		BadRequestException e = assertThrows(BadRequestException.class,
+				() -> mapping.map(new Encounter(), null));
+		assertEquals(List.of("Missing patient id"), e.getErrorMessages());
+	}
+
+	@Test
+	void configuredMappingReplacesTheDefaultOfTheSameName() throws Exception {
+		MappingEngine engine = engine(Map.of("patient.resourceType", "Patient", "patient.path", "/Person/v2",
+				"patient.fields.familyName.expression", "name.first().family"));
+		Patient patient = new Patient();
+		patient.addName().setFamily("Chalmers");
+
+		ResourceMapping mapping = engine.get("Patient");
+		assertEquals("/Person/v2", mapping.getPath());
+		assertEquals("{\"familyName\":\"Chalmers\"}", body(mapping, patient));
+	}
+
+	@Test
+	void defaultPatientMappingWritesTheProprietaryFormat() throws Exception {
+		Patient patient = new Patient();
+		patient.addName().setFamily("Chalmers").addGiven("Peter").addGiven("James");
+		patient.getBirthDateElement().setValueAsString("1974-12-25");
+
+		assertEquals("{\"firstName\":\"Peter James\",\"lastName\":\"Chalmers\",\"birthDate\":\"25.12.1974\"}",
+				body(engine(Map.of()).get("Patient"), patient));
+	}
+
+	@Test
+	void invalidValuesAndMissingContentAreReported() {
+		MappingEngine engine = engine(Map.of("encounter.resourceType", "Encounter", "encounter.path", "/Encounter",
+				"encounter.fields.patientId.expression", "subject.identifier.value",
+				"encounter.fields.patientId.type", "INTEGER"));
+		Encounter encounter = new Encounter();
+		encounter.getSubject().getIdentifier().setValue("PID-1");
+		BadRequestException e = assertThrows(BadRequestException.class,
+				() -> engine.get("Encounter").map(encounter, null));
+		assertEquals(List.of("Invalid value 'PID-1' for patientId (Encounter.subject.identifier.value)"),
+				e.getErrorMessages());
+
+		DocumentReference documentReference = new DocumentReference();
+		documentReference.getType().addCoding().setSystem("http://dvmd.de/fhir/CodeSystem/kdl").setCode("PT130102");
+		documentReference.getContext().getEncounterFirstRep().getIdentifier().setValue("123").getType().addCoding()
+				.setCode("AN");
+		documentReference.getSubject().getIdentifier().setValue("654321");
+		e = assertThrows(BadRequestException.class, () -> engine.get("DocumentReference").map(documentReference, null));
+		assertEquals(List.of("Missing document content (DocumentReference.content.attachment.data)"),
+				e.getErrorMessages());
+	}
+
+	@Test
+	void readsOnlyComparesWithAvailableElements() {
+		assertTrue(engine(Map.of()).get("DocumentReference").readsOnly(StreamedDocumentReference.ELEMENTS));
+		assertFalse(engine(Map.of("documentReference.resourceType", "DocumentReference",
+				"documentReference.path", "/Document", "documentReference.fields.description.expression",
+				"description")).get("DocumentReference").readsOnly(StreamedDocumentReference.ELEMENTS));
+		// [*] deckt auch [0] ab, aber nicht umgekehrt
+		ResourceMapping patient = engine(Map.of()).get("Patient");
+		assertTrue(patient.readsOnly(Set.of("name[*]", "name[*].given[*]", "name[*].family", "birthDate")));
+		assertFalse(patient.readsOnly(Set.of("name[0]", "name[0].given[*]", "name[0].family", "birthDate")));
+	}
+
+	@Test
+	void invalidMappingsPreventStartup() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> engine(Map.of("encounter.resourceType", "Encounter", "encounter.path", "/Encounter",
+						"encounter.fields.patientId.expression", "subject.patient")));
+		assertTrue(e.getMessage().startsWith("Mapping encounter: Unknown element patient in Reference"),
+				e.getMessage());
+		assertThrows(IllegalArgumentException.class,
+				() -> engine(Map.of("encounter.resourceType", "Encounter", "encounter.path", "/Encounter",
+						"encounter.partitionKey", "patientId")));
+		assertThrows(IllegalArgumentException.class,
+				() -> engine(Map.of("encounter.resourceType", "Patient", "encounter.path", "/Person")));
+		assertThrows(IllegalArgumentException.class,
+				() -> engine(Map.of("encounter.resourceType", "Encounterx", "encounter.path", "/Encounter")));
+		// Der Dokumentinhalt ist nur über das Inhaltsfeld verfügbar
+		e = assertThrows(IllegalArgumentException.class, () -> engine(Map.of("documentReference.resourceType",
+				"DocumentReference", "documentReference.path", "/Document", "documentReference.contentField",
+				"contentB64", "documentReference.fields.size.expression", "content.attachment.data")));
+		assertTrue(e.getMessage().contains("content[*].attachment.data"), e.getMessage());
+	}
+}
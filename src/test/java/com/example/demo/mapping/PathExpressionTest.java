@@ -0,0 +1,90 @@
+package com.example.demo.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.Test;
+
+class PathExpressionTest {
+
+	private static List<String> evaluate(String expression, Base resource) {
+		return PathExpression.compile(expression, resource.copy()).evaluate(resource).stream()
+				.map(Base::primitiveValue).collect(Collectors.toList());
+	}
+
+	@Test
+	void evaluatesPathsFirstAndJoin() {
+		Patient patient = new Patient();
+		patient.addName().setFamily("Chalmers").addGiven("Peter").addGiven("James");
+		patient.addName().setFamily("Windsor");
+		// Ein Vorname nur mit Erweiterung zählt als nicht vorhanden
+		StringType withoutValue = patient.getNameFirstRep().addGivenElement();
+		withoutValue.addExtension("http://example.org", new StringType("x"));
+
+		assertEquals(List.of("Chalmers", "Windsor"), evaluate("Patient.name.family", patient));
+		assertEquals(List.of("Chalmers"), evaluate("name.first().family", patient));
+		assertEquals(List.of("Peter James"), evaluate("name.first().given.join(' ')", patient));
+		assertEquals(List.of(""), evaluate("birthDate.join(' ')", patient));
+		assertTrue(evaluate("birthDate", patient).isEmpty());
+	}
+
+	@Test
+	void whereKeepsMatchingElements() {
+		DocumentReference documentReference = new DocumentReference();
+		Identifier identifier = documentReference.getContext().getEncounterFirstRep().getIdentifier();
+		identifier.getType().addCoding().setCode("AN");
+		identifier.setValue("123456789");
+		documentReference.getType().addCoding().setSystem("http://loinc.org").setCode("11488-4");
+		documentReference.getType().addCoding().setSystem("http://dvmd.de/fhir/CodeSystem/kdl").setCode("PT130102");
+
+		assertEquals(List.of("123456789"), evaluate(
+				"context.encounter.identifier.where(type.coding.first().code = 'AN').first().value", documentReference));
+		assertEquals(List.of("PT130102"), evaluate(
+				"type.coding.where(system = 'http://dvmd.de/fhir/CodeSystem/kdl').first().code", documentReference));
+		assertTrue(evaluate("type.coding.where(system = 'urn:other').code", documentReference).isEmpty());
+	}
+
+	@Test
+	void choiceTypesAreNotCheckedBelowTheChoice() {
+		Observation observation = new Observation();
+		observation.setValue(new Quantity().setValue(7.2).setUnit("mmol/l"));
+
+		assertEquals(List.of("7.2"), evaluate("value.value", observation));
+		assertEquals(List.of("mmol/l"), evaluate("value.unit", observation));
+	}
+
+	@Test
+	void reportsReadElements() {
+		Patient patient = new Patient();
+		assertEquals(Set.of("name[0].given[*]"),
+				PathExpression.compile("Patient.name.first().given.join(' ')", patient).elements());
+		assertEquals(Set.of("birthDate"), PathExpression.compile("birthDate", patient).elements());
+		assertEquals(Set.of("context.encounter[*].identifier.type.coding[0].code",
+				"context.encounter[*].identifier.value"), PathExpression.compile(
+						"context.encounter.identifier.where(type.coding.first().code = 'AN').first().value",
+						new DocumentReference()).elements());
+	}
+
+	@Test
+	void rejectsUnknownElementsAndSyntaxErrors() {
+		Patient prototype = new Patient();
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> PathExpression.compile("name.first().familyName", prototype));
+		assertTrue(e.getMessage().contains("Unknown element familyName in HumanName"), e.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> PathExpression.compile("name.exists()", prototype));
+		assertThrows(IllegalArgumentException.class, () -> PathExpression.compile("name.where(use = 'x'", prototype));
+		assertThrows(IllegalArgumentException.class, () -> PathExpression.compile("name..family", prototype));
+	}
+}
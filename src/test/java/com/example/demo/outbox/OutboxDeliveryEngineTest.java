@@ -0,0 +1,161 @@
+package com.example.demo.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.service.ApiResult;
+import com.example.demo.service.OutboundRequest;
+
+class OutboxDeliveryEngineTest {
+
+	@TempDir
+	Path directory;
+
+	private FhirFacadeProperties.Outbox config() {
+		FhirFacadeProperties.Outbox config = new FhirFacadeProperties().getOutbox();
+		config.setInitialBackoff(Duration.ofMillis(1));
+		config.setMaxBackoff(Duration.ofMillis(10));
+		config.setPollInterval(Duration.ofMillis(10));
+		return config;
+	}
+
+	private void append(SegmentLog log, String key, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		log.append("/Document", key, bytes.length, new ByteArrayInputStream(bytes));
+	}
+
+	private static String bodyOf(OutboundRequest request) {
+		try (InputStream in = request.openBody()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	void retriesFailedDeliveriesInOrderPerPatient() throws Exception {
+		List<String> delivered = new CopyOnWriteArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(3);
+		try (SegmentLog log = new SegmentLog(directory, 1024, false);
+				SegmentLog deadLetters = new SegmentLog(directory.resolve("dead-letter"), 1024, false)) {
+			append(log, "1", "a1");
+			append(log, "1", "a2");
+			append(log, "2", "b1");
+			Checkpoint checkpoint = new Checkpoint(directory.resolve("checkpoint"), false);
+			OutboxDeliveryEngine engine = new OutboxDeliveryEngine(log, checkpoint, deadLetters, request -> {
+				String body = bodyOf(request);
+				// Der erste Versuch für a1 schlägt fehl
+				if (body.equals("a1") && attempts.getAndIncrement() < 2) {
+					return CompletableFuture.completedFuture(ApiResult.RETRYABLE);
+				}
+				delivered.add(body);
+				done.countDown();
+				return CompletableFuture.completedFuture(ApiResult.SUCCESS);
+			}, config());
+			engine.start();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			// Der Checkpoint wird periodisch geschrieben
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (checkpoint.read() != log.endOffset() && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			engine.shutdown();
+
+			assertEquals(3, attempts.get());
+			assertTrue(delivered.indexOf("a1") < delivered.indexOf("a2"));
+			assertEquals(log.endOffset(), checkpoint.read());
+		}
+	}
+
+	@Test
+	void resumesAtCheckpointAfterRestart() throws Exception {
+		List<String> delivered = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(1);
+		try (SegmentLog log = new SegmentLog(directory, 1024, false);
+				SegmentLog deadLetters = new SegmentLog(directory.resolve("dead-letter"), 1024, false)) {
+			append(log, "1", "a1");
+			Checkpoint checkpoint = new Checkpoint(directory.resolve("checkpoint"), false);
+			checkpoint.write(log.endOffset());
+			append(log, "1", "a2");
+			OutboxDeliveryEngine engine = new OutboxDeliveryEngine(log, checkpoint, deadLetters, request -> {
+				delivered.add(bodyOf(request));
+				done.countDown();
+				return CompletableFuture.completedFuture(ApiResult.SUCCESS);
+			}, config());
+			engine.start();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			engine.shutdown();
+
+			assertEquals(List.of("a2"), delivered);
+		}
+	}
+
+	@Test
+	void movesRejectedAndExhaustedEntriesToDeadLetterLog() throws Exception {
+		List<String> delivered = new CopyOnWriteArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1);
+		FhirFacadeProperties.Outbox config = config();
+		config.setMaxAttempts(3);
+		try (SegmentLog log = new SegmentLog(directory, 1024, false);
+				SegmentLog deadLetters = new SegmentLog(directory.resolve("dead-letter"), 1024, false)) {
+			append(log, "1", "rejected");
+			append(log, "1", "a2");
+			append(log, "2", "unavailable");
+			Checkpoint checkpoint = new Checkpoint(directory.resolve("checkpoint"), false);
+			OutboxDeliveryEngine engine = new OutboxDeliveryEngine(log, checkpoint, deadLetters, request -> {
+				String body = bodyOf(request);
+				attempts.incrementAndGet();
+				if (body.equals("rejected")) {
+					return CompletableFuture.completedFuture(ApiResult.REJECTED);
+				} else if (body.equals("unavailable")) {
+					return CompletableFuture.failedFuture(new IllegalStateException("unavailable"));
+				}
+				delivered.add(body);
+				done.countDown();
+				return CompletableFuture.completedFuture(ApiResult.SUCCESS);
+			}, config);
+			engine.start();
+			// Ein abgelehnter Eintrag blockiert den nächsten zum selben Patienten nicht
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (checkpoint.read() != log.endOffset() && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			engine.shutdown();
+
+			assertEquals(List.of("a2"), delivered);
+			// Einmal rejected, dreimal unavailable, einmal a2
+			assertEquals(5, attempts.get());
+			assertEquals(log.endOffset(), checkpoint.read());
+			OutboxRecord first = deadLetters.read(deadLetters.firstOffset());
+			OutboxRecord second = deadLetters.read(first.getNextOffset());
+			assertEquals("rejected", bodyOf(first));
+			assertEquals("unavailable", bodyOf(second));
+		}
+	}
+
+	private static String bodyOf(OutboxRecord record) {
+		byte[] bytes = new byte[record.getBody().remaining()];
+		record.getBody().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
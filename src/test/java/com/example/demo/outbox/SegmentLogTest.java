@@ -0,0 +1,201 @@
+package com.example.demo.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentLogTest {
+
+	@TempDir
+	Path directory;
+
+	private long append(SegmentLog log, String key, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		return log.append("/Person", key, bytes.length, new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Startet ein Anhängen, dessen Anfragekörper nach dem ersten Byte wartet, bis
+	 * {@code proceed} freigegeben wird, und danach noch {@code remaining} Bytes
+	 * liefert.
+	 */
+	private CompletableFuture<Long> appendBlocked(SegmentLog log, int bodyLength, int remaining,
+			CountDownLatch reading, CountDownLatch proceed) {
+		InputStream body = new InputStream() {
+			private int position;
+
+			@Override
+			public int read() throws IOException {
+				if (position == remaining) {
+					return -1;
+				}
+				if (position == 1) {
+					reading.countDown();
+					try {
+						proceed.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+				}
+				position++;
+				return 'x';
+			}
+		};
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return log.append("/Person", "a", bodyLength, body);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	private String bodyOf(OutboxRecord record) {
+		ByteBuffer body = record.getBody();
+		byte[] bytes = new byte[body.remaining()];
+		body.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void readsAppendedRecordsAcrossSegments() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 64, false)) {
+			long first = append(log, "a", "{\"n\":1}");
+			append(log, "b", "{\"n\":2}");
+			append(log, "a", "{\"n\":3}");
+			assertEquals(2, log.segmentCount());
+
+			OutboxRecord record = log.read(first);
+			assertEquals("/Person", record.getPath());
+			assertEquals("a", record.getPartitionKey());
+			assertEquals("{\"n\":1}", bodyOf(record));
+			record = log.read(record.getNextOffset());
+			assertEquals("{\"n\":2}", bodyOf(record));
+			record = log.read(record.getNextOffset());
+			assertEquals("{\"n\":3}", bodyOf(record));
+			assertNull(log.read(record.getNextOffset()));
+		}
+	}
+
+	@Test
+	void recoversCompleteRecordsAfterRestart() throws IOException {
+		long second;
+		try (SegmentLog log = new SegmentLog(directory, 1024, false)) {
+			append(log, "a", "{\"n\":1}");
+			second = append(log, "a", "{\"n\":2}");
+		}
+		// Simuliert einen beim Schreiben abgebrochenen zweiten Eintrag
+		Path segment = Files.list(directory).findFirst().get();
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'x' }), second + SegmentLog.HEADER_SIZE + 4);
+		}
+		try (SegmentLog log = new SegmentLog(directory, 1024, false)) {
+			assertEquals(second, log.endOffset());
+			long third = append(log, "a", "{\"n\":3}");
+			assertEquals(second, third);
+			assertEquals("{\"n\":3}", bodyOf(log.read(third)));
+		}
+	}
+
+	@Test
+	void deletesDeliveredSegments() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 64, false)) {
+			append(log, "a", "{\"n\":1}");
+			append(log, "a", "{\"n\":2}");
+			long third = append(log, "a", "{\"n\":3}");
+			assertEquals(1, log.deleteBefore(third));
+			assertEquals(1, log.segmentCount());
+			assertEquals("{\"n\":3}", bodyOf(log.read(0)));
+			// Das aktive Segment bleibt erhalten
+			assertEquals(0, log.deleteBefore(log.endOffset()));
+		}
+	}
+
+	@Test
+	void copiesBodiesOutsideTheLock() throws Exception {
+		try (SegmentLog log = new SegmentLog(directory, 1024, false)) {
+			CountDownLatch reading = new CountDownLatch(1);
+			CountDownLatch proceed = new CountDownLatch(1);
+			CompletableFuture<Long> first = appendBlocked(log, 4, 4, reading, proceed);
+			assertTrue(reading.await(10, TimeUnit.SECONDS));
+			// Lesen und weitere Einträge warten nicht auf das Kopieren
+			assertNull(log.read(0));
+			CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> {
+				try {
+					return append(log, "b", "{\"n\":2}");
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			Thread.sleep(100);
+			// Erst nach dem ersten Eintrag freigegeben
+			assertFalse(second.isDone());
+			assertEquals(0, log.endOffset());
+
+			proceed.countDown();
+			assertEquals(0, first.get(10, TimeUnit.SECONDS));
+			long offset = second.get(10, TimeUnit.SECONDS);
+			OutboxRecord record = log.read(0);
+			assertEquals("xxxx", bodyOf(record));
+			assertEquals(offset, record.getNextOffset());
+			assertEquals("{\"n\":2}", bodyOf(log.read(offset)));
+		}
+	}
+
+	@Test
+	void skipsAbortedRecordsReservedBeforeOthers() throws Exception {
+		try (SegmentLog log = new SegmentLog(directory, 1024, false)) {
+			CountDownLatch reading = new CountDownLatch(1);
+			CountDownLatch proceed = new CountDownLatch(1);
+			CompletableFuture<Long> aborted = appendBlocked(log, 10, 4, reading, proceed);
+			assertTrue(reading.await(10, TimeUnit.SECONDS));
+			CountDownLatch secondReading = new CountDownLatch(1);
+			CountDownLatch secondProceed = new CountDownLatch(1);
+			CompletableFuture<Long> second = appendBlocked(log, 4, 4, secondReading, secondProceed);
+			assertTrue(secondReading.await(10, TimeUnit.SECONDS));
+
+			proceed.countDown();
+			ExecutionException error = assertThrows(ExecutionException.class,
+					() -> aborted.get(10, TimeUnit.SECONDS));
+			assertTrue(error.getCause() instanceof UncheckedIOException);
+			secondProceed.countDown();
+			long offset = second.get(10, TimeUnit.SECONDS);
+			OutboxRecord record = log.read(0);
+			assertEquals(offset, record.getOffset());
+			assertEquals("xxxx", bodyOf(record));
+		}
+		// Die Füllung übersteht einen Neustart
+		try (SegmentLog log = new SegmentLog(directory, 1024, false)) {
+			assertEquals("xxxx", bodyOf(log.read(0)));
+		}
+	}
+
+	@Test
+	void rejectsBodiesShorterThanDeclared() throws IOException {
+		try (SegmentLog log = new SegmentLog(directory, 64, false)) {
+			assertThrows(IOException.class,
+					() -> log.append("/Person", "a", 10, new ByteArrayInputStream(new byte[5])));
+			assertNull(log.read(0));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFacadeProperties.Backends.Node;
+import com.example.demo.config.FhirFacadeProperties.Backends.Routing;
+
+class BackendPoolTest {
+
+	private final AtomicLong clock = new AtomicLong();
+	private final List<String> changes = new ArrayList<>();
+
+	private BackendPool pool(Routing routing, Node... nodes) {
+		FhirFacadeProperties.Backends config = new FhirFacadeProperties.Backends();
+		config.setRouting(routing);
+		config.setConsecutiveFailures(3);
+		config.setSlowCallDuration(Duration.ofSeconds(1));
+		config.setEjectionDuration(Duration.ofSeconds(10));
+		config.setMaxEjectionDuration(Duration.ofSeconds(30));
+		return new BackendPool(config, List.of(nodes), clock::get,
+				(backend, available, reason) -> changes.add(backend + (available ? " up " : " down ") + reason));
+	}
+
+	private static Node node(String name, int weight) {
+		return new Node("http://" + name + ":3001/fhir", weight);
+	}
+
+	private static void release(BackendPool pool, BackendPool.Backend backend, long nanos, boolean success,
+			int times) {
+		for (int i = 0; i < times; i++) {
+			pool.release(backend, nanos, success);
+		}
+	}
+
+	@Test
+	void consistentHashKeepsPatientsOnTheirNode() {
+		BackendPool pool = pool(Routing.CONSISTENT_HASH, node("a", 1), node("b", 1), node("c", 1));
+		Map<String, BackendPool.Backend> assigned = new HashMap<>();
+		Map<BackendPool.Backend, Integer> counts = new HashMap<>();
+		for (int patientId = 1; patientId <= 3000; patientId++) {
+			BackendPool.Backend backend = pool.select(String.valueOf(patientId));
+			pool.release(backend, 0, true);
+			assertSame(backend, pool.select(String.valueOf(patientId)));
+			assigned.put(String.valueOf(patientId), backend);
+			counts.merge(backend, 1, Integer::sum);
+		}
+		for (int count : counts.values()) {
+			assertTrue(count > 700, "Uneven distribution " + counts);
+		}
+
+		// Nur die Patienten des ausgeschlossenen Knotens wandern
+		BackendPool.Backend ejected = pool.getBackends().get(0);
+		release(pool, ejected, 0, false, 3);
+		assertFalse(pool.isAvailable(ejected));
+		for (Map.Entry<String, BackendPool.Backend> entry : assigned.entrySet()) {
+			BackendPool.Backend backend = pool.select(entry.getKey());
+			if (entry.getValue() == ejected) {
+				assertNotEquals(ejected, backend);
+			} else {
+				assertSame(entry.getValue(), backend);
+			}
+		}
+	}
+
+	@Test
+	void weightedRoundRobinFollowsWeights() {
+		BackendPool pool = pool(Routing.WEIGHTED_ROUND_ROBIN, node("a", 3), node("b", 1));
+		StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			BackendPool.Backend backend = pool.select(null);
+			order.append(backend.getUrl().charAt(7));
+			pool.release(backend, 0, true);
+		}
+		// Gleichmäßig verteilt statt aaab-Blöcken
+		assertEquals("aabaaaba", order.toString());
+	}
+
+	@Test
+	void leastOutstandingPrefersIdleNode() {
+		BackendPool pool = pool(Routing.LEAST_OUTSTANDING, node("a", 1), node("b", 1));
+		BackendPool.Backend first = pool.select(null);
+		BackendPool.Backend second = pool.select(null);
+		assertNotEquals(first, second);
+		pool.release(first, 0, true);
+		assertSame(first, pool.select(null));
+		pool.release(second, 0, true);
+		assertSame(second, pool.select(null));
+	}
+
+	@Test
+	void slowNodeIsEjectedAndReadmittedWithGrowingDuration() {
+		BackendPool pool = pool(Routing.LEAST_OUTSTANDING, node("a", 1), node("b", 1));
+		BackendPool.Backend slow = pool.getBackends().get(0);
+		release(pool, slow, Duration.ofSeconds(2).toNanos(), true, 3);
+		assertFalse(pool.isAvailable(slow));
+		for (int i = 0; i < 4; i++) {
+			BackendPool.Backend backend = pool.select(null);
+			assertNotEquals(slow, backend);
+			pool.release(backend, 0, true);
+		}
+
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		assertTrue(pool.isAvailable(slow));
+		// Erneuter Ausschluss ohne Erfolg dazwischen dauert doppelt so lange
+		release(pool, slow, 0, false, 3);
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		assertFalse(pool.isAvailable(slow));
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		assertTrue(pool.isAvailable(slow));
+		assertEquals(List.of(slow + " down slow", slow + " up ejection-expired", slow + " down failures",
+				slow + " up ejection-expired"), changes);
+	}
+
+	@Test
+	void failedHealthChecksEjectUntilHealthy() {
+		BackendPool pool = pool(Routing.CONSISTENT_HASH, node("a", 1), node("b", 1));
+		BackendPool.Backend backend = pool.getBackends().get(1);
+		pool.onHealthCheck(backend, false);
+		assertTrue(pool.isAvailable(backend));
+		pool.onHealthCheck(backend, false);
+		assertFalse(pool.isAvailable(backend));
+		pool.onHealthCheck(backend, true);
+		assertTrue(pool.isAvailable(backend));
+	}
+
+	@Test
+	void allNodesEjectedStillRoutes() {
+		BackendPool pool = pool(Routing.CONSISTENT_HASH, node("a", 1));
+		BackendPool.Backend only = pool.getBackends().get(0);
+		release(pool, only, 0, false, 3);
+		assertFalse(pool.isAvailable(only));
+		assertSame(only, pool.select("1"));
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.service.CircuitBreaker.State;
+
+class CircuitBreakerTest {
+
+	private static final long MILLIS = 1_000_000;
+
+	private final AtomicLong clock = new AtomicLong();
+	private final List<String> transitions = new ArrayList<>();
+
+	private CircuitBreaker breaker() {
+		FhirFacadeProperties.CircuitBreaker config = new FhirFacadeProperties.CircuitBreaker();
+		config.setWindowSize(10);
+		config.setMinimumCalls(4);
+		config.setFailureRateThreshold(0.5);
+		config.setSlowCallDuration(Duration.ofSeconds(1));
+		config.setSlowCallRateThreshold(0.8);
+		config.setOpenDuration(Duration.ofSeconds(30));
+		config.setHalfOpenCalls(2);
+		return new CircuitBreaker(config, clock::get, (from, to) -> transitions.add(from + "->" + to));
+	}
+
+	private static void call(CircuitBreaker breaker, long millis, boolean success) {
+		breaker.onResult(acquire(breaker), millis * MILLIS, success);
+	}
+
+	private static CircuitBreaker.Permit acquire(CircuitBreaker breaker) {
+		CircuitBreaker.Permit permit = breaker.tryAcquire();
+		assertNotNull(permit);
+		return permit;
+	}
+
+	@Test
+	void opensOnFailureRateAndClosesAfterSuccessfulProbes() {
+		CircuitBreaker breaker = breaker();
+		call(breaker, 10, true);
+		call(breaker, 10, false);
+		call(breaker, 10, true);
+		assertEquals(State.CLOSED, breaker.getState());
+		call(breaker, 10, false);
+		assertEquals(State.OPEN, breaker.getState());
+		assertNull(breaker.tryAcquire());
+		assertEquals(30_000 * MILLIS, breaker.getRemainingOpenNanos());
+
+		clock.addAndGet(30_000 * MILLIS);
+		CircuitBreaker.Permit first = acquire(breaker);
+		CircuitBreaker.Permit second = acquire(breaker);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		// Nur so viele Probeaufrufe wie konfiguriert
+		assertNull(breaker.tryAcquire());
+		breaker.onResult(first, 10 * MILLIS, true);
+		breaker.onResult(second, 10 * MILLIS, true);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+	}
+
+	@Test
+	void slowCallsOpenAndFailedProbeReopens() {
+		CircuitBreaker breaker = breaker();
+		for (int i = 0; i < 4; i++) {
+			call(breaker, 2000, true);
+		}
+		assertEquals(State.OPEN, breaker.getState());
+
+		clock.addAndGet(30_000 * MILLIS);
+		call(breaker, 10, false);
+		assertEquals(State.OPEN, breaker.getState());
+		assertNull(breaker.tryAcquire());
+	}
+
+	@Test
+	void ignoredProbeFreesItsSlot() {
+		CircuitBreaker breaker = breaker();
+		for (int i = 0; i < 4; i++) {
+			call(breaker, 10, false);
+		}
+		clock.addAndGet(30_000 * MILLIS);
+		acquire(breaker);
+		CircuitBreaker.Permit ignored = acquire(breaker);
+		breaker.onIgnored(ignored);
+		acquire(breaker);
+	}
+
+	@Test
+	void callsStartedBeforeOpeningAreNotCountedAsProbes() {
+		CircuitBreaker breaker = breaker();
+		CircuitBreaker.Permit slow = acquire(breaker);
+		CircuitBreaker.Permit unstarted = acquire(breaker);
+		for (int i = 0; i < 4; i++) {
+			call(breaker, 10, false);
+		}
+		clock.addAndGet(30_000 * MILLIS);
+		CircuitBreaker.Permit probe = acquire(breaker);
+		acquire(breaker);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+
+		// Weder gibt ein alter Aufruf einen Platz frei, noch schließt er den Schalter
+		breaker.onIgnored(unstarted);
+		assertNull(breaker.tryAcquire());
+		breaker.onResult(slow, 10 * MILLIS, true);
+		breaker.onResult(probe, 10 * MILLIS, true);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+	}
+}
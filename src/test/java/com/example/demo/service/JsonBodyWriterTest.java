@@ -0,0 +1,79 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.stream.SpooledContent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class JsonBodyWriterTest {
+
+	private static final String[] PATIENT_FIELDS = { "firstName", "lastName", "birthDate" };
+	private static final String[] DOCUMENT_FIELDS = { "kdlCode", "patientId", "visitNumber", "dateCreated" };
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void patientBodyEscapesNames() throws IOException {
+		String firstName = "Peter \"Pete\" \\ Jürgen\t\u0001 😀";
+		String lastName = "O'Neil\uD800";
+		byte[] body = OutboundRequest.requestBody(PATIENT_FIELDS,
+				new Object[] { firstName, lastName, "25.12.1974" }, null);
+
+		JsonNode json = objectMapper.readTree(body);
+		assertEquals(firstName, json.get("firstName").asText());
+		// Einzelne Surrogate bleiben als \\uXXXX erhalten
+		assertTrue(new String(body, StandardCharsets.UTF_8).contains("O'Neil\\ud800"));
+		assertEquals("25.12.1974", json.get("birthDate").asText());
+	}
+
+	@Test
+	void documentBodyWritesIsoDateAndStreamsContent() throws IOException {
+		try (SpooledContent content = new SpooledContent(1024)) {
+			try (OutputStream out = content.outputStream()) {
+				out.write("SGVsbG8=".getBytes(StandardCharsets.US_ASCII));
+			}
+			OutboundRequest request = OutboundRequest.json(OutboundRequest.DOCUMENT_PATH, "-654321",
+					DOCUMENT_FIELDS, new Object[] { "PT\"130102", -654321, 123456789, new Date(1609476650000L) },
+					"contentB64", content);
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			assertEquals(request.getContentLength(), request.writeTo(body));
+
+			JsonNode json = objectMapper.readTree(body.toByteArray());
+			assertEquals("PT\"130102", json.get("kdlCode").asText());
+			assertEquals(-654321, json.get("patientId").asInt());
+			assertEquals(123456789, json.get("visitNumber").asInt());
+			assertEquals("2021-01-01T04:50:50Z", json.get("dateCreated").asText());
+			assertEquals("SGVsbG8=", json.get("contentB64").asText());
+		}
+	}
+
+	@Test
+	void missingValuesAreWrittenAsNull() throws IOException {
+		String prefix = new String(
+				OutboundRequest.requestPrefix(DOCUMENT_FIELDS, new Object[] { null, null, 0, null }, "contentB64"),
+				StandardCharsets.UTF_8);
+		JsonNode json = objectMapper.readTree(prefix + "\"}");
+		assertTrue(json.get("kdlCode").isNull());
+		assertTrue(json.get("patientId").isNull());
+		assertEquals(0, json.get("visitNumber").asInt());
+		assertTrue(json.get("dateCreated").isNull());
+	}
+
+	@Test
+	void decimalsAreWrittenWithoutExponent() throws IOException {
+		byte[] body = OutboundRequest.requestBody(new String[] { "value" },
+				new Object[] { new BigDecimal("1.5E+3") }, "contentB64");
+		assertEquals("{\"value\":1500,\"contentB64\":null}", new String(body, StandardCharsets.UTF_8));
+	}
+}
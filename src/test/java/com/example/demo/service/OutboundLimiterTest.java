@@ -0,0 +1,54 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+class OutboundLimiterTest {
+
+	@Test
+	void queuedCallsStartWhenRunningCallsComplete() throws Exception {
+		OutboundLimiter limiter = new OutboundLimiter(2, 4);
+		List<CompletableFuture<Integer>> calls = new ArrayList<>();
+		List<CompletableFuture<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			CompletableFuture<Integer> call = new CompletableFuture<>();
+			calls.add(call);
+			int value = i;
+			results.add(limiter.submit(() -> call.thenApply(ignored -> value)));
+		}
+		assertEquals(4, limiter.getInFlight());
+
+		calls.forEach(call -> call.complete(0));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, results.get(i).get());
+		}
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	void callsBeyondMaxInFlightAreRejected() {
+		OutboundLimiter limiter = new OutboundLimiter(1, 2);
+		CompletableFuture<Boolean> pending = new CompletableFuture<>();
+		limiter.submit(() -> pending);
+		limiter.submit(() -> pending);
+
+		CompletableFuture<Boolean> rejected = limiter.submit(() -> CompletableFuture.completedFuture(true));
+		assertTrue(rejected.isCompletedExceptionally());
+		ExecutionException exception = assertThrows(ExecutionException.class, rejected::get);
+		assertTrue(exception.getCause() instanceof RejectedExecutionException);
+
+		pending.complete(true);
+		assertEquals(0, limiter.getInFlight());
+		assertFalse(limiter.submit(() -> CompletableFuture.completedFuture(true)).isCompletedExceptionally());
+	}
+}
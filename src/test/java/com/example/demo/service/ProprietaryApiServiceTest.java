@@ -0,0 +1,185 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.example.demo.config.FacadeMetrics;
+import com.example.demo.config.FhirFacadeProperties;
+import com.example.demo.config.FhirFacadeProperties.Backends.Node;
+import com.example.demo.config.FhirFacadeProperties.Backends.Routing;
+import com.example.demo.config.FhirFacadeProperties.Outbound.ContentEncoding;
+import com.example.demo.stream.SpooledContent;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ProprietaryApiServiceTest {
+
+	/**
+	 * Eine von der API empfangene Anfrage.
+	 */
+	private record Received(String contentEncoding, byte[] body) {
+	}
+
+	@Test
+	void compressesLargeBodiesWithGzip() throws Exception {
+		List<Received> received = new CopyOnWriteArrayList<>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				received.add(new Received(exchange.getRequestHeaders().getFirst("Content-Encoding"),
+						in.readAllBytes()));
+			}
+			exchange.sendResponseHeaders(201, -1);
+			exchange.close();
+		});
+		server.start();
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.setProprietaryBaseUrl("http://localhost:" + server.getAddress().getPort());
+		properties.getOutbound().setCompression(ContentEncoding.GZIP);
+		properties.getOutbound().setCompressionMinSize(DataSize.ofKilobytes(1));
+		ProprietaryApiService service = new ProprietaryApiService(properties,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+		try (SpooledContent content = new SpooledContent(1024)) {
+			try (OutputStream out = content.outputStream()) {
+				out.write("QUJD".repeat(10_000).getBytes());
+			}
+			OutboundRequest large = OutboundRequest.json(OutboundRequest.DOCUMENT_PATH, "1",
+					new String[] { "patientId" }, new Object[] { 1 }, "content", content);
+			OutboundRequest small = OutboundRequest.json(OutboundRequest.PERSON_PATH, "1",
+					new String[] { "firstName" }, new Object[] { "Peter" }, null, null);
+
+			assertTrue(service.send(large).get());
+			assertTrue(service.send(small).get());
+			byte[] expected;
+			try (InputStream in = large.openBody()) {
+				expected = in.readAllBytes();
+			}
+			assertEquals(2, received.size());
+			assertEquals("gzip", received.get(0).contentEncoding());
+			assertTrue(received.get(0).body().length < expected.length / 10);
+			try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(received.get(0).body()))) {
+				assertArrayEquals(expected, in.readAllBytes());
+			}
+			// Kleine Anfragekörper bleiben unkomprimiert
+			assertNull(received.get(1).contentEncoding());
+		} finally {
+			service.destroy();
+			server.stop(0);
+		}
+	}
+
+	private static HttpServer server(int status, AtomicInteger calls) throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				in.readAllBytes();
+			}
+			calls.incrementAndGet();
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+		return server;
+	}
+
+	@Test
+	void failingBackendIsEjectedAndItsPatientsMove() throws Exception {
+		AtomicInteger failingCalls = new AtomicInteger();
+		AtomicInteger healthyCalls = new AtomicInteger();
+		HttpServer failing = server(500, failingCalls);
+		HttpServer healthy = server(201, healthyCalls);
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getCircuitBreaker().setEnabled(false);
+		properties.getBackends().setRouting(Routing.CONSISTENT_HASH);
+		properties.getBackends().setConsecutiveFailures(2);
+		properties.getBackends().setNodes(List.of(new Node("http://localhost:" + failing.getAddress().getPort(), 1),
+				new Node("http://localhost:" + healthy.getAddress().getPort(), 1)));
+		ProprietaryApiService service = new ProprietaryApiService(properties,
+				new FacadeMetrics(new SimpleMeterRegistry()));
+		try {
+			int failed = 0;
+			for (int patientId = 1; patientId <= 40; patientId++) {
+				OutboundRequest request = OutboundRequest.json(OutboundRequest.DOCUMENT_PATH,
+						String.valueOf(patientId), new String[] { "patientId" }, new Object[] { patientId }, null,
+						null);
+				if (!service.send(request).get()) {
+					failed++;
+				}
+			}
+			// Nur bis zum Ausschluss erreichen Aufrufe den fehlerhaften Knoten
+			assertEquals(2, failed);
+			assertEquals(2, failingCalls.get());
+			assertEquals(38, healthyCalls.get());
+		} finally {
+			service.destroy();
+			failing.stop(0);
+			healthy.stop(0);
+		}
+	}
+
+	@Test
+	void distinguishesRejectedFromRetryableResponses() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		HttpServer rejecting = server(400, calls);
+		HttpServer throttling = server(429, calls);
+		HttpServer failing = server(503, calls);
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.getCircuitBreaker().setEnabled(false);
+		OutboundRequest request = OutboundRequest.json(OutboundRequest.PERSON_PATH, "1",
+				new String[] { "firstName" }, new Object[] { "Peter" }, null, null);
+		try {
+			for (HttpServer server : List.of(rejecting, throttling, failing)) {
+				properties.setProprietaryBaseUrl("http://localhost:" + server.getAddress().getPort());
+				ProprietaryApiService service = new ProprietaryApiService(properties,
+						new FacadeMetrics(new SimpleMeterRegistry()));
+				try {
+					assertEquals(server == rejecting ? ApiResult.REJECTED : ApiResult.RETRYABLE,
+							service.deliver(request).get());
+					assertFalse(service.send(request).get());
+				} finally {
+					service.destroy();
+				}
+			}
+			assertEquals(6, calls.get());
+		} finally {
+			rejecting.stop(0);
+			throttling.stop(0);
+			failing.stop(0);
+		}
+	}
+
+	@Test
+	void callsThatCannotStartReleaseTheirBackend() throws Exception {
+		// HttpClient lehnt das Schema beim Aufbau der Anfrage ab
+		FhirFacadeProperties properties = new FhirFacadeProperties();
+		properties.setProprietaryBaseUrl("ftp://localhost");
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ProprietaryApiService service = new ProprietaryApiService(properties, new FacadeMetrics(registry));
+		OutboundRequest request = OutboundRequest.json(OutboundRequest.PERSON_PATH, "1",
+				new String[] { "firstName" }, new Object[] { "Peter" }, null, null);
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertEquals(ApiResult.RETRYABLE, service.deliver(request).get());
+			}
+			assertEquals(0, registry.get("fhir.facade.backend.outstanding").gauge().value());
+		} finally {
+			service.destroy();
+		}
+	}
+}
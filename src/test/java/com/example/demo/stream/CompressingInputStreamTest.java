@@ -0,0 +1,73 @@
+package com.example.demo.stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class CompressingInputStreamTest {
+
+	private static byte[] content() {
+		// Halb zufällig, halb wiederholt: größer als die internen Puffer und
+		// komprimierbar
+		byte[] content = new byte[100_000];
+		new Random(42).nextBytes(content);
+		for (int i = content.length / 2; i < content.length; i++) {
+			content[i] = (byte) ('a' + i % 7);
+		}
+		return content;
+	}
+
+	@Test
+	void gzipAndDeflateCanBeReadByJdk() throws IOException {
+		byte[] content = content();
+		try (InputStream gzip = new GZIPInputStream(
+				CompressingInputStream.gzip(new ByteArrayInputStream(content), Deflater.BEST_SPEED))) {
+			assertArrayEquals(content, gzip.readAllBytes());
+		}
+		try (InputStream deflate = new InflaterInputStream(
+				CompressingInputStream.deflate(new ByteArrayInputStream(content), Deflater.BEST_SPEED))) {
+			assertArrayEquals(content, deflate.readAllBytes());
+		}
+	}
+
+	@Test
+	void decoderInflatesUpToMaxSize() throws IOException {
+		byte[] content = content();
+		byte[] gzip = CompressingInputStream.gzip(new ByteArrayInputStream(content), Deflater.DEFAULT_COMPRESSION)
+				.readAllBytes();
+		try (InputStream in = ContentDecoder.decode("GZIP", new ByteArrayInputStream(gzip), content.length)) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+		// deflate im zlib-Format und roh
+		byte[] zlib = CompressingInputStream.deflate(new ByteArrayInputStream(content), Deflater.BEST_SPEED)
+				.readAllBytes();
+		try (InputStream in = ContentDecoder.decode("deflate", new ByteArrayInputStream(zlib), content.length)) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		try (DeflaterOutputStream out = new DeflaterOutputStream(raw, new Deflater(Deflater.BEST_SPEED, true))) {
+			out.write(content);
+		}
+		try (InputStream in = ContentDecoder.decode("deflate", new ByteArrayInputStream(raw.toByteArray()),
+				content.length)) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+
+		try (InputStream in = ContentDecoder.decode("gzip", new ByteArrayInputStream(gzip), content.length - 1)) {
+			assertThrows(PayloadTooLargeException.class, in::readAllBytes);
+		}
+		assertThrows(IllegalArgumentException.class,
+				() -> ContentDecoder.decode("br", new ByteArrayInputStream(gzip), content.length));
+	}
+}
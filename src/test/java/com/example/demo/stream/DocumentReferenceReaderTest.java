@@ -0,0 +1,86 @@
+package com.example.demo.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+class DocumentReferenceReaderTest {
+
+	private static final String BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE = "Beispiel-FHIR-Ressource-DocumentReference.json";
+
+	private String contentOf(SpooledContent content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void readsMetadataAndCopiesDataVerbatim() throws IOException {
+		DocumentReferenceReader reader = new DocumentReferenceReader(1024);
+		try (InputStream in = new ClassPathResource(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE).getInputStream();
+				StreamedDocumentReference documentReference = reader.read(in)) {
+			assertEquals("http://dvmd.de/fhir/CodeSystem/kdl", documentReference.getTypeCoding().get(0).getSystem());
+			assertEquals("PT130102", documentReference.getTypeCoding().get(0).getCode());
+			assertEquals("654321", documentReference.getSubjectIdentifier().getValue());
+			assertEquals("AN", documentReference.getEncounter().get(0).getIdentifier().getType().getCoding().get(0)
+					.getCode());
+			assertEquals("0123456789", documentReference.getEncounter().get(0).getIdentifier().getValue());
+			assertEquals("2020-12-31T23:50:50-05:00", documentReference.getCreation().getValueAsString());
+			assertTrue(documentReference.isDataPresent());
+			assertEquals("JVBERi0xLjUNJeLjz9MNCjEw", contentOf(documentReference.getData()));
+		}
+	}
+
+	@Test
+	void spoolsLargeDataToDisk() throws IOException {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			data.append("QUJD\\/");
+		}
+		String json = "{\"resourceType\":\"DocumentReference\",\"content\":[{\"attachment\":{\"data\":\"" + data
+				+ "\"}}]}";
+		DocumentReferenceReader reader = new DocumentReferenceReader(1024);
+		try (StreamedDocumentReference documentReference = reader
+				.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+			assertTrue(documentReference.getData().isOnDisk());
+			assertEquals(data.length(), documentReference.getData().size());
+			assertEquals(data.toString(), contentOf(documentReference.getData()));
+		}
+	}
+
+	@Test
+	void rejectsOtherResourceTypes() {
+		DocumentReferenceReader reader = new DocumentReferenceReader(1024);
+		String json = "{\"resourceType\":\"Patient\"}";
+		assertThrows(JsonStreamException.class,
+				() -> reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void rejectsTruncatedDocuments() {
+		DocumentReferenceReader reader = new DocumentReferenceReader(1024);
+		String json = "{\"resourceType\":\"DocumentReference\",\"content\":[{\"attachment\":{\"data\":\"QUJD";
+		assertThrows(JsonStreamException.class,
+				() -> reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void missingDataIsReported() throws IOException {
+		DocumentReferenceReader reader = new DocumentReferenceReader(1024);
+		String json = "{\"resourceType\":\"DocumentReference\",\"content\":[{\"attachment\":{\"creation\":\"2020-12-31\"}}]}";
+		try (StreamedDocumentReference documentReference = reader
+				.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+			assertFalse(documentReference.isDataPresent());
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.example.demo.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+class DocumentReferenceXmlReaderTest {
+
+	private static final String BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE = "Beispiel-FHIR-Ressource-DocumentReference.xml";
+
+	private String contentOf(SpooledContent content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private StreamedDocumentReference read(String xml) throws IOException {
+		return new DocumentReferenceXmlReader(1024)
+				.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String documentReference(String attachment) {
+		return "<DocumentReference xmlns=\"http://hl7.org/fhir\"><content><attachment>" + attachment
+				+ "</attachment></content></DocumentReference>";
+	}
+
+	@Test
+	void readsSameElementsAsJsonReader() throws IOException {
+		try (InputStream in = new ClassPathResource(BEISPIEL_FHIR_RESSOURCE_DOCUMENT_REFERENCE).getInputStream();
+				StreamedDocumentReference documentReference = new DocumentReferenceXmlReader(1024).read(in)) {
+			assertEquals("http://dvmd.de/fhir/CodeSystem/kdl", documentReference.getTypeCoding().get(0).getSystem());
+			assertEquals("PT130102", documentReference.getTypeCoding().get(0).getCode());
+			assertEquals("654321", documentReference.getSubjectIdentifier().getValue());
+			assertEquals("urn:oid:0.1.2.3.4.5.6.7", documentReference.getSubjectIdentifier().getSystem());
+			assertEquals("AN", documentReference.getEncounter().get(0).getIdentifier().getType().getCoding().get(0)
+					.getCode());
+			assertEquals("0123456789", documentReference.getEncounter().get(0).getIdentifier().getValue());
+			assertEquals("2020-12-31T23:50:50-05:00", documentReference.getCreation().getValueAsString());
+			assertTrue(documentReference.isDataPresent());
+			// Zeilenumbruch und Einrückung im Base64-Wert werden entfernt
+			assertEquals("JVBERi0xLjUNJeLjz9MNCjEw", contentOf(documentReference.getData()));
+		}
+	}
+
+	@Test
+	void spoolsLargeDataToDiskAcrossBufferBoundaries() throws IOException {
+		StringBuilder data = new StringBuilder();
+		StringBuilder wrapped = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			data.append("QUJD");
+			wrapped.append("QUJD").append(i % 19 == 18 ? "&#10;" : i % 19 == 9 ? "\r\n" : "");
+		}
+		byte[] xml = documentReference("<data value=\"" + wrapped + "\"/><creation value=\"2020-12-31\"/>")
+				.getBytes(StandardCharsets.UTF_8);
+		// Liefert jeweils nur ein Byte, damit jede Stelle an einer Puffergrenze liegt
+		InputStream slow = new FilterInputStream(new ByteArrayInputStream(xml)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		try (StreamedDocumentReference documentReference = new DocumentReferenceXmlReader(1024).read(slow)) {
+			assertTrue(documentReference.getData().isOnDisk());
+			assertEquals(data.length(), documentReference.getData().size());
+			assertEquals(data.toString(), contentOf(documentReference.getData()));
+			assertEquals("2020-12-31", documentReference.getCreation().getValueAsString());
+		}
+	}
+
+	@Test
+	void ignoresDataInCommentsCdataAndOtherAttributes() throws IOException {
+		String xml = "<?xml version='1.0'?><!-- <data value=\"WA==\"/> -->" + documentReference(
+				"<contentType value='data'/><title value=\"&lt;data value='x'/&gt;\"/><data value='QUJD'/>")
+				.replace("<content>", "<text><status value=\"generated\"/><div xmlns=\"http://www.w3.org/1999/xhtml\">"
+						+ "<![CDATA[<data value=\"WA==\"/>]]></div></text><content>");
+		try (StreamedDocumentReference documentReference = read(xml)) {
+			assertTrue(documentReference.isDataPresent());
+			assertEquals("QUJD", contentOf(documentReference.getData()));
+		}
+	}
+
+	@Test
+	void readsOnlyFirstContent() throws IOException {
+		String xml = documentReference("<data value=\"QUJD\"/>").replace("</DocumentReference>",
+				"<content><attachment><data value=\"WA==\"/></attachment></content></DocumentReference>");
+		try (StreamedDocumentReference documentReference = read(xml)) {
+			assertEquals("QUJD", contentOf(documentReference.getData()));
+		}
+	}
+
+	@Test
+	void rejectsOtherResourceTypes() {
+		assertThrows(XmlStreamException.class, () -> read("<Patient xmlns=\"http://hl7.org/fhir\"/>"));
+	}
+
+	@Test
+	void rejectsOtherNamespaces() {
+		assertThrows(XmlStreamException.class, () -> read("<DocumentReference/>"));
+	}
+
+	@Test
+	void rejectsDoctype() {
+		String xml = "<!DOCTYPE DocumentReference [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+				+ documentReference("<title value=\"&x;\"/>");
+		assertThrows(XmlStreamException.class, () -> read(xml));
+	}
+
+	@Test
+	void rejectsInvalidBase64Characters() {
+		assertThrows(XmlStreamException.class, () -> read(documentReference("<data value=\"QU&amp;JD\"/>")));
+		assertThrows(XmlStreamException.class, () -> read(documentReference("<data value=\"QU JD!\"/>")));
+	}
+
+	@Test
+	void rejectsTruncatedDocuments() {
+		String xml = "<DocumentReference xmlns=\"http://hl7.org/fhir\"><content><attachment><data value=\"QUJD";
+		assertThrows(XmlStreamException.class, () -> read(xml));
+	}
+
+	@Test
+	void missingDataIsReported() throws IOException {
+		try (StreamedDocumentReference documentReference = read(
+				documentReference("<creation value=\"2020-12-31\"/>"))) {
+			assertFalse(documentReference.isDataPresent());
+		}
+	}
+}
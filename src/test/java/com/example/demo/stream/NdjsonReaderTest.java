@@ -0,0 +1,60 @@
+package com.example.demo.stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class NdjsonReaderTest {
+
+	private static final byte[] NDJSON = "{\"a\":1}\r\n\n  \n{\"b\":2}\n{\"c\":3}".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void readsLinesWithNumbersAndOffsets() throws IOException {
+		NdjsonReader reader = new NdjsonReader(new ByteArrayInputStream(NDJSON), 0, 0, 100);
+		NdjsonReader.Line first = reader.next();
+		assertArrayEquals(bytes("{\"a\":1}"), first.getContent());
+		assertEquals(1, first.getNumber());
+		assertEquals(0, first.getOffset());
+		assertEquals(9, first.getNextOffset());
+
+		// Leere Zeilen werden übersprungen, aber gezählt
+		NdjsonReader.Line second = reader.next();
+		assertArrayEquals(bytes("{\"b\":2}"), second.getContent());
+		assertEquals(4, second.getNumber());
+		assertEquals(13, second.getOffset());
+
+		// Letzte Zeile ohne Zeilenende
+		NdjsonReader.Line third = reader.next();
+		assertArrayEquals(bytes("{\"c\":3}"), third.getContent());
+		assertEquals(NDJSON.length, third.getNextOffset());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void resumesAtOffsetAndSkipsTooLongLines() throws IOException {
+		byte[] ndjson = ("{\"long\":\"" + "x".repeat(200_000) + "\"}\n{\"b\":2}\n").getBytes(StandardCharsets.UTF_8);
+		NdjsonReader reader = new NdjsonReader(new ByteArrayInputStream(ndjson), 0, 0, 1000);
+		NdjsonReader.Line tooLong = reader.next();
+		assertNull(tooLong.getContent());
+		NdjsonReader.Line next = reader.next();
+		assertArrayEquals(bytes("{\"b\":2}"), next.getContent());
+		assertEquals(2, next.getNumber());
+
+		NdjsonReader resumed = new NdjsonReader(
+				new ByteArrayInputStream(ndjson, (int) tooLong.getNextOffset(), ndjson.length), tooLong.getNextOffset(),
+				tooLong.getNumber(), 1000);
+		NdjsonReader.Line again = resumed.next();
+		assertEquals(next.getNumber(), again.getNumber());
+		assertEquals(next.getOffset(), again.getOffset());
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}
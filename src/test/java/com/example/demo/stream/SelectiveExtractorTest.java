@@ -0,0 +1,79 @@
+package com.example.demo.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.example.demo.stream.SelectiveExtractor.ValueType;
+
+class SelectiveExtractorTest {
+
+	private static final SelectiveExtractor EXTRACTOR = new SelectiveExtractor("Patient",
+			Map.of("name[0]", ValueType.PRESENT, "name[0].given[*]", ValueType.STRING, "name[0].family",
+					ValueType.STRING, "birthDate", ValueType.DATE));
+
+	@Test
+	void extractsOnlyTheSpecifiedPaths() throws IOException {
+		byte[] patient = new ClassPathResource("Beispiel-FHIR-Ressource-Patient.json").getInputStream()
+				.readAllBytes();
+		SelectiveExtractor.Result result = EXTRACTOR.extract(new ByteArrayInputStream(patient));
+
+		assertNotNull(result);
+		assertTrue(result.isPresent("name[0]"));
+		assertEquals(List.of("Peter", "James"), result.values("name[0].given[*]"));
+		assertEquals("Chalmers", result.value("name[0].family"));
+		// _birthDate enthält nur eine Erweiterung und ändert den Wert nicht
+		assertEquals("1974-12-25", result.value("birthDate"));
+	}
+
+	@Test
+	void missingPathsAreEmpty() throws IOException {
+		SelectiveExtractor.Result result = extract("{\"name\":[],\"resourceType\":\"Patient\"}");
+
+		assertNotNull(result);
+		assertFalse(result.isPresent("name[0]"));
+		assertEquals(List.of(), result.values("name[0].given[*]"));
+		assertNull(result.value("birthDate"));
+	}
+
+	@Test
+	void fallsBackForInputOnlyHapiCanMap() throws IOException {
+		// Erweiterungen eines Arrays primitiver Elemente
+		assertNull(extract("{\"resourceType\":\"Patient\",\"name\":[{\"given\":[\"Peter\"],\"_given\":[{}]}]}"));
+		// Ungültiges Datum, null-Wert, unerwarteter Typ, doppeltes Feld
+		assertNull(extract("{\"resourceType\":\"Patient\",\"birthDate\":\"25.12.1974\"}"));
+		assertNull(extract("{\"resourceType\":\"Patient\",\"name\":[null,{\"family\":\"Chalmers\"}]}"));
+		assertNull(extract("{\"resourceType\":\"Patient\",\"name\":[{\"given\":\"Peter\"}]}"));
+		assertNull(extract("{\"resourceType\":\"Patient\",\"birthDate\":\"1974\",\"birthDate\":\"1975\"}"));
+		// Anderer oder fehlender resourceType, ungültiges JSON
+		assertNull(extract("{\"resourceType\":\"Person\"}"));
+		assertNull(extract("{\"birthDate\":\"1974\"}"));
+		assertNull(extract("{\"resourceType\":\"Patient\",}"));
+	}
+
+	@Test
+	void rejectsInvalidPathSpecs() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new SelectiveExtractor("Patient", Map.of("name[x].family", ValueType.STRING)));
+		assertThrows(IllegalArgumentException.class, () -> new SelectiveExtractor("Patient",
+				Map.of("name[0].family", ValueType.STRING, "name[*].given", ValueType.STRING)));
+		assertThrows(IllegalArgumentException.class, () -> new SelectiveExtractor("Patient",
+				Map.of("birthDate", ValueType.DATE, "birthDate.value", ValueType.STRING)));
+	}
+
+	private static SelectiveExtractor.Result extract(String json) throws IOException {
+		return EXTRACTOR.extract(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+}